@@ -0,0 +1,65 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/** Builds filemaps of a given shape for the benchmarks. */
+final class FileMaps {
+
+  private FileMaps() {}
+
+  /**
+   * Builds a filemap whose files each hold the same number of distinct objects.
+   *
+   * @param files - number of files
+   * @param objects - number of objects in each file
+   * @return filemap of files named file0, file1, ...
+   */
+  static Map<String, List<MockFileObject>> generate(final int files, final int objects) {
+    Map<String, List<MockFileObject>> fileMap = new HashMap<>();
+    for (int i = 0; i < files; i++) {
+      List<MockFileObject> file = new ArrayList<>();
+      for (int j = 0; j < objects; j++) {
+        file.add(new MockFileObject("img-" + i + "-" + j, "name-" + j));
+      }
+      fileMap.put("file" + i, file);
+    }
+    return fileMap;
+  }
+
+  /**
+   * Copies a filemap, changing each file.
+   *
+   * @param fileMap - filemap to copy
+   * @param change - returns the changed version of a copy of a file
+   * @return the changed copy
+   */
+  static Map<String, List<MockFileObject>> edit(
+      final Map<String, List<MockFileObject>> fileMap,
+      final UnaryOperator<List<MockFileObject>> change) {
+    Map<String, List<MockFileObject>> edited = new HashMap<>();
+    fileMap.forEach((name, file) -> edited.put(name, change.apply(new ArrayList<>(file))));
+    return edited;
+  }
+
+  /**
+   * Replaces one object of a file with a new object.
+   *
+   * @param file - file to change
+   * @param index - index of the object to replace
+   * @param tag - distinguishes the new object from others replaced at the same index
+   * @return the file
+   */
+  static List<MockFileObject> replace(
+      final List<MockFileObject> file, final int index, final String tag) {
+    if (!file.isEmpty()) {
+      MockFileObject old = file.get(index);
+      file.set(index, new MockFileObject(old.imgStr() + "-" + tag, old.imgName()));
+    }
+    return file;
+  }
+}
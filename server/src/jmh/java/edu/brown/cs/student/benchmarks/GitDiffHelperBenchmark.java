@@ -0,0 +1,92 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the {@link GitDiffHelper} comparisons every add, commit, status, and merge runs, over
+ * filemaps of growing file counts and file lengths. Each comparison is set up to do its most work:
+ * changed files differ only in their last object, so every object before it is compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitDiffHelperBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int files;
+
+  @Param({"10", "100", "1000"})
+  public int objects;
+
+  private Map<String, List<MockFileObject>> stored;
+  // every file's last object changed
+  private Map<String, List<MockFileObject>> changed;
+  // every file with objects added to its end, so the stored version is a subsequence of it
+  private Map<String, List<MockFileObject>> extended;
+
+  @Setup
+  public void setup() {
+    stored = FileMaps.generate(files, objects);
+    changed = FileMaps.edit(stored, file -> FileMaps.replace(file, file.size() - 1, "changed"));
+    extended =
+        FileMaps.edit(
+            stored,
+            file -> {
+              file.add(new MockFileObject("img-added", "added"));
+              return file;
+            });
+  }
+
+  @Benchmark
+  public GitDiffHelper detectNewFiles() {
+    GitDiffHelper diffHelper = new GitDiffHelper();
+    diffHelper.detectNewFiles(stored, changed);
+    return diffHelper;
+  }
+
+  @Benchmark
+  public Set<String> differenceDetected() {
+    return new GitDiffHelper().differenceDetected(stored, changed);
+  }
+
+  @Benchmark
+  public void autoMergeSubsequence(Blackhole blackhole) {
+    GitDiffHelper diffHelper = new GitDiffHelper();
+    for (Map.Entry<String, List<MockFileObject>> file : stored.entrySet()) {
+      blackhole.consume(
+          diffHelper.autoMergeIfPossible(
+              file.getKey(), file.getValue(), extended.get(file.getKey())));
+    }
+  }
+
+  @Benchmark
+  public void autoMergeConflict(Blackhole blackhole) {
+    GitDiffHelper diffHelper = new GitDiffHelper();
+    for (Map.Entry<String, List<MockFileObject>> file : stored.entrySet()) {
+      blackhole.consume(
+          diffHelper.autoMergeIfPossible(
+              file.getKey(), file.getValue(), changed.get(file.getKey())));
+    }
+    blackhole.consume(diffHelper.getFileConflicts());
+  }
+}
@@ -0,0 +1,63 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the merge loop of {@code GitMergeHandler} ({@link GitDiffHelper#mergeFileMaps}) over
+ * filemaps of growing file counts and file lengths. The local side changes the first object of
+ * every file and the incoming side the last, so a three-way merge resolves every file cleanly,
+ * while a two-way merge, with no merge base, finds every file in conflict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitMergeBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int files;
+
+  @Param({"10", "100", "1000"})
+  public int objects;
+
+  private Map<String, List<MockFileObject>> base;
+  private Map<String, List<MockFileObject>> local;
+  private Map<String, List<MockFileObject>> incoming;
+
+  @Setup
+  public void setup() {
+    base = FileMaps.generate(files, objects);
+    local = FileMaps.edit(base, file -> FileMaps.replace(file, 0, "local"));
+    incoming = FileMaps.edit(base, file -> FileMaps.replace(file, file.size() - 1, "incoming"));
+  }
+
+  @Benchmark
+  public Map<String, List<MockFileObject>> threeWayMerge() {
+    return new GitDiffHelper().mergeFileMaps(local, incoming, base);
+  }
+
+  @Benchmark
+  public void twoWayMerge(Blackhole blackhole) {
+    GitDiffHelper diffHelper = new GitDiffHelper();
+    blackhole.consume(diffHelper.mergeFileMaps(local, incoming, null));
+    blackhole.consume(diffHelper.getFileConflicts());
+  }
+}
@@ -0,0 +1,500 @@
+package edu.brown.cs.student.benchmarks;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.Server;
+import edu.brown.cs.student.main.server.ServerConfig;
+import edu.brown.cs.student.main.server.metrics.ServerMetrics;
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.LocalDiskStorage;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import spark.Spark;
+
+/**
+ * Drives the whole server with many concurrent game sessions and reports how it holds up.
+ *
+ * <p>The server is started in this process, serving whatever {@link StorageInterface} it is given,
+ * and each synthetic session plays the game over HTTP as the client does: two users take turns
+ * editing their own files, then status, add, commit, and push, pulling and pushing again whenever
+ * the other user pushed first. Every few rounds a user also reads the log, or creates a branch and
+ * merges it. Requests are sent as JSON bodies on a shared HTTP client.
+ *
+ * <p>The report gives the run's throughput and, per endpoint, the request count, the p50, p99, and
+ * maximum latency, and how many requests were refused by the game (a push behind the remote, a
+ * merge conflict) or failed outright (a non-200 status, a bad request, or an exception inside the
+ * handler). Edits are drawn from a seeded random number generator per session, so runs with the
+ * same options send the same script; only the interleaving of sessions varies.
+ *
+ * <p>Run it through the benchmark profile, for example
+ *
+ * <pre>
+ * mvn -P benchmark -DskipTests test -Dbenchmark.main=edu.brown.cs.student.benchmarks.LoadGenerator
+ *     -Dbenchmark.args="--sessions 32 --rounds 20 --storage memory"
+ * </pre>
+ *
+ * Options are {@code --sessions}, {@code --rounds}, {@code --files} and {@code --objects} (the
+ * shape of each session's starting file map), {@code --seed}, {@code --storage} ({@code memory},
+ * {@code local}, or {@code firebase}), {@code --dir} (for local storage; a temporary directory by
+ * default), and {@code --out} (a file to also write the report to).
+ */
+public class LoadGenerator {
+
+  private static final Moshi MOSHI = new Moshi.Builder().build();
+  private static final JsonAdapter<Map<String, Object>> jsonAdapter =
+      MOSHI.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  private static final String BRANCH = "main";
+  private static final List<String> USERS = List.of("user1", "user2");
+
+  /**
+   * Settings of one run.
+   *
+   * @param sessions number of concurrent sessions
+   * @param rounds turns each user takes
+   * @param files files in each session's starting file map
+   * @param objects objects in each starting file
+   * @param seed seed the sessions' edits are drawn from
+   */
+  public record Options(int sessions, int rounds, int files, int objects, long seed) {
+    public Options {
+      if (sessions <= 0 || rounds <= 0 || files < 2 || objects <= 0) {
+        throw new IllegalArgumentException(
+            "LoadGenerator: sessions, rounds, and objects must be positive, and files at least 2");
+      }
+    }
+  }
+
+  /** Latencies and outcomes of the requests to one endpoint. */
+  private static final class EndpointStats {
+    private final List<Long> latencies = new ArrayList<>();
+    private long rejected;
+    private long failed;
+
+    private void addAll(final EndpointStats other) {
+      latencies.addAll(other.latencies);
+      rejected += other.rejected;
+      failed += other.failed;
+    }
+  }
+
+  private final HttpClient client =
+      HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  private final String baseUrl;
+
+  private LoadGenerator(final String baseUrl) {
+    this.baseUrl = baseUrl;
+  }
+
+  /**
+   * Starts the server on a free port serving the given storage, plays the sessions against it, and
+   * stops it.
+   *
+   * @param storage - storage the server serves
+   * @param options - settings of the run
+   * @return the report
+   * @throws Exception - if the server cannot be started or a session cannot be run
+   */
+  public static String run(final StorageInterface storage, final Options options) throws Exception {
+    ServerConfig config =
+        ServerConfig.from(name -> "server.port".equals(name) ? "0" : System.getProperty(name));
+    Server.start(config, storage, new ServerMetrics());
+    try {
+      LoadGenerator generator = new LoadGenerator("http://localhost:" + Spark.port() + "/");
+      return generator.play(options, config);
+    } finally {
+      Spark.stop();
+      Spark.awaitStop();
+    }
+  }
+
+  private String play(final Options options, final ServerConfig config) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(options.sessions());
+    Map<String, EndpointStats> stats = new TreeMap<>();
+    long start = System.nanoTime();
+    try {
+      List<Future<Map<String, EndpointStats>>> sessions = new ArrayList<>();
+      for (int i = 0; i < options.sessions(); i++) {
+        String sessionId = "load-" + options.seed() + "-" + i;
+        Random random = new Random(options.seed() * 31 + i);
+        sessions.add(executor.submit(() -> playSession(sessionId, random, options)));
+      }
+      for (Future<Map<String, EndpointStats>> session : sessions) {
+        session
+            .get()
+            .forEach(
+                (endpoint, sessionStats) ->
+                    stats
+                        .computeIfAbsent(endpoint, name -> new EndpointStats())
+                        .addAll(sessionStats));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    return report(options, config, stats, System.nanoTime() - start);
+  }
+
+  /**
+   * Plays one session from creation to deletion.
+   *
+   * @param sessionId - id of the session
+   * @param random - source of the session's edits
+   * @param options - settings of the run
+   * @return statistics of the session's requests, by endpoint
+   */
+  private Map<String, EndpointStats> playSession(
+      final String sessionId, final Random random, final Options options) {
+    Map<String, EndpointStats> stats = new HashMap<>();
+    Map<String, List<Map<String, Object>>> initial = new TreeMap<>();
+    for (int f = 0; f < options.files(); f++) {
+      List<Map<String, Object>> file = new ArrayList<>();
+      for (int o = 0; o < options.objects(); o++) {
+        file.add(object("start-" + f + "-" + o));
+      }
+      initial.put("file" + f, file);
+    }
+    // each user's working copy, as the client would hold it
+    List<Map<String, List<Map<String, Object>>>> working = new ArrayList<>();
+    for (String user : USERS) {
+      send(stats, "createsession", params(sessionId, user, "file_map_json", json(initial)));
+      working.add(copy(initial));
+    }
+
+    for (int round = 0; round < options.rounds(); round++) {
+      for (int u = 0; u < USERS.size(); u++) {
+        String user = USERS.get(u);
+        edit(working.get(u), u, random, sessionId + "-" + round + "-" + u);
+        String fileMapJson = json(working.get(u));
+
+        send(
+            stats,
+            "gitstatus",
+            params(sessionId, user, "branch_id", BRANCH, "file_map_json", fileMapJson));
+        send(
+            stats,
+            "gitadd",
+            params(sessionId, user, "branch_id", BRANCH, "file_map_json", fileMapJson));
+        send(
+            stats,
+            "gitcommit",
+            params(sessionId, user, "branch_id", BRANCH, "commit_message", "round " + round));
+        if (send(stats, "gitpush", params(sessionId, user, "branch_id", BRANCH)) == null) {
+          // the other user pushed first: pull their work, then push again
+          Map<String, Object> pulled =
+              send(
+                  stats,
+                  "gitpull",
+                  params(sessionId, user, "branch_id", BRANCH, "file_map_json", fileMapJson));
+          if (pulled != null && pulled.get("merged_files") instanceof Map) {
+            working.set(
+                u, copy((Map<String, List<Map<String, Object>>>) pulled.get("merged_files")));
+          }
+          send(stats, "gitpush", params(sessionId, user, "branch_id", BRANCH));
+        }
+        if (round % 5 == 4) {
+          send(
+              stats,
+              "gitlog",
+              params(sessionId, user, "branch_id", BRANCH, "verbose", "false", "limit", "10"));
+        }
+      }
+      if (round % 10 == 9) {
+        // the second user branches off and merges the branch back
+        String user = USERS.get(1);
+        String fileMapJson = json(working.get(1));
+        String feature = "feature-" + round;
+        send(
+            stats,
+            "gitbranch",
+            params(
+                sessionId,
+                user,
+                "branch_request",
+                feature,
+                "current_branch_id",
+                BRANCH,
+                "file_map_json",
+                fileMapJson));
+        send(
+            stats,
+            "gitmerge",
+            params(
+                sessionId,
+                user,
+                "current_branch_id",
+                BRANCH,
+                "merge_branch_id",
+                feature,
+                "file_map_json",
+                fileMapJson));
+      }
+    }
+    send(stats, "deletesession", params(sessionId, USERS.get(0)));
+    return stats;
+  }
+
+  /**
+   * Changes one of a user's own files: mostly adding an object, sometimes removing one. Users edit
+   * different files, as players in a session work on their own parts.
+   *
+   * @param fileMap - the user's working copy
+   * @param user - index of the user
+   * @param random - source of the edit
+   * @param tag - makes the added object unique
+   */
+  private static void edit(
+      final Map<String, List<Map<String, Object>>> fileMap,
+      final int user,
+      final Random random,
+      final String tag) {
+    List<String> own = new ArrayList<>();
+    for (String fileName : fileMap.keySet()) {
+      if (Integer.parseInt(fileName.substring("file".length())) % USERS.size() == user) {
+        own.add(fileName);
+      }
+    }
+    List<Map<String, Object>> file = fileMap.get(own.get(random.nextInt(own.size())));
+    if (file.size() > 1 && random.nextInt(5) == 0) {
+      file.remove(random.nextInt(file.size()));
+    } else {
+      file.add(random.nextInt(file.size() + 1), object(tag));
+    }
+  }
+
+  /**
+   * Sends one request and records it.
+   *
+   * @param stats - statistics the request is recorded in
+   * @param endpoint - endpoint to call
+   * @param params - the request's parameters
+   * @return the response, or null if the game refused the request or it failed
+   */
+  private Map<String, Object> send(
+      final Map<String, EndpointStats> stats,
+      final String endpoint,
+      final Map<String, Object> params) {
+    EndpointStats endpointStats = stats.computeIfAbsent(endpoint, name -> new EndpointStats());
+    HttpRequest request =
+        HttpRequest.newBuilder(URI.create(baseUrl + endpoint))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(jsonAdapter.toJson(params)))
+            .build();
+    long start = System.nanoTime();
+    try {
+      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      endpointStats.latencies.add(System.nanoTime() - start);
+      Map<String, Object> body =
+          response.statusCode() == 200 ? jsonAdapter.fromJson(response.body()) : null;
+      Object outcome = body == null ? null : body.get("response");
+      if ("success".equals(outcome)) {
+        return body;
+      }
+      // handlers report exceptions as "<command>_failed: <message>" (gitlog as "git log failed")
+      String cause = body == null ? "" : String.valueOf(body.get("error_cause"));
+      if ("error_database".equals(outcome)
+          && !cause.contains("_failed")
+          && !cause.startsWith("git log failed")) {
+        endpointStats.rejected++;
+      } else {
+        endpointStats.failed++;
+      }
+      return null;
+    } catch (IOException e) {
+      endpointStats.latencies.add(System.nanoTime() - start);
+      endpointStats.failed++;
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Map<String, Object> params(
+      final String sessionId, final String userId, final String... namesAndValues) {
+    Map<String, Object> params = new HashMap<>();
+    params.put("session_id", sessionId);
+    params.put("user_id", userId);
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      params.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return params;
+  }
+
+  private static Map<String, Object> object(final String imgStr) {
+    Map<String, Object> object = new HashMap<>();
+    object.put("imgStr", imgStr);
+    object.put("imgName", imgStr + ".png");
+    return object;
+  }
+
+  private static Map<String, List<Map<String, Object>>> copy(
+      final Map<String, List<Map<String, Object>>> fileMap) {
+    Map<String, List<Map<String, Object>>> copy = new TreeMap<>();
+    fileMap.forEach((name, file) -> copy.put(name, new ArrayList<>(file)));
+    return copy;
+  }
+
+  private static String json(final Map<String, List<Map<String, Object>>> fileMap) {
+    return jsonAdapter.toJson(new HashMap<>(fileMap));
+  }
+
+  /**
+   * Lays out the run's results.
+   *
+   * @param options - settings of the run
+   * @param config - the server's settings
+   * @param stats - statistics of every request, by endpoint
+   * @param nanos - how long the run took
+   */
+  private static String report(
+      final Options options,
+      final ServerConfig config,
+      final Map<String, EndpointStats> stats,
+      final long nanos) {
+    EndpointStats total = new EndpointStats();
+    stats.values().forEach(total::addAll);
+    double seconds = nanos / 1e9;
+
+    StringBuilder out = new StringBuilder();
+    out.append(
+        String.format(
+            Locale.ROOT,
+            "sessions=%d rounds=%d files=%d objects=%d seed=%d threads=%s%n",
+            options.sessions(),
+            options.rounds(),
+            options.files(),
+            options.objects(),
+            options.seed(),
+            config.threadMode().name().toLowerCase(Locale.ROOT)));
+    out.append(
+        String.format(
+            Locale.ROOT,
+            "%d requests in %.2f s: %.1f requests/s%n%n",
+            total.latencies.size(),
+            seconds,
+            total.latencies.size() / seconds));
+    String format = "%-14s %9s %9s %8s %8s %9s %9s %9s%n";
+    out.append(
+        String.format(
+            Locale.ROOT,
+            format,
+            "endpoint",
+            "requests",
+            "refused",
+            "failed",
+            "error%",
+            "p50 ms",
+            "p99 ms",
+            "max ms"));
+    stats.forEach((endpoint, endpointStats) -> row(out, format, endpoint, endpointStats));
+    row(out, format, "total", total);
+    return out.toString();
+  }
+
+  private static void row(
+      final StringBuilder out, final String format, final String name, final EndpointStats stats) {
+    List<Long> sorted = new ArrayList<>(stats.latencies);
+    Collections.sort(sorted);
+    int requests = sorted.size();
+    out.append(
+        String.format(
+            Locale.ROOT,
+            format,
+            name,
+            requests,
+            stats.rejected,
+            stats.failed,
+            String.format(
+                Locale.ROOT, "%.2f", requests == 0 ? 0.0 : 100.0 * stats.failed / requests),
+            millis(percentile(sorted, 0.50)),
+            millis(percentile(sorted, 0.99)),
+            millis(requests == 0 ? 0 : sorted.get(requests - 1))));
+  }
+
+  /** Nearest-rank percentile of sorted latencies. */
+  private static long percentile(final List<Long> sorted, final double fraction) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(fraction * sorted.size());
+    return sorted.get(Math.max(0, rank - 1));
+  }
+
+  private static String millis(final long nanos) {
+    return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+  }
+
+  /**
+   * Runs the load generator from the command line and prints its report.
+   *
+   * @param args - options, as {@code --name value} pairs
+   * @throws Exception - if the run fails
+   */
+  public static void main(final String[] args) throws Exception {
+    Map<String, String> flags = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (!args[i].startsWith("--")) {
+        throw new IllegalArgumentException("LoadGenerator: expected an option, not " + args[i]);
+      }
+      flags.put(args[i].substring(2), args[i + 1]);
+    }
+    Options options =
+        new Options(
+            Integer.parseInt(flags.getOrDefault("sessions", "16")),
+            Integer.parseInt(flags.getOrDefault("rounds", "20")),
+            Integer.parseInt(flags.getOrDefault("files", "8")),
+            Integer.parseInt(flags.getOrDefault("objects", "20")),
+            Long.parseLong(flags.getOrDefault("seed", "1")));
+
+    String storageName = flags.getOrDefault("storage", "memory");
+    StorageInterface storage;
+    switch (storageName) {
+      case "memory" -> storage = new InMemoryStorage();
+      case "local" -> storage =
+          new LocalDiskStorage(
+              flags.containsKey("dir")
+                  ? Path.of(flags.get("dir"))
+                  : Files.createTempDirectory("git-happens-load"));
+      case "firebase" -> storage = new CachingStorage(new FirebaseUtilities());
+      default -> throw new IllegalArgumentException(
+          "LoadGenerator: --storage must be memory, local, or firebase, not " + storageName);
+    }
+
+    String report;
+    try {
+      report = "storage=" + storageName + " " + run(storage, options);
+    } finally {
+      if (storage instanceof Closeable closeable) {
+        closeable.close();
+      } else if (storage instanceof CachingStorage cachingStorage) {
+        cachingStorage.close();
+      }
+    }
+    System.out.print(report);
+    if (flags.containsKey("out")) {
+      Files.writeString(Path.of(flags.get("out")), report);
+    }
+    System.exit(0);
+  }
+}
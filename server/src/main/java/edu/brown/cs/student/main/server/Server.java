@@ -1,10 +1,15 @@
 package edu.brown.cs.student.main.server;
 
 import static spark.Spark.after;
+import static spark.Spark.before;
 
+import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
 import edu.brown.cs.student.main.server.handlers.CheckSolutionHandler;
 import edu.brown.cs.student.main.server.handlers.CreateSessionHandler;
 import edu.brown.cs.student.main.server.handlers.DeleteSessionHandler;
+import edu.brown.cs.student.main.server.handlers.JsonBodyFilter;
+import edu.brown.cs.student.main.server.handlers.MetricsHandler;
+import edu.brown.cs.student.main.server.handlers.SessionActivityFilter;
 import edu.brown.cs.student.main.server.handlers.gitHandlers.GitAddHandler;
 import edu.brown.cs.student.main.server.handlers.gitHandlers.GitBranchHandler;
 import edu.brown.cs.student.main.server.handlers.gitHandlers.GitCheckoutHandler;
@@ -17,22 +22,117 @@ import edu.brown.cs.student.main.server.handlers.gitHandlers.GitResetHandler;
 import edu.brown.cs.student.main.server.handlers.gitHandlers.GitRmHandler;
 import edu.brown.cs.student.main.server.handlers.gitHandlers.GitStashHandler;
 import edu.brown.cs.student.main.server.handlers.gitHandlers.GitStatusHandler;
+import edu.brown.cs.student.main.server.metrics.ServerMetrics;
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
 import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.InstrumentedStorage;
+import edu.brown.cs.student.main.server.storage.JournaledStorage;
+import edu.brown.cs.student.main.server.storage.LocalDiskStorage;
+import edu.brown.cs.student.main.server.storage.SessionReaper;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import spark.Route;
 import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
 /** The main API Server. Uses {@link Spark} to open the endpoints {@code "..."} */
 public class Server {
   /**
-   * Entry point for the program. Launches the API server on port {@code 3232}
+   * Entry point for the program. Launches the API server on port {@code 3232}, or the port and
+   * request threads set in {@link ServerConfig}
    *
    * @param args IGNORED
    */
   public static void main(String[] args) {
 
-    int port = 3232;
-    Spark.port(port);
+    final ServerConfig config = ServerConfig.load();
+    final ServerMetrics metrics = new ServerMetrics();
+
+    final StorageInterface storage;
+    try {
+      if (config.storageMode() == ServerConfig.StorageMode.LOCAL) {
+        final LocalDiskStorage localStorage =
+            new LocalDiskStorage(Path.of(config.storageDirectory()));
+        Runtime.getRuntime()
+            .addShutdownHook(
+                new Thread(
+                    () -> {
+                      try {
+                        localStorage.close();
+                      } catch (IOException e) {
+                        e.printStackTrace();
+                      }
+                    }));
+        storage = localStorage;
+      } else if (config.storageMode() == ServerConfig.StorageMode.MEMORY) {
+        storage = new InMemoryStorage();
+      } else {
+        // serve repeated branch reads from memory and write adds back to Firebase in the background
+        // count the calls that get past the cache to Firestore
+        final CachingStorage cachingStorage =
+            new CachingStorage(
+                new InstrumentedStorage(new FirebaseUtilities(), metrics, "firestore"));
+        if (config.journalFile() != null) {
+          // acknowledge writes once journaled locally and replay them to Firebase in batches
+          final JournaledStorage journaledStorage =
+              new JournaledStorage(cachingStorage, Path.of(config.journalFile()));
+          Runtime.getRuntime()
+              .addShutdownHook(
+                  new Thread(
+                      () -> {
+                        try {
+                          journaledStorage.close();
+                        } catch (IOException e) {
+                          e.printStackTrace();
+                        }
+                        cachingStorage.close();
+                      }));
+          storage = journaledStorage;
+        } else {
+          Runtime.getRuntime().addShutdownHook(new Thread(cachingStorage::close));
+          storage = cachingStorage;
+        }
+      }
+      start(config, storage, metrics);
+
+      System.out.println(
+          "Server started at http://localhost:"
+              + Spark.port()
+              + " with "
+              + config.threadMode().name().toLowerCase()
+              + " request threads and "
+              + config.storageMode().name().toLowerCase()
+              + " storage");
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.err.println(
+          "Error: Could not initialize storage. Likely due to firebase_config.json not being found, or the local storage directory not being writable. Exiting.");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Starts the server on the configured port and request threads, serving the given storage, and
+   * returns once it is accepting requests. The load generator starts the server this way with
+   * storage of its own.
+   *
+   * @param config the port, request thread, and session reaper settings
+   * @param storage storage every handler reads and writes
+   * @param metrics metrics requests and storage calls are recorded in, served on /metrics
+   */
+  public static void start(
+      final ServerConfig config, final StorageInterface storage, final ServerMetrics metrics) {
+    Spark.port(config.port());
+    // run requests on the configured thread pool rather than Spark's default
+    EmbeddedServers.add(
+        EmbeddedServers.Identifiers.JETTY,
+        new EmbeddedJettyFactory().withThreadPool(config.createThreadPool()));
     /*
        Setting CORS headers to allow cross-origin requests from the client;
        this is necessary for the client to
@@ -52,44 +152,85 @@ public class Server {
         (request, response) -> {
           response.header("Access-Control-Allow-Origin", "*");
           response.header("Access-Control-Allow-Methods", "*");
+          response.header("Access-Control-Allow-Headers", "Content-Type, Content-Encoding");
         });
 
-    final StorageInterface firebaseUtils;
-    try {
-      firebaseUtils = new FirebaseUtilities();
-
-      // Setting up the handlers for the endpoints
-      Spark.get("createsession", new CreateSessionHandler(firebaseUtils));
-      Spark.get("deletesession", new DeleteSessionHandler(firebaseUtils));
-      Spark.get("checksolution", new CheckSolutionHandler(firebaseUtils));
-      Spark.get("gitadd", new GitAddHandler(firebaseUtils));
-      Spark.get("gitbranch", new GitBranchHandler(firebaseUtils));
-      Spark.get("gitcheckout", new GitCheckoutHandler(firebaseUtils));
-      Spark.get("gitcommit", new GitCommitHandler(firebaseUtils));
-      Spark.get("gitlog", new GitLogHandler(firebaseUtils));
-      Spark.get("gitmerge", new GitMergeHandler(firebaseUtils));
-      Spark.get("gitpull", new GitPullHandler(firebaseUtils));
-      Spark.get("gitpush", new GitPushHandler(firebaseUtils));
-      Spark.get("gitreset", new GitResetHandler(firebaseUtils));
-      Spark.get("gitrm", new GitRmHandler(firebaseUtils));
-      Spark.get("gitstash", new GitStashHandler(firebaseUtils));
-      Spark.get("gitstatus", new GitStatusHandler(firebaseUtils));
-
-      Spark.notFound(
-          (request, response) -> {
-            response.status(404); // Not Found
-            System.out.println("ERROR");
-            return "404 Not Found - The requested endpoint does not exist.";
-          });
-      Spark.init();
-      Spark.awaitInitialization();
-
-      System.out.println("Server started at http://localhost:" + port);
-    } catch (IOException e) {
-      e.printStackTrace();
-      System.err.println(
-          "Error: Could not initialize Firebase. Likely due to firebase_config.json not being found. Exiting.");
-      System.exit(1);
+    // answer CORS preflight requests, sent by browsers before POSTing a JSON body
+    Spark.options("/*", (request, response) -> "");
+
+    // gzip responses for clients that accept it
+    before(
+        (request, response) -> {
+          String acceptEncoding = request.headers("Accept-Encoding");
+          if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            response.header("Content-Encoding", "gzip");
+          }
+        });
+    // read parameters from JSON request bodies
+    before(new JsonBodyFilter());
+
+    // request and storage metrics
+    Spark.get("metrics", new MetricsHandler(metrics));
+
+    // count every call handlers make
+    final StorageInterface firebaseUtils = new InstrumentedStorage(storage, metrics, "server");
+    // commit graph shared by every handler that queries or creates commits
+    final CommitGraphIndex commitIndex = new CommitGraphIndex();
+
+    if (config.sessionTtlMinutes() > 0) {
+      // delete sessions idle past their time to live, and drop their commit graph and cached file
+      // maps
+      final SessionReaper reaper =
+          new SessionReaper(
+              firebaseUtils,
+              config.sessionTtlMinutes(),
+              TimeUnit.MINUTES,
+              config.reapBatch(),
+              List.of(commitIndex::evictSession, AbstractEndpointHandler::evictSession));
+      before(new SessionActivityFilter(reaper));
+      reaper.start(config.reapIntervalMinutes(), TimeUnit.MINUTES);
+      Runtime.getRuntime().addShutdownHook(new Thread(reaper::close));
     }
+
+    // Setting up the handlers for the endpoints
+    route(metrics, "createsession", new CreateSessionHandler(firebaseUtils));
+    route(metrics, "deletesession", new DeleteSessionHandler(firebaseUtils, commitIndex));
+    route(metrics, "checksolution", new CheckSolutionHandler(firebaseUtils));
+    route(metrics, "gitadd", new GitAddHandler(firebaseUtils));
+    route(metrics, "gitbranch", new GitBranchHandler(firebaseUtils));
+    route(metrics, "gitcheckout", new GitCheckoutHandler(firebaseUtils, commitIndex));
+    route(metrics, "gitcommit", new GitCommitHandler(firebaseUtils, commitIndex));
+    route(metrics, "gitlog", new GitLogHandler(firebaseUtils));
+    route(metrics, "gitmerge", new GitMergeHandler(firebaseUtils, commitIndex));
+    route(metrics, "gitpull", new GitPullHandler(firebaseUtils, commitIndex));
+    route(metrics, "gitpush", new GitPushHandler(firebaseUtils));
+    route(metrics, "gitreset", new GitResetHandler(firebaseUtils));
+    route(metrics, "gitrm", new GitRmHandler(firebaseUtils));
+    route(metrics, "gitstash", new GitStashHandler(firebaseUtils));
+    route(metrics, "gitstatus", new GitStatusHandler(firebaseUtils, commitIndex));
+
+    Spark.notFound(
+        (request, response) -> {
+          response.status(404); // Not Found
+          System.out.println("ERROR");
+          return "404 Not Found - The requested endpoint does not exist.";
+        });
+    Spark.init();
+    Spark.awaitInitialization();
+  }
+
+  /**
+   * Registers a handler for both GET requests, which send parameters in the query string, and POST
+   * requests, which may send them as a JSON body. Requests to it are measured in the server's
+   * metrics.
+   *
+   * @param metrics the server's metrics
+   * @param path the endpoint's path
+   * @param handler the endpoint's handler
+   */
+  private static void route(ServerMetrics metrics, String path, Route handler) {
+    Route instrumented = metrics.instrument(path, handler);
+    Spark.get(path, instrumented);
+    Spark.post(path, instrumented);
   }
 }
@@ -0,0 +1,240 @@
+package edu.brown.cs.student.main.server;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Settings for the server's port and request threads. Each setting is read from a system property
+ * (e.g. {@code -Dserver.threads=virtual}) or, failing that, an environment variable (e.g. {@code
+ * SERVER_THREADS=virtual}), and otherwise takes its default.
+ *
+ * <p>In the default platform mode requests run on a bounded Jetty pool of {@code
+ * server.max.threads} threads, queueing up to {@code server.queue.capacity} waiting requests. Every
+ * handler blocks on Firestore, so the pool caps how many requests can wait on Firestore at once. In
+ * virtual mode each request runs on its own virtual thread, which releases its carrier thread while
+ * blocked, so waiting on Firestore no longer caps concurrent sessions. Virtual threads need Java
+ * 21; on older runtimes virtual mode falls back to the platform pool.
+ *
+ * <p>Sessions are stored in Firestore by default. With {@code server.storage=local} they are kept
+ * in log files under {@code server.storage.dir} instead, for running without Firestore, and with
+ * {@code server.storage=memory} only in memory, for sessions that need not outlive the server.
+ * Setting {@code server.journal} to a file puts a write-ahead journal in front of Firestore, so
+ * adds, pushes, pulls, and resets are acknowledged once journaled locally.
+ *
+ * <p>Sessions are kept forever by default. Setting {@code server.session.ttl.minutes} deletes
+ * sessions nobody has used for that long with a background reaper, which sweeps every {@code
+ * server.session.reap.interval.minutes} and deletes at most {@code server.session.reap.batch}
+ * sessions per sweep.
+ *
+ * @param port port to listen on
+ * @param threadMode whether requests run on platform or virtual threads
+ * @param maxThreads maximum threads in the platform pool
+ * @param minThreads threads the platform pool keeps even when idle
+ * @param idleTimeoutMillis how long a platform thread above the minimum may idle before it exits
+ * @param queueCapacity requests that may wait for a platform thread; 0 for no limit
+ * @param storageMode where sessions are stored
+ * @param storageDirectory directory holding session logs in local storage mode
+ * @param journalFile file holding the write-ahead journal in firebase storage mode; null for none
+ * @param sessionTtlMinutes minutes a session may go unused before it is deleted; 0 for never
+ * @param reapIntervalMinutes minutes between sweeps for idle sessions
+ * @param reapBatch most idle sessions deleted per sweep
+ */
+public record ServerConfig(
+    int port,
+    ThreadMode threadMode,
+    int maxThreads,
+    int minThreads,
+    int idleTimeoutMillis,
+    int queueCapacity,
+    StorageMode storageMode,
+    String storageDirectory,
+    String journalFile,
+    int sessionTtlMinutes,
+    int reapIntervalMinutes,
+    int reapBatch) {
+
+  /** Kind of thread requests run on. */
+  public enum ThreadMode {
+    PLATFORM,
+    VIRTUAL
+  }
+
+  /** Where sessions are stored. */
+  public enum StorageMode {
+    FIREBASE,
+    LOCAL,
+    MEMORY
+  }
+
+  public ServerConfig {
+    if (port < 0 || maxThreads <= 0 || minThreads < 0 || idleTimeoutMillis < 0) {
+      throw new IllegalArgumentException("ServerConfig: settings cannot be negative");
+    }
+    if (minThreads > maxThreads) {
+      throw new IllegalArgumentException("ServerConfig: server.min.threads > server.max.threads");
+    }
+    if (queueCapacity < 0) {
+      throw new IllegalArgumentException("ServerConfig: server.queue.capacity cannot be negative");
+    }
+    if (storageMode == null || storageDirectory == null || storageDirectory.isBlank()) {
+      throw new IllegalArgumentException("ServerConfig: storage settings cannot be empty");
+    }
+    if (sessionTtlMinutes < 0 || reapIntervalMinutes <= 0 || reapBatch <= 0) {
+      throw new IllegalArgumentException(
+          "ServerConfig: session ttl cannot be negative, and reap interval and batch must be positive");
+    }
+  }
+
+  /**
+   * Reads the configuration from system properties and environment variables.
+   *
+   * @return the server configuration
+   */
+  public static ServerConfig load() {
+    return from(
+        name -> {
+          String value = System.getProperty(name);
+          return value != null ? value : System.getenv(name.toUpperCase().replace('.', '_'));
+        });
+  }
+
+  /**
+   * Reads the configuration from named settings.
+   *
+   * @param settings looks up a setting by its property name; null if unset
+   * @return the server configuration
+   * @throws IllegalArgumentException if a setting is not valid
+   */
+  public static ServerConfig from(Function<String, String> settings) {
+    String threadMode = settings.apply("server.threads");
+    ThreadMode mode;
+    try {
+      mode =
+          threadMode == null ? ThreadMode.PLATFORM : ThreadMode.valueOf(threadMode.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "ServerConfig: server.threads must be platform or virtual, not " + threadMode);
+    }
+    String storage = settings.apply("server.storage");
+    StorageMode storageMode;
+    try {
+      storageMode =
+          storage == null ? StorageMode.FIREBASE : StorageMode.valueOf(storage.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "ServerConfig: server.storage must be firebase, local, or memory, not " + storage);
+    }
+    String storageDirectory = settings.apply("server.storage.dir");
+    return new ServerConfig(
+        intSetting(settings, "server.port", 3232),
+        mode,
+        intSetting(settings, "server.max.threads", 200),
+        intSetting(settings, "server.min.threads", 8),
+        intSetting(settings, "server.idle.timeout.millis", 60_000),
+        intSetting(settings, "server.queue.capacity", 0),
+        storageMode,
+        storageDirectory == null ? "data" : storageDirectory,
+        settings.apply("server.journal"),
+        intSetting(settings, "server.session.ttl.minutes", 0),
+        intSetting(settings, "server.session.reap.interval.minutes", 10),
+        intSetting(settings, "server.session.reap.batch", 50));
+  }
+
+  private static int intSetting(Function<String, String> settings, String name, int fallback) {
+    String value = settings.apply(name);
+    if (value == null) {
+      return fallback;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("ServerConfig: " + name + " must be an integer");
+    }
+  }
+
+  /**
+   * Creates the thread pool Jetty runs requests on.
+   *
+   * @return a virtual-thread pool in virtual mode on Java 21+, and a bounded pool otherwise
+   */
+  public ThreadPool createThreadPool() {
+    if (threadMode == ThreadMode.VIRTUAL) {
+      ExecutorService executor = newVirtualThreadExecutor();
+      if (executor != null) {
+        return new VirtualThreadPool(executor);
+      }
+      System.err.println("Virtual threads need Java 21 or later; using platform threads.");
+    }
+    BlockingQueue<Runnable> queue =
+        queueCapacity == 0 ? null : new BlockingArrayQueue<>(queueCapacity);
+    return new QueuedThreadPool(maxThreads, minThreads, idleTimeoutMillis, queue);
+  }
+
+  /**
+   * Creates an executor that starts a virtual thread per task. Found reflectively so the server
+   * still builds and runs on runtimes without virtual threads.
+   *
+   * @return the executor, or null if this runtime has no virtual threads
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Jetty thread pool that runs every task on a new virtual thread. There is nothing to size:
+   * threads are never pooled or idle, and the pool is never low on threads.
+   */
+  static class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final ExecutorService executor;
+
+    VirtualThreadPool(ExecutorService executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      executor.execute(task);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+      executor.shutdown();
+      super.doStop();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        // keep waiting until the server is stopped
+      }
+    }
+
+    @Override
+    public int getThreads() {
+      return 0;
+    }
+
+    @Override
+    public int getIdleThreads() {
+      return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+      return false;
+    }
+  }
+}
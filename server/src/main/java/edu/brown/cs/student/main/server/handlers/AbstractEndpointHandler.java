@@ -1,12 +1,22 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.mergeHelpers.FileObjectInterner;
+import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
 import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import spark.Request;
+import spark.Response;
 import spark.Route;
 
 /**
@@ -14,95 +24,62 @@ import spark.Route;
  * Route} interface to process HTTP requests and generate responses.
  */
 public abstract class AbstractEndpointHandler implements Route {
-  protected Map<String, Object> responseMap;
-  private final Moshi moshi = new Moshi.Builder().build();
-  private final JsonAdapter<Map<String, Object>> responseMapAdapter = makeResponseMapMoshiAdapter();
-  private final JsonAdapter<Map<String, List<MockFileObject>>> fileMapAdapter =
+  // adapters are immutable and thread-safe, so every handler shares them across requests
+  private static final JsonAdapter<Map<String, List<MockFileObject>>> fileMapAdapter =
       makeFileMapMoshiAdapter();
-  private final JsonAdapter<List<String>> fileListAdapter = makeFileListMoshiAdapter();
+  private static final JsonAdapter<List<String>> fileListAdapter = makeFileListMoshiAdapter();
+  // canonical file objects of each session, shared by every handler so that the objects of a
+  // working copy and of the commits it is compared with are mostly the same instances
+  private static final FileObjectInterner fileObjects = new FileObjectInterner(100_000);
+  // parsed, unmodifiable file maps of commits by "session_id/commit_id"; commits never change, so
+  // repeated requests against the same heads skip parsing them
+  private static final Cache<String, Map<String, List<MockFileObject>>> commitFileMaps =
+      CacheBuilder.newBuilder().maximumSize(1_000).build();
 
-  /**
-   * Creates a {@link Moshi} JSON adapter for a {@link Map} with {@link String} keys and {@link
-   * Object} values.
-   *
-   * @return A {@link JsonAdapter} for serializing and deserializing response maps.
-   */
-  private JsonAdapter<Map<String, Object>> makeResponseMapMoshiAdapter() {
-    final Type mapType = Types.newParameterizedType(Map.class, String.class, Object.class);
-    return moshi.adapter(mapType);
-  }
-
-  private JsonAdapter<Map<String, List<MockFileObject>>> makeFileMapMoshiAdapter() {
+  private static JsonAdapter<Map<String, List<MockFileObject>>> makeFileMapMoshiAdapter() {
     final Type fileMapType =
         Types.newParameterizedType(
             Map.class, String.class, Types.newParameterizedType(List.class, MockFileObject.class));
-    return moshi.adapter(fileMapType);
+    return ResponseContext.MOSHI.adapter(fileMapType);
   }
 
-  private JsonAdapter<List<String>> makeFileListMoshiAdapter() {
+  private static JsonAdapter<List<String>> makeFileListMoshiAdapter() {
     final Type stringListType = Types.newParameterizedType(List.class, String.class);
-    return moshi.adapter(stringListType);
+    return ResponseContext.MOSHI.adapter(stringListType);
   }
 
   /**
-   * Marks the response as an error using the given error parameters and returns the {@code
-   * responseMap} serialized to a JSON string.
-   *
-   * @param errorMessage The error message to include in the response.
-   * @return A JSON string representing the error response.
+   * Handles a request, building its response in a context of its own so that a single handler can
+   * serve concurrent requests.
    */
-  protected String returnErrorResponse(final String errorMessage) {
-    responseMap.put("response", errorMessage);
-    return responseMapAdapter.toJson(responseMap);
+  @Override
+  public final Object handle(final Request request, final Response response) throws Exception {
+    return handle(request, response, new ResponseContext());
   }
 
   /**
-   * Marks the response as an error using the given error parameters and returns the {@code
-   * responseMap} serialized to a JSON string.
+   * Handles a request.
    *
-   * @param errorMessage The error message to include in the response.
-   * @param errorCause The cause of the error.
-   * @return A JSON string representing the error response.
+   * @param request The request to handle.
+   * @param response The response to the request.
+   * @param context The response being built for this request.
+   * @return The body of the response.
+   * @throws Exception if the request cannot be handled.
    */
-  protected String returnErrorResponse(final String errorMessage, final String errorCause) {
-    responseMap.put("error_cause", errorCause);
-    return returnErrorResponse(errorMessage);
-  }
+  protected abstract Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception;
 
   /**
-   * Marks the response as an error using the given error parameters and returns the {@code
-   * responseMap} serialized to a JSON string.
+   * Returns a request parameter, read from the JSON body of a POST request if it was sent there
+   * (see {@link JsonBodyFilter}) and from the query string otherwise.
    *
-   * @param errorMessage The error message to include in the response.
-   * @param errorCause The cause of the error.
-   * @param errorArg Argument that caused the error.
-   * @return A JSON string representing the error response.
+   * @param request The request to read from.
+   * @param name The name of the parameter.
+   * @return The parameter's value, or null if it was not sent.
    */
-  protected String returnErrorResponse(
-      final String errorMessage, final String errorCause, final String errorArg) {
-    responseMap.put("error_arg", errorArg);
-    responseMap.put("error_cause", errorCause);
-    return returnErrorResponse(errorMessage);
-  }
-
-  /**
-   * Marks the response as successful and returns the {@code responseMap} serialized to a JSON
-   * string.
-   *
-   * @return A JSON string representing a success response.
-   */
-  protected String returnSuccessResponse() {
-    responseMap.put("response", "success");
-    return returnResponse();
-  }
-
-  /**
-   * Serializes the response map to a JSON string.
-   *
-   * @return A JSON string representing the response map.
-   */
-  private String returnResponse() {
-    return responseMapAdapter.toJson(responseMap);
+  protected String param(final Request request, final String name) {
+    return JsonBodyFilter.param(request, name);
   }
 
   /**
@@ -126,6 +103,209 @@ public abstract class AbstractEndpointHandler implements Route {
     }
   }
 
+  /**
+   * Deserializes a session's file map, replacing each object with the session's canonical instance
+   * of it, so comparisons against the session's other file maps mostly compare by identity.
+   *
+   * @param sessionId - unique session id
+   * @param fileMapJson - json string
+   * @return map of strings to list of objects
+   */
+  protected Map<String, List<MockFileObject>> deserializeFileMap(
+      String sessionId, String fileMapJson) {
+    return fileObjects.internAll(sessionId, deserializeFileMap(fileMapJson));
+  }
+
+  /**
+   * Returns the file map of a commit, parsed once and then shared by every handler from a bounded
+   * cache keyed by commit id. Commits never change, so a hit is served without reading the commit's
+   * json. The map and its files are unmodifiable; copy them to make changes.
+   *
+   * @param sessionId - unique session id
+   * @param commit - commit, holding its commit_id and file_map_json
+   * @return map of strings to list of objects
+   */
+  protected Map<String, List<MockFileObject>> commitFileMap(
+      String sessionId, Map<String, Object> commit) {
+    String fileMapJson = (String) commit.get("file_map_json");
+    if (!(commit.get("commit_id") instanceof String commitId)) {
+      return unmodifiable(deserializeFileMap(sessionId, fileMapJson));
+    }
+    String key = sessionId + "/" + commitId;
+    Map<String, List<MockFileObject>> fileMap = commitFileMaps.getIfPresent(key);
+    if (fileMap == null) {
+      // two requests may both parse a missing commit; either result can be cached
+      fileMap = unmodifiable(deserializeFileMap(sessionId, fileMapJson));
+      commitFileMaps.put(key, fileMap);
+    }
+    return fileMap;
+  }
+
+  private static Map<String, List<MockFileObject>> unmodifiable(
+      Map<String, List<MockFileObject>> fileMap) {
+    Map<String, List<MockFileObject>> copy = new LinkedHashMap<>();
+    fileMap.forEach((fileName, file) -> copy.put(fileName, Collections.unmodifiableList(file)));
+    return Collections.unmodifiableMap(copy);
+  }
+
+  /**
+   * Drops a session's canonical file objects and cached commit file maps, used when the session is
+   * deleted.
+   *
+   * @param sessionId - unique session id
+   */
+  public static void evictSession(String sessionId) {
+    fileObjects.evictSession(sessionId);
+    String prefix = sessionId + "/";
+    commitFileMaps.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  /**
+   * Serializes a map of filename : file contents into a json string.
+   *
+   * @param fileMap - map of strings to list of objects
+   * @return json string
+   */
+  protected String serializeFileMap(Map<String, List<MockFileObject>> fileMap) {
+    return fileMapAdapter.toJson(fileMap);
+  }
+
+  /**
+   * Finds the merge base of a local commit and an incoming commit and returns its file map.
+   *
+   * @param storage - storage the commits are in
+   * @param commitIndex - commit graph index used to find the merge base
+   * @param sessionId - unique session id
+   * @param userId - unique user id
+   * @param branchId - id of the branch the local commit is on
+   * @param incomingBranchId - id of the local branch the incoming commit is on; null if it is on
+   *     branchId's remote branch
+   * @param localCommitId - id of the local commit
+   * @param incomingCommitId - id of the incoming commit
+   * @return file map of the merge base, or null if the commits share no ancestor
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  protected Map<String, List<MockFileObject>> findMergeBaseFileMap(
+      StorageInterface storage,
+      CommitGraphIndex commitIndex,
+      String sessionId,
+      String userId,
+      String branchId,
+      String incomingBranchId,
+      String localCommitId,
+      String incomingCommitId)
+      throws ExecutionException, InterruptedException {
+    if (!commitIndex.ensureIndexed(
+        storage, sessionId, userId, branchId, localCommitId, incomingCommitId)) {
+      return null;
+    }
+    String mergeBaseId = commitIndex.findMergeBase(sessionId, localCommitId, incomingCommitId);
+    if (mergeBaseId == null) {
+      return null;
+    }
+    Map<String, Object> mergeBase =
+        findCommit(storage, sessionId, userId, branchId, incomingBranchId, mergeBaseId);
+    if (mergeBase == null || !(mergeBase.get("file_map_json") instanceof String)) {
+      return null;
+    }
+    return commitFileMap(sessionId, mergeBase);
+  }
+
+  /**
+   * Finds a commit that may be on any branch. Merging does not copy the other branch's commits into
+   * a branch's history, so a merge base can be a commit only the other branch has. Branches are
+   * searched in order of how likely they are to have it: the local branch, the incoming branch, the
+   * remote branch, and then the user's other local branches.
+   *
+   * @param storage - storage the commit is in
+   * @param sessionId - unique session id
+   * @param userId - unique user id
+   * @param branchId - id of the local branch
+   * @param incomingBranchId - id of the local branch being merged in; null if none
+   * @param commitId - id of the commit to find
+   * @return the commit, or null if no branch has it
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  private Map<String, Object> findCommit(
+      StorageInterface storage,
+      String sessionId,
+      String userId,
+      String branchId,
+      String incomingBranchId,
+      String commitId)
+      throws ExecutionException, InterruptedException {
+    Map<String, Object> commit = storage.getCommit(sessionId, userId, branchId, commitId);
+    if (commit == null && incomingBranchId != null) {
+      commit = storage.getCommit(sessionId, userId, incomingBranchId, commitId);
+    }
+    if (commit != null) {
+      return commit;
+    }
+    for (Map<String, Object> remoteCommit : storage.getRemotePushedCommits(sessionId, branchId)) {
+      if (commitId.equals(remoteCommit.get("commit_id"))) {
+        return remoteCommit;
+      }
+    }
+    for (String localBranch : storage.getAllLocalBranches(sessionId, userId)) {
+      if (!localBranch.equals(branchId) && !localBranch.equals(incomingBranchId)) {
+        commit = storage.getCommit(sessionId, userId, localBranch, commitId);
+        if (commit != null) {
+          return commit;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the conflicts found by a merge to the response. By default each conflicting file is
+   * returned whole as {filename : {"local": [...], "incoming": [...]}}; with the "hunks" conflict
+   * style only the conflicting sections of each file are returned.
+   *
+   * @param context - response to add the conflicts to
+   * @param diffHelper - helper that performed the merge
+   * @param conflictStyle - "hunks" or "files"; null for "files"
+   */
+  protected void putFileConflicts(
+      ResponseContext context, GitDiffHelper diffHelper, String conflictStyle) {
+    if ("hunks".equals(conflictStyle)) {
+      context.put("conflict_style", "hunks");
+      context.put("file_conflicts", diffHelper.getFileConflictHunks());
+    } else {
+      context.put("file_conflicts", diffHelper.getFileConflicts());
+    }
+  }
+
+  /**
+   * Builds the terminal message describing how a branch differs from its remote.
+   *
+   * @param branchId - id of branch
+   * @param counts - commits the local branch is ahead and behind by
+   * @return message for terminal display
+   */
+  protected String aheadBehindMessage(String branchId, CommitGraphIndex.AheadBehind counts) {
+    if (counts.ahead() > 0 && counts.behind() > 0) {
+      return "Your branch and 'origin/"
+          + branchId
+          + "' have diverged, and have "
+          + counts.ahead()
+          + " and "
+          + counts.behind()
+          + " different commits each, respectively.";
+    } else if (counts.ahead() > 0) {
+      return "Your branch is ahead of 'origin/" + branchId + "' by " + counts.ahead() + " commits.";
+    } else if (counts.behind() > 0) {
+      return "Your branch is behind 'origin/"
+          + branchId
+          + "' by "
+          + counts.behind()
+          + " commits, and can be fast-forwarded.";
+    }
+    return "Your branch is up to date with 'origin/" + branchId + "'.";
+  }
+
   /**
    * Deserializes json string into a set of filename strings
    *
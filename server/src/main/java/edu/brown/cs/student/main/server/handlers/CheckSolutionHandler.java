@@ -3,7 +3,6 @@ package edu.brown.cs.student.main.server.handlers;
 import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
 import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,58 +18,58 @@ public class CheckSolutionHandler extends AbstractEndpointHandler {
   }
 
   @Override
-  public Object handle(Request request, Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     GitDiffHelper gitDiffHelper = new GitDiffHelper();
 
     // unique session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // unique user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // id of branch that the user's solution should be on
-    final String branchId = request.queryParams("solution_branch_id");
+    final String branchId = param(request, "solution_branch_id");
     // json of level's solution file map
-    final String solutionJson = request.queryParams("solution_file_map_json");
+    final String solutionJson = param(request, "solution_file_map_json");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (branchId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "branch_id");
     } else {
-      responseMap.put("branch_id", branchId);
+      context.put("branch_id", branchId);
     }
     if (solutionJson == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "solution_file_map_json");
+      return context.returnErrorResponse(
+          "error_bad_request", "null parameter", "solution_file_map_json");
     } else {
-      responseMap.put("solution_file_map_json", solutionJson);
+      context.put("solution_file_map_json", solutionJson);
     }
     try {
-      Map<String, List<MockFileObject>> solutionFileMap = deserializeFileMap(solutionJson);
+      Map<String, List<MockFileObject>> solutionFileMap =
+          deserializeFileMap(sessionId, solutionJson);
 
       // get latest pushed commit from the branch solution should be on
       Map<String, Object> latestRemoteCommit = storage.getLatestRemoteCommit(sessionId, branchId);
-      Map<String, List<MockFileObject>> userFileMap =
-          deserializeFileMap((String) latestRemoteCommit.get("file_map_json"));
+      Map<String, List<MockFileObject>> userFileMap = commitFileMap(sessionId, latestRemoteCommit);
 
       // check for differences between user's commit and solution, return boolean
       Set<String> filesWithDifferences =
           gitDiffHelper.differenceDetected(solutionFileMap, userFileMap);
-      System.out.println(gitDiffHelper.getNewIncomingFiles());
-      System.out.println(gitDiffHelper.getNewLocalFiles());
-      System.out.println(filesWithDifferences);
       // at least one of the files matches the solution
-      responseMap.put("solution_correct", filesWithDifferences.size() < 3);
+      context.put("solution_correct", filesWithDifferences.size() < 3);
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "check_solution_failed: " + e.getMessage());
+      return context.returnErrorResponse(
+          "error_database", "check_solution_failed: " + e.getMessage());
     }
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
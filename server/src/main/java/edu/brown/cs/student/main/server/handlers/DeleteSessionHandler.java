@@ -1,7 +1,7 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
 import spark.Request;
 import spark.Response;
 
@@ -9,31 +9,43 @@ public class DeleteSessionHandler extends AbstractEndpointHandler {
 
   final StorageInterface storage;
 
+  final CommitGraphIndex commitIndex;
+
   public DeleteSessionHandler(StorageInterface storage) {
+    this(storage, new CommitGraphIndex());
+  }
+
+  public DeleteSessionHandler(StorageInterface storage, CommitGraphIndex commitIndex) {
     this.storage = storage;
+    this.commitIndex = commitIndex;
   }
 
   @Override
-  public Object handle(Request request, Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     // id of session to delete
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
 
     try {
       if (!storage.getAllSessions().contains(sessionId)) {
-        return returnErrorResponse("error_database", "session does not exist", "session_id");
+        return context.returnErrorResponse(
+            "error_database", "session does not exist", "session_id");
       }
       storage.deleteSession(sessionId);
-      responseMap.put("action", "session deleted");
+      commitIndex.evictSession(sessionId);
+      evictSession(sessionId);
+      context.put("action", "session deleted");
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "delete_session_failed: " + e.getMessage());
+      return context.returnErrorResponse(
+          "error_database", "delete_session_failed: " + e.getMessage());
     }
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
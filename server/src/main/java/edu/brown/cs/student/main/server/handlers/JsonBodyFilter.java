@@ -0,0 +1,130 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.mergeHelpers.FileMapCodec;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import okio.Okio;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+/**
+ * Before-filter that lets every endpoint take its parameters as a JSON request body instead of a
+ * query string, so large file maps are not limited by URL length or URL-encoded.
+ *
+ * <p>The body of a POST with a JSON content type is read as a single JSON object, one value at a
+ * time, straight from the (optionally gzipped) request stream. String, number, and boolean values
+ * become parameters as they are; object and array values, such as {@code file_map_json}, are kept
+ * as their raw JSON text, so handlers parse them exactly once. Handlers read parameters through
+ * {@link AbstractEndpointHandler#param}, which prefers the body and falls back to the query string.
+ *
+ * <p>Clients may send a file map as {@code file_map_bin}, the base64 of its {@link FileMapCodec}
+ * encoding, instead of as {@code file_map_json}; it is much smaller when objects repeat. It is
+ * turned back into {@code file_map_json} here, so handlers need not know which was sent.
+ */
+public class JsonBodyFilter implements Filter {
+
+  /** Request attribute holding the parameters read from the body. */
+  public static final String BODY_PARAMS = "json_body_params";
+
+  private static final String FILE_MAP_JSON = "file_map_json";
+  private static final String FILE_MAP_BIN = "file_map_bin";
+
+  private static final JsonAdapter<Map<String, Object>> errorAdapter =
+      ResponseContext.MOSHI.adapter(
+          Types.newParameterizedType(Map.class, String.class, Object.class));
+  private static final JsonAdapter<Map<String, List<MockFileObject>>> fileMapAdapter =
+      ResponseContext.MOSHI.adapter(
+          Types.newParameterizedType(
+              Map.class,
+              String.class,
+              Types.newParameterizedType(List.class, MockFileObject.class)));
+
+  @Override
+  public void handle(final Request request, final Response response) {
+    String contentType = request.contentType();
+    if (!"POST".equalsIgnoreCase(request.requestMethod())
+        || contentType == null
+        || !contentType.toLowerCase().startsWith("application/json")) {
+      return;
+    }
+    try {
+      InputStream body = request.raw().getInputStream();
+      String contentEncoding = request.headers("Content-Encoding");
+      if (contentEncoding != null && contentEncoding.toLowerCase().contains("gzip")) {
+        body = new GZIPInputStream(body);
+      }
+      request.attribute(BODY_PARAMS, readParams(body));
+    } catch (IOException | JsonDataException e) {
+      Map<String, Object> error = new HashMap<>();
+      error.put("response", "error_bad_request");
+      error.put("error_cause", "invalid json body: " + e.getMessage());
+      response.type("application/json");
+      Spark.halt(400, errorAdapter.toJson(error));
+    }
+  }
+
+  /**
+   * Returns a request parameter, read from the JSON body if this filter found it there and from the
+   * query string otherwise.
+   *
+   * @param request - request to read from
+   * @param name - name of the parameter
+   * @return the parameter's value, or null if it was not sent
+   */
+  public static String param(final Request request, final String name) {
+    final Map<String, String> bodyParams = request.attribute(BODY_PARAMS);
+    if (bodyParams != null && bodyParams.containsKey(name)) {
+      return bodyParams.get(name);
+    }
+    return request.queryParams(name);
+  }
+
+  /**
+   * Reads a JSON object of parameters from a stream. A binary {@code file_map_bin} is decoded into
+   * {@code file_map_json}, unless both were sent.
+   *
+   * @param body - stream holding a JSON object
+   * @return parameters by name; null values are left out
+   * @throws IOException - if the stream cannot be read or is not a JSON object, or if {@code
+   *     file_map_bin} is not a valid encoding
+   */
+  public static Map<String, String> readParams(final InputStream body) throws IOException {
+    Map<String, String> params = new HashMap<>();
+    try (JsonReader reader = JsonReader.of(Okio.buffer(Okio.source(body)))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        switch (reader.peek()) {
+          case BEGIN_OBJECT, BEGIN_ARRAY -> params.put(name, reader.nextSource().readUtf8());
+          case BOOLEAN -> params.put(name, String.valueOf(reader.nextBoolean()));
+          case NULL -> reader.nextNull();
+          default -> params.put(name, reader.nextString());
+        }
+      }
+      reader.endObject();
+    }
+    String fileMapBin = params.get(FILE_MAP_BIN);
+    if (fileMapBin != null && !params.containsKey(FILE_MAP_JSON)) {
+      try {
+        params.put(
+            FILE_MAP_JSON,
+            fileMapAdapter.toJson(FileMapCodec.decode(Base64.getDecoder().decode(fileMapBin))));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("invalid " + FILE_MAP_BIN + ": " + e.getMessage());
+      }
+    }
+    return params;
+  }
+}
@@ -0,0 +1,27 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.metrics.ServerMetrics;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Serves the server's metrics in the Prometheus text format, for scraping. */
+public class MetricsHandler implements Route {
+
+  private final ServerMetrics metrics;
+
+  /**
+   * Creates the handler.
+   *
+   * @param metrics - metrics to serve
+   */
+  public MetricsHandler(final ServerMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Object handle(final Request request, final Response response) {
+    response.type("text/plain; version=0.0.4; charset=utf-8");
+    return metrics.scrape();
+  }
+}
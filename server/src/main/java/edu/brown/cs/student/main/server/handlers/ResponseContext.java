@@ -0,0 +1,91 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The response being built for a single request. Each call to a handler makes its own context, so
+ * one handler instance can serve requests on many threads at once without their responses mixing.
+ */
+public class ResponseContext {
+
+  // Moshi and its adapters are immutable and thread-safe, so they are built once and shared
+  public static final Moshi MOSHI = new Moshi.Builder().build();
+  private static final JsonAdapter<Map<String, Object>> responseMapAdapter =
+      MOSHI.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  private final Map<String, Object> responseMap = new HashMap<>();
+
+  /**
+   * Adds a field to the response.
+   *
+   * @param key The name of the field.
+   * @param value The value of the field.
+   */
+  public void put(final String key, final Object value) {
+    responseMap.put(key, value);
+  }
+
+  /**
+   * Returns the fields added to the response so far.
+   *
+   * @return A view of the response's fields.
+   */
+  public Map<String, Object> fields() {
+    return responseMap;
+  }
+
+  /**
+   * Marks the response as an error using the given error parameters and returns the response
+   * serialized to a JSON string.
+   *
+   * @param errorMessage The error message to include in the response.
+   * @return A JSON string representing the error response.
+   */
+  public String returnErrorResponse(final String errorMessage) {
+    responseMap.put("response", errorMessage);
+    return responseMapAdapter.toJson(responseMap);
+  }
+
+  /**
+   * Marks the response as an error using the given error parameters and returns the response
+   * serialized to a JSON string.
+   *
+   * @param errorMessage The error message to include in the response.
+   * @param errorCause The cause of the error.
+   * @return A JSON string representing the error response.
+   */
+  public String returnErrorResponse(final String errorMessage, final String errorCause) {
+    responseMap.put("error_cause", errorCause);
+    return returnErrorResponse(errorMessage);
+  }
+
+  /**
+   * Marks the response as an error using the given error parameters and returns the response
+   * serialized to a JSON string.
+   *
+   * @param errorMessage The error message to include in the response.
+   * @param errorCause The cause of the error.
+   * @param errorArg Argument that caused the error.
+   * @return A JSON string representing the error response.
+   */
+  public String returnErrorResponse(
+      final String errorMessage, final String errorCause, final String errorArg) {
+    responseMap.put("error_arg", errorArg);
+    responseMap.put("error_cause", errorCause);
+    return returnErrorResponse(errorMessage);
+  }
+
+  /**
+   * Marks the response as successful and returns the response serialized to a JSON string.
+   *
+   * @return A JSON string representing a success response.
+   */
+  public String returnSuccessResponse() {
+    responseMap.put("response", "success");
+    return responseMapAdapter.toJson(responseMap);
+  }
+}
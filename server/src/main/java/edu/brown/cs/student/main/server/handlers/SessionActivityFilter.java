@@ -0,0 +1,30 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.storage.SessionReaper;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Before-filter that reports the session of every request to a {@link SessionReaper}, so sessions
+ * still in use are not reaped. Must run after {@link JsonBodyFilter}, since the session id may be
+ * sent in the body.
+ */
+public class SessionActivityFilter implements Filter {
+
+  private final SessionReaper reaper;
+
+  /**
+   * Creates the filter.
+   *
+   * @param reaper - reaper told about each request's session
+   */
+  public SessionActivityFilter(final SessionReaper reaper) {
+    this.reaper = reaper;
+  }
+
+  @Override
+  public void handle(final Request request, final Response response) {
+    reaper.touch(JsonBodyFilter.param(request, "session_id"));
+  }
+}
@@ -1,9 +1,9 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import spark.Request;
 import spark.Response;
@@ -17,47 +17,49 @@ public class GitBranchHandler extends AbstractEndpointHandler {
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     // unique session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // either "" for viewing all local branches, "-a" for viewing local and remote branches,
     // "-d" for deleting branch, or "<new branch id>" for adding branch
-    final String branchRequest = request.queryParams("branch_request");
+    final String branchRequest = param(request, "branch_request");
     // branch id of currently checked out branch
-    final String currentBranch = request.queryParams("current_branch_id");
+    final String currentBranch = param(request, "current_branch_id");
 
     // optional parameter, only used in the case where branch is being added
     final String fileMapJson;
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (branchRequest == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "branch_request");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "branch_request");
     } else {
-      responseMap.put("branch_request", branchRequest);
+      context.put("branch_request", branchRequest);
     }
     if (currentBranch == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "current_branch_id");
+      return context.returnErrorResponse(
+          "error_bad_request", "null parameter", "current_branch_id");
     } else {
-      responseMap.put("current_branch_id", currentBranch);
+      context.put("current_branch_id", currentBranch);
     }
     try {
       // Fetch and return List of local branch names
       switch (branchRequest) {
         case "" -> {
           List<String> localBranchNames = storage.getAllLocalBranches(sessionId, userId);
-          responseMap.put("local_branch_names", localBranchNames);
-          responseMap.put("action", "list local branches");
+          context.put("local_branch_names", localBranchNames);
+          context.put("action", "list local branches");
         }
 
           // Fetch and return List of remote branch names
@@ -67,8 +69,8 @@ public class GitBranchHandler extends AbstractEndpointHandler {
           for (String remoteBranchName : remoteBranchNames) {
             updatedRemoteBranchNames.add("origin/" + remoteBranchName);
           }
-          responseMap.put("remote_branch_names", updatedRemoteBranchNames);
-          responseMap.put("action", "list remote branches");
+          context.put("remote_branch_names", updatedRemoteBranchNames);
+          context.put("action", "list remote branches");
         }
 
           // Fetch and return all local and remote branch names
@@ -79,38 +81,41 @@ public class GitBranchHandler extends AbstractEndpointHandler {
           for (String remoteBranchName : remoteBranchNames) {
             updatedRemoteBranchNames.add("origin/" + remoteBranchName);
           }
-          responseMap.put("local_branch_names", localBranchNames);
-          responseMap.put("remote_branch_names", updatedRemoteBranchNames);
-          responseMap.put("action", "list remote and local branches");
+          context.put("local_branch_names", localBranchNames);
+          context.put("remote_branch_names", updatedRemoteBranchNames);
+          context.put("action", "list remote and local branches");
         }
 
           // Fetch and delete specified branch
         case "-d" -> {
-          String branchToDelete = request.queryParams("delete_branch_id");
+          String branchToDelete = param(request, "delete_branch_id");
           if (branchToDelete == null) {
-            return returnErrorResponse("error_bad_request", "null parameter", "delete_branch_id");
+            return context.returnErrorResponse(
+                "error_bad_request", "null parameter", "delete_branch_id");
           }
           if (branchToDelete.equals(currentBranch)) {
-            return returnErrorResponse("error_bad_request", "cannot delete current branch");
+            return context.returnErrorResponse("error_bad_request", "cannot delete current branch");
           }
           storage.deleteBranch(sessionId, userId, branchToDelete);
-          responseMap.put("action", "delete local branch");
-          responseMap.put("delete_branch_id", branchToDelete);
+          context.put("action", "delete local branch");
+          context.put("delete_branch_id", branchToDelete);
         }
         default -> {
           // create branch with given string name
-          fileMapJson = request.queryParams("file_map_json");
+          fileMapJson = param(request, "file_map_json");
           if (fileMapJson == null) {
-            return returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
+            return context.returnErrorResponse(
+                "error_bad_request", "null parameter", "file_map_json");
           }
           storage.addBranch(sessionId, userId, currentBranch, branchRequest, fileMapJson);
-          responseMap.put("action", "add branch");
-          responseMap.put("new_branch_id", branchRequest);
+          context.put("action", "add branch");
+          context.put("new_branch_id", branchRequest);
         }
       }
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "branch_request_failed: " + e.getMessage());
+      return context.returnErrorResponse(
+          "error_database", "branch_request_failed: " + e.getMessage());
     }
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
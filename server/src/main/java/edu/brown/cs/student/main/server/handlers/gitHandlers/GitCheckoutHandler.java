@@ -1,10 +1,12 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
 import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
 import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import edu.brown.cs.student.main.server.storage.BranchSnapshot;
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,76 +17,84 @@ public class GitCheckoutHandler extends AbstractEndpointHandler {
 
   final StorageInterface storage;
 
+  final CommitGraphIndex commitIndex;
+
   public GitCheckoutHandler(final StorageInterface storage) {
+    this(storage, new CommitGraphIndex());
+  }
+
+  public GitCheckoutHandler(final StorageInterface storage, final CommitGraphIndex commitIndex) {
     this.storage = storage;
+    this.commitIndex = commitIndex;
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     GitDiffHelper diffHelper = new GitDiffHelper();
     // unique session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // unique user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // id of currently checked out branch
-    final String currentBranch = request.queryParams("current_branch_id");
+    final String currentBranch = param(request, "current_branch_id");
     // id of branch user would like to check out
-    final String newBranch = request.queryParams("new_branch_id");
+    final String newBranch = param(request, "new_branch_id");
     // file map of current state of project on current branch (should include any changes that
     // haven't been staged)
-    final String fileMapJson = request.queryParams("file_map_json");
+    final String fileMapJson = param(request, "file_map_json");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (currentBranch == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "current_branch_id");
+      return context.returnErrorResponse(
+          "error_bad_request", "null parameter", "current_branch_id");
     } else {
-      responseMap.put("current_branch_id", currentBranch);
+      context.put("current_branch_id", currentBranch);
     }
     if (newBranch == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "new_branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "new_branch_id");
     } else {
-      responseMap.put("new_branch_id", newBranch);
+      context.put("new_branch_id", newBranch);
     }
     if (fileMapJson == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
     } else {
-      responseMap.put("file_map_json", fileMapJson);
+      context.put("file_map_json", fileMapJson);
     }
 
     try {
       // check for any changes between user's last local commit and current files state
       Map<String, Object> latestCommit =
           storage.getLatestLocalCommit(sessionId, userId, currentBranch);
-      Map<String, List<MockFileObject>> commitedFileMap =
-          deserializeFileMap((String) latestCommit.get("file_map_json"));
-      Map<String, List<MockFileObject>> currentFileMap = deserializeFileMap(fileMapJson);
+      Map<String, List<MockFileObject>> commitedFileMap = commitFileMap(sessionId, latestCommit);
+      Map<String, List<MockFileObject>> currentFileMap = deserializeFileMap(sessionId, fileMapJson);
       Set<String> filesWithDifferences =
           diffHelper.differenceDetected(commitedFileMap, currentFileMap);
       // if there are differences, return error message for terminal display
       if (!filesWithDifferences.isEmpty()) {
-        responseMap.put("difference_detected", true);
-        responseMap.put("files_with_differences", filesWithDifferences);
-        responseMap.put(
+        context.put("difference_detected", true);
+        context.put("files_with_differences", filesWithDifferences);
+        context.put(
             "message", "Please commit your changes or stash them before you switch branches.");
-        return returnErrorResponse(
+        return context.returnErrorResponse(
             "error_database",
             "Your local changes to the following files would be overwritten by checkout:");
       } else {
-        responseMap.put("difference_detected", false);
+        context.put("difference_detected", false);
         // check that desired branch exists
         List<String> allRemoteBranches = storage.getAllRemoteBranches(sessionId);
         if (!allRemoteBranches.contains(newBranch)) {
-          return returnErrorResponse(
+          return context.returnErrorResponse(
               "error_database",
               "pathspec '" + newBranch + "' did not match any branches known to git",
               newBranch);
@@ -93,21 +103,28 @@ public class GitCheckoutHandler extends AbstractEndpointHandler {
         if (!storage.getAllLocalBranches(sessionId, userId).contains(newBranch)) {
           storage.addBranch(sessionId, userId, currentBranch, newBranch, fileMapJson);
         }
-        // get local and remote head for new branch
-        Map<String, Object> latestLocalCommit =
-            storage.getLatestLocalCommit(sessionId, userId, newBranch);
-        Map<String, Object> latestRemoteCommit =
-            storage.getLatestRemoteCommit(sessionId, newBranch);
-        responseMap.put("file_map_json", latestLocalCommit.get("file_map_json"));
+        // get local and remote head for new branch, with its staged commits, in one read
+        BranchSnapshot branch = storage.getBranchSnapshot(sessionId, userId, newBranch);
+        Map<String, Object> latestLocalCommit = branch.localHead();
+        Map<String, Object> latestRemoteCommit = branch.remoteHead();
+        context.put("file_map_json", latestLocalCommit.get("file_map_json"));
 
         // if the heads are different, determine how
-        if (!latestLocalCommit.get("commit_id").equals(latestRemoteCommit.get("commit_id"))) {
-          List<Map<String, Object>> stagedCommits =
-              storage.getStagedCommits(sessionId, userId, newBranch);
+        String localCommitId = (String) latestLocalCommit.get("commit_id");
+        String remoteCommitId = (String) latestRemoteCommit.get("commit_id");
+        if (!localCommitId.equals(remoteCommitId)
+            && commitIndex.ensureIndexed(
+                storage, sessionId, userId, newBranch, localCommitId, remoteCommitId)) {
+          // count commits on each side by walking the commit graph index
+          CommitGraphIndex.AheadBehind counts =
+              commitIndex.aheadBehind(sessionId, localCommitId, remoteCommitId);
+          context.put("message", aheadBehindMessage(newBranch, counts));
+        } else if (!localCommitId.equals(remoteCommitId)) {
+          List<Map<String, Object>> stagedCommits = branch.stagedCommits();
 
           // local has commits that remote does not
           if (!stagedCommits.isEmpty()) {
-            responseMap.put(
+            context.put(
                 "message",
                 "Your branch is ahead of 'origin/"
                     + newBranch
@@ -116,10 +133,8 @@ public class GitCheckoutHandler extends AbstractEndpointHandler {
                     + " commits.");
           } else {
             // remote has commits that local does not
-            int remoteAheadBy =
-                storage.getRemotePushedCommits(sessionId, newBranch).size()
-                    - storage.getLocalPushedCommits(sessionId, userId, newBranch).size();
-            responseMap.put(
+            long remoteAheadBy = branch.remotePushedCount() - branch.localPushedCount();
+            context.put(
                 "message",
                 "Your branch is behind 'origin/'"
                     + newBranch
@@ -129,15 +144,15 @@ public class GitCheckoutHandler extends AbstractEndpointHandler {
           }
           // local and remote have the same head
         } else {
-          responseMap.put("message", "Your branch is up to date with 'origin/" + newBranch + "'.");
+          context.put("message", "Your branch is up to date with 'origin/" + newBranch + "'.");
         }
         // mark action complete
-        responseMap.put("action", "switched to branch '" + newBranch + "'");
+        context.put("action", "switched to branch '" + newBranch + "'");
       }
 
     } catch (Exception e) {
-      return returnErrorResponse("", "");
+      return context.returnErrorResponse("", "");
     }
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
@@ -1,19 +1,29 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.FIELD_COMMITS;
 import static edu.brown.cs.student.main.server.storage.FirestoreConstants.FIELD_DATE_TIME;
 import static edu.brown.cs.student.main.server.storage.FirestoreConstants.FIELD_FILE_MAP_JSON;
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.FIELD_NEXT_CURSOR;
 import static edu.brown.cs.student.main.server.storage.FirestoreConstants.FIELD_PARENT_COMMIT_IDS;
 
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonWriter;
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
+import edu.brown.cs.student.main.server.storage.CommitMaps;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import okio.Okio;
 import spark.Request;
 import spark.Response;
+import spark.utils.GzipUtils;
 
 public class GitLogHandler extends AbstractEndpointHandler {
 
@@ -23,49 +33,87 @@ public class GitLogHandler extends AbstractEndpointHandler {
   private static final DateTimeFormatter formatter =
       DateTimeFormatter.ofPattern("MM/dd/yyyy - HH:mm:ss Z");
 
+  // writes any json value while streaming a page of the log
+  private static final JsonAdapter<Object> valueAdapter =
+      ResponseContext.MOSHI.adapter(Object.class);
+
   public GitLogHandler(final StorageInterface storage) {
     this.storage = storage;
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     // unique session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // unique user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // id of currently checked out branch
-    final String branchId = request.queryParams("branch_id");
+    final String branchId = param(request, "branch_id");
     // verbose - include commit contents
-    final String verbose = request.queryParams("verbose");
+    final String verbose = param(request, "verbose");
+    // optional - maximum number of commits to return, newest first; enables paging
+    final String limit = param(request, "limit");
+    // optional - next_cursor returned with the previous page
+    final String cursor = param(request, "cursor");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (branchId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "branch_id");
     } else {
-      responseMap.put("branch_id", branchId);
+      context.put("branch_id", branchId);
     }
     if (verbose == null) {
-      return returnErrorResponse("error_bad_request", "null_parameter", "verbose");
+      return context.returnErrorResponse("error_bad_request", "null_parameter", "verbose");
     } else {
-      responseMap.put("verbose", verbose);
+      context.put("verbose", verbose);
     }
     if (!verbose.equalsIgnoreCase("true") && !verbose.equalsIgnoreCase("false")) {
-      return returnErrorResponse("error_bad_request", "parameter_not_bool", "verbose");
+      return context.returnErrorResponse("error_bad_request", "parameter_not_bool", "verbose");
       // verbose field is not true/True/false/False
       // we need to do this check because parseBoolean returns false for any non true/True inputs
     }
     final boolean verboseBool = Boolean.parseBoolean(verbose);
-    responseMap.put("action", "log");
+    context.put("action", "log");
+
+    if (limit != null) {
+      final int limitInt;
+      try {
+        limitInt = Integer.parseInt(limit);
+      } catch (NumberFormatException e) {
+        return context.returnErrorResponse("error_bad_request", "parameter_not_int", "limit");
+      }
+      if (limitInt <= 0) {
+        return context.returnErrorResponse("error_bad_request", "parameter_not_positive", "limit");
+      }
+      context.put("limit", limitInt);
+
+      final Map<String, Object> page;
+      try {
+        page = storage.getCommitLog(sessionId, userId, branchId, limitInt, cursor, verboseBool);
+      } catch (IllegalArgumentException e) {
+        return context.returnErrorResponse("error_bad_request", "invalid_cursor", cursor);
+      } catch (Exception e) {
+        return context.returnErrorResponse("error_database", "git log failed: " + e.getMessage());
+      }
+      List<Map<String, Object>> commits = CommitMaps.commitsOf(page.get(FIELD_COMMITS));
+      if (!verboseBool) {
+        commits.forEach(commit -> commit.remove(FIELD_PARENT_COMMIT_IDS));
+      }
+      streamPage(request, response, context, commits, (String) page.get(FIELD_NEXT_CURSOR));
+      // the body has already been written
+      return "";
+    }
 
     try {
       List<Map<String, Object>> allCommits = storage.getAllCommits(sessionId, userId, branchId);
@@ -77,18 +125,71 @@ public class GitLogHandler extends AbstractEndpointHandler {
             });
       }
 
-      // sort using date in reverse order (newest commits first)
-      allCommits.sort(
-          Comparator.comparing(
-              commit -> ZonedDateTime.parse((String) commit.get(FIELD_DATE_TIME), formatter),
-              Comparator.reverseOrder()));
+      // sort using date in reverse order (newest commits first), parsing each date only once
+      List<Map.Entry<ZonedDateTime, Map<String, Object>>> datedCommits =
+          new ArrayList<>(allCommits.size());
+      for (Map<String, Object> commit : allCommits) {
+        datedCommits.add(
+            new AbstractMap.SimpleImmutableEntry<>(
+                ZonedDateTime.parse((String) commit.get(FIELD_DATE_TIME), formatter), commit));
+      }
+      datedCommits.sort(Map.Entry.comparingByKey(Comparator.reverseOrder()));
+      List<Map<String, Object>> sortedCommits = new ArrayList<>(datedCommits.size());
+      for (Map.Entry<ZonedDateTime, Map<String, Object>> datedCommit : datedCommits) {
+        sortedCommits.add(datedCommit.getValue());
+      }
 
-      responseMap.put("commits", allCommits);
+      context.put("commits", sortedCommits);
 
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "git log failed: " + e.getMessage());
+      return context.returnErrorResponse("error_database", "git log failed: " + e.getMessage());
     }
 
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
+  }
+
+  /**
+   * Writes a page of the log straight to the response body, one commit at a time, rather than
+   * building the whole response as a string first.
+   *
+   * @param request - request being answered, for its accepted encodings
+   * @param response - response to write to
+   * @param context - fields of the response to write before the commits
+   * @param commits - commits on this page, newest first
+   * @param nextCursor - cursor for the next page; null if this is the last page
+   * @throws IOException - if the response cannot be written
+   */
+  private void streamPage(
+      final Request request,
+      final Response response,
+      final ResponseContext context,
+      final List<Map<String, Object>> commits,
+      final String nextCursor)
+      throws IOException {
+    response.type("application/json");
+    // gzip the stream ourselves if the response is to be gzipped, since it bypasses the server's
+    // body serialization
+    JsonWriter writer =
+        JsonWriter.of(
+            Okio.buffer(Okio.sink(GzipUtils.checkAndWrap(request.raw(), response.raw(), true))));
+    writer.beginObject();
+    for (Map.Entry<String, Object> entry : context.fields().entrySet()) {
+      writer.name(entry.getKey());
+      valueAdapter.toJson(writer, entry.getValue());
+    }
+    writer.name("commits");
+    writer.beginArray();
+    for (Map<String, Object> commit : commits) {
+      valueAdapter.toJson(writer, commit);
+    }
+    writer.endArray();
+    if (nextCursor != null) {
+      writer.name("next_cursor").value(nextCursor);
+    }
+    writer.name("response").value("success");
+    writer.endObject();
+    // closing finishes the gzip stream if there is one; the committed response is not written to
+    // again by the server
+    writer.close();
   }
 }
@@ -1,14 +1,12 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
-import com.squareup.moshi.Types;
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
 import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
 import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import edu.brown.cs.student.main.server.storage.BranchSnapshot;
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.lang.reflect.Type;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,107 +17,131 @@ public class GitMergeHandler extends AbstractEndpointHandler {
 
   final StorageInterface storage;
 
+  final CommitGraphIndex commitIndex;
+
   public GitMergeHandler(final StorageInterface storage) {
+    this(storage, new CommitGraphIndex());
+  }
+
+  public GitMergeHandler(final StorageInterface storage, final CommitGraphIndex commitIndex) {
     this.storage = storage;
+    this.commitIndex = commitIndex;
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     GitDiffHelper diffHelper = new GitDiffHelper();
 
     // unique session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // unique user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // id of currently checked out branch
-    final String currentBranch = request.queryParams("current_branch_id");
+    final String currentBranch = param(request, "current_branch_id");
     // id of branch to merge with
-    final String mergeBranch = request.queryParams("merge_branch_id");
+    final String mergeBranch = param(request, "merge_branch_id");
     // json of file map representing current state of project, including unstaged changes
-    final String fileMapJson = request.queryParams("file_map_json");
+    final String fileMapJson = param(request, "file_map_json");
+    // optional; "hunks" to return only the conflicting sections of files, "files" (default) for
+    // whole files
+    final String conflictStyle = param(request, "conflict_style");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (currentBranch == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "current_branch_id");
+      return context.returnErrorResponse(
+          "error_bad_request", "null parameter", "current_branch_id");
     } else {
-      responseMap.put("current_branch_id", currentBranch);
+      context.put("current_branch_id", currentBranch);
     }
     if (mergeBranch == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "merge_branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "merge_branch_id");
     } else {
-      responseMap.put("merge_branch_id", mergeBranch);
+      context.put("merge_branch_id", mergeBranch);
     }
     if (fileMapJson == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
     } else {
-      responseMap.put("file_map_json", fileMapJson);
+      context.put("file_map_json", fileMapJson);
+    }
+    if (conflictStyle != null && !conflictStyle.equals("hunks") && !conflictStyle.equals("files")) {
+      return context.returnErrorResponse(
+          "error_bad_request", "conflict_style must be hunks or files", "conflict_style");
     }
 
     try {
 
       // if current branch is same as merge branch, return message for terminal display
       if (currentBranch.equals(mergeBranch)) {
-        responseMap.put("message", "Already up to date");
-        return returnSuccessResponse();
+        context.put("message", "Already up to date");
+        return context.returnSuccessResponse();
       }
 
       // if user does not have merge branch stored locally, return error for terminal display
       List<String> allLocalBranches = storage.getAllLocalBranches(sessionId, userId);
       if (!allLocalBranches.contains(mergeBranch)) {
-        // TODO: maybe suggest trying git fetch/offering some guidance in terminal??
-        return returnErrorResponse(
+        // a branch that only exists remotely has to be checked out before it can be merged
+        if (storage.getAllRemoteBranches(sessionId).contains(mergeBranch)) {
+          context.put(
+              "instructions",
+              "'"
+                  + mergeBranch
+                  + "' exists on the remote. Run 'git checkout "
+                  + mergeBranch
+                  + "' to get it locally, then merge it.");
+        }
+        return context.returnErrorResponse(
             "error_database", "Merge: " + mergeBranch + " - not something we can merge.");
       }
 
-      // get current branch's latest local commit for merging
-      Map<String, Object> currentLatestLocalCommit =
-          storage.getLatestLocalCommit(sessionId, userId, currentBranch);
+      // get current branch's latest local commit for merging and its staged changes in one read
+      BranchSnapshot current = storage.getBranchSnapshot(sessionId, userId, currentBranch);
+      Map<String, Object> currentLatestLocalCommit = current.localHead();
       Map<String, List<MockFileObject>> currentCommittedFileMap =
-          deserializeFileMap((String) currentLatestLocalCommit.get("file_map_json"));
+          commitFileMap(sessionId, currentLatestLocalCommit);
 
       // check for uncommitted staged changes
-      String changedFileMapJson = storage.getLatestLocalChanges(sessionId, userId, currentBranch);
+      String changedFileMapJson = current.changes();
 
       // if there are staged changes, check if there are any differences between the staged changes
       // and latest commit
       if (changedFileMapJson != null) {
-        Map<String, List<MockFileObject>> changedFileMap = deserializeFileMap(changedFileMapJson);
+        Map<String, List<MockFileObject>> changedFileMap =
+            deserializeFileMap(sessionId, changedFileMapJson);
         Set<String> filesWithDifferences =
             diffHelper.differenceDetected(currentCommittedFileMap, changedFileMap);
         // if there are uncommitted staged changes, return response for terminal display
         if (!filesWithDifferences.isEmpty()) {
-          responseMap.put("difference_detected", true);
-          responseMap.put(
-              "instructions", "Please commit your changes or stash them before you merge.");
-          responseMap.put("files_with_differences", filesWithDifferences);
-          return returnErrorResponse(
+          context.put("difference_detected", true);
+          context.put("instructions", "Please commit your changes or stash them before you merge.");
+          context.put("files_with_differences", filesWithDifferences);
+          return context.returnErrorResponse(
               "error_database",
               "Your local changes to the following files would be overwritten by merge:");
         }
       }
 
       // check for unstaged changes in current state of project using file_map_json parameter
-      Map<String, List<MockFileObject>> currentFileMap = deserializeFileMap(fileMapJson);
+      Map<String, List<MockFileObject>> currentFileMap = deserializeFileMap(sessionId, fileMapJson);
       diffHelper = new GitDiffHelper();
       Set<String> filesWithDifferences =
           diffHelper.differenceDetected(currentCommittedFileMap, currentFileMap);
       // if there are unstaged changes, return response for terminal display
       if (!filesWithDifferences.isEmpty()) {
-        responseMap.put("difference_detected", true);
-        responseMap.put(
-            "instructions", "Please commit your changes or stash them before you merge.");
-        responseMap.put("files_with_differences", filesWithDifferences);
-        return returnErrorResponse(
+        context.put("difference_detected", true);
+        context.put("instructions", "Please commit your changes or stash them before you merge.");
+        context.put("files_with_differences", filesWithDifferences);
+        return context.returnErrorResponse(
             "error_database",
             "Your local changes to the following files would be overwritten by merge:");
       }
@@ -127,66 +149,48 @@ public class GitMergeHandler extends AbstractEndpointHandler {
       // get latest commit from branch user wishes to merge with
       Map<String, Object> commitToMerge =
           storage.getLatestLocalCommit(sessionId, userId, mergeBranch);
-      Map<String, List<MockFileObject>> toMergeFileMap =
-          deserializeFileMap((String) commitToMerge.get("file_map_json"));
+      Map<String, List<MockFileObject>> toMergeFileMap = commitFileMap(sessionId, commitToMerge);
       String localCommitId = (String) currentLatestLocalCommit.get("commit_id");
       String incomingCommitId = (String) commitToMerge.get("commit_id");
-      responseMap.put("local_commit_id", localCommitId);
-      responseMap.put("incoming_commit_id", incomingCommitId);
-
-      // add any new local files to incoming filemap
+      context.put("local_commit_id", localCommitId);
+      context.put("incoming_commit_id", incomingCommitId);
+
+      // find the common ancestor of both branches to merge against
+      Map<String, List<MockFileObject>> baseFileMap =
+          findMergeBaseFileMap(
+              storage,
+              commitIndex,
+              sessionId,
+              userId,
+              currentBranch,
+              mergeBranch,
+              localCommitId,
+              incomingCommitId);
+
+      // attempt to auto-merge each file against the merge base
       diffHelper = new GitDiffHelper();
-      diffHelper.detectNewFiles(currentCommittedFileMap, toMergeFileMap);
-      List<String> newLocalFiles = diffHelper.getNewLocalFiles();
-      for (String fileName : newLocalFiles) {
-        toMergeFileMap.put(fileName, currentCommittedFileMap.get(fileName));
-      }
-
-      // add any new incoming files to local filemap
-      List<String> newIncomingFiles = diffHelper.getNewIncomingFiles();
-      for (String fileName : newIncomingFiles) {
-        currentCommittedFileMap.put(fileName, toMergeFileMap.get(fileName));
-      }
-
-      // stores the resulting merged files
-      Map<String, List<MockFileObject>> mergedFileMap = new HashMap<>();
-
-      // now that both maps have the same files, attempt to auto-merge each file and store resulting
-      // List<Ingredients>
-      for (String fileName : currentCommittedFileMap.keySet()) {
-        List<MockFileObject> committedFile = currentCommittedFileMap.get(fileName);
-        List<MockFileObject> incomingFile = toMergeFileMap.get(fileName);
-        List<MockFileObject> mergedFile =
-            diffHelper.autoMergeIfPossible(fileName, committedFile, incomingFile);
-        if (mergedFile != null) {
-          mergedFileMap.put(fileName, mergedFile);
-        }
-      }
-      responseMap.put("merged_files", mergedFileMap);
+      Map<String, List<MockFileObject>> mergedFileMap =
+          diffHelper.mergeFileMaps(currentCommittedFileMap, toMergeFileMap, baseFileMap);
+      context.put("merged_files", mergedFileMap);
 
       // if there were conflicting files, return successfully merged files and info for conflicting
       // files
       // for terminal display
       //  file_conflicts map looks like:
       //                    {filename : {"local": List<Ingredients>, "incoming": List<Ingredients>}}
+      //  or with conflict_style=hunks:
+      //                    {filename : [{"start": int, "base": List<Ingredients>,
+      //                                  "local": List<Ingredients>, "incoming":
+      // List<Ingredients>}]}
 
       if (!diffHelper.getFileConflicts().isEmpty()) {
-        responseMap.put("file_conflicts", diffHelper.getFileConflicts());
-        return returnErrorResponse(
+        putFileConflicts(context, diffHelper, conflictStyle);
+        return context.returnErrorResponse(
             "error_database", "Automatic merge failed; fix conflicts and then commit the results.");
       }
       //  if there were no conflicts, add and commit merged files
       else {
-
-        Moshi moshi = new Moshi.Builder().build();
-        Type type =
-            Types.newParameterizedType(
-                Map.class,
-                String.class,
-                Types.newParameterizedType(List.class, MockFileObject.class));
-        JsonAdapter<Map<String, List<MockFileObject>>> adapter = moshi.adapter(type);
-
-        storage.addChange(sessionId, userId, currentBranch, adapter.toJson(mergedFileMap));
+        storage.addChange(sessionId, userId, currentBranch, serializeFileMap(mergedFileMap));
 
         String commitMessage = localCommitId + " " + incomingCommitId + " merged";
         Map<String, Object> newCommit =
@@ -196,16 +200,17 @@ public class GitMergeHandler extends AbstractEndpointHandler {
                 currentBranch,
                 commitMessage,
                 List.of(localCommitId, incomingCommitId));
+        commitIndex.addCommits(sessionId, List.of(newCommit));
         String mergeCommitId = newCommit.get("commit_id").toString();
-        responseMap.put("new_commit", newCommit);
-        responseMap.put("merge_commit_id", mergeCommitId);
-        responseMap.put("message", commitMessage + " successfully and changes committed.");
+        context.put("new_commit", newCommit);
+        context.put("merge_commit_id", mergeCommitId);
+        context.put("message", commitMessage + " successfully and changes committed.");
       }
 
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "merge_failed: " + e.getMessage());
+      return context.returnErrorResponse("error_database", "merge_failed: " + e.getMessage());
     }
 
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
@@ -1,10 +1,12 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
+import edu.brown.cs.student.main.server.storage.BranchSnapshot;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import spark.Request;
 import spark.Response;
 
@@ -17,73 +19,67 @@ public class GitPushHandler extends AbstractEndpointHandler {
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
 
-    responseMap = new HashMap<>();
     // unique session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // unique user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // id of currently checked out branch
-    final String currentBranch = request.queryParams("branch_id");
+    final String currentBranch = param(request, "branch_id");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (currentBranch == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "current_branch_id");
+      return context.returnErrorResponse(
+          "error_bad_request", "null parameter", "current_branch_id");
     } else {
-      responseMap.put("branch_id", currentBranch);
+      context.put("branch_id", currentBranch);
     }
     try {
-      System.out.println("push past null checks ");
+      // read staged commits and both sides' pushed history in one read
+      BranchSnapshot branch = storage.getBranchSnapshot(sessionId, userId, currentBranch);
       // check that there are local staged commits
-      List<Map<String, Object>> stagedCommits =
-          storage.getStagedCommits(sessionId, userId, currentBranch);
+      List<Map<String, Object>> stagedCommits = branch.stagedCommits();
 
       // if there is nothing to commit, return message for terminal display
       if (stagedCommits.isEmpty()) {
-        responseMap.put("message", "Already up to date.");
-        System.out.println("nothing to push");
-        return returnSuccessResponse();
+        context.put("message", "Already up to date.");
+        return context.returnSuccessResponse();
       }
 
       // check that local most recent pushed commit and remote head are the same
-      List<Map<String, Object>> localPushedCommits =
-          storage.getLocalPushedCommits(sessionId, userId, currentBranch);
-      Map<String, Object> localLatestPushedCommit =
-          localPushedCommits.get(localPushedCommits.size() - 1);
-      Map<String, Object> remoteLatestCommit =
-          storage.getLatestRemoteCommit(sessionId, currentBranch);
-      String localLatestCommitId = (String) localLatestPushedCommit.get("commit_id");
-      String remoteLatestCommitId = (String) remoteLatestCommit.get("commit_id");
+      String remoteLatestCommitId = branch.remoteHeadId();
+      String localLatestCommitId = branch.localHeadId();
 
       // if user needs to pull remote changes, return message for terminal display
-      if (!localLatestCommitId.equals(remoteLatestCommitId)) {
-        responseMap.put(
+      if (!Objects.equals(branch.localPushedHeadId(), remoteLatestCommitId)) {
+        context.put(
             "message",
             "hint: Updates were rejected because the remote contains work that you do"
                 + " not have locally. This is usually caused by another repository pushing "
                 + "to the same remote branch. You may want to first integrate the remote changes "
                 + "(e.g., 'git pull') before pushing again.");
-        return returnErrorResponse(
+        return context.returnErrorResponse(
             "error_database", "Error: failed to push to origin/" + currentBranch);
       }
 
-      System.out.println("finally pushing commits");
       // otherwise, push staged commit(s) to remote
       storage.pushCommit(sessionId, userId, currentBranch);
-      responseMap.put("old_head_id", remoteLatestCommitId);
-      responseMap.put("new_head_id", localLatestCommitId);
-      responseMap.put("action", "push");
-      responseMap.put(
+      context.put("old_head_id", remoteLatestCommitId);
+      context.put("new_head_id", localLatestCommitId);
+      context.put("action", "push");
+      context.put(
           "message",
           remoteLatestCommitId
               + ".."
@@ -96,11 +92,9 @@ public class GitPushHandler extends AbstractEndpointHandler {
               + " Successfully pushed.");
 
     } catch (Exception e) {
-
-      System.out.println("push exception exists");
-      return returnErrorResponse("error_database", "push_failed: " + e.getMessage());
+      return context.returnErrorResponse("error_database", "push_failed: " + e.getMessage());
     }
 
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
@@ -1,9 +1,9 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import spark.Request;
@@ -18,37 +18,38 @@ public class GitResetHandler extends AbstractEndpointHandler {
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
 
     // unique session id
-    final String session_id = request.queryParams("session_id");
+    final String session_id = param(request, "session_id");
     // unique user id
-    final String user_id = request.queryParams("user_id");
+    final String user_id = param(request, "user_id");
     // id of currently checked out branch
-    final String branchId = request.queryParams("branch_id");
+    final String branchId = param(request, "branch_id");
     // commit to reset to
-    final String commitId = request.queryParams("reset_commit_id");
+    final String commitId = param(request, "reset_commit_id");
 
     if (session_id == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", session_id);
+      context.put("session_id", session_id);
     }
     if (user_id == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", user_id);
+      context.put("user_id", user_id);
     }
     if (branchId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "branch_id");
     } else {
-      responseMap.put("branch_id", branchId);
+      context.put("branch_id", branchId);
     }
     if (commitId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "reset_commit_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "reset_commit_id");
     } else {
-      responseMap.put("reset_commit_id", commitId);
+      context.put("reset_commit_id", commitId);
     }
 
     try {
@@ -83,12 +84,12 @@ public class GitResetHandler extends AbstractEndpointHandler {
       }
       // if commit is not in local commit history, return error for terminal display
       if (resetCommit == null) {
-        responseMap.put(
+        context.put(
             "message",
             "Commit '"
                 + commitId
                 + "' not found. Hint: use 'git log' to view a list of local commits.");
-        return returnErrorResponse("error_database", "Error: failed to reset.");
+        return context.returnErrorResponse("error_database", "Error: failed to reset.");
       }
 
       // if commit found, reset local commit history
@@ -98,14 +99,14 @@ public class GitResetHandler extends AbstractEndpointHandler {
 
       // return new head's file_map_json so user's screen can be reset and message for terminal
       // display
-      responseMap.put("file_map_json", resetCommit.get("file_map_json"));
-      responseMap.put("action", "reset");
-      responseMap.put("message", "HEAD is now at " + commitId + resetCommit.get("commit_message"));
+      context.put("file_map_json", resetCommit.get("file_map_json"));
+      context.put("action", "reset");
+      context.put("message", "HEAD is now at " + commitId + resetCommit.get("commit_message"));
 
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "reset_failed: " + e.getMessage());
+      return context.returnErrorResponse("error_database", "reset_failed: " + e.getMessage());
     }
 
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
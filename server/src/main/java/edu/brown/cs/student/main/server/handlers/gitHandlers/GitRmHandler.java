@@ -1,8 +1,8 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
 import spark.Request;
 import spark.Response;
 
@@ -15,45 +15,46 @@ public class GitRmHandler extends AbstractEndpointHandler {
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
 
     // unique session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // unique user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // id of currently checked out branch
-    final String branchId = request.queryParams("branch_id");
+    final String branchId = param(request, "branch_id");
     // json of file map with file the user wishes to delete already removed
-    final String fileMapJson = request.queryParams("file_map_json");
+    final String fileMapJson = param(request, "file_map_json");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (branchId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "branch_id");
     } else {
-      responseMap.put("branch_id", branchId);
+      context.put("branch_id", branchId);
     }
     if (fileMapJson == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
     } else {
-      responseMap.put("file_map_json", fileMapJson);
+      context.put("file_map_json", fileMapJson);
     }
 
     try {
       storage.addChange(sessionId, userId, branchId, fileMapJson);
-      responseMap.put("action", "rm");
+      context.put("action", "rm");
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "rm_failed" + e.getMessage());
+      return context.returnErrorResponse("error_database", "rm_failed" + e.getMessage());
     }
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
@@ -1,6 +1,7 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
 import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
 import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
@@ -19,49 +20,50 @@ public class GitStashHandler extends AbstractEndpointHandler {
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     GitDiffHelper gitDiffHelper = new GitDiffHelper();
 
     // session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // name of currently checked out branch
-    final String branchId = request.queryParams("branch_id");
+    final String branchId = param(request, "branch_id");
     // desired command (either "" for create stash, "list" for viewing all stashes, or "pop" for
     // applying specific stash to working directory
-    final String stashRequest = request.queryParams("stash_request");
+    final String stashRequest = param(request, "stash_request");
     // current file map json including unstaged changes
-    final String fileMapJson = request.queryParams("file_map_json");
+    final String fileMapJson = param(request, "file_map_json");
 
     // parameter optional, only used with "stash pop"
     final String stashIndex;
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (branchId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "branch_id");
     } else {
-      responseMap.put("branch_id", branchId);
+      context.put("branch_id", branchId);
     }
     if (stashRequest == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "stash_request");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "stash_request");
     } else {
-      responseMap.put("stash_request", stashRequest);
+      context.put("stash_request", stashRequest);
     }
     if (fileMapJson == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
     } else {
-      responseMap.put("file_map_json", fileMapJson);
+      context.put("file_map_json", fileMapJson);
     }
 
     try {
@@ -72,26 +74,27 @@ public class GitStashHandler extends AbstractEndpointHandler {
           String stashMessage = storage.addStash(sessionId, userId, branchId, fileMapJson);
           Map<String, Object> latestLocalCommit =
               storage.getLatestLocalCommit(sessionId, userId, branchId);
-          responseMap.put("reset_file_map_json", latestLocalCommit.get("file_map_json"));
-          responseMap.put("message", "Saved working directory " + stashMessage);
-          responseMap.put("action", "add stash");
+          context.put("reset_file_map_json", latestLocalCommit.get("file_map_json"));
+          context.put("message", "Saved working directory " + stashMessage);
+          context.put("action", "add stash");
 
           // list all stashes
         }
         case "list" -> {
           List<Map<String, Object>> stashes = storage.getStashes(sessionId, userId);
-          responseMap.put("stashes", stashes);
-          responseMap.put("action", "list stashes");
+          context.put("stashes", stashes);
+          context.put("action", "list stashes");
 
           // apply stash at inputted index
         }
         case "pop" -> {
           // check for required parameter index
-          stashIndex = request.queryParams("stash_index");
+          stashIndex = param(request, "stash_index");
           if (stashIndex == null) {
-            return returnErrorResponse("error_bad_request", "null parameter", "stash_index");
+            return context.returnErrorResponse(
+                "error_bad_request", "null parameter", "stash_index");
           } else {
-            responseMap.put("stash_index", stashIndex);
+            context.put("stash_index", stashIndex);
           }
 
           Map<String, Object> stash =
@@ -99,7 +102,7 @@ public class GitStashHandler extends AbstractEndpointHandler {
 
           // if stash not found, return message for terminal display
           if (stash == null) {
-            return returnErrorResponse(
+            return context.returnErrorResponse(
                 "error_database",
                 "Error: stash@{"
                     + stashIndex
@@ -108,8 +111,9 @@ public class GitStashHandler extends AbstractEndpointHandler {
 
           // if stash found, attempt to merge current filemap and stashed filemap
           Map<String, List<MockFileObject>> stashedFileMap =
-              deserializeFileMap((String) stash.get("file_map_json"));
-          Map<String, List<MockFileObject>> currentFileMap = deserializeFileMap(fileMapJson);
+              deserializeFileMap(sessionId, (String) stash.get("file_map_json"));
+          Map<String, List<MockFileObject>> currentFileMap =
+              deserializeFileMap(sessionId, fileMapJson);
 
           // add any new local files to incoming filemap
           gitDiffHelper.detectNewFiles(currentFileMap, stashedFileMap);
@@ -138,7 +142,7 @@ public class GitStashHandler extends AbstractEndpointHandler {
               mergedFileMap.put(fileName, mergedFile);
             }
           }
-          responseMap.put("merged_files", mergedFileMap);
+          context.put("merged_files", mergedFileMap);
 
           // if there were conflicting files, return successfully merged files and info for
           // conflicting files
@@ -148,16 +152,16 @@ public class GitStashHandler extends AbstractEndpointHandler {
           // List<Ingredients>}}
 
           if (!gitDiffHelper.getFileConflicts().isEmpty()) {
-            responseMap.put("file_conflicts", gitDiffHelper.getFileConflicts());
-            return returnErrorResponse(
+            context.put("file_conflicts", gitDiffHelper.getFileConflicts());
+            return context.returnErrorResponse(
                 "error_database",
                 "Error: Could not apply "
                     + "stash@{"
                     + stashIndex
                     + "}. Conflict detected; fix conflicts and then commit the results.");
           } else {
-            responseMap.put("action", "stash pop");
-            responseMap.put(
+            context.put("action", "stash pop");
+            context.put(
                 "message",
                 "Applied stash@{"
                     + stashIndex
@@ -167,13 +171,13 @@ public class GitStashHandler extends AbstractEndpointHandler {
           }
         }
         default -> {
-          return returnErrorResponse("error_database", "Command not supported.");
+          return context.returnErrorResponse("error_database", "Command not supported.");
         }
       }
     } catch (Exception e) {
-      return returnErrorResponse("", "");
+      return context.returnErrorResponse("", "");
     }
 
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
@@ -1,13 +1,17 @@
 package edu.brown.cs.student.main.server.handlers.gitHandlers;
 
 import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
 import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
 import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import edu.brown.cs.student.main.server.storage.AsyncStorageInterface;
+import edu.brown.cs.student.main.server.storage.BranchSnapshot;
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import spark.Request;
 import spark.Response;
 
@@ -15,62 +19,84 @@ public class GitStatusHandler extends AbstractEndpointHandler {
 
   final StorageInterface storage;
 
+  final CommitGraphIndex commitIndex;
+
   public GitStatusHandler(final StorageInterface storage) {
+    this(storage, new CommitGraphIndex());
+  }
+
+  public GitStatusHandler(final StorageInterface storage, final CommitGraphIndex commitIndex) {
     this.storage = storage;
+    this.commitIndex = commitIndex;
   }
 
   @Override
-  public Object handle(final Request request, final Response response) throws Exception {
-    responseMap = new HashMap<>();
+  protected Object handle(
+      final Request request, final Response response, final ResponseContext context)
+      throws Exception {
     // session id
-    final String sessionId = request.queryParams("session_id");
+    final String sessionId = param(request, "session_id");
     // user id
-    final String userId = request.queryParams("user_id");
+    final String userId = param(request, "user_id");
     // name of currently checked out branch
-    final String branchId = request.queryParams("branch_id");
+    final String branchId = param(request, "branch_id");
     // current file map json including unstaged changes
-    final String fileMapJson = request.queryParams("file_map_json");
+    final String fileMapJson = param(request, "file_map_json");
 
     if (sessionId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "session_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "session_id");
     } else {
-      responseMap.put("session_id", sessionId);
+      context.put("session_id", sessionId);
     }
     if (userId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "user_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "user_id");
     } else {
-      responseMap.put("user_id", userId);
+      context.put("user_id", userId);
     }
     if (branchId == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "branch_id");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "branch_id");
     } else {
-      responseMap.put("branch_id", branchId);
+      context.put("branch_id", branchId);
     }
     if (fileMapJson == null) {
-      return returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
+      return context.returnErrorResponse("error_bad_request", "null parameter", "file_map_json");
     } else {
-      responseMap.put("file_map_json", fileMapJson);
+      context.put("file_map_json", fileMapJson);
     }
 
     try {
-      // deserialize current filemap
-      Map<String, List<MockFileObject>> currentFileMap = deserializeFileMap(fileMapJson);
+      // start reading local and remote head for current branch, staged commits and changes in one
+      // read, and deserialize the current filemap while it is in flight
+      CompletableFuture<BranchSnapshot> branchRead =
+          storage.async().getBranchSnapshot(sessionId, userId, branchId);
+      Map<String, List<MockFileObject>> currentFileMap = deserializeFileMap(sessionId, fileMapJson);
 
       // check if local and remote are ahead/behind to make branch info message for terminal display
 
-      // get local and remote head for current branch
-      Map<String, Object> latestLocalCommit =
-          storage.getLatestLocalCommit(sessionId, userId, branchId);
-      Map<String, Object> latestRemoteCommit = storage.getLatestRemoteCommit(sessionId, branchId);
+      BranchSnapshot branch = AsyncStorageInterface.await(branchRead);
+      Map<String, Object> latestLocalCommit = branch.localHead();
+      Map<String, Object> latestRemoteCommit = branch.remoteHead();
 
       // if the heads are different, determine how
-      if (!latestLocalCommit.get("commit_id").equals(latestRemoteCommit.get("commit_id"))) {
-        List<Map<String, Object>> stagedCommits =
-            storage.getStagedCommits(sessionId, userId, branchId);
+      String localCommitId = (String) latestLocalCommit.get("commit_id");
+      String remoteCommitId = (String) latestRemoteCommit.get("commit_id");
+      if (!localCommitId.equals(remoteCommitId)
+          && commitIndex.ensureIndexed(
+              storage, sessionId, userId, branchId, localCommitId, remoteCommitId)) {
+        // count commits on each side by walking the commit graph index
+        CommitGraphIndex.AheadBehind counts =
+            commitIndex.aheadBehind(sessionId, localCommitId, remoteCommitId);
+        context.put("ahead_by", counts.ahead());
+        context.put("behind_by", counts.behind());
+        context.put(
+            "branch_message",
+            "On branch " + branchId + ". " + aheadBehindMessage(branchId, counts));
+      } else if (!localCommitId.equals(remoteCommitId)) {
+        List<Map<String, Object>> stagedCommits = branch.stagedCommits();
 
         // local has commits that remote does not
         if (!stagedCommits.isEmpty()) {
-          responseMap.put(
+          context.put(
               "branch_message",
               "On branch "
                   + branchId
@@ -81,10 +107,8 @@ public class GitStatusHandler extends AbstractEndpointHandler {
                   + " commits.");
         } else {
           // remote has commits that local does not
-          int remoteAheadBy =
-              storage.getRemotePushedCommits(sessionId, branchId).size()
-                  - storage.getLocalPushedCommits(sessionId, userId, branchId).size();
-          responseMap.put(
+          long remoteAheadBy = branch.remotePushedCount() - branch.localPushedCount();
+          context.put(
               "branch_message",
               "On branch "
                   + branchId
@@ -96,7 +120,7 @@ public class GitStatusHandler extends AbstractEndpointHandler {
         }
         // local and remote have the same head
       } else {
-        responseMap.put(
+        context.put(
             "branch_message",
             "On branch "
                 + branchId
@@ -108,21 +132,21 @@ public class GitStatusHandler extends AbstractEndpointHandler {
 
       // check for staged changes, add to changes to be committed if there are
 
-      String stagedChangesJson = storage.getLatestLocalChanges(sessionId, userId, branchId);
+      String stagedChangesJson = branch.changes();
 
       // send list of files with staged changes
       if (stagedChangesJson != null) {
         Map<String, List<MockFileObject>> stagedChangesFileMap =
-            deserializeFileMap(stagedChangesJson);
+            deserializeFileMap(sessionId, stagedChangesJson);
         GitDiffHelper gitDiffHelper = new GitDiffHelper();
         Map<String, List<MockFileObject>> deserializedLatestLocalCommit =
-            deserializeFileMap((String) latestLocalCommit.get("file_map_json"));
+            commitFileMap(sessionId, latestLocalCommit);
 
         // get difference between staged changes and most recent commit
         Set<String> changedFiles =
             gitDiffHelper.differenceDetected(deserializedLatestLocalCommit, stagedChangesFileMap);
-        responseMap.put("staged_changes_message", "Changes to be committed: ");
-        responseMap.put("staged_changes", changedFiles);
+        context.put("staged_changes_message", "Changes to be committed: ");
+        context.put("staged_changes", changedFiles);
 
         // find difference between staged changes and current file map (unstaged changes)
 
@@ -131,36 +155,36 @@ public class GitStatusHandler extends AbstractEndpointHandler {
 
         // send set of files with unstaged changes
         if (!filesWithDifferences.isEmpty()) {
-          responseMap.put("unstaged_changes_message", "Changes not staged for commit: ");
-          responseMap.put("unstaged_changes", filesWithDifferences);
+          context.put("unstaged_changes_message", "Changes not staged for commit: ");
+          context.put("unstaged_changes", filesWithDifferences);
         } else {
-          responseMap.put("unstaged_changes_message", "No unstaged changes detected.");
+          context.put("unstaged_changes_message", "No unstaged changes detected.");
         }
 
       } else {
-        responseMap.put("staged_changes_message", "No changes added to commit (use 'git add -A').");
+        context.put("staged_changes_message", "No changes added to commit (use 'git add -A').");
 
         // find difference between last local commit and current filemap to find unstaged changes
 
         Map<String, List<MockFileObject>> localCommittedFileMap =
-            deserializeFileMap((String) latestLocalCommit.get("file_map_json"));
+            commitFileMap(sessionId, latestLocalCommit);
         GitDiffHelper gitDiffHelper = new GitDiffHelper();
         Set<String> filesWithDifferences =
             gitDiffHelper.differenceDetected(localCommittedFileMap, currentFileMap);
 
         // send set of files with unstaged changes
         if (!filesWithDifferences.isEmpty()) {
-          responseMap.put("unstaged_changes_message", "Changes not staged for commit: ");
-          responseMap.put("unstaged_changes", filesWithDifferences);
+          context.put("unstaged_changes_message", "Changes not staged for commit: ");
+          context.put("unstaged_changes", filesWithDifferences);
         } else {
-          responseMap.put("unstaged_changes_message", "No unstaged changes detected.");
+          context.put("unstaged_changes_message", "No unstaged changes detected.");
         }
       }
 
     } catch (Exception e) {
-      return returnErrorResponse("error_database", "status_failed: " + e.getMessage());
+      return context.returnErrorResponse("error_database", "status_failed: " + e.getMessage());
     }
 
-    return returnSuccessResponse();
+    return context.returnSuccessResponse();
   }
 }
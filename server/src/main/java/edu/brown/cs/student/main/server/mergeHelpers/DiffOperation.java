@@ -0,0 +1,31 @@
+package edu.brown.cs.student.main.server.mergeHelpers;
+
+/**
+ * One step of an edit script that turns one version of a file into another.
+ *
+ * @param type whether the object is kept, deleted from the old version, or inserted from the new
+ * @param oldIndex index of the object in the old version; -1 for inserts
+ * @param newIndex index of the object in the new version; -1 for deletes
+ * @param object the object kept, deleted, or inserted
+ */
+public record DiffOperation(Type type, int oldIndex, int newIndex, MockFileObject object) {
+
+  /** Kind of edit. */
+  public enum Type {
+    KEEP,
+    DELETE,
+    INSERT
+  }
+
+  static DiffOperation keep(int oldIndex, int newIndex, MockFileObject object) {
+    return new DiffOperation(Type.KEEP, oldIndex, newIndex, object);
+  }
+
+  static DiffOperation delete(int oldIndex, MockFileObject object) {
+    return new DiffOperation(Type.DELETE, oldIndex, -1, object);
+  }
+
+  static DiffOperation insert(int newIndex, MockFileObject object) {
+    return new DiffOperation(Type.INSERT, -1, newIndex, object);
+  }
+}
@@ -0,0 +1,266 @@
+package edu.brown.cs.student.main.server.mergeHelpers;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of file maps and of single files, much smaller than their JSON when
+ * objects repeat, as the same image tends to across files, commits, and branches.
+ *
+ * <p>An encoding starts with a version byte and a kind byte (file map or single file), followed by
+ * a dictionary of every distinct string: its size, then each string as a varint length and its
+ * UTF-8 bytes. A file map then holds its number of files and, for each file, the dictionary index
+ * of its name and its contents; a single file is just its contents. Contents are the number of
+ * objects followed by each object's imgStr and imgName as dictionary references, where 0 is null
+ * and i + 1 is the dictionary's i-th string. Every number is an unsigned LEB128 varint.
+ *
+ * <p>Decoding builds each distinct string and each distinct object once, so repeated objects in a
+ * decoded file map are the same instance.
+ */
+public final class FileMapCodec {
+  private static final int VERSION = 1;
+  private static final int KIND_FILE_MAP = 0;
+  private static final int KIND_FILE = 1;
+
+  private FileMapCodec() {}
+
+  /**
+   * Encodes a file map.
+   *
+   * @param fileMap - map of filenames to file contents
+   * @return - the encoding
+   */
+  public static byte[] encode(Map<String, List<MockFileObject>> fileMap) {
+    if (fileMap == null) {
+      throw new IllegalArgumentException("FileMapCodec: fileMap cannot be null");
+    }
+    Dictionary dictionary = new Dictionary();
+    for (Map.Entry<String, List<MockFileObject>> file : fileMap.entrySet()) {
+      dictionary.add(file.getKey());
+      dictionary.addAll(file.getValue());
+    }
+    Output out = new Output(KIND_FILE_MAP, dictionary);
+    out.writeVarint(fileMap.size());
+    for (Map.Entry<String, List<MockFileObject>> file : fileMap.entrySet()) {
+      out.writeVarint(dictionary.reference(file.getKey()));
+      out.writeContents(file.getValue());
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Encodes the contents of a single file.
+   *
+   * @param file - list of file objects
+   * @return - the encoding
+   */
+  public static byte[] encodeFile(List<MockFileObject> file) {
+    if (file == null) {
+      throw new IllegalArgumentException("FileMapCodec: file cannot be null");
+    }
+    Dictionary dictionary = new Dictionary();
+    dictionary.addAll(file);
+    Output out = new Output(KIND_FILE, dictionary);
+    out.writeContents(file);
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes a file map encoded by {@link #encode}.
+   *
+   * @param encoded - the encoding
+   * @return - map of filenames to file contents, in the order they were encoded
+   */
+  public static Map<String, List<MockFileObject>> decode(byte[] encoded) {
+    Input in = new Input(encoded, KIND_FILE_MAP);
+    int files = in.readCount();
+    Map<String, List<MockFileObject>> fileMap = new LinkedHashMap<>();
+    for (int i = 0; i < files; i++) {
+      String fileName = in.readString();
+      if (fileName == null) {
+        throw new IllegalArgumentException("FileMapCodec: file name cannot be null");
+      }
+      fileMap.put(fileName, in.readContents());
+    }
+    in.expectEnd();
+    return fileMap;
+  }
+
+  /**
+   * Decodes the contents of a single file encoded by {@link #encodeFile}.
+   *
+   * @param encoded - the encoding
+   * @return - list of file objects
+   */
+  public static List<MockFileObject> decodeFile(byte[] encoded) {
+    Input in = new Input(encoded, KIND_FILE);
+    List<MockFileObject> file = in.readContents();
+    in.expectEnd();
+    return file;
+  }
+
+  /** Distinct strings of an encoding, by index in order of first use. */
+  private static final class Dictionary {
+    private final Map<String, Integer> indexes = new LinkedHashMap<>();
+
+    private void add(String value) {
+      if (value != null) {
+        indexes.putIfAbsent(value, indexes.size());
+      }
+    }
+
+    private void addAll(List<MockFileObject> file) {
+      if (file == null) {
+        throw new IllegalArgumentException("FileMapCodec: file contents cannot be null");
+      }
+      for (MockFileObject object : file) {
+        if (object == null) {
+          throw new IllegalArgumentException("FileMapCodec: file objects cannot be null");
+        }
+        add(object.imgStr());
+        add(object.imgName());
+      }
+    }
+
+    private int reference(String value) {
+      return value == null ? 0 : indexes.get(value) + 1;
+    }
+  }
+
+  private static final class Output {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final Dictionary dictionary;
+
+    private Output(int kind, Dictionary dictionary) {
+      this.dictionary = dictionary;
+      bytes.write(VERSION);
+      bytes.write(kind);
+      writeVarint(dictionary.indexes.size());
+      for (String value : dictionary.indexes.keySet()) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(utf8.length);
+        bytes.write(utf8, 0, utf8.length);
+      }
+    }
+
+    private void writeVarint(int value) {
+      while ((value & ~0x7f) != 0) {
+        bytes.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      bytes.write(value);
+    }
+
+    private void writeContents(List<MockFileObject> file) {
+      writeVarint(file.size());
+      for (MockFileObject object : file) {
+        writeVarint(dictionary.reference(object.imgStr()));
+        writeVarint(dictionary.reference(object.imgName()));
+      }
+    }
+
+    private byte[] toByteArray() {
+      return bytes.toByteArray();
+    }
+  }
+
+  private static final class Input {
+    private final byte[] bytes;
+    private int position;
+    private final String[] strings;
+    // objects already built, by their two references packed into one long
+    private final Map<Long, MockFileObject> objects = new HashMap<>();
+
+    private Input(byte[] bytes, int kind) {
+      if (bytes == null) {
+        throw new IllegalArgumentException("FileMapCodec: encoding cannot be null");
+      }
+      this.bytes = bytes;
+      if (readByte() != VERSION) {
+        throw new IllegalArgumentException("FileMapCodec: unknown version");
+      }
+      if (readByte() != kind) {
+        throw new IllegalArgumentException(
+            "FileMapCodec: expected a " + (kind == KIND_FILE ? "file" : "file map"));
+      }
+      strings = new String[readCount()];
+      for (int i = 0; i < strings.length; i++) {
+        int length = readCount();
+        if (length > bytes.length - position) {
+          throw new IllegalArgumentException("FileMapCodec: truncated encoding");
+        }
+        strings[i] = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+      }
+    }
+
+    private int readByte() {
+      if (position >= bytes.length) {
+        throw new IllegalArgumentException("FileMapCodec: truncated encoding");
+      }
+      return bytes[position++] & 0xff;
+    }
+
+    private int readVarint() {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+        int b = readByte();
+        value |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("FileMapCodec: malformed varint");
+    }
+
+    /** Reads a count, which can be no more than the bytes left, since each item takes one. */
+    private int readCount() {
+      int count = readVarint();
+      if (count < 0 || count > bytes.length - position) {
+        throw new IllegalArgumentException("FileMapCodec: count out of range");
+      }
+      return count;
+    }
+
+    private int readReference() {
+      int reference = readVarint();
+      if (reference < 0 || reference > strings.length) {
+        throw new IllegalArgumentException("FileMapCodec: string reference out of range");
+      }
+      return reference;
+    }
+
+    private String readString() {
+      int reference = readReference();
+      return reference == 0 ? null : strings[reference - 1];
+    }
+
+    private List<MockFileObject> readContents() {
+      int size = readCount();
+      List<MockFileObject> file = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        int imgStr = readReference();
+        int imgName = readReference();
+        file.add(
+            objects.computeIfAbsent(
+                ((long) imgStr << 32) | imgName,
+                key ->
+                    new MockFileObject(
+                        imgStr == 0 ? null : strings[imgStr - 1],
+                        imgName == 0 ? null : strings[imgName - 1])));
+      }
+      return file;
+    }
+
+    private void expectEnd() {
+      if (position != bytes.length) {
+        throw new IllegalArgumentException("FileMapCodec: trailing bytes");
+      }
+    }
+  }
+}
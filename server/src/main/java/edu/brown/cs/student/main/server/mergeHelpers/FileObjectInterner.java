@@ -0,0 +1,131 @@
+package edu.brown.cs.student.main.server.mergeHelpers;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonical instances of each session's file objects. Players in a session keep sending, and the
+ * session's commits keep storing, the same objects, so interning them means the objects of a
+ * working copy and of the commits it is diffed against are mostly the same instances: equal objects
+ * compare by identity and most memory is shared. A session's objects are dropped when the session
+ * is deleted, when the session goes unused for a while, or when too many other sessions are in use;
+ * objects interned afterwards simply start a new set of canonical instances.
+ */
+public class FileObjectInterner {
+
+  /** Default maximum number of sessions whose objects are kept. */
+  public static final long DEFAULT_MAX_SESSIONS = 1_000;
+
+  /** Default number of minutes a session's objects are kept after it last interned one. */
+  public static final long DEFAULT_IDLE_MINUTES = 60;
+
+  private final int maxObjectsPerSession;
+  private final Cache<String, Map<MockFileObject, MockFileObject>> sessions;
+
+  /**
+   * Creates an interner using the default number of sessions and idle time.
+   *
+   * @param maxObjectsPerSession - most distinct objects kept for one session; objects past this are
+   *     returned as they are, not interned
+   */
+  public FileObjectInterner(final int maxObjectsPerSession) {
+    this(maxObjectsPerSession, DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Creates an interner.
+   *
+   * @param maxObjectsPerSession - most distinct objects kept for one session; objects past this are
+   *     returned as they are, not interned
+   * @param maxSessions - maximum number of sessions whose objects are kept
+   * @param idle - how long a session's objects are kept after it last interned one
+   * @param idleUnit - unit of idle
+   */
+  public FileObjectInterner(
+      final int maxObjectsPerSession,
+      final long maxSessions,
+      final long idle,
+      final TimeUnit idleUnit) {
+    if (maxObjectsPerSession <= 0 || maxSessions <= 0 || idle <= 0 || idleUnit == null) {
+      throw new IllegalArgumentException(
+          "FileObjectInterner: maxObjectsPerSession, maxSessions, and idle must be positive");
+    }
+    this.maxObjectsPerSession = maxObjectsPerSession;
+    this.sessions =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxSessions)
+            .expireAfterAccess(idle, idleUnit)
+            .build();
+  }
+
+  /**
+   * Returns the session's canonical instance of an object, making the object canonical if the
+   * session has no equal object yet.
+   *
+   * @param session_id - unique session id
+   * @param object - object to intern
+   * @return - canonical object equal to the given one
+   */
+  public MockFileObject intern(final String session_id, final MockFileObject object) {
+    Map<MockFileObject, MockFileObject> objects =
+        sessions.asMap().computeIfAbsent(session_id, k -> new ConcurrentHashMap<>());
+    MockFileObject canonical = objects.get(object);
+    if (canonical != null) {
+      return canonical;
+    }
+    if (objects.size() >= maxObjectsPerSession) {
+      return object;
+    }
+    canonical = objects.putIfAbsent(object, object);
+    return canonical == null ? object : canonical;
+  }
+
+  /**
+   * Replaces every object of a file map, in place, with the session's canonical instance.
+   *
+   * @param session_id - unique session id
+   * @param fileMap - file map to intern; its lists must be modifiable
+   * @return - the same file map
+   */
+  public Map<String, List<MockFileObject>> internAll(
+      final String session_id, final Map<String, List<MockFileObject>> fileMap) {
+    if (fileMap == null) {
+      return null;
+    }
+    for (List<MockFileObject> file : fileMap.values()) {
+      if (file == null) {
+        continue;
+      }
+      for (ListIterator<MockFileObject> objects = file.listIterator(); objects.hasNext(); ) {
+        MockFileObject object = objects.next();
+        if (object != null) {
+          objects.set(intern(session_id, object));
+        }
+      }
+    }
+    return fileMap;
+  }
+
+  /**
+   * Drops a session's objects, used when the session is deleted.
+   *
+   * @param session_id - unique session id
+   */
+  public void evictSession(final String session_id) {
+    sessions.invalidate(session_id);
+  }
+
+  /**
+   * @param session_id - unique session id
+   * @return - number of distinct objects interned for the session
+   */
+  public int size(final String session_id) {
+    Map<MockFileObject, MockFileObject> objects = sessions.getIfPresent(session_id);
+    return objects == null ? 0 : objects.size();
+  }
+}
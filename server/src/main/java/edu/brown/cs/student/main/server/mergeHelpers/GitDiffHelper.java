@@ -1,8 +1,10 @@
 package edu.brown.cs.student.main.server.mergeHelpers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,6 +17,8 @@ public class GitDiffHelper {
   private List<String> newIncomingFiles = new ArrayList<>();
   // map of filenames to map containing the local and incoming version of the conflicting file
   private Map<String, Map<String, List<MockFileObject>>> fileConflicts = new HashMap<>();
+  // map of filenames to the conflicting sections of the file, found by three-way merges
+  private Map<String, List<Map<String, Object>>> fileConflictHunks = new HashMap<>();
 
   public GitDiffHelper() {}
 
@@ -49,6 +53,17 @@ public class GitDiffHelper {
     return fileConflictsCopy;
   }
 
+  /**
+   * Return map of files that had conflicts in a three-way merge, mapped to only the conflicting
+   * sections of each file. Each hunk holds "start", the index in the merged file where the section
+   * belongs, and the "base", "local", and "incoming" versions of the section.
+   *
+   * @return - map of filenames to conflicting hunks
+   */
+  public Map<String, List<Map<String, Object>>> getFileConflictHunks() {
+    return new HashMap<>(fileConflictHunks);
+  }
+
   /**
    * Method that determines if there are local files that are not stored remotely or remote files
    * that the user does not have locally, and adds these file names to respective lists.
@@ -63,19 +78,16 @@ public class GitDiffHelper {
     newIncomingFiles = new ArrayList<>();
     newLocalFiles = new ArrayList<>();
 
-    List<String> localFileNames = new ArrayList<>(localState.keySet());
-    List<String> incomingFileNames = new ArrayList<>(incomingState.keySet());
-
     // find local filenames not present in the incoming filemap
-    for (int i = 0; i < localFileNames.size(); i++) {
-      if (!incomingFileNames.contains(localFileNames.get(i))) {
-        newLocalFiles.add(localFileNames.get(i));
+    for (String localFileName : localState.keySet()) {
+      if (!incomingState.containsKey(localFileName)) {
+        newLocalFiles.add(localFileName);
       }
     }
     // find incoming filenames not present in the local filemap
-    for (int i = 0; i < incomingFileNames.size(); i++) {
-      if (!localFileNames.contains(incomingFileNames.get(i))) {
-        newIncomingFiles.add(incomingFileNames.get(i));
+    for (String incomingFileName : incomingState.keySet()) {
+      if (!localState.containsKey(incomingFileName)) {
+        newIncomingFiles.add(incomingFileName);
       }
     }
   }
@@ -113,12 +125,216 @@ public class GitDiffHelper {
     return filesWithDifferences;
   }
 
+  /**
+   * Computes edit scripts for every file that differs between two filemaps. Files only in the
+   * stored state are scripted as all deletes, and files only in the current state as all inserts.
+   *
+   * @param storedState - filemap of the older version
+   * @param currentState - filemap of the newer version
+   * @return - map of changed filenames to the edit script turning the stored file into the current
+   */
+  public Map<String, List<DiffOperation>> diffFileMaps(
+      Map<String, List<MockFileObject>> storedState,
+      Map<String, List<MockFileObject>> currentState) {
+    Map<String, List<DiffOperation>> fileDiffs = new HashMap<>();
+    for (String fileName : differenceDetected(storedState, currentState)) {
+      List<MockFileObject> storedFile = storedState.getOrDefault(fileName, List.of());
+      List<MockFileObject> currentFile = currentState.getOrDefault(fileName, List.of());
+      fileDiffs.put(fileName, diffFile(storedFile, currentFile));
+    }
+    return fileDiffs;
+  }
+
+  /**
+   * Computes a shortest edit script between two versions of a file using the linear-space variant
+   * of Myers' O(ND) algorithm, where D is the number of edits. Objects shared at the start and end
+   * of both versions are matched directly before the search runs. Only O(N) memory is used, however
+   * many edits there are.
+   *
+   * @param oldFile - older version of the file
+   * @param newFile - newer version of the file
+   * @return - edit script, in order, turning the old version into the new
+   */
+  public static List<DiffOperation> diffFile(
+      List<MockFileObject> oldFile, List<MockFileObject> newFile) {
+    List<DiffOperation> script = new ArrayList<>();
+    diffSection(oldFile, newFile, 0, oldFile.size(), 0, newFile.size(), script);
+    return script;
+  }
+
+  /**
+   * Appends a shortest edit script between a section of the old file and a section of the new file.
+   * Sections that still differ after their shared start and end are kept are split where a shortest
+   * path through them crosses its middle diagonal, and each half is diffed on its own.
+   *
+   * @param oldFile - older version of the file
+   * @param newFile - newer version of the file
+   * @param oldStart - index of the old section's first object
+   * @param oldEnd - index just past the old section's last object
+   * @param newStart - index of the new section's first object
+   * @param newEnd - index just past the new section's last object
+   * @param script - edit script the section's operations are appended to
+   */
+  private static void diffSection(
+      List<MockFileObject> oldFile,
+      List<MockFileObject> newFile,
+      int oldStart,
+      int oldEnd,
+      int newStart,
+      int newEnd,
+      List<DiffOperation> script) {
+    // common prefix and suffix are always kept
+    while (oldStart < oldEnd
+        && newStart < newEnd
+        && oldFile.get(oldStart).equals(newFile.get(newStart))) {
+      script.add(DiffOperation.keep(oldStart, newStart, oldFile.get(oldStart)));
+      oldStart++;
+      newStart++;
+    }
+    int suffix = 0;
+    while (oldStart < oldEnd - suffix
+        && newStart < newEnd - suffix
+        && oldFile.get(oldEnd - 1 - suffix).equals(newFile.get(newEnd - 1 - suffix))) {
+      suffix++;
+    }
+    oldEnd -= suffix;
+    newEnd -= suffix;
+
+    int[] split =
+        oldStart == oldEnd || newStart == newEnd
+            ? null
+            : middleSplit(oldFile, newFile, oldStart, oldEnd, newStart, newEnd);
+    if (split == null) {
+      // nothing in common: every old object is deleted and every new one inserted
+      for (int x = oldStart; x < oldEnd; x++) {
+        script.add(DiffOperation.delete(x, oldFile.get(x)));
+      }
+      for (int y = newStart; y < newEnd; y++) {
+        script.add(DiffOperation.insert(y, newFile.get(y)));
+      }
+    } else {
+      diffSection(oldFile, newFile, oldStart, split[0], newStart, split[1], script);
+      diffSection(oldFile, newFile, split[0], oldEnd, split[1], newEnd, script);
+    }
+
+    for (int i = 0; i < suffix; i++) {
+      script.add(DiffOperation.keep(oldEnd + i, newEnd + i, oldFile.get(oldEnd + i)));
+    }
+  }
+
+  /**
+   * Runs Myers' greedy search forward from the start and backward from the end of two sections at
+   * once, until the two furthest reaching paths overlap. The point where they meet lies on a
+   * shortest path, so the sections can be split there. Only the furthest reaching x on each
+   * diagonal is kept, in one array per direction.
+   *
+   * @param oldFile - older version of the file
+   * @param newFile - newer version of the file
+   * @param oldStart - index of the old section's first object
+   * @param oldEnd - index just past the old section's last object
+   * @param newStart - index of the new section's first object
+   * @param newEnd - index just past the new section's last object
+   * @return - old and new index to split the sections at, or null if they have nothing in common
+   */
+  private static int[] middleSplit(
+      List<MockFileObject> oldFile,
+      List<MockFileObject> newFile,
+      int oldStart,
+      int oldEnd,
+      int newStart,
+      int newEnd) {
+    int n = oldEnd - oldStart;
+    int m = newEnd - newStart;
+    int maxDistance = (n + m + 1) / 2;
+    // furthest x reached on each diagonal k = x - y, stored at index k + maxDistance; the backward
+    // search counts x and y from the ends of the sections. -1 marks a diagonal not reached yet.
+    int[] forward = new int[2 * maxDistance + 2];
+    int[] backward = new int[2 * maxDistance + 2];
+    Arrays.fill(forward, -1);
+    Arrays.fill(backward, -1);
+    forward[maxDistance + 1] = 0;
+    backward[maxDistance + 1] = 0;
+    int delta = n - m;
+    // with an odd delta the paths can first meet during a forward step, otherwise a backward one
+    boolean meetForward = delta % 2 != 0;
+    // diagonals trimmed from each end of the search once their paths leave the sections
+    int forwardStartTrim = 0;
+    int forwardEndTrim = 0;
+    int backwardStartTrim = 0;
+    int backwardEndTrim = 0;
+
+    for (int distance = 0; distance < maxDistance; distance++) {
+      for (int k = -distance + forwardStartTrim; k <= distance - forwardEndTrim; k += 2) {
+        int index = maxDistance + k;
+        int x;
+        if (k == -distance || (k != distance && forward[index - 1] < forward[index + 1])) {
+          // step down from diagonal k + 1 (an insert)
+          x = forward[index + 1];
+        } else {
+          // step right from diagonal k - 1 (a delete)
+          x = forward[index - 1] + 1;
+        }
+        int y = x - k;
+        // follow matching objects along the diagonal
+        while (x < n && y < m && oldFile.get(oldStart + x).equals(newFile.get(newStart + y))) {
+          x++;
+          y++;
+        }
+        forward[index] = x;
+        if (x > n) {
+          forwardEndTrim += 2;
+        } else if (y > m) {
+          forwardStartTrim += 2;
+        } else if (meetForward) {
+          int backwardIndex = maxDistance + delta - k;
+          if (backwardIndex >= 0
+              && backwardIndex < backward.length
+              && backward[backwardIndex] != -1
+              && x >= n - backward[backwardIndex]) {
+            return new int[] {oldStart + x, newStart + y};
+          }
+        }
+      }
+
+      for (int k = -distance + backwardStartTrim; k <= distance - backwardEndTrim; k += 2) {
+        int index = maxDistance + k;
+        int x;
+        if (k == -distance || (k != distance && backward[index - 1] < backward[index + 1])) {
+          x = backward[index + 1];
+        } else {
+          x = backward[index - 1] + 1;
+        }
+        int y = x - k;
+        while (x < n && y < m && oldFile.get(oldEnd - 1 - x).equals(newFile.get(newEnd - 1 - y))) {
+          x++;
+          y++;
+        }
+        backward[index] = x;
+        if (x > n) {
+          backwardEndTrim += 2;
+        } else if (y > m) {
+          backwardStartTrim += 2;
+        } else if (!meetForward) {
+          int forwardIndex = maxDistance + delta - k;
+          if (forwardIndex >= 0 && forwardIndex < forward.length && forward[forwardIndex] != -1) {
+            int forwardX = forward[forwardIndex];
+            int forwardY = forwardX - (forwardIndex - maxDistance);
+            if (forwardX >= n - x) {
+              return new int[] {oldStart + forwardX, newStart + forwardY};
+            }
+          }
+        }
+      }
+    }
+    return null;
+  }
+
   private boolean isSubsequence(
       String fileName, List<MockFileObject> smallerFile, List<MockFileObject> largerFile) {
     // track length of subsequence
     int i = 0;
     for (int j = 0; j < largerFile.size(); j++) {
-      if (i < smallerFile.size() && largerFile.get(i).equals(smallerFile.get(i))) {
+      if (i < smallerFile.size() && largerFile.get(j).equals(smallerFile.get(i))) {
         i++;
       }
     }
@@ -148,4 +364,192 @@ public class GitDiffHelper {
     fileConflicts.put(fileName, files);
     return null;
   }
+
+  /**
+   * Merges every file of two filemaps. Files both sides have are merged with {@link #mergeFile}. A
+   * file only one side has is kept if there is no merge base or the merge base does not have it
+   * either, since it was added on that side. Otherwise it was deleted on the other side: it is
+   * deleted if the side that has it left it as it was in the merge base, and is a conflict between
+   * the change and the deletion if not.
+   *
+   * @param localFileMap - local filemap
+   * @param incomingFileMap - incoming filemap
+   * @param baseFileMap - file map of the merge base commit; null if there is no merge base
+   * @return - map of filenames to merged files; deleted files and files with conflicts are left
+   *     out, and the conflicts are recorded in {@link #getFileConflicts()}
+   */
+  public Map<String, List<MockFileObject>> mergeFileMaps(
+      Map<String, List<MockFileObject>> localFileMap,
+      Map<String, List<MockFileObject>> incomingFileMap,
+      Map<String, List<MockFileObject>> baseFileMap) {
+    detectNewFiles(localFileMap, incomingFileMap);
+    Set<String> fileNames = new LinkedHashSet<>(localFileMap.keySet());
+    fileNames.addAll(incomingFileMap.keySet());
+    Map<String, List<MockFileObject>> mergedFileMap = new HashMap<>();
+    for (String fileName : fileNames) {
+      List<MockFileObject> localFile = localFileMap.get(fileName);
+      List<MockFileObject> incomingFile = incomingFileMap.get(fileName);
+      List<MockFileObject> mergedFile;
+      if (localFile != null && incomingFile != null) {
+        mergedFile = mergeFile(fileName, baseFileMap, localFile, incomingFile);
+      } else {
+        mergedFile = mergeOneSidedFile(fileName, baseFileMap, localFile, incomingFile);
+      }
+      if (mergedFile != null) {
+        mergedFileMap.put(fileName, mergedFile);
+      }
+    }
+    return mergedFileMap;
+  }
+
+  /**
+   * Merges a file that only one side has, as described in {@link #mergeFileMaps}.
+   *
+   * @param fileName - name of file being merged
+   * @param baseFileMap - file map of the merge base commit; null if there is no merge base
+   * @param localFile - local version of the file; null if local does not have it
+   * @param incomingFile - incoming version of the file; null if incoming does not have it
+   * @return - the kept file, or null if it was deleted or there was a conflict
+   */
+  private List<MockFileObject> mergeOneSidedFile(
+      String fileName,
+      Map<String, List<MockFileObject>> baseFileMap,
+      List<MockFileObject> localFile,
+      List<MockFileObject> incomingFile) {
+    List<MockFileObject> presentFile = localFile != null ? localFile : incomingFile;
+    if (baseFileMap == null || !baseFileMap.containsKey(fileName)) {
+      return presentFile;
+    }
+    if (presentFile.equals(baseFileMap.get(fileName))) {
+      return null;
+    }
+    // changed on one side and deleted on the other; the deleted side is shown as an empty file
+    Map<String, List<MockFileObject>> files = new HashMap<>();
+    files.put("local", localFile != null ? localFile : List.of());
+    files.put("incoming", incomingFile != null ? incomingFile : List.of());
+    fileConflicts.put(fileName, files);
+    return null;
+  }
+
+  /**
+   * Merges local and incoming versions of a file, three-way against the merge base's version when a
+   * merge base is known and two-way otherwise. A file missing from the merge base was added on both
+   * sides, so it is merged against an empty file.
+   *
+   * @param fileName - name of file being merged
+   * @param baseFileMap - file map of the merge base commit; null if there is no merge base
+   * @param localFile - local version of the file
+   * @param incomingFile - incoming version of the file
+   * @return - the merged file, or null if there were conflicts
+   */
+  public List<MockFileObject> mergeFile(
+      String fileName,
+      Map<String, List<MockFileObject>> baseFileMap,
+      List<MockFileObject> localFile,
+      List<MockFileObject> incomingFile) {
+    if (baseFileMap == null) {
+      return autoMergeIfPossible(fileName, localFile, incomingFile);
+    }
+    return threeWayMerge(
+        fileName, baseFileMap.getOrDefault(fileName, List.of()), localFile, incomingFile);
+  }
+
+  /**
+   * Merges local and incoming versions of a file against the version in their common ancestor
+   * (diff3). Sections changed on only one side take that side's change, and sections changed the
+   * same way on both sides are taken once. Only sections changed differently on each side are
+   * conflicts; these are recorded in both {@link #getFileConflicts()} and {@link
+   * #getFileConflictHunks()}.
+   *
+   * @param fileName - name of file being merged
+   * @param baseFile - version of the file in the merge base
+   * @param localFile - local version of the file
+   * @param incomingFile - incoming version of the file
+   * @return - the merged file, or null if there were conflicts
+   */
+  public List<MockFileObject> threeWayMerge(
+      String fileName,
+      List<MockFileObject> baseFile,
+      List<MockFileObject> localFile,
+      List<MockFileObject> incomingFile) {
+    // if only one side changed, or both changed the same way, no need to look at sections
+    if (localFile.equals(incomingFile) || incomingFile.equals(baseFile)) {
+      return localFile;
+    }
+    if (localFile.equals(baseFile)) {
+      return incomingFile;
+    }
+
+    // positions of each base object in the local and incoming versions; -1 if changed
+    int[] toLocal = matchedIndexes(diffFile(baseFile, localFile), baseFile.size());
+    int[] toIncoming = matchedIndexes(diffFile(baseFile, incomingFile), baseFile.size());
+
+    List<MockFileObject> merged = new ArrayList<>();
+    List<Map<String, Object>> hunks = new ArrayList<>();
+    int base = 0;
+    int local = 0;
+    int incoming = 0;
+    while (true) {
+      // find the next base object left unchanged on both sides
+      int nextBase = base;
+      while (nextBase < baseFile.size() && (toLocal[nextBase] < 0 || toIncoming[nextBase] < 0)) {
+        nextBase++;
+      }
+      int nextLocal = nextBase < baseFile.size() ? toLocal[nextBase] : localFile.size();
+      int nextIncoming = nextBase < baseFile.size() ? toIncoming[nextBase] : incomingFile.size();
+
+      // resolve the section between the previous and next unchanged objects
+      List<MockFileObject> baseSection = baseFile.subList(base, nextBase);
+      List<MockFileObject> localSection = localFile.subList(local, nextLocal);
+      List<MockFileObject> incomingSection = incomingFile.subList(incoming, nextIncoming);
+      if (localSection.equals(baseSection) || localSection.equals(incomingSection)) {
+        merged.addAll(incomingSection);
+      } else if (incomingSection.equals(baseSection)) {
+        merged.addAll(localSection);
+      } else {
+        Map<String, Object> hunk = new HashMap<>();
+        hunk.put("start", merged.size());
+        hunk.put("base", new ArrayList<>(baseSection));
+        hunk.put("local", new ArrayList<>(localSection));
+        hunk.put("incoming", new ArrayList<>(incomingSection));
+        hunks.add(hunk);
+      }
+
+      if (nextBase == baseFile.size()) {
+        break;
+      }
+      merged.add(localFile.get(nextLocal));
+      base = nextBase + 1;
+      local = nextLocal + 1;
+      incoming = nextIncoming + 1;
+    }
+
+    if (hunks.isEmpty()) {
+      return merged;
+    }
+    Map<String, List<MockFileObject>> files = new HashMap<>();
+    files.put("local", localFile);
+    files.put("incoming", incomingFile);
+    fileConflicts.put(fileName, files);
+    fileConflictHunks.put(fileName, hunks);
+    return null;
+  }
+
+  /**
+   * Maps each object index in the old file to its index in the new file, using an edit script.
+   *
+   * @param script - edit script from the old file to the new file
+   * @param oldSize - number of objects in the old file
+   * @return - array of new indexes by old index; -1 where the object was deleted
+   */
+  private static int[] matchedIndexes(List<DiffOperation> script, int oldSize) {
+    int[] matched = new int[oldSize];
+    Arrays.fill(matched, -1);
+    for (DiffOperation operation : script) {
+      if (operation.type() == DiffOperation.Type.KEEP) {
+        matched[operation.oldIndex()] = operation.newIndex();
+      }
+    }
+    return matched;
+  }
 }
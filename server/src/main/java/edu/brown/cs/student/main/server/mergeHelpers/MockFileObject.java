@@ -2,17 +2,83 @@ package edu.brown.cs.student.main.server.mergeHelpers;
 
 import java.util.Objects;
 
-public record MockFileObject(String imgStr, String imgName) {
+/**
+ * One object in a file: an image and its name. Objects are equal when both their image and name
+ * are, and each object carries a 64-bit hash of both, computed once, so unequal objects are almost
+ * always told apart without comparing their (often long) image strings. Objects read in by the
+ * handlers are also interned per session (see {@link FileObjectInterner}), so equal objects are
+ * usually the same instance and compare by identity.
+ */
+public final class MockFileObject {
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final String imgStr;
+  private final String imgName;
+  // computed on first use, since Moshi creates objects without calling the constructor; 0 if not
+  private transient long hash;
+
+  public MockFileObject(String imgStr, String imgName) {
+    this.imgStr = imgStr;
+    this.imgName = imgName;
+  }
+
+  public String imgStr() {
+    return imgStr;
+  }
+
+  public String imgName() {
+    return imgName;
+  }
+
+  /**
+   * Returns a 64-bit FNV-1a hash of the object's image and name.
+   *
+   * @return - the hash, never 0
+   */
+  public long hash() {
+    long h = hash;
+    if (h == 0) {
+      h = FNV_OFFSET_BASIS;
+      h = mix(h, imgStr);
+      // separate the fields so ("ab", "c") and ("a", "bc") hash differently
+      h = (h ^ 0xffff) * FNV_PRIME;
+      h = mix(h, imgName);
+      if (h == 0) {
+        h = 1;
+      }
+      hash = h;
+    }
+    return h;
+  }
+
+  private static long mix(long h, String value) {
+    if (value == null) {
+      return (h ^ 0xfffe) * FNV_PRIME;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      h = (h ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return h;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj) return true;
-    if (obj == null) return false;
-    MockFileObject other = (MockFileObject) obj;
-    return imgStr.equals(other.imgStr);
+    if (!(obj instanceof MockFileObject other)) return false;
+    return hash() == other.hash()
+        && Objects.equals(imgStr, other.imgStr)
+        && Objects.equals(imgName, other.imgName);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(imgStr, imgName);
+    long h = hash();
+    return (int) (h ^ (h >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return "MockFileObject[imgStr=" + imgStr + ", imgName=" + imgName + "]";
   }
 }
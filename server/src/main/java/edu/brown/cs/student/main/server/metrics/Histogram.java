@@ -0,0 +1,70 @@
+package edu.brown.cs.student.main.server.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations over fixed buckets, as a Prometheus histogram. Recording is lock-free,
+ * so any number of threads can record into one histogram at once; a scrape taken while they do may
+ * see some of the latest durations and not others.
+ */
+public class Histogram {
+
+  // upper bounds of the buckets in seconds; a final bucket holds everything slower
+  private static final double[] BOUNDS = {
+    0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  private final long[] boundsNanos = new long[BOUNDS.length];
+  private final LongAdder[] counts = new LongAdder[BOUNDS.length + 1];
+  private final LongAdder sumNanos = new LongAdder();
+
+  public Histogram() {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      boundsNanos[i] = (long) (BOUNDS[i] * 1e9);
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records one duration.
+   *
+   * @param nanos - duration in nanoseconds
+   */
+  public void record(final long nanos) {
+    int bucket = 0;
+    while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+      bucket++;
+    }
+    counts[bucket].increment();
+    sumNanos.add(nanos);
+  }
+
+  /**
+   * Writes the histogram's bucket, sum, and count samples in the Prometheus text format.
+   *
+   * @param out - scrape being written
+   * @param name - metric name, without the _bucket, _sum, or _count suffix
+   * @param labels - labels of this histogram, already formatted, e.g. {@code endpoint="gitpush"}
+   */
+  void write(final StringBuilder out, final String name, final String labels) {
+    String prefix = labels.isEmpty() ? "" : labels + ",";
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i].sum();
+      String bound = i < BOUNDS.length ? Double.toString(BOUNDS[i]) : "+Inf";
+      out.append(name)
+          .append("_bucket{")
+          .append(prefix)
+          .append("le=\"")
+          .append(bound)
+          .append("\"} ")
+          .append(cumulative)
+          .append('\n');
+    }
+    String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+    out.append(name).append("_sum").append(suffix).append(sumNanos.sum() / 1e9).append('\n');
+    out.append(name).append("_count").append(suffix).append(cumulative).append('\n');
+  }
+}
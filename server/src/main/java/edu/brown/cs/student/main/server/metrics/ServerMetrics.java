@@ -0,0 +1,184 @@
+package edu.brown.cs.student.main.server.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import spark.HaltException;
+import spark.Route;
+
+/**
+ * Counters and latency histograms for the server's endpoints and storage calls, written out in the
+ * Prometheus text format by {@link #scrape}.
+ *
+ * <p>Each endpoint wrapped by {@link #instrument} reports its latency, its requests by HTTP status,
+ * and how many of its requests are in flight. Each storage method reports, per layer of storage
+ * (see {@code InstrumentedStorage}), its calls, failures, latency, and the approximate size of the
+ * data sent to and read back from it. Everything is recorded with lock-free adders, so recording
+ * never holds up a request.
+ */
+public class ServerMetrics {
+
+  private static final String PREFIX = "git_happens_";
+
+  private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+  private final Map<StorageKey, StorageMetrics> storageMethods = new ConcurrentHashMap<>();
+
+  /** Metrics of one endpoint. */
+  private static final class EndpointMetrics {
+    private final Histogram latency = new Histogram();
+    private final LongAdder inFlight = new LongAdder();
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+  }
+
+  /** Metrics of one storage method at one layer. */
+  private static final class StorageMetrics {
+    private final Histogram latency = new Histogram();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+  }
+
+  private record StorageKey(String layer, String method) {}
+
+  /**
+   * Wraps an endpoint's route so each request through it is measured. The time covers the handler
+   * only, not filters that run before it.
+   *
+   * @param endpoint - name the endpoint is reported under
+   * @param route - route serving the endpoint
+   * @return route that serves requests with the given route and measures them
+   */
+  public Route instrument(final String endpoint, final Route route) {
+    EndpointMetrics metrics = endpoints.computeIfAbsent(endpoint, name -> new EndpointMetrics());
+    return (request, response) -> {
+      metrics.inFlight.increment();
+      long start = System.nanoTime();
+      int status = 500;
+      try {
+        Object body = route.handle(request, response);
+        status = response.status();
+        return body;
+      } catch (HaltException e) {
+        status = e.statusCode();
+        throw e;
+      } finally {
+        metrics.latency.record(System.nanoTime() - start);
+        metrics.statuses.computeIfAbsent(status, code -> new LongAdder()).increment();
+        metrics.inFlight.decrement();
+      }
+    };
+  }
+
+  /**
+   * Records one call to a storage method.
+   *
+   * @param layer - layer of storage called, e.g. {@code firestore}
+   * @param method - name of the method called
+   * @param nanos - how long the call took
+   * @param bytesWritten - approximate size of the data passed to the call
+   * @param bytesRead - approximate size of the data the call returned
+   * @param failed - whether the call threw
+   */
+  public void recordStorageCall(
+      final String layer,
+      final String method,
+      final long nanos,
+      final long bytesWritten,
+      final long bytesRead,
+      final boolean failed) {
+    StorageMetrics metrics =
+        storageMethods.computeIfAbsent(new StorageKey(layer, method), key -> new StorageMetrics());
+    metrics.latency.record(nanos);
+    metrics.bytesWritten.add(bytesWritten);
+    metrics.bytesRead.add(bytesRead);
+    if (failed) {
+      metrics.failures.increment();
+    }
+  }
+
+  /**
+   * Writes every metric in the Prometheus text exposition format, sorted by endpoint and method.
+   *
+   * @return the scrape
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder();
+    Map<String, EndpointMetrics> sortedEndpoints = new TreeMap<>(endpoints);
+
+    String requestDuration = PREFIX + "request_duration_seconds";
+    header(out, requestDuration, "histogram", "Time spent handling requests, by endpoint.");
+    sortedEndpoints.forEach(
+        (endpoint, metrics) ->
+            metrics.latency.write(out, requestDuration, label("endpoint", endpoint)));
+
+    String requests = PREFIX + "requests_total";
+    header(out, requests, "counter", "Requests handled, by endpoint and HTTP status.");
+    sortedEndpoints.forEach(
+        (endpoint, metrics) ->
+            new TreeMap<>(metrics.statuses)
+                .forEach(
+                    (status, count) ->
+                        sample(
+                            out,
+                            requests,
+                            label("endpoint", endpoint) + "," + label("status", status.toString()),
+                            count.sum())));
+
+    String inFlight = PREFIX + "requests_in_flight";
+    header(out, inFlight, "gauge", "Requests being handled right now, by endpoint.");
+    sortedEndpoints.forEach(
+        (endpoint, metrics) ->
+            sample(out, inFlight, label("endpoint", endpoint), metrics.inFlight.sum()));
+
+    Map<String, StorageMetrics> sortedMethods = new TreeMap<>();
+    storageMethods.forEach(
+        (key, metrics) ->
+            sortedMethods.put(
+                label("layer", key.layer()) + "," + label("method", key.method()), metrics));
+
+    String storageDuration = PREFIX + "storage_call_duration_seconds";
+    header(out, storageDuration, "histogram", "Time spent in storage calls, by layer and method.");
+    sortedMethods.forEach((labels, metrics) -> metrics.latency.write(out, storageDuration, labels));
+
+    String failures = PREFIX + "storage_call_failures_total";
+    header(out, failures, "counter", "Storage calls that threw, by layer and method.");
+    sortedMethods.forEach(
+        (labels, metrics) -> sample(out, failures, labels, metrics.failures.sum()));
+
+    String written = PREFIX + "storage_written_bytes_total";
+    header(out, written, "counter", "Approximate bytes passed to storage calls.");
+    sortedMethods.forEach(
+        (labels, metrics) -> sample(out, written, labels, metrics.bytesWritten.sum()));
+
+    String read = PREFIX + "storage_read_bytes_total";
+    header(out, read, "counter", "Approximate bytes returned by storage calls.");
+    sortedMethods.forEach((labels, metrics) -> sample(out, read, labels, metrics.bytesRead.sum()));
+
+    return out.toString();
+  }
+
+  private static void header(
+      final StringBuilder out, final String name, final String type, final String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(
+      final StringBuilder out, final String name, final String labels, final long value) {
+    out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+  }
+
+  /**
+   * Formats one label, escaping its value as the text format requires.
+   *
+   * @param name - label name
+   * @param value - label value
+   */
+  private static String label(final String name, final String value) {
+    return name
+        + "=\""
+        + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")
+        + "\"";
+  }
+}
@@ -0,0 +1,282 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A file of records that is only ever appended to. Each record is framed by its length and a CRC32
+ * of its bytes, so a record torn by a crash is detected when the log is opened and cut off, leaving
+ * every record that was fully written.
+ *
+ * <p>Appending and making records durable are separate steps so fsyncs can be shared: {@link
+ * #append} writes a record and returns its sequence number without syncing, and {@link #sync} waits
+ * until that record is on disk. Only one thread syncs at a time; threads arriving while a sync is
+ * running wait for the next one, which covers every record appended up to that point. Under load
+ * many appends are made durable by one fsync (group commit).
+ */
+public class AppendOnlyLog implements Closeable {
+
+  // length and checksum before each record
+  private static final int HEADER_BYTES = 8;
+
+  private final Path path;
+  private final boolean fsync;
+  private FileChannel channel;
+
+  // guarded by this
+  private long appended;
+
+  // guarded by syncLock; syncing is held by the one thread forcing (or replacing) the file
+  private final Object syncLock = new Object();
+  private long synced;
+  private boolean syncing;
+
+  /**
+   * Opens a log, creating the file if needed. A partly written record at the end of the file is
+   * removed.
+   *
+   * @param path - file holding the log
+   * @param fsync - whether {@link #sync} forces records to disk; off only where durability does not
+   *     matter, such as tests
+   * @throws IOException - if the file cannot be opened
+   */
+  public AppendOnlyLog(final Path path, final boolean fsync) throws IOException {
+    this.path = path;
+    this.fsync = fsync;
+    this.channel = open(path);
+    long end = validLength(channel);
+    if (end < channel.size()) {
+      channel.truncate(end);
+      channel.force(true);
+    }
+    channel.position(end);
+  }
+
+  private static FileChannel open(final Path path) throws IOException {
+    return FileChannel.open(
+        path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Finds where the last complete, uncorrupted record ends.
+   *
+   * @param channel - log file
+   * @return length of the valid part of the file
+   */
+  private static long validLength(final FileChannel channel) throws IOException {
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (true) {
+      header.clear();
+      if (channel.read(header, position) < HEADER_BYTES) {
+        return position;
+      }
+      header.flip();
+      int length = header.getInt();
+      int checksum = header.getInt();
+      if (length < 0 || position + HEADER_BYTES + length > channel.size()) {
+        return position;
+      }
+      ByteBuffer body = ByteBuffer.allocate(length);
+      channel.read(body, position + HEADER_BYTES);
+      if (checksum != checksum(body.array())) {
+        return position;
+      }
+      position += HEADER_BYTES + length;
+    }
+  }
+
+  private static int checksum(final byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Reads every record in the log, oldest first.
+   *
+   * @return record bytes
+   * @throws IOException - if the file cannot be read
+   */
+  public synchronized List<byte[]> readAll() throws IOException {
+    List<byte[]> records = new ArrayList<>();
+    long end = channel.position();
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (position < end) {
+      header.clear();
+      channel.read(header, position);
+      header.flip();
+      int length = header.getInt();
+      ByteBuffer body = ByteBuffer.allocate(length);
+      channel.read(body, position + HEADER_BYTES);
+      records.add(body.array());
+      position += HEADER_BYTES + length;
+    }
+    return records;
+  }
+
+  /**
+   * Writes a record to the end of the log. The record is not durable until {@link #sync} returns
+   * for its sequence number.
+   *
+   * @param record - bytes to append
+   * @return the record's sequence number
+   * @throws IOException - if the record cannot be written
+   */
+  public synchronized long append(final byte[] record) throws IOException {
+    ByteBuffer frame = frame(record);
+    while (frame.hasRemaining()) {
+      channel.write(frame);
+    }
+    return ++appended;
+  }
+
+  private static ByteBuffer frame(final byte[] record) {
+    ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + record.length);
+    frame.putInt(record.length).putInt(checksum(record)).put(record).flip();
+    return frame;
+  }
+
+  /**
+   * Waits until the record with the given sequence number, and every record before it, is on disk.
+   *
+   * @param sequence - sequence number returned by {@link #append}
+   * @throws IOException - if the file cannot be synced
+   */
+  public void sync(final long sequence) throws IOException {
+    if (!claimSync(sequence)) {
+      return;
+    }
+    // this thread syncs everything appended so far on behalf of every waiting thread
+    long target = 0;
+    boolean forced = false;
+    try {
+      FileChannel toSync;
+      synchronized (this) {
+        target = appended;
+        toSync = channel;
+      }
+      if (fsync) {
+        toSync.force(false);
+      }
+      forced = true;
+    } finally {
+      releaseSync(forced ? target : 0);
+    }
+  }
+
+  /**
+   * Waits for any running sync to finish, then claims the right to sync unless the record is
+   * already durable.
+   *
+   * @param sequence - record that must be durable
+   * @return true if the caller must now sync and then call {@link #releaseSync}
+   */
+  private boolean claimSync(final long sequence) throws IOException {
+    synchronized (syncLock) {
+      while (syncing && synced < sequence) {
+        try {
+          syncLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted waiting for log sync", e);
+        }
+      }
+      if (synced >= sequence) {
+        return false;
+      }
+      syncing = true;
+      return true;
+    }
+  }
+
+  /**
+   * Records that every record up to the given sequence number is durable and wakes waiting threads.
+   *
+   * @param durable - sequence number now on disk
+   */
+  private void releaseSync(final long durable) {
+    synchronized (syncLock) {
+      synced = Math.max(synced, durable);
+      syncing = false;
+      syncLock.notifyAll();
+    }
+  }
+
+  /**
+   * Replaces the whole log with the given records, written to a new file that is synced and then
+   * moved over the old one, so a crash leaves either the old log or the new one. The records must
+   * include the effect of everything appended so far.
+   *
+   * @param records - records the new log holds, oldest first
+   * @throws IOException - if the new log cannot be written
+   */
+  public void rewrite(final List<byte[]> records) throws IOException {
+    // no sync may run on the old file while it is replaced
+    claimSync(Long.MAX_VALUE);
+    long durable = 0;
+    try {
+      synchronized (this) {
+        Path temporary = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out =
+            FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+          for (byte[] record : records) {
+            ByteBuffer frame = frame(record);
+            while (frame.hasRemaining()) {
+              out.write(frame);
+            }
+          }
+          out.force(true);
+        }
+        channel.close();
+        Files.move(
+            temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open(path);
+        channel.position(channel.size());
+        // everything appended before the rewrite is in the synced file
+        durable = appended;
+      }
+    } finally {
+      releaseSync(durable);
+    }
+  }
+
+  /**
+   * Returns the number of bytes in the log.
+   *
+   * @return size of the log file
+   * @throws IOException - if the size cannot be read
+   */
+  public synchronized long size() throws IOException {
+    return channel.position();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Closes the log and deletes its file.
+   *
+   * @throws IOException - if the file cannot be deleted
+   */
+  public synchronized void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(path);
+  }
+}
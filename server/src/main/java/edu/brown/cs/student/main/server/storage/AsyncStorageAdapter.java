@@ -0,0 +1,128 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link AsyncStorageInterface} over any blocking {@link StorageInterface}, which runs each read on
+ * an executor. This is the default for storage without a non-blocking client of its own, such as
+ * {@link MockStorage}, {@link InMemoryStorage}, or {@link LocalDiskStorage}.
+ */
+public class AsyncStorageAdapter implements AsyncStorageInterface {
+
+  // reads block on the storage, so they get their own threads rather than the common pool
+  private static final ExecutorService sharedExecutor =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "storage-read");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final StorageInterface storage;
+  private final Executor executor;
+
+  /** A blocking storage read. */
+  @FunctionalInterface
+  private interface Read<T> {
+    T run() throws Exception;
+  }
+
+  /**
+   * Returns the thread pool adapters run blocking reads on by default.
+   *
+   * @return the shared read executor
+   */
+  static Executor sharedExecutor() {
+    return sharedExecutor;
+  }
+
+  /**
+   * Creates an adapter that runs reads on a thread pool shared by all adapters.
+   *
+   * @param storage - storage to read from
+   */
+  public AsyncStorageAdapter(final StorageInterface storage) {
+    this(storage, sharedExecutor);
+  }
+
+  /**
+   * Creates an adapter that runs reads on the given executor.
+   *
+   * @param storage - storage to read from
+   * @param executor - runs each read
+   */
+  public AsyncStorageAdapter(final StorageInterface storage, final Executor executor) {
+    if (storage == null || executor == null) {
+      throw new IllegalArgumentException(
+          "AsyncStorageAdapter: storage and executor cannot be null");
+    }
+    this.storage = storage;
+    this.executor = executor;
+  }
+
+  /**
+   * Runs a blocking read on the executor.
+   *
+   * @param read - read to run
+   * @return future of the read's result, failing with whatever the read throws
+   */
+  private <T> CompletableFuture<T> supply(final Read<T> read) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return read.run();
+          } catch (RuntimeException e) {
+            throw e;
+          } catch (Exception e) {
+            throw new CompletionException(e);
+          }
+        },
+        executor);
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getLatestLocalCommit(
+      String session_id, String user_id, String branch_id) {
+    return supply(() -> storage.getLatestLocalCommit(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getLatestRemoteCommit(
+      String session_id, String branch_id) {
+    return supply(() -> storage.getLatestRemoteCommit(session_id, branch_id));
+  }
+
+  @Override
+  public CompletableFuture<List<Map<String, Object>>> getStagedCommits(
+      String session_id, String user_id, String branch_id) {
+    return supply(() -> storage.getStagedCommits(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public CompletableFuture<String> getLatestLocalChanges(
+      String session_id, String user_id, String branch_id) {
+    return supply(() -> storage.getLatestLocalChanges(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public CompletableFuture<BranchSnapshot> getBranchSnapshot(
+      String session_id, String user_id, String branch_id) {
+    return supply(() -> storage.getBranchSnapshot(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public CompletableFuture<List<String>> getAllRemoteBranches(String session_id) {
+    return supply(() -> storage.getAllRemoteBranches(session_id));
+  }
+
+  @Override
+  public CompletableFuture<List<String>> getAllLocalBranches(String session_id, String user_id) {
+    return supply(() -> storage.getAllLocalBranches(session_id, user_id));
+  }
+}
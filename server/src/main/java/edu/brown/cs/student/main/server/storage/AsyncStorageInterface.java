@@ -0,0 +1,189 @@
+package edu.brown.cs.student.main.server.storage;
+
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Non-blocking view of the reads in {@link StorageInterface}. Each method starts its read and
+ * returns straight away, so a caller can start every read it needs before waiting on any of them,
+ * and a request that needs several independent reads waits for the slowest one rather than for all
+ * of them in turn. Get one from {@link StorageInterface#async()}; decorators return a view that
+ * applies the same caching, journaling, or metrics as their blocking methods.
+ *
+ * <p>Futures fail with the same exceptions the matching {@link StorageInterface} method throws;
+ * {@link #await} waits for a future and rethrows them the same way the blocking method would.
+ */
+public interface AsyncStorageInterface {
+
+  /**
+   * Starts reading the last staged or pushed commit on a local branch.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch id for currently checked out branch
+   * @return - future of the map of commit data for the local branch's head
+   */
+  CompletableFuture<Map<String, Object>> getLatestLocalCommit(
+      String session_id, String user_id, String branch_id);
+
+  /**
+   * Starts reading the head commit of a branch in the remote repository.
+   *
+   * @param session_id - unique session id
+   * @param branch_id - name of local branch that pushes to the remote repository
+   * @return - future of the map of commit data for the remote branch's head
+   */
+  CompletableFuture<Map<String, Object>> getLatestRemoteCommit(String session_id, String branch_id);
+
+  /**
+   * Starts reading the staged commits on a local branch.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - currently checked out branch
+   * @return - future of the list of staged commit data maps
+   */
+  CompletableFuture<List<Map<String, Object>>> getStagedCommits(
+      String session_id, String user_id, String branch_id);
+
+  /**
+   * Starts reading the file map json of changes added but not yet committed.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - currently checked out branch
+   * @return - future of the json string of the changed file map; null if there are no changes
+   */
+  CompletableFuture<String> getLatestLocalChanges(
+      String session_id, String user_id, String branch_id);
+
+  /**
+   * Starts reading the state of a local branch and the remote branch it pushes to, as {@link
+   * StorageInterface#getBranchSnapshot} does.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch id of the local and remote branch
+   * @return - future of the snapshot of the branch's state
+   */
+  CompletableFuture<BranchSnapshot> getBranchSnapshot(
+      String session_id, String user_id, String branch_id);
+
+  /**
+   * Starts listing the branches in the remote repository.
+   *
+   * @param session_id - unique session id
+   * @return - future of the list of remote branch names
+   */
+  CompletableFuture<List<String>> getAllRemoteBranches(String session_id);
+
+  /**
+   * Starts listing the branches in a user's local repository.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @return - future of the list of local branch names
+   */
+  CompletableFuture<List<String>> getAllLocalBranches(String session_id, String user_id);
+
+  /**
+   * Finds updates stored remotely but not in the user's local repository, as {@link
+   * StorageInterface#fetch} does. This default reads both branch lists and both heads at once.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch id for currently checked out branch
+   * @return - future of the map of newly added branches and head commit updates
+   */
+  default CompletableFuture<Map<String, Object>> fetch(
+      String session_id, String user_id, String branch_id) {
+    if (session_id == null || user_id == null || branch_id == null) {
+      return CompletableFuture.failedFuture(
+          new IllegalArgumentException("fetch: session_id, user_id, and branch_id cannot be null"));
+    }
+    CompletableFuture<List<String>> remoteBranches = getAllRemoteBranches(session_id);
+    CompletableFuture<List<String>> localBranches = getAllLocalBranches(session_id, user_id);
+    CompletableFuture<Map<String, Object>> localHead =
+        getLatestLocalCommit(session_id, user_id, branch_id);
+    CompletableFuture<Map<String, Object>> remoteHead =
+        getLatestRemoteCommit(session_id, branch_id);
+    return CompletableFuture.allOf(remoteBranches, localBranches, localHead, remoteHead)
+        .thenApply(
+            done ->
+                fetchedChanges(
+                    remoteBranches.join(),
+                    localBranches.join(),
+                    localHead.join().get(FIELD_COMMIT_ID),
+                    remoteHead.join().get(FIELD_COMMIT_ID)));
+  }
+
+  /**
+   * Builds the result of a fetch from the reads it needs.
+   *
+   * @param remoteBranches - names of the branches in the remote repository
+   * @param localBranches - names of the branches in the user's local repository
+   * @param localCommitId - id of the local branch's head
+   * @param remoteCommitId - id of the remote branch's head
+   * @return - a map of newly added branches info and head commit updates
+   */
+  static Map<String, Object> fetchedChanges(
+      final List<String> remoteBranches,
+      final List<String> localBranches,
+      final Object localCommitId,
+      final Object remoteCommitId) {
+    Map<String, Object> fetchedChanges = new HashMap<>();
+    // check if there are new branches
+    List<Map<String, Object>> newBranches = new ArrayList<>();
+    for (String branch : remoteBranches) {
+      if (!localBranches.contains(branch)) {
+        Map<String, Object> newBranch = new HashMap<>();
+        newBranch.put(FIELD_BRANCH_ID, branch);
+        newBranch.put(FIELD_REMOTE_BRANCH_ID, "origin/" + branch);
+        newBranches.add(newBranch);
+      }
+    }
+    fetchedChanges.put(FIELD_NEW_BRANCHES, newBranches);
+
+    // check if remote head has been updated
+    Map<String, Object> commitUpdates = new HashMap<>();
+    if (!Objects.equals(localCommitId, remoteCommitId)) {
+      commitUpdates.put(FIELD_OLD_COMMIT_ID, localCommitId);
+      commitUpdates.put(FIELD_NEW_COMMIT_ID, remoteCommitId);
+    }
+    fetchedChanges.put(FIELD_COMMIT_UPDATES, commitUpdates);
+    return fetchedChanges;
+  }
+
+  /**
+   * Waits for a read to finish. Unchecked failures, such as an {@link IllegalArgumentException} for
+   * a null id, are rethrown as they are; others are wrapped in an ExecutionException, matching the
+   * blocking {@link StorageInterface} methods.
+   *
+   * @param future - read to wait for
+   * @return - the result of the read
+   * @throws ExecutionException - if the read failed
+   * @throws InterruptedException - if interrupted while waiting
+   */
+  static <T> T await(final CompletableFuture<T> future)
+      throws ExecutionException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof ExecutionException executionException) {
+        throw executionException;
+      }
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,392 @@
+package edu.brown.cs.student.main.server.storage;
+
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import com.google.cloud.firestore.Blob;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.mergeHelpers.FileMapCodec;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import okio.Buffer;
+
+/**
+ * Content-addressed store for file contents. Rather than embedding a full file map json in every
+ * commit, each file's contents are stored once per session as a blob keyed by the hash of those
+ * contents, and commits only hold a map of filename to blob hash. Unchanged files are therefore
+ * shared by every commit, branch, and user in a session.
+ *
+ * <p>Commits are dehydrated (file map replaced by hashes) before they are written and hydrated
+ * (file map rebuilt from blobs) after they are read, so callers of {@link FirebaseUtilities} still
+ * only ever see {@code file_map_json}. Commits written before this store existed have no hashes and
+ * are passed through untouched.
+ *
+ * <p>Blobs are stored in the compact binary encoding of {@link FileMapCodec} and addressed by the
+ * hash of that encoding, so the same contents get the same blob however their json was formatted.
+ * Blobs written as json text before the encoding existed are still read.
+ */
+public class BlobStore {
+
+  // number of blobs kept in memory across all sessions
+  private static final int DEFAULT_CACHE_SIZE = 10_000;
+  // Firestore's limit on writes in a single batch
+  private static final int MAX_BATCH_WRITES = 500;
+
+  private static final JsonAdapter<List<MockFileObject>> fileAdapter =
+      new Moshi.Builder()
+          .build()
+          .adapter(Types.newParameterizedType(List.class, MockFileObject.class));
+
+  private final Firestore db;
+
+  // blob contents by "session_id/hash"; a hit also means the blob is already stored
+  private final Cache<String, String> blobCache;
+
+  /**
+   * Constructs a BlobStore over the given Firestore instance.
+   *
+   * @param db the Firestore instance blobs are stored in
+   */
+  public BlobStore(Firestore db) {
+    this(db, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Constructs a BlobStore over the given Firestore instance.
+   *
+   * @param db the Firestore instance blobs are stored in
+   * @param cacheSize maximum number of blobs kept in memory
+   */
+  public BlobStore(Firestore db, int cacheSize) {
+    this.db = db;
+    this.blobCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+  }
+
+  /**
+   * Returns the DocumentReference to a blob in a session.
+   *
+   * @param session_id the session ID
+   * @param hash the hash of the blob's contents
+   * @return a reference to the blob document
+   */
+  private DocumentReference blobRef(final String session_id, final String hash) {
+    return db.collection(COLLECTION_SESSIONS)
+        .document(session_id)
+        .collection(COLLECTION_BLOBS)
+        .document(hash);
+  }
+
+  private static String cacheKey(final String session_id, final String hash) {
+    return session_id + "/" + hash;
+  }
+
+  /**
+   * Returns a copy of the commit to be written to Firestore, with its file map json replaced by a
+   * map of filename to blob hash. Any blobs not already known to be stored are written first; since
+   * blobs are addressed by their contents, writing one that is never referenced is harmless.
+   *
+   * @param session_id the session ID
+   * @param commit the commit to dehydrate
+   * @return the commit to store
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  public Map<String, Object> dehydrate(final String session_id, final Map<String, Object> commit)
+      throws ExecutionException, InterruptedException {
+    return dehydrateAll(session_id, List.of(commit)).get(0);
+  }
+
+  /**
+   * Dehydrates each commit in a list, writing all new blobs in batches.
+   *
+   * @param session_id the session ID
+   * @param commits the commits to dehydrate
+   * @return the commits to store, in the same order
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  public List<Map<String, Object>> dehydrateAll(
+      final String session_id, final List<Map<String, Object>> commits)
+      throws ExecutionException, InterruptedException {
+    final Map<String, NewBlob> newBlobs = new LinkedHashMap<>();
+    final List<Map<String, Object>> stored = new ArrayList<>(commits.size());
+    for (Map<String, Object> commit : commits) {
+      final Object fileMapJson = commit.get(FIELD_FILE_MAP_JSON);
+      if (!(fileMapJson instanceof String)) {
+        stored.add(commit);
+        continue;
+      }
+      final Map<String, String> files;
+      try {
+        files = splitFileMap((String) fileMapJson);
+      } catch (IllegalArgumentException e) {
+        // not a file map object, store it as is
+        stored.add(commit);
+        continue;
+      }
+      final Map<String, Object> fileHashes = new LinkedHashMap<>();
+      for (Map.Entry<String, String> file : files.entrySet()) {
+        final String contents = file.getValue();
+        final byte[] encoded = encodeContents(contents);
+        final String hash = encoded == null ? hash(contents) : hash(encoded);
+        fileHashes.put(file.getKey(), hash);
+        if (blobCache.getIfPresent(cacheKey(session_id, hash)) == null) {
+          newBlobs.put(
+              hash,
+              new NewBlob(
+                  encoded == null
+                      ? Map.of(FIELD_BLOB_CONTENTS, contents)
+                      : Map.of(FIELD_BLOB_BINARY, Blob.fromBytes(encoded)),
+                  contents));
+        }
+      }
+      final Map<String, Object> dehydrated = new HashMap<>(commit);
+      dehydrated.remove(FIELD_FILE_MAP_JSON);
+      dehydrated.put(FIELD_FILE_HASHES, fileHashes);
+      stored.add(dehydrated);
+    }
+    writeBlobs(session_id, newBlobs);
+    return stored;
+  }
+
+  /**
+   * A blob to be written: the fields of its document, and the json of its contents to cache.
+   *
+   * @param document fields of the blob's document
+   * @param contents json of the file's contents
+   */
+  private record NewBlob(Map<String, Object> document, String contents) {}
+
+  /**
+   * Encodes the json of a file's contents with {@link FileMapCodec}.
+   *
+   * @param contents json of a file's contents
+   * @return the encoding, or null if the json is not a list of file objects and must be stored as
+   *     text
+   */
+  private static byte[] encodeContents(final String contents) {
+    try {
+      final List<MockFileObject> file = fileAdapter.fromJson(contents);
+      return file == null || file.contains(null) ? null : FileMapCodec.encodeFile(file);
+    } catch (IOException | JsonDataException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes blobs to Firestore in batches, caching each once its batch has committed.
+   *
+   * @param session_id the session ID
+   * @param blobs blobs to write by hash
+   */
+  private void writeBlobs(final String session_id, final Map<String, NewBlob> blobs)
+      throws ExecutionException, InterruptedException {
+    final List<Map.Entry<String, NewBlob>> entries = new ArrayList<>(blobs.entrySet());
+    for (int start = 0; start < entries.size(); start += MAX_BATCH_WRITES) {
+      final List<Map.Entry<String, NewBlob>> chunk =
+          entries.subList(start, Math.min(entries.size(), start + MAX_BATCH_WRITES));
+      final WriteBatch batch = db.batch();
+      for (Map.Entry<String, NewBlob> blob : chunk) {
+        batch.set(blobRef(session_id, blob.getKey()), blob.getValue().document());
+      }
+      batch.commit().get();
+      for (Map.Entry<String, NewBlob> blob : chunk) {
+        blobCache.put(cacheKey(session_id, blob.getKey()), blob.getValue().contents());
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of a stored commit with its file map json rebuilt from blobs.
+   *
+   * @param session_id the session ID
+   * @param commit the stored commit; may be null
+   * @return the hydrated commit, or null if the commit was null
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  public Map<String, Object> hydrate(final String session_id, final Map<String, Object> commit)
+      throws ExecutionException, InterruptedException {
+    if (commit == null) {
+      return null;
+    }
+    return hydrateAll(session_id, List.of(commit)).get(0);
+  }
+
+  /**
+   * Returns copies of stored commits with their file map json rebuilt from blobs. Blobs not in
+   * memory are fetched with a single batched read, and each distinct blob is fetched at most once.
+   *
+   * @param session_id the session ID
+   * @param commits the stored commits
+   * @return the hydrated commits, in the same order
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  public List<Map<String, Object>> hydrateAll(
+      final String session_id, final List<Map<String, Object>> commits)
+      throws ExecutionException, InterruptedException {
+    // gather every blob the commits need, reading those not already in memory
+    final Map<String, String> blobs = new HashMap<>();
+    final Set<String> missing = new LinkedHashSet<>();
+    for (Map<String, Object> commit : commits) {
+      for (String hash : fileHashesOf(commit).values()) {
+        final String contents = blobCache.getIfPresent(cacheKey(session_id, hash));
+        if (contents != null) {
+          blobs.put(hash, contents);
+        } else {
+          missing.add(hash);
+        }
+      }
+    }
+    blobs.putAll(fetchBlobs(session_id, missing));
+
+    final List<Map<String, Object>> hydrated = new ArrayList<>(commits.size());
+    for (Map<String, Object> commit : commits) {
+      if (!commit.containsKey(FIELD_FILE_HASHES)) {
+        // stored before blobs existed, already holds its file map
+        hydrated.add(commit);
+        continue;
+      }
+      final Map<String, String> files = new LinkedHashMap<>();
+      for (Map.Entry<String, String> file : fileHashesOf(commit).entrySet()) {
+        final String contents = blobs.get(file.getValue());
+        if (contents == null) {
+          throw new IllegalStateException(
+              "hydrate: missing blob " + file.getValue() + " for file " + file.getKey());
+        }
+        files.put(file.getKey(), contents);
+      }
+      final Map<String, Object> full = new HashMap<>(commit);
+      full.remove(FIELD_FILE_HASHES);
+      full.put(FIELD_FILE_MAP_JSON, joinFileMap(files));
+      hydrated.add(full);
+    }
+    return hydrated;
+  }
+
+  /**
+   * Reads the given blobs from Firestore in one batched read and caches them.
+   *
+   * @param session_id the session ID
+   * @param hashes hashes of the blobs to read
+   * @return blob contents by hash
+   */
+  private Map<String, String> fetchBlobs(final String session_id, final Set<String> hashes)
+      throws ExecutionException, InterruptedException {
+    final Map<String, String> fetched = new HashMap<>();
+    if (hashes.isEmpty()) {
+      return fetched;
+    }
+    final DocumentReference[] refs = new DocumentReference[hashes.size()];
+    int i = 0;
+    for (String hash : hashes) {
+      refs[i++] = blobRef(session_id, hash);
+    }
+    for (DocumentSnapshot snapshot : db.getAll(refs).get()) {
+      final Blob encoded = snapshot.getBlob(FIELD_BLOB_BINARY);
+      final String contents =
+          encoded != null
+              ? fileAdapter.toJson(FileMapCodec.decodeFile(encoded.toBytes()))
+              : snapshot.getString(FIELD_BLOB_CONTENTS);
+      if (contents != null) {
+        fetched.put(snapshot.getId(), contents);
+        blobCache.put(cacheKey(session_id, snapshot.getId()), contents);
+      }
+    }
+    return fetched;
+  }
+
+  /** Drops every cached blob for a session, used when the session is deleted. */
+  public void evictSession(final String session_id) {
+    final String prefix = session_id + "/";
+    blobCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+  }
+
+  private static Map<String, String> fileHashesOf(final Map<String, Object> commit) {
+    return CommitMaps.stringsOf(commit.get(FIELD_FILE_HASHES));
+  }
+
+  /**
+   * Hashes the json contents of a single file.
+   *
+   * @param contents json of a file's contents
+   * @return hex encoded SHA-256 hash
+   */
+  public static String hash(final String contents) {
+    return Hashing.sha256().hashString(contents, StandardCharsets.UTF_8).toString();
+  }
+
+  /**
+   * Hashes the binary encoding of a single file.
+   *
+   * @param encoded encoding of a file's contents
+   * @return hex encoded SHA-256 hash
+   */
+  public static String hash(final byte[] encoded) {
+    return Hashing.sha256().hashBytes(encoded).toString();
+  }
+
+  /**
+   * Splits a file map json object into the raw json of each file's contents, keyed by filename. The
+   * raw json is kept byte for byte so equal contents always hash the same.
+   *
+   * @param fileMapJson json object of filename to file contents
+   * @return raw json of each file's contents, in the order they appear
+   */
+  public static Map<String, String> splitFileMap(final String fileMapJson) {
+    final Map<String, String> files = new LinkedHashMap<>();
+    try (JsonReader reader = JsonReader.of(new Buffer().writeUtf8(fileMapJson))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String filename = reader.nextName();
+        files.put(filename, reader.nextSource().readUtf8());
+      }
+      reader.endObject();
+    } catch (IOException | JsonDataException e) {
+      throw new IllegalArgumentException("splitFileMap: invalid file map json: " + e.getMessage());
+    }
+    return files;
+  }
+
+  /**
+   * Joins the raw json of each file's contents back into a file map json object.
+   *
+   * @param files raw json of each file's contents, keyed by filename
+   * @return json object of filename to file contents
+   */
+  public static String joinFileMap(final Map<String, String> files) {
+    final Buffer buffer = new Buffer();
+    try (JsonWriter writer = JsonWriter.of(buffer)) {
+      writer.beginObject();
+      for (Map.Entry<String, String> file : files.entrySet()) {
+        writer.name(file.getKey());
+        writer.value(new Buffer().writeUtf8(file.getValue()));
+      }
+      writer.endObject();
+    } catch (IOException e) {
+      throw new IllegalStateException("joinFileMap: " + e.getMessage());
+    }
+    return buffer.readUtf8();
+  }
+}
@@ -4,6 +4,9 @@ import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
 
 import com.google.cloud.firestore.CollectionReference;
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +49,61 @@ public record BranchRef(CollectionReference branch) {
     return branch.document(DOC_ADD_CHANGES);
   }
 
+  /**
+   * Returns a reference to the collection holding one document per pushed commit, under the pushed
+   * commits document.
+   */
+  public CollectionReference pushedCommitLog() {
+    return pushedCommits().collection(COLLECTION_COMMITS);
+  }
+
+  /**
+   * Returns a reference to the pushed commit at the given position in the branch's history. Ids are
+   * zero-padded so documents also list in history order.
+   *
+   * @param sequence position of the commit, starting from 0 for the oldest
+   */
+  public DocumentReference pushedCommit(final long sequence) {
+    return pushedCommitLog().document(String.format("%010d", sequence));
+  }
+
+  /**
+   * Reads the number of pushed commits recorded in a pushed commits document snapshot. Branches
+   * stored before the commit log existed keep their commits in an array, which is counted instead.
+   *
+   * @param snapshot snapshot of a pushed commits document
+   * @return number of pushed commits
+   */
+  public static long commitCountOf(final DocumentSnapshot snapshot) {
+    if (snapshot.contains(FIELD_COMMITS)) {
+      return commitsOf(snapshot).size();
+    }
+    final Long count = snapshot.getLong(FIELD_COMMIT_COUNT);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Reads a commit map from a document in the pushed commit log.
+   *
+   * @param snapshot snapshot of a pushed commit document
+   * @return the commit, without its sequence number
+   */
+  public static Map<String, Object> commitOf(final DocumentSnapshot snapshot) {
+    final Map<String, Object> commit = snapshot.getData();
+    commit.remove(FIELD_SEQUENCE);
+    return commit;
+  }
+
+  /**
+   * Reads the list of commit maps stored in a staged or pushed commits document snapshot.
+   *
+   * @param snapshot snapshot of a staged or pushed commits document
+   * @return list of commits; empty if none
+   */
+  public static List<Map<String, Object>> commitsOf(final DocumentSnapshot snapshot) {
+    return CommitMaps.commitsOf(snapshot.get(FIELD_COMMITS));
+  }
+
   /**
    * Retrieves the list of pushed commit maps for this branch.
    *
@@ -53,8 +111,58 @@ public record BranchRef(CollectionReference branch) {
    */
   public List<Map<String, Object>> getPushedCommitsMap()
       throws ExecutionException, InterruptedException {
-    final Object data = pushedCommits().get().get().get(FIELD_COMMITS);
-    return data == null ? new ArrayList<>() : (List<Map<String, Object>>) data;
+    final DocumentSnapshot snapshot = pushedCommits().get().get();
+    if (snapshot.contains(FIELD_COMMITS)) {
+      // stored before the commit log existed
+      return commitsOf(snapshot);
+    }
+    return getPushedCommitsFrom(0, commitCountOf(snapshot));
+  }
+
+  /**
+   * Retrieves pushed commits in history order, starting from the given position.
+   *
+   * @param fromSequence position of the first commit to read
+   * @param count number of pushed commits on the branch; later log documents are ignored
+   * @return list of pushed commits, oldest first
+   */
+  public List<Map<String, Object>> getPushedCommitsFrom(final long fromSequence, final long count)
+      throws ExecutionException, InterruptedException {
+    final List<Map<String, Object>> commits = new ArrayList<>();
+    if (fromSequence >= count) {
+      return commits;
+    }
+    final List<QueryDocumentSnapshot> documents =
+        pushedCommitLog()
+            .whereGreaterThanOrEqualTo(FIELD_SEQUENCE, fromSequence)
+            .whereLessThan(FIELD_SEQUENCE, count)
+            .orderBy(FIELD_SEQUENCE)
+            .get()
+            .get()
+            .getDocuments();
+    for (QueryDocumentSnapshot document : documents) {
+      commits.add(commitOf(document));
+    }
+    return commits;
+  }
+
+  /**
+   * Retrieves one page of pushed commits, newest first. Start with the branch's commit count as the
+   * cursor, then pass the sequence number of the last commit on each page to read the next one.
+   *
+   * @param limit maximum number of commits to read
+   * @param beforeSequence only commits older than this position are read
+   * @return snapshots of the commit documents, newest first, each holding its sequence number
+   */
+  public List<QueryDocumentSnapshot> getPushedCommitsPage(
+      final int limit, final long beforeSequence) throws ExecutionException, InterruptedException {
+    return pushedCommitLog()
+        .whereLessThan(FIELD_SEQUENCE, beforeSequence)
+        .orderBy(FIELD_SEQUENCE, Query.Direction.DESCENDING)
+        .limit(limit)
+        .get()
+        .get()
+        .getDocuments();
   }
 
   /**
@@ -64,8 +172,7 @@ public record BranchRef(CollectionReference branch) {
    */
   public List<Map<String, Object>> getStagedCommitsMap()
       throws ExecutionException, InterruptedException {
-    final Object data = stagedCommits().get().get().get(FIELD_COMMITS);
-    return data == null ? new ArrayList<>() : (List<Map<String, Object>>) data;
+    return commitsOf(stagedCommits().get().get());
   }
 
   /**
@@ -0,0 +1,71 @@
+package edu.brown.cs.student.main.server.storage;
+
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state of a user's local branch and of the remote branch it pushes to, read together. Verbs
+ * that compare local and remote state (status, checkout, merge, push) read one of these instead of
+ * reading each branch document separately. Snapshots are immutable; a commit taken from one must be
+ * copied before it is changed.
+ *
+ * @param localHead - head commit of the local branch; empty if the branch has no head
+ * @param remoteHead - head commit of the remote branch; empty if the branch has no head
+ * @param stagedCommits - commits on the local branch that have not been pushed, oldest first
+ * @param localPushedHeadId - id of the local branch's most recent pushed commit; null if none
+ * @param localPushedCount - number of pushed commits in the local branch's history
+ * @param remotePushedCount - number of pushed commits in the remote branch's history
+ * @param changes - file map json of changes added but not committed; null if there are none
+ */
+public record BranchSnapshot(
+    Map<String, Object> localHead,
+    Map<String, Object> remoteHead,
+    List<Map<String, Object>> stagedCommits,
+    String localPushedHeadId,
+    long localPushedCount,
+    long remotePushedCount,
+    String changes) {
+
+  public BranchSnapshot {
+    localHead = freeze(localHead);
+    remoteHead = freeze(remoteHead);
+    List<Map<String, Object>> staged = new ArrayList<>();
+    if (stagedCommits != null) {
+      for (Map<String, Object> commit : stagedCommits) {
+        staged.add(freeze(commit));
+      }
+    }
+    stagedCommits = Collections.unmodifiableList(staged);
+  }
+
+  private static Map<String, Object> freeze(final Map<String, Object> commit) {
+    return commit == null
+        ? Collections.emptyMap()
+        : Collections.unmodifiableMap(new HashMap<>(commit));
+  }
+
+  /**
+   * Returns the id of the last commit in a list of commits.
+   *
+   * @param commits - commits, oldest first
+   * @return - id of the last commit, or null if the list is empty
+   */
+  public static String lastCommitId(final List<Map<String, Object>> commits) {
+    return commits.isEmpty() ? null : (String) commits.get(commits.size() - 1).get(FIELD_COMMIT_ID);
+  }
+
+  /** Returns the id of the local branch's head commit, or null if it has none. */
+  public String localHeadId() {
+    return (String) localHead.get(FIELD_COMMIT_ID);
+  }
+
+  /** Returns the id of the remote branch's head commit, or null if it has none. */
+  public String remoteHeadId() {
+    return (String) remoteHead.get(FIELD_COMMIT_ID);
+  }
+}
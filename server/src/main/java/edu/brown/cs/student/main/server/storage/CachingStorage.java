@@ -0,0 +1,1127 @@
+package edu.brown.cs.student.main.server.storage;
+
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A read-through cache that sits in front of another {@link StorageInterface} (normally {@link
+ * FirebaseUtilities}). Branch state (head, staged commits, pushed commits, and added changes) is
+ * held in memory per (session, user, branch) and per remote (session, branch), so repeated reads
+ * such as git status are served without a database round-trip.
+ *
+ * <p>Adds only overwrite a branch's working copy, so they are applied to the cache immediately and
+ * written behind on background threads, in order within each session; repeated adds to the same
+ * branch are coalesced so only the latest file map is written. The first add that fails to be
+ * written is reported by the next {@link #flush()}. Every other write (push, pull, reset, and
+ * commit) first waits for the session's queued adds to be written and is then applied to the
+ * underlying storage before it returns, so its failures reach the caller; the cache is only updated
+ * once it has succeeded. Waiting for queued adds never waits on other sessions' writes.
+ *
+ * <p>Reads made through {@link #async()} are served from the cache when it holds everything they
+ * need. Otherwise they are started on the underlying storage's own asynchronous reads once the
+ * session's queued writes have been attempted, and what they read is cached unless the session was
+ * written to in the meantime.
+ *
+ * <p>Since all users of a session talk to the same server, the remote branch state cached here is
+ * shared between users and stays consistent with what each of them writes.
+ */
+public class CachingStorage implements StorageInterface {
+
+  /** Default maximum number of cached branches (local and remote each). */
+  public static final long DEFAULT_MAX_BRANCHES = 10_000;
+
+  /** Default number of minutes a branch stays cached after its last access. */
+  public static final long DEFAULT_TTL_MINUTES = 30;
+
+  private final StorageInterface delegate;
+  private final Cache<BranchKey, CachedBranch> localBranches;
+  private final Cache<BranchKey, CachedBranch> remoteBranches;
+  // lock and write queue of each session; values are held weakly, so an entry is dropped once no
+  // request or queued write refers to it, and is never replaced while one still does
+  private final Map<String, SessionQueue> sessions =
+      CacheBuilder.newBuilder().weakValues().<String, SessionQueue>build().asMap();
+
+  // writes queued by different sessions run in parallel, so a slow write only holds up its own
+  // session; each session's writes are chained, so they reach the underlying storage in order
+  private final ExecutorService flusher =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "caching-storage-flush");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // most recent queued add for each branch, used to skip adds that were overwritten
+  private final Map<BranchKey, Long> latestChangeVersions = new ConcurrentHashMap<>();
+  private final AtomicLong changeVersionCounter = new AtomicLong();
+  // first queued write that failed since the last flush
+  private final AtomicReference<Exception> writeBehindFailure = new AtomicReference<>();
+  private final AsyncStorageInterface asyncReads = new CachedReads();
+
+  /**
+   * Key identifying a cached branch; user_id is null for branches in the remote repository.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id, or null for remote branches
+   * @param branch_id - branch id
+   */
+  private record BranchKey(String session_id, String user_id, String branch_id) {}
+
+  /** Lock guarding all cached state of a session, and the session's queued writes. */
+  private static final class SessionQueue {
+    // completes once every write queued for the session so far has been attempted
+    private volatile CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    // bumped by every write to the session, so asynchronous reads that were already started when
+    // it happened do not cache what they read
+    private final AtomicLong generation = new AtomicLong();
+  }
+
+  /** Cached documents of a single branch; a null field has not been loaded yet. */
+  private static final class CachedBranch {
+    private Map<String, Object> head;
+    private List<Map<String, Object>> stagedCommits;
+    private List<Map<String, Object>> pushedCommits;
+    private boolean changesLoaded;
+    private String changes;
+    // id and number of pushed commits read from a snapshot; only used while pushedCommits is not
+    // loaded, and -1 while the count is not known either
+    private String snapshotPushedHeadId;
+    private long snapshotPushedCount = -1;
+
+    /** Returns the number of pushed commits, or -1 if it is not known. */
+    private long pushedCount() {
+      return pushedCommits == null ? snapshotPushedCount : pushedCommits.size();
+    }
+
+    /** Returns the id of the most recent pushed commit; only meaningful if the count is known. */
+    private String pushedHeadId() {
+      return pushedCommits == null
+          ? snapshotPushedHeadId
+          : BranchSnapshot.lastCommitId(pushedCommits);
+    }
+  }
+
+  /**
+   * Creates a cache in front of the given storage using the default size and TTL.
+   *
+   * @param delegate - storage that is read on cache misses and receives flushed writes
+   */
+  public CachingStorage(final StorageInterface delegate) {
+    this(delegate, DEFAULT_MAX_BRANCHES, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Creates a cache in front of the given storage.
+   *
+   * @param delegate - storage that is read on cache misses and receives flushed writes
+   * @param maxBranches - maximum number of local (and remote) branches to keep cached
+   * @param ttl - how long a branch stays cached after it was last accessed
+   * @param ttlUnit - unit of ttl
+   */
+  public CachingStorage(
+      final StorageInterface delegate,
+      final long maxBranches,
+      final long ttl,
+      final TimeUnit ttlUnit) {
+    if (delegate == null) {
+      throw new IllegalArgumentException("CachingStorage: delegate cannot be null");
+    }
+    this.delegate = delegate;
+    this.localBranches =
+        CacheBuilder.newBuilder().maximumSize(maxBranches).expireAfterAccess(ttl, ttlUnit).build();
+    this.remoteBranches =
+        CacheBuilder.newBuilder().maximumSize(maxBranches).expireAfterAccess(ttl, ttlUnit).build();
+  }
+
+  // *************************** CACHE HELPERS ***************************
+
+  /**
+   * Returns the lock guarding all cached state of a session, which also holds its queued writes.
+   *
+   * @param session_id - unique session id
+   * @return lock object for the session
+   */
+  private SessionQueue lockFor(final String session_id) {
+    return sessions.computeIfAbsent(session_id, k -> new SessionQueue());
+  }
+
+  /**
+   * Returns the cached local branch, creating an empty (unloaded) entry if needed.
+   *
+   * @param key - local branch key
+   * @return cached branch
+   */
+  private CachedBranch local(final BranchKey key) throws ExecutionException {
+    return localBranches.get(key, CachedBranch::new);
+  }
+
+  /**
+   * Returns the cached remote branch, creating an empty (unloaded) entry if needed.
+   *
+   * @param key - remote branch key
+   * @return cached branch
+   */
+  private CachedBranch remote(final BranchKey key) throws ExecutionException {
+    return remoteBranches.get(key, CachedBranch::new);
+  }
+
+  /**
+   * Copies a commit map so callers can modify the result without touching the cache.
+   *
+   * @param commit - commit data map
+   * @return a copy of the commit, or null if commit is null
+   */
+  private static Map<String, Object> copyCommit(final Map<String, Object> commit) {
+    return commit == null ? null : new HashMap<>(commit);
+  }
+
+  /**
+   * Copies a list of commit maps so callers can modify the result without touching the cache.
+   *
+   * @param commits - list of commit data maps
+   * @return a copy of the list and of each commit in it
+   */
+  private static List<Map<String, Object>> copyCommits(final List<Map<String, Object>> commits) {
+    List<Map<String, Object>> copy = new ArrayList<>(commits.size());
+    for (Map<String, Object> commit : commits) {
+      copy.add(copyCommit(commit));
+    }
+    return copy;
+  }
+
+  /**
+   * Loads (if needed) and returns the cached head of a local branch. Must hold the session lock.
+   */
+  private Map<String, Object> localHead(final BranchKey key)
+      throws ExecutionException, InterruptedException {
+    CachedBranch branch = local(key);
+    if (branch.head == null) {
+      drain(key.session_id);
+      branch.head =
+          copyCommit(delegate.getLatestLocalCommit(key.session_id, key.user_id, key.branch_id));
+    }
+    return branch.head;
+  }
+
+  /**
+   * Loads (if needed) and returns the cached staged commits of a local branch. Must hold the
+   * session lock.
+   */
+  private List<Map<String, Object>> localStaged(final BranchKey key)
+      throws ExecutionException, InterruptedException {
+    CachedBranch branch = local(key);
+    if (branch.stagedCommits == null) {
+      drain(key.session_id);
+      branch.stagedCommits =
+          copyCommits(delegate.getStagedCommits(key.session_id, key.user_id, key.branch_id));
+    }
+    return branch.stagedCommits;
+  }
+
+  /**
+   * Loads (if needed) and returns the cached pushed commits of a local branch. Must hold the
+   * session lock.
+   */
+  private List<Map<String, Object>> localPushed(final BranchKey key)
+      throws ExecutionException, InterruptedException {
+    CachedBranch branch = local(key);
+    if (branch.pushedCommits == null) {
+      drain(key.session_id);
+      branch.pushedCommits =
+          copyCommits(delegate.getLocalPushedCommits(key.session_id, key.user_id, key.branch_id));
+    }
+    return branch.pushedCommits;
+  }
+
+  /**
+   * Loads (if needed) and returns the cached added changes of a local branch. Must hold the session
+   * lock.
+   */
+  private String localChanges(final BranchKey key) throws ExecutionException, InterruptedException {
+    CachedBranch branch = local(key);
+    if (!branch.changesLoaded) {
+      drain(key.session_id);
+      branch.changes = delegate.getLatestLocalChanges(key.session_id, key.user_id, key.branch_id);
+      branch.changesLoaded = true;
+    }
+    return branch.changes;
+  }
+
+  /**
+   * Loads (if needed) and returns the cached head of a remote branch. Must hold the session lock.
+   */
+  private Map<String, Object> remoteHead(final BranchKey key)
+      throws ExecutionException, InterruptedException {
+    CachedBranch branch = remote(key);
+    if (branch.head == null) {
+      drain(key.session_id);
+      branch.head = copyCommit(delegate.getLatestRemoteCommit(key.session_id, key.branch_id));
+    }
+    return branch.head;
+  }
+
+  /**
+   * Loads (if needed) and returns the cached pushed commits of a remote branch. Must hold the
+   * session lock.
+   */
+  private List<Map<String, Object>> remotePushed(final BranchKey key)
+      throws ExecutionException, InterruptedException {
+    CachedBranch branch = remote(key);
+    if (branch.pushedCommits == null) {
+      drain(key.session_id);
+      branch.pushedCommits =
+          copyCommits(delegate.getRemotePushedCommits(key.session_id, key.branch_id));
+    }
+    return branch.pushedCommits;
+  }
+
+  /**
+   * Drops every cached branch belonging to a session, so the next read goes to the underlying
+   * storage.
+   *
+   * @param session_id - unique session id
+   */
+  public void evictSession(final String session_id) {
+    markWritten(session_id);
+    localBranches.asMap().keySet().removeIf(key -> key.session_id.equals(session_id));
+    remoteBranches.asMap().keySet().removeIf(key -> key.session_id.equals(session_id));
+  }
+
+  /**
+   * Records that a session was written to, so asynchronous reads already started for it do not
+   * cache what they read.
+   *
+   * @param session_id - unique session id
+   */
+  private void markWritten(final String session_id) {
+    lockFor(session_id).generation.incrementAndGet();
+  }
+
+  /**
+   * Queues a write to the underlying storage, after every write the session already queued. If the
+   * write fails, the session's cached state is dropped so later reads reflect what was actually
+   * stored, and the failure is kept for the next {@link #flush()} to report. Must hold the session
+   * lock.
+   *
+   * @param session_id - session the write belongs to
+   * @param write - the write to perform
+   */
+  private void writeBehind(final String session_id, final Write write) {
+    final SessionQueue queue = lockFor(session_id);
+    queue.tail =
+        queue.tail.thenRunAsync(
+            () -> {
+              try {
+                write.run();
+              } catch (Exception e) {
+                evictSession(session_id);
+                writeBehindFailure.compareAndSet(null, e);
+              } finally {
+                // keep the queue, and so its tail, in use until the write is done
+                Reference.reachabilityFence(queue);
+              }
+            },
+            flusher);
+  }
+
+  /**
+   * Applies a write to the underlying storage once every queued write has reached it. If the write
+   * fails, the session's cached state is dropped, since the write may have been partly applied, and
+   * the failure is rethrown.
+   *
+   * @param session_id - session the write belongs to
+   * @param write - the write to perform
+   */
+  private void writeThrough(final String session_id, final Write write)
+      throws ExecutionException, InterruptedException {
+    drain(session_id);
+    markWritten(session_id);
+    try {
+      write.run();
+    } catch (Exception e) {
+      evictSession(session_id);
+      throw e;
+    }
+  }
+
+  /** A write to the underlying storage. */
+  @FunctionalInterface
+  private interface Write {
+    void run() throws ExecutionException, InterruptedException;
+  }
+
+  /**
+   * Blocks until every queued write of every session has reached the underlying storage, then
+   * reports the first queued write that failed since the last flush.
+   *
+   * @throws ExecutionException - if a queued write failed, or waiting fails
+   * @throws InterruptedException - if interrupted while waiting
+   */
+  @Override
+  public void flush() throws ExecutionException, InterruptedException {
+    for (SessionQueue queue : List.copyOf(sessions.values())) {
+      queue.tail.get();
+    }
+    Exception failure = writeBehindFailure.getAndSet(null);
+    if (failure != null) {
+      throw new ExecutionException("CachingStorage: queued write failed", failure);
+    }
+  }
+
+  /**
+   * Blocks until every write the session queued has been attempted, leaving failures for the next
+   * {@link #flush()} to report. Writes queued by other sessions are not waited for.
+   *
+   * @param session_id - unique session id
+   * @throws ExecutionException - if waiting fails
+   * @throws InterruptedException - if interrupted while waiting
+   */
+  private void drain(final String session_id) throws ExecutionException, InterruptedException {
+    lockFor(session_id).tail.get();
+  }
+
+  /**
+   * Waits for a session's queued writes, rethrowing failures to wait as unchecked exceptions.
+   *
+   * @param session_id - unique session id
+   */
+  private void drainUnchecked(final String session_id) {
+    try {
+      drain(session_id);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("CachingStorage: interrupted while flushing", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("CachingStorage: flush failed: " + e.getMessage(), e);
+    }
+  }
+
+  /** A read of cached state. */
+  @FunctionalInterface
+  private interface CachedRead<T> {
+    /**
+     * Reads the cached value. Must hold the session lock.
+     *
+     * @return a completed future of a copy of the cached value, or null if it is not cached
+     */
+    CompletableFuture<T> read() throws ExecutionException;
+  }
+
+  /** Caches what a read of the underlying storage returned. */
+  @FunctionalInterface
+  private interface CacheFill<T> {
+    /**
+     * Caches a copy of the parts of a value that are not cached yet. Must hold the session lock.
+     *
+     * @param value - value read from the underlying storage
+     */
+    void fill(T value) throws ExecutionException;
+  }
+
+  /**
+   * Serves an asynchronous read from the cache, or starts it on the underlying storage once the
+   * session's queued writes have been attempted and caches what it reads, unless the session was
+   * written to before the read completed.
+   *
+   * @param session_id - unique session id
+   * @param cached - reads the cached value
+   * @param load - starts the read on the underlying storage
+   * @param fill - caches the value read
+   * @return future of the value
+   */
+  private <T> CompletableFuture<T> readAsync(
+      final String session_id,
+      final CachedRead<T> cached,
+      final Supplier<CompletableFuture<T>> load,
+      final CacheFill<T> fill) {
+    final SessionQueue queue = lockFor(session_id);
+    final long generation;
+    final CompletableFuture<Void> queued;
+    synchronized (queue) {
+      try {
+        CompletableFuture<T> hit = cached.read();
+        if (hit != null) {
+          return hit;
+        }
+      } catch (ExecutionException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+      generation = queue.generation.get();
+      queued = queue.tail;
+    }
+    return queued
+        .thenCompose(attempted -> load.get())
+        .thenApply(
+            value -> {
+              synchronized (queue) {
+                if (queue.generation.get() == generation) {
+                  try {
+                    fill.fill(value);
+                  } catch (ExecutionException e) {
+                    throw new CompletionException(e);
+                  }
+                }
+              }
+              return value;
+            });
+  }
+
+  /** Waits for queued writes and stops the background flush threads. */
+  public void close() {
+    try {
+      for (SessionQueue queue : List.copyOf(sessions.values())) {
+        queue.tail.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("CachingStorage: interrupted while flushing", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("CachingStorage: flush failed: " + e.getMessage(), e);
+    } finally {
+      flusher.shutdown();
+    }
+  }
+
+  // ********************************** STORAGE METHODS ************************************
+
+  @Override
+  public void addSession(String session_id, String user_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    synchronized (lockFor(session_id)) {
+      drain(session_id);
+      delegate.addSession(session_id, user_id, file_map_json);
+      evictSession(session_id);
+    }
+  }
+
+  @Override
+  public String addStash(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    synchronized (lockFor(session_id)) {
+      drain(session_id);
+      return delegate.addStash(session_id, user_id, branch_id, file_map_json);
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getStashes(String session_id, String user_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    synchronized (lockFor(session_id)) {
+      drain(session_id);
+      return delegate.getStashes(session_id, user_id);
+    }
+  }
+
+  @Override
+  public Map<String, Object> popStash(String session_id, String user_id, int stash_index)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    synchronized (lockFor(session_id)) {
+      drain(session_id);
+      return delegate.popStash(session_id, user_id, stash_index);
+    }
+  }
+
+  @Override
+  public void addBranch(
+      String session_id,
+      String user_id,
+      String current_branch_id,
+      String new_branch_id,
+      String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    synchronized (lockFor(session_id)) {
+      drain(session_id);
+      markWritten(session_id);
+      delegate.addBranch(session_id, user_id, current_branch_id, new_branch_id, file_map_json);
+      localBranches.invalidate(new BranchKey(session_id, user_id, new_branch_id));
+      remoteBranches.invalidate(new BranchKey(session_id, null, new_branch_id));
+    }
+  }
+
+  @Override
+  public void deleteBranch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException {
+    synchronized (lockFor(session_id)) {
+      drainUnchecked(session_id);
+      markWritten(session_id);
+      delegate.deleteBranch(session_id, user_id, branch_id);
+      localBranches.invalidate(new BranchKey(session_id, user_id, branch_id));
+    }
+  }
+
+  @Override
+  public List<String> getAllRemoteBranches(String session_id) throws IllegalArgumentException {
+    return delegate.getAllRemoteBranches(session_id);
+  }
+
+  @Override
+  public List<String> getAllLocalBranches(String session_id, String user_id)
+      throws IllegalArgumentException {
+    return delegate.getAllLocalBranches(session_id, user_id);
+  }
+
+  @Override
+  public void addChange(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException {
+    if (session_id == null || user_id == null || branch_id == null || file_map_json == null) {
+      throw new IllegalArgumentException(
+          "addChange: session_id, user_id, branch_id, and file_map_json cannot be null");
+    }
+    final BranchKey key = new BranchKey(session_id, user_id, branch_id);
+    synchronized (lockFor(session_id)) {
+      markWritten(session_id);
+      try {
+        CachedBranch branch = local(key);
+        branch.changes = file_map_json;
+        branch.changesLoaded = true;
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("addChange: " + e.getMessage(), e);
+      }
+      // only the most recently queued add for a branch needs to be written
+      final long version = changeVersionCounter.incrementAndGet();
+      latestChangeVersions.put(key, version);
+      writeBehind(
+          session_id,
+          () -> {
+            if (Long.valueOf(version).equals(latestChangeVersions.get(key))) {
+              delegate.addChange(session_id, user_id, branch_id, file_map_json);
+            }
+          });
+    }
+  }
+
+  @Override
+  public Map<String, Object> getLatestLocalCommit(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLatestLocalCommit: session_id, user_id, and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      return copyCommit(localHead(new BranchKey(session_id, user_id, branch_id)));
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getStagedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getStagedCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      return copyCommits(localStaged(new BranchKey(session_id, user_id, branch_id)));
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getLocalPushedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLocalPushedCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      return copyCommits(localPushed(new BranchKey(session_id, user_id, branch_id)));
+    }
+  }
+
+  @Override
+  public Map<String, Object> getLatestRemoteCommit(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLatestRemoteCommit: session_id and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      return copyCommit(remoteHead(new BranchKey(session_id, null, branch_id)));
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getRemotePushedCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getRemotePushedCommits: session_id and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      return copyCommits(remotePushed(new BranchKey(session_id, null, branch_id)));
+    }
+  }
+
+  @Override
+  public String getLatestLocalChanges(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLatestLocalChanges: session_id, user_id, and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      return localChanges(new BranchKey(session_id, user_id, branch_id));
+    }
+  }
+
+  @Override
+  public BranchSnapshot getBranchSnapshot(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getBranchSnapshot: session_id, user_id, and branch_id cannot be null");
+    }
+    // read every part under one hold of the lock, so the snapshot is consistent
+    synchronized (lockFor(session_id)) {
+      BranchKey localKey = new BranchKey(session_id, user_id, branch_id);
+      BranchKey remoteKey = new BranchKey(session_id, null, branch_id);
+      List<Map<String, Object>> localPushedCommits = localPushed(localKey);
+      return new BranchSnapshot(
+          localHead(localKey),
+          remoteHead(remoteKey),
+          localStaged(localKey),
+          BranchSnapshot.lastCommitId(localPushedCommits),
+          localPushedCommits.size(),
+          remotePushed(remoteKey).size(),
+          localChanges(localKey));
+    }
+  }
+
+  @Override
+  public Map<String, Object> commitChange(
+      String session_id,
+      String user_id,
+      String branch_id,
+      String commit_message,
+      List<String> parent_commit_ids)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    synchronized (lockFor(session_id)) {
+      // the underlying storage generates the commit, so it needs every queued write first
+      drain(session_id);
+      markWritten(session_id);
+      Map<String, Object> newCommit =
+          delegate.commitChange(session_id, user_id, branch_id, commit_message, parent_commit_ids);
+
+      CachedBranch branch = local(new BranchKey(session_id, user_id, branch_id));
+      if (branch.stagedCommits != null) {
+        branch.stagedCommits.add(copyCommit(newCommit));
+      }
+      branch.head = copyCommit(newCommit);
+      branch.changes = null;
+      branch.changesLoaded = true;
+      return newCommit;
+    }
+  }
+
+  @Override
+  public void pushCommit(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "pushCommit: session_id, user_id, branch_id cannot be null");
+    }
+    final BranchKey localKey = new BranchKey(session_id, user_id, branch_id);
+    final BranchKey remoteKey = new BranchKey(session_id, null, branch_id);
+    synchronized (lockFor(session_id)) {
+      List<Map<String, Object>> stagedCommits = localStaged(localKey);
+      List<Map<String, Object>> localPushedCommits = localPushed(localKey);
+      List<Map<String, Object>> remotePushedCommits = remotePushed(remoteKey);
+      writeThrough(session_id, () -> delegate.pushCommit(session_id, user_id, branch_id));
+
+      // mirror the underlying push: staged commits move to local and remote pushed commits
+      for (Map<String, Object> commit : stagedCommits) {
+        localPushedCommits.add(copyCommit(commit));
+        remotePushedCommits.add(copyCommit(commit));
+      }
+      if (!remotePushedCommits.isEmpty()) {
+        remote(remoteKey).head =
+            copyCommit(remotePushedCommits.get(remotePushedCommits.size() - 1));
+      }
+      stagedCommits.clear();
+    }
+  }
+
+  @Override
+  public Map<String, List<Map<String, Object>>> getAllLocalCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getAllLocalCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    final BranchKey key = new BranchKey(session_id, user_id, branch_id);
+    synchronized (lockFor(session_id)) {
+      Map<String, List<Map<String, Object>>> localCommits = new HashMap<>();
+      localCommits.put(FIELD_PUSHED_COMMITS, copyCommits(localPushed(key)));
+      localCommits.put(FIELD_STAGED_COMMITS, copyCommits(localStaged(key)));
+      return localCommits;
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllRemoteCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getAllRemoteCommits: session_id, and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      return copyCommits(remotePushed(new BranchKey(session_id, null, branch_id)));
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllCommits(
+      String session_id, String user_id, String branch_id)
+      throws ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getAllCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      final List<Map<String, Object>> allCommits =
+          copyCommits(localStaged(new BranchKey(session_id, user_id, branch_id)));
+      allCommits.addAll(copyCommits(remotePushed(new BranchKey(session_id, null, branch_id))));
+      return allCommits;
+    }
+  }
+
+  @Override
+  public Map<String, Object> getCommitLog(
+      String session_id,
+      String user_id,
+      String branch_id,
+      int limit,
+      String cursor,
+      boolean include_files)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getCommitLog: session_id, user_id, and branch_id cannot be null");
+    }
+    // the underlying storage can read history a page at a time, so pages are not cached
+    synchronized (lockFor(session_id)) {
+      drain(session_id);
+      return delegate.getCommitLog(session_id, user_id, branch_id, limit, cursor, include_files);
+    }
+  }
+
+  @Override
+  public void pullRemoteCommits(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "pullRemoteCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      List<Map<String, Object>> remoteCommits =
+          remotePushed(new BranchKey(session_id, null, branch_id));
+      writeThrough(session_id, () -> delegate.pullRemoteCommits(session_id, user_id, branch_id));
+      local(new BranchKey(session_id, user_id, branch_id)).pushedCommits =
+          copyCommits(remoteCommits);
+    }
+  }
+
+  @Override
+  public void resetLocalCommits(
+      String session_id,
+      String user_id,
+      String branch_id,
+      Map<String, List<Map<String, Object>>> commits)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null
+        || user_id == null
+        || branch_id == null
+        || commits == null
+        || commits.get(FIELD_STAGED_COMMITS) == null
+        || commits.get(FIELD_PUSHED_COMMITS) == null) {
+      throw new IllegalArgumentException(
+          "resetLocalCommits: session_id, user_id, branch_id, and commits cannot be null");
+    }
+    final List<Map<String, Object>> stagedCommits = copyCommits(commits.get(FIELD_STAGED_COMMITS));
+    final List<Map<String, Object>> pushedCommits = copyCommits(commits.get(FIELD_PUSHED_COMMITS));
+    if (stagedCommits.isEmpty() && pushedCommits.isEmpty()) {
+      throw new IllegalArgumentException("resetLocalCommits: commits cannot be empty");
+    }
+    // the new head is the last staged commit, or the last pushed one if nothing is staged
+    final Map<String, Object> head =
+        copyCommit(
+            stagedCommits.isEmpty()
+                ? pushedCommits.get(pushedCommits.size() - 1)
+                : stagedCommits.get(stagedCommits.size() - 1));
+    synchronized (lockFor(session_id)) {
+      writeThrough(
+          session_id, () -> delegate.resetLocalCommits(session_id, user_id, branch_id, commits));
+      CachedBranch branch = local(new BranchKey(session_id, user_id, branch_id));
+      branch.stagedCommits = stagedCommits;
+      branch.pushedCommits = pushedCommits;
+      branch.head = head;
+      branch.changes = null;
+      branch.changesLoaded = true;
+    }
+  }
+
+  @Override
+  public Map<String, Object> getCommit(
+      String session_id, String user_id, String branch_id, String commit_id)
+      throws ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null || commit_id == null) {
+      throw new IllegalArgumentException(
+          "getCommit: session_id, user_id, branch_id, and commit_id cannot be null");
+    }
+    final BranchKey key = new BranchKey(session_id, user_id, branch_id);
+    synchronized (lockFor(session_id)) {
+      // check staged commits first, then pushed commits
+      for (Map<String, Object> commit : localStaged(key)) {
+        if (commit_id.equals(commit.get(FIELD_COMMIT_ID))) {
+          return copyCommit(commit);
+        }
+      }
+      for (Map<String, Object> commit : localPushed(key)) {
+        if (commit_id.equals(commit.get(FIELD_COMMIT_ID))) {
+          return copyCommit(commit);
+        }
+      }
+      return null;
+    }
+  }
+
+  @Override
+  public Map<String, Object> fetch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    synchronized (lockFor(session_id)) {
+      drain(session_id);
+      return delegate.fetch(session_id, user_id, branch_id);
+    }
+  }
+
+  @Override
+  public List<String> getAllSessions() throws ExecutionException, InterruptedException {
+    return delegate.getAllSessions();
+  }
+
+  @Override
+  public void deleteSession(String session_id) throws IllegalArgumentException {
+    if (session_id == null) {
+      throw new IllegalArgumentException("deleteSession: session_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      drainUnchecked(session_id);
+      delegate.deleteSession(session_id);
+      evictSession(session_id);
+      latestChangeVersions.keySet().removeIf(key -> key.session_id.equals(session_id));
+    }
+  }
+
+  @Override
+  public AsyncStorageInterface async() {
+    return asyncReads;
+  }
+
+  /** Asynchronous reads served from the cache, falling back to the underlying storage's. */
+  private final class CachedReads implements AsyncStorageInterface {
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLatestLocalCommit(
+        String session_id, String user_id, String branch_id) {
+      if (session_id == null || user_id == null || branch_id == null) {
+        return CompletableFuture.failedFuture(
+            new IllegalArgumentException(
+                "getLatestLocalCommit: session_id, user_id, and branch_id cannot be null"));
+      }
+      final BranchKey key = new BranchKey(session_id, user_id, branch_id);
+      return readAsync(
+          session_id,
+          () -> {
+            Map<String, Object> head = local(key).head;
+            return head == null ? null : CompletableFuture.completedFuture(copyCommit(head));
+          },
+          () -> delegate.async().getLatestLocalCommit(session_id, user_id, branch_id),
+          head -> {
+            CachedBranch branch = local(key);
+            if (branch.head == null) {
+              branch.head = copyCommit(head);
+            }
+          });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLatestRemoteCommit(
+        String session_id, String branch_id) {
+      if (session_id == null || branch_id == null) {
+        return CompletableFuture.failedFuture(
+            new IllegalArgumentException(
+                "getLatestRemoteCommit: session_id and branch_id cannot be null"));
+      }
+      final BranchKey key = new BranchKey(session_id, null, branch_id);
+      return readAsync(
+          session_id,
+          () -> {
+            Map<String, Object> head = remote(key).head;
+            return head == null ? null : CompletableFuture.completedFuture(copyCommit(head));
+          },
+          () -> delegate.async().getLatestRemoteCommit(session_id, branch_id),
+          head -> {
+            CachedBranch branch = remote(key);
+            if (branch.head == null) {
+              branch.head = copyCommit(head);
+            }
+          });
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getStagedCommits(
+        String session_id, String user_id, String branch_id) {
+      if (session_id == null || user_id == null || branch_id == null) {
+        return CompletableFuture.failedFuture(
+            new IllegalArgumentException(
+                "getStagedCommits: session_id, user_id, and branch_id cannot be null"));
+      }
+      final BranchKey key = new BranchKey(session_id, user_id, branch_id);
+      return readAsync(
+          session_id,
+          () -> {
+            List<Map<String, Object>> staged = local(key).stagedCommits;
+            return staged == null ? null : CompletableFuture.completedFuture(copyCommits(staged));
+          },
+          () -> delegate.async().getStagedCommits(session_id, user_id, branch_id),
+          staged -> {
+            CachedBranch branch = local(key);
+            if (branch.stagedCommits == null) {
+              branch.stagedCommits = copyCommits(staged);
+            }
+          });
+    }
+
+    @Override
+    public CompletableFuture<String> getLatestLocalChanges(
+        String session_id, String user_id, String branch_id) {
+      if (session_id == null || user_id == null || branch_id == null) {
+        return CompletableFuture.failedFuture(
+            new IllegalArgumentException(
+                "getLatestLocalChanges: session_id, user_id, and branch_id cannot be null"));
+      }
+      final BranchKey key = new BranchKey(session_id, user_id, branch_id);
+      return readAsync(
+          session_id,
+          () -> {
+            CachedBranch branch = local(key);
+            return branch.changesLoaded ? CompletableFuture.completedFuture(branch.changes) : null;
+          },
+          () -> delegate.async().getLatestLocalChanges(session_id, user_id, branch_id),
+          changes -> {
+            CachedBranch branch = local(key);
+            if (!branch.changesLoaded) {
+              branch.changes = changes;
+              branch.changesLoaded = true;
+            }
+          });
+    }
+
+    @Override
+    public CompletableFuture<BranchSnapshot> getBranchSnapshot(
+        String session_id, String user_id, String branch_id) {
+      if (session_id == null || user_id == null || branch_id == null) {
+        return CompletableFuture.failedFuture(
+            new IllegalArgumentException(
+                "getBranchSnapshot: session_id, user_id, and branch_id cannot be null"));
+      }
+      final BranchKey localKey = new BranchKey(session_id, user_id, branch_id);
+      final BranchKey remoteKey = new BranchKey(session_id, null, branch_id);
+      return readAsync(
+          session_id,
+          () -> {
+            CachedBranch local = local(localKey);
+            CachedBranch remote = remote(remoteKey);
+            if (local.head == null
+                || local.stagedCommits == null
+                || !local.changesLoaded
+                || local.pushedCount() < 0
+                || remote.head == null
+                || remote.pushedCount() < 0) {
+              return null;
+            }
+            // the snapshot copies what it is given
+            return CompletableFuture.completedFuture(
+                new BranchSnapshot(
+                    local.head,
+                    remote.head,
+                    local.stagedCommits,
+                    local.pushedHeadId(),
+                    local.pushedCount(),
+                    remote.pushedCount(),
+                    local.changes));
+          },
+          () -> delegate.async().getBranchSnapshot(session_id, user_id, branch_id),
+          snapshot -> {
+            CachedBranch local = local(localKey);
+            CachedBranch remote = remote(remoteKey);
+            // snapshots hold an empty map for a missing head, which is left unloaded
+            if (local.head == null && !snapshot.localHead().isEmpty()) {
+              local.head = copyCommit(snapshot.localHead());
+            }
+            if (local.stagedCommits == null) {
+              local.stagedCommits = copyCommits(snapshot.stagedCommits());
+            }
+            if (!local.changesLoaded) {
+              local.changes = snapshot.changes();
+              local.changesLoaded = true;
+            }
+            if (local.pushedCommits == null) {
+              local.snapshotPushedHeadId = snapshot.localPushedHeadId();
+              local.snapshotPushedCount = snapshot.localPushedCount();
+            }
+            if (remote.head == null && !snapshot.remoteHead().isEmpty()) {
+              remote.head = copyCommit(snapshot.remoteHead());
+            }
+            if (remote.pushedCommits == null) {
+              remote.snapshotPushedCount = snapshot.remotePushedCount();
+            }
+          });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllRemoteBranches(String session_id) {
+      return delegate.async().getAllRemoteBranches(session_id);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllLocalBranches(String session_id, String user_id) {
+      return delegate.async().getAllLocalBranches(session_id, user_id);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> fetch(
+        String session_id, String user_id, String branch_id) {
+      if (session_id == null || user_id == null || branch_id == null) {
+        return CompletableFuture.failedFuture(
+            new IllegalArgumentException(
+                "fetch: session_id, user_id, and branch_id cannot be null"));
+      }
+      // like the blocking fetch, this goes to the underlying storage after queued writes
+      return readAsync(
+          session_id,
+          () -> null,
+          () -> delegate.async().fetch(session_id, user_id, branch_id),
+          fetched -> {});
+    }
+  }
+}
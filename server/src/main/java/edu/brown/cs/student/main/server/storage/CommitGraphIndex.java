@@ -0,0 +1,458 @@
+package edu.brown.cs.student.main.server.storage;
+
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory index of each session's commit graph, keyed by commit id. Each commit keeps only its
+ * parent ids and a generation number (one more than its highest parent's; roots are 1), so
+ * ancestry, ahead/behind, and merge-base queries only walk the commits between the heads being
+ * compared instead of fetching whole histories from storage.
+ *
+ * <p>A commit is only ever indexed after all of its parents, so an indexed commit's full ancestry
+ * is always indexed. Commits never change once created, so the index only needs to learn about new
+ * commits; pushes, pulls, and resets only move heads, and commits they leave unreachable are
+ * harmless. Commits the index has not seen are loaded from storage on demand, so an index that
+ * misses an update is slower, never wrong.
+ *
+ * <p>For the same reason, graphs can be dropped at any time: the index keeps a bounded number of
+ * sessions, and drops a session's graph once it has gone unused for a while, whether or not the
+ * session still exists.
+ */
+public class CommitGraphIndex {
+
+  /** Default maximum number of sessions whose graphs are kept. */
+  public static final long DEFAULT_MAX_SESSIONS = 1_000;
+
+  /** Default number of minutes a session's graph is kept after it was last used. */
+  public static final long DEFAULT_IDLE_MINUTES = 60;
+
+  // number of commits read per page when loading a branch's history
+  private static final int LOAD_PAGE_SIZE = 200;
+
+  /**
+   * Indexed commit.
+   *
+   * @param parents ids of the commit's parents
+   * @param generation length of the longest path from the commit to a root commit, counting both
+   */
+  private record Node(List<String> parents, int generation) {}
+
+  /**
+   * Number of commits reachable from only one of two heads.
+   *
+   * @param ahead commits reachable from the local head but not the remote head
+   * @param behind commits reachable from the remote head but not the local head
+   */
+  public record AheadBehind(int ahead, int behind) {}
+
+  // commit nodes by commit id, by session id
+  private final Cache<String, Map<String, Node>> sessions;
+
+  /** Creates an index using the default number of sessions and idle time. */
+  public CommitGraphIndex() {
+    this(DEFAULT_MAX_SESSIONS, DEFAULT_IDLE_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Creates an index.
+   *
+   * @param maxSessions - maximum number of sessions whose graphs are kept
+   * @param idle - how long a session's graph is kept after it was last used
+   * @param idleUnit - unit of idle
+   */
+  public CommitGraphIndex(final long maxSessions, final long idle, final TimeUnit idleUnit) {
+    if (maxSessions <= 0 || idle <= 0 || idleUnit == null) {
+      throw new IllegalArgumentException(
+          "CommitGraphIndex: maxSessions and idle must be positive, and idleUnit cannot be null");
+    }
+    this.sessions =
+        CacheBuilder.newBuilder()
+            .maximumSize(maxSessions)
+            .expireAfterAccess(idle, idleUnit)
+            .build();
+  }
+
+  private Map<String, Node> graphOf(final String session_id) {
+    return sessions.asMap().computeIfAbsent(session_id, k -> new ConcurrentHashMap<>());
+  }
+
+  /**
+   * Adds commits to a session's index. Commits may be given in any order; a commit is only added
+   * once all its parents are indexed or in the same batch, and is otherwise left to be loaded later
+   * along with its history.
+   *
+   * @param session_id - unique session id
+   * @param commits - commit data maps, each with a commit id and parent commit ids
+   */
+  public void addCommits(final String session_id, final Collection<Map<String, Object>> commits) {
+    if (session_id == null) {
+      throw new IllegalArgumentException("addCommits: session_id cannot be null");
+    }
+    final Map<String, List<String>> pending = new HashMap<>();
+    for (Map<String, Object> commit : commits) {
+      if (commit != null && commit.get(FIELD_COMMIT_ID) != null) {
+        pending.put(commit.get(FIELD_COMMIT_ID).toString(), parentsOf(commit));
+      }
+    }
+    final Map<String, Node> graph = graphOf(session_id);
+    synchronized (graph) {
+      for (String commitId : new ArrayList<>(pending.keySet())) {
+        insert(graph, pending, commitId);
+      }
+    }
+  }
+
+  /**
+   * Indexes a commit after its parents, without recursion so deep histories cannot overflow the
+   * stack.
+   *
+   * @param graph - the session's index
+   * @param pending - parent ids of the commits being added, by commit id
+   * @param commitId - id of the commit to index
+   */
+  private static void insert(
+      final Map<String, Node> graph,
+      final Map<String, List<String>> pending,
+      final String commitId) {
+    final Deque<String> stack = new ArrayDeque<>();
+    final Set<String> onStack = new HashSet<>();
+    stack.push(commitId);
+    onStack.add(commitId);
+    while (!stack.isEmpty()) {
+      final String current = stack.peek();
+      if (graph.containsKey(current)) {
+        stack.pop();
+        continue;
+      }
+      final List<String> parents = pending.get(current);
+      String unindexedParent = null;
+      boolean unresolvable = parents == null;
+      if (parents != null) {
+        for (String parentId : parents) {
+          if (graph.containsKey(parentId)) {
+            continue;
+          }
+          if (!pending.containsKey(parentId) || onStack.contains(parentId)) {
+            unresolvable = true;
+          } else {
+            unindexedParent = parentId;
+          }
+          break;
+        }
+      }
+      if (unresolvable) {
+        // a parent is missing from the batch, so this commit and everything waiting on it is
+        // skipped
+        for (String skipped : stack) {
+          pending.remove(skipped);
+        }
+        return;
+      }
+      if (unindexedParent != null) {
+        stack.push(unindexedParent);
+        onStack.add(unindexedParent);
+        continue;
+      }
+      int generation = 0;
+      for (String parentId : parents) {
+        generation = Math.max(generation, graph.get(parentId).generation());
+      }
+      graph.put(current, new Node(parents, generation + 1));
+      stack.pop();
+    }
+  }
+
+  private static List<String> parentsOf(final Map<String, Object> commit) {
+    if (!(commit.get(FIELD_PARENT_COMMIT_IDS) instanceof List<?> parents)) {
+      return List.of();
+    }
+    return parents.stream().map(Object::toString).toList();
+  }
+
+  /**
+   * Returns whether a commit is indexed for a session.
+   *
+   * @param session_id - unique session id
+   * @param commit_id - id of commit
+   * @return - true if the commit and its ancestry are indexed
+   */
+  public boolean contains(final String session_id, final String commit_id) {
+    return contains(sessions.getIfPresent(session_id), commit_id);
+  }
+
+  private static boolean contains(final Map<String, Node> graph, final String commit_id) {
+    return graph != null && commit_id != null && graph.containsKey(commit_id);
+  }
+
+  /**
+   * Makes sure the given commits are indexed, loading the branch's history from storage if not. If
+   * a commit is still missing (e.g. a merge commit whose incoming parent is on another branch), the
+   * history of every one of the user's local branches is loaded too.
+   *
+   * @param storage - storage to load commit history from
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch the commits are on
+   * @param commit_ids - ids of the commits that must be indexed
+   * @return - true if every commit is now indexed
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  public boolean ensureIndexed(
+      final StorageInterface storage,
+      final String session_id,
+      final String user_id,
+      final String branch_id,
+      final String... commit_ids)
+      throws ExecutionException, InterruptedException {
+    if (containsAll(session_id, commit_ids)) {
+      return true;
+    }
+    final List<Map<String, Object>> history = new ArrayList<>();
+    readBranchHistory(storage, session_id, user_id, branch_id, history);
+    addCommits(session_id, history);
+    if (containsAll(session_id, commit_ids)) {
+      return true;
+    }
+    // commits are only indexed with all their parents, so read every branch before indexing
+    for (String localBranch : storage.getAllLocalBranches(session_id, user_id)) {
+      if (!localBranch.equals(branch_id)) {
+        readBranchHistory(storage, session_id, user_id, localBranch, history);
+      }
+    }
+    addCommits(session_id, history);
+    return containsAll(session_id, commit_ids);
+  }
+
+  private boolean containsAll(final String session_id, final String... commit_ids) {
+    for (String commitId : commit_ids) {
+      if (!contains(session_id, commitId)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads a branch's staged and remote pushed commits, as commit metadata without files.
+   *
+   * @param storage - storage to load commit history from
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch to read
+   * @param history - list the commits are added to
+   */
+  private static void readBranchHistory(
+      final StorageInterface storage,
+      final String session_id,
+      final String user_id,
+      final String branch_id,
+      final List<Map<String, Object>> history)
+      throws ExecutionException, InterruptedException {
+    String cursor = null;
+    do {
+      final Map<String, Object> page =
+          storage.getCommitLog(session_id, user_id, branch_id, LOAD_PAGE_SIZE, cursor, false);
+      history.addAll(CommitMaps.commitsOf(page.get(FIELD_COMMITS)));
+      cursor = (String) page.get(FIELD_NEXT_CURSOR);
+    } while (cursor != null);
+  }
+
+  /**
+   * Returns whether one commit is an ancestor of another. A commit is its own ancestor.
+   *
+   * @param session_id - unique session id
+   * @param ancestor_id - id of the possible ancestor
+   * @param commit_id - id of the descendant commit
+   * @return - true if ancestor_id is reachable from commit_id
+   * @throws IllegalArgumentException - if either commit is not indexed
+   */
+  public boolean isAncestor(
+      final String session_id, final String ancestor_id, final String commit_id) {
+    final Map<String, Node> graph = indexedGraph(session_id, ancestor_id, commit_id);
+    final int ancestorGeneration = graph.get(ancestor_id).generation();
+    final Set<String> visited = new HashSet<>();
+    final Deque<String> toVisit = new ArrayDeque<>();
+    toVisit.add(commit_id);
+    visited.add(commit_id);
+    while (!toVisit.isEmpty()) {
+      final String current = toVisit.poll();
+      if (current.equals(ancestor_id)) {
+        return true;
+      }
+      for (String parentId : graph.get(current).parents()) {
+        // commits with a lower generation cannot have the ancestor as an ancestor
+        if (graph.get(parentId).generation() >= ancestorGeneration && visited.add(parentId)) {
+          toVisit.add(parentId);
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Counts the commits reachable from only the local head and from only the remote head.
+   *
+   * @param session_id - unique session id
+   * @param local_id - id of the local head
+   * @param remote_id - id of the remote head
+   * @return - ahead and behind counts
+   * @throws IllegalArgumentException - if either commit is not indexed
+   */
+  public AheadBehind aheadBehind(
+      final String session_id, final String local_id, final String remote_id) {
+    final int[] counts = new int[2];
+    paint(
+        session_id,
+        local_id,
+        remote_id,
+        (commitId, flags) -> {
+          if (flags == LOCAL) {
+            counts[0]++;
+          } else if (flags == REMOTE) {
+            counts[1]++;
+          }
+          return false;
+        });
+    return new AheadBehind(counts[0], counts[1]);
+  }
+
+  /**
+   * Finds a merge base of two commits: a common ancestor with no descendant that is also a common
+   * ancestor, picking the one with the highest generation.
+   *
+   * @param session_id - unique session id
+   * @param local_id - id of the first commit
+   * @param incoming_id - id of the second commit
+   * @return - id of the merge base, or null if the commits share no ancestor
+   * @throws IllegalArgumentException - if either commit is not indexed
+   */
+  public String findMergeBase(
+      final String session_id, final String local_id, final String incoming_id) {
+    final String[] mergeBase = new String[1];
+    paint(
+        session_id,
+        local_id,
+        incoming_id,
+        (commitId, flags) -> {
+          if (flags == (LOCAL | REMOTE)) {
+            mergeBase[0] = commitId;
+            return true;
+          }
+          return false;
+        });
+    return mergeBase[0];
+  }
+
+  private static final int LOCAL = 1;
+  private static final int REMOTE = 2;
+
+  /** Called for each commit painted, in order of decreasing generation. */
+  private interface PaintVisitor {
+    /**
+     * @param commitId - id of commit
+     * @param flags - LOCAL and/or REMOTE, for which heads the commit is reachable from
+     * @return - true to stop painting
+     */
+    boolean visit(String commitId, int flags);
+  }
+
+  /**
+   * Walks down from two heads in order of decreasing generation, marking each commit with the heads
+   * it is reachable from. Since every descendant of a commit has a higher generation, a commit's
+   * marks are final when it is visited. The walk stops once every commit left to visit is reachable
+   * from both heads, as then so are all of their ancestors.
+   */
+  private void paint(
+      final String session_id,
+      final String local_id,
+      final String remote_id,
+      final PaintVisitor visitor) {
+    final Map<String, Node> graph = indexedGraph(session_id, local_id, remote_id);
+    final Map<String, Integer> flags = new HashMap<>();
+    final PriorityQueue<String> queue =
+        new PriorityQueue<>(
+            (a, b) -> Integer.compare(graph.get(b).generation(), graph.get(a).generation()));
+    // number of queued commits not yet reachable from both heads
+    int unshared = 0;
+
+    flags.put(local_id, LOCAL);
+    flags.merge(remote_id, REMOTE, (a, b) -> a | b);
+    queue.add(local_id);
+    if (!remote_id.equals(local_id)) {
+      queue.add(remote_id);
+    }
+    for (String commitId : queue) {
+      if (flags.get(commitId) != (LOCAL | REMOTE)) {
+        unshared++;
+      }
+    }
+
+    while (!queue.isEmpty() && unshared > 0) {
+      final String current = queue.poll();
+      final int currentFlags = flags.get(current);
+      if (currentFlags != (LOCAL | REMOTE)) {
+        unshared--;
+      }
+      if (visitor.visit(current, currentFlags)) {
+        return;
+      }
+      for (String parentId : graph.get(current).parents()) {
+        final Integer parentFlags = flags.get(parentId);
+        if (parentFlags == null) {
+          flags.put(parentId, currentFlags);
+          queue.add(parentId);
+          if (currentFlags != (LOCAL | REMOTE)) {
+            unshared++;
+          }
+        } else if ((parentFlags | currentFlags) != parentFlags) {
+          // parent is still queued, since it has a lower generation than the current commit
+          flags.put(parentId, parentFlags | currentFlags);
+          if ((parentFlags | currentFlags) == (LOCAL | REMOTE)) {
+            unshared--;
+          }
+        }
+      }
+    }
+    // the best common ancestor may be left in the queue when the walk stops early
+    if (!queue.isEmpty()) {
+      visitor.visit(queue.poll(), LOCAL | REMOTE);
+    }
+  }
+
+  private Map<String, Node> indexedGraph(final String session_id, final String... commit_ids) {
+    // read the graph once, so it cannot be dropped between checking and returning it
+    final Map<String, Node> graph = sessions.getIfPresent(session_id);
+    for (String commitId : commit_ids) {
+      if (!contains(graph, commitId)) {
+        throw new IllegalArgumentException("commit graph index: commit not indexed");
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * Drops a session's index, used when the session is deleted.
+   *
+   * @param session_id - unique session id
+   */
+  public void evictSession(final String session_id) {
+    sessions.invalidate(session_id);
+  }
+}
@@ -0,0 +1,103 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Generates commit and stash ids that are unique without remembering the ids already handed out.
+ *
+ * <p>An id packs three numbers into 59 bits, written as 12 upper-case base-36 characters:
+ *
+ * <ul>
+ *   <li>the millisecond it was generated, counted from 2025 (41 bits, enough until 2094),
+ *   <li>the generating node (8 bits), so servers sharing storage never produce the same id,
+ *   <li>a sequence number within the millisecond (10 bits).
+ * </ul>
+ *
+ * The time and sequence are kept together in one {@link AtomicLong} and advanced with a
+ * compare-and-set, so concurrent callers never block each other. A caller that finds the sequence
+ * for the current millisecond used up, or the clock behind the last id, takes the next sequence
+ * number anyway; it carries into the time bits, so ids keep increasing and the clock catches up.
+ * Ids from one node therefore sort in the order they were generated.
+ */
+public class CommitIdGenerator {
+
+  // 2025-01-01T00:00:00Z
+  private static final long EPOCH_MILLIS = 1_735_689_600_000L;
+  private static final int NODE_BITS = 8;
+  private static final int SEQUENCE_BITS = 10;
+  private static final int ID_LENGTH = 12;
+
+  /** Largest node number a generator can be given. */
+  public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+  private final long node;
+  private final LongSupplier clock;
+  // time since the epoch shifted left by SEQUENCE_BITS, plus the sequence, of the last id
+  private final AtomicLong last = new AtomicLong();
+
+  /**
+   * Creates a generator for a randomly chosen node. Servers sharing storage should each be given
+   * their own node number instead.
+   */
+  public CommitIdGenerator() {
+    this(new SecureRandom().nextInt(MAX_NODE + 1));
+  }
+
+  /**
+   * Creates a generator timed by the system clock.
+   *
+   * @param node - number of this node, from 0 to {@link #MAX_NODE}
+   */
+  public CommitIdGenerator(final int node) {
+    this(node, System::currentTimeMillis);
+  }
+
+  /**
+   * Creates a generator.
+   *
+   * @param node - number of this node, from 0 to {@link #MAX_NODE}
+   * @param clock - current time in milliseconds
+   */
+  public CommitIdGenerator(final int node, final LongSupplier clock) {
+    if (node < 0 || node > MAX_NODE) {
+      throw new IllegalArgumentException(
+          "CommitIdGenerator: node must be between 0 and " + MAX_NODE + ", not " + node);
+    }
+    if (clock == null) {
+      throw new IllegalArgumentException("CommitIdGenerator: clock cannot be null");
+    }
+    this.node = node;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns an id this node has not generated before.
+   *
+   * @return 12-character upper-case alphanumeric id
+   */
+  public String next() {
+    long now = Math.max(0, clock.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS;
+    long previous;
+    long stamp;
+    do {
+      previous = last.get();
+      stamp = Math.max(now, previous + 1);
+    } while (!last.compareAndSet(previous, stamp));
+
+    long sequence = stamp & ((1L << SEQUENCE_BITS) - 1);
+    long millis = stamp >>> SEQUENCE_BITS;
+    return format((millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence);
+  }
+
+  /**
+   * Writes an id number as fixed-width base 36, so ids compare as strings in numeric order.
+   *
+   * @param id - non-negative id number
+   */
+  private static String format(final long id) {
+    String digits = Long.toString(id, 36).toUpperCase();
+    return "0".repeat(Math.max(0, ID_LENGTH - digits.length())) + digits;
+  }
+}
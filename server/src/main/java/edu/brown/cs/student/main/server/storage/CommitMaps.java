@@ -0,0 +1,84 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed views of commit data read back as plain objects, such as document fields and decoded JSON,
+ * checked entry by entry instead of cast unchecked.
+ */
+public final class CommitMaps {
+
+  private CommitMaps() {}
+
+  /**
+   * Copies a stored commit into a commit map.
+   *
+   * @param value - stored commit, or null
+   * @return a copy of the commit, or null if value is null
+   * @throws IllegalArgumentException - if value is not a map with string keys
+   */
+  public static Map<String, Object> commitOf(final Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (!(value instanceof Map<?, ?> map)) {
+      throw new IllegalArgumentException("CommitMaps: commit is not a map: " + value);
+    }
+    Map<String, Object> commit = new HashMap<>();
+    for (Map.Entry<?, ?> field : map.entrySet()) {
+      if (!(field.getKey() instanceof String name)) {
+        throw new IllegalArgumentException("CommitMaps: commit field is not named by a string");
+      }
+      commit.put(name, field.getValue());
+    }
+    return commit;
+  }
+
+  /**
+   * Copies a stored list of commits into a list of commit maps.
+   *
+   * @param value - stored list of commits, or null
+   * @return a copy of the list and of each commit in it; empty if value is null
+   * @throws IllegalArgumentException - if value is not a list of maps with string keys
+   */
+  public static List<Map<String, Object>> commitsOf(final Object value) {
+    if (value == null) {
+      return new ArrayList<>();
+    }
+    if (!(value instanceof List<?> list)) {
+      throw new IllegalArgumentException("CommitMaps: commits are not a list: " + value);
+    }
+    List<Map<String, Object>> commits = new ArrayList<>(list.size());
+    for (Object commit : list) {
+      commits.add(commitOf(commit));
+    }
+    return commits;
+  }
+
+  /**
+   * Copies a stored map of string values, such as a map of file names to hashes.
+   *
+   * @param value - stored map, or null
+   * @return a copy of the map; empty if value is null
+   * @throws IllegalArgumentException - if value is not a map of strings to strings
+   */
+  public static Map<String, String> stringsOf(final Object value) {
+    Map<String, String> strings = new HashMap<>();
+    if (value == null) {
+      return strings;
+    }
+    if (!(value instanceof Map<?, ?> map)) {
+      throw new IllegalArgumentException("CommitMaps: value is not a map: " + value);
+    }
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      if (!(entry.getKey() instanceof String key) || !(entry.getValue() instanceof String string)) {
+        throw new IllegalArgumentException("CommitMaps: map entry is not two strings: " + entry);
+      }
+      strings.put(key, string);
+    }
+    return strings;
+  }
+}
@@ -2,96 +2,78 @@ package edu.brown.cs.student.main.server.storage;
 
 import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
 
-import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
 import com.google.cloud.firestore.CollectionReference;
 import com.google.cloud.firestore.DocumentReference;
-import com.google.cloud.firestore.QueryDocumentSnapshot;
-import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Firestore;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 public class FirebaseUtilHelpers {
 
-  // holds all randomly generated commit ids
-  private final Set<String> commitIds = new HashSet<>();
+  // Deletes are sent in parallel batches as fast as Firestore accepts them. Ramping up slowly only
+  // matters when writing new documents, so there is no throttling.
+  private static final BulkWriterOptions DELETE_OPTIONS =
+      BulkWriterOptions.builder().setThrottlingEnabled(false).build();
+
+  // shared by every storage in this process, so no two of them hand out the same id
+  private static final CommitIdGenerator commitIds = new CommitIdGenerator();
 
   private final DateTimeFormatter formatter =
       DateTimeFormatter.ofPattern("MM/dd/yyyy - HH:mm:ss Z");
 
   /**
-   * Deletes the given document and all its subcollections.
+   * Deletes the given document and everything below it: its subcollections, their documents, and so
+   * on to any depth, including documents that exist only as the parent of a subcollection.
    *
    * @param doc the document to delete
+   * @throws ExecutionException - if a delete fails
+   * @throws InterruptedException - if interrupted while deleting
    */
-  public void deleteDocument(DocumentReference doc) {
-    // for each subcollection, run deleteCollection()
-    Iterable<CollectionReference> collections = doc.listCollections();
-    for (CollectionReference collection : collections) {
-      deleteCollection(collection);
+  public void deleteDocument(DocumentReference doc)
+      throws ExecutionException, InterruptedException {
+    Firestore db = doc.getFirestore();
+    BulkWriter writer = db.bulkWriter(DELETE_OPTIONS);
+    try {
+      db.recursiveDelete(doc, writer).get();
+    } finally {
+      writer.close();
     }
-    // then delete the document
-    doc.delete();
   }
 
   /**
-   * Recursively deletes all documents within the given collection. See <a
+   * Deletes every document in the given collection and everything below them. See <a
    * href="https://firebase.google.com/docs/firestore/manage-data/delete-data#collections">Firebase
    * documentation</a>
    *
    * @param collection the collection to delete
+   * @throws ExecutionException - if a delete fails
+   * @throws InterruptedException - if interrupted while deleting
    */
-  public void deleteCollection(CollectionReference collection) {
+  public void deleteCollection(CollectionReference collection)
+      throws ExecutionException, InterruptedException {
+    Firestore db = collection.getFirestore();
+    BulkWriter writer = db.bulkWriter(DELETE_OPTIONS);
     try {
-
-      // get all documents in the collection
-      ApiFuture<QuerySnapshot> future = collection.get();
-      List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-      // delete each document
-      for (QueryDocumentSnapshot doc : documents) {
-        doc.getReference().delete();
-      }
-
-      // NOTE: the query to documents may be arbitrarily large. A more robust
-      // solution would involve batching the collection.get() call.
-    } catch (Exception e) {
-      System.err.println("Error deleting collection : " + e.getMessage());
-    }
-  }
-
-  /**
-   * Method that generates a 6 character ID to be used for saved commits and stashes
-   *
-   * @return - 6-character string
-   */
-  private String generateCommitId() {
-    String alphaNum = "ABCDEFGHIJKLMNOPQRSTUVWXYZ01234567890";
-    Random random = new Random();
-    StringBuilder commitId = new StringBuilder();
-    for (int i = 0; i < 6; i++) {
-      commitId.append(alphaNum.charAt(random.nextInt(alphaNum.length())));
+      db.recursiveDelete(collection, writer).get();
+    } finally {
+      writer.close();
     }
-    return commitId.toString();
   }
 
   /**
-   * Method that generates a unique 6 character ID to be used for saved commits and stashes
+   * Method that generates a unique ID to be used for saved commits and stashes. Safe to call from
+   * any number of threads at once; see {@link CommitIdGenerator}.
    *
-   * @return - 6-character string that has not been used before
+   * @return - 12-character string that has not been used before
    */
   public String generateUniqueCommitId() {
-    String generatedId = generateCommitId();
-    while (this.commitIds.contains(generatedId)) {
-      generatedId = generateCommitId();
-    }
-    commitIds.add(generatedId);
-    return generatedId;
+    return commitIds.next();
   }
 
   /**
@@ -5,10 +5,15 @@ import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.firestore.CollectionReference;
 import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
 import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.UpdateBuilder;
+import com.google.cloud.firestore.WriteBatch;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.cloud.FirestoreClient;
@@ -21,6 +26,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 
 // Need to sort out the structure of the database to make this properly
@@ -28,9 +34,16 @@ import java.util.concurrent.ExecutionException;
 // documents}
 public class FirebaseUtilities implements StorageInterface {
 
+  // number of pushed commits read at a time when paging back through history
+  private static final int COMMIT_PAGE_SIZE = 50;
+  // times a commit is tried again when changes are added while it is being made
+  private static final int MAX_COMMIT_ATTEMPTS = 5;
+
   private final FirebaseUtilHelpers helpers = new FirebaseUtilHelpers();
   private final Firestore db;
   private final FirestorePather pather;
+  private final BlobStore blobs;
+  private final AsyncStorageInterface asyncStorage;
 
   public FirebaseUtilities() throws IOException {
     // Create /resources/ folder with firebase_config.json and
@@ -55,6 +68,9 @@ public class FirebaseUtilities implements StorageInterface {
 
     this.db = FirestoreClient.getFirestore();
     this.pather = new FirestorePather(db);
+    this.blobs = new BlobStore(db);
+    this.asyncStorage =
+        new FirestoreAsyncStorage(db, pather, blobs, AsyncStorageAdapter.sharedExecutor());
   }
   // *************************** HELPER METHODS ***************************
 
@@ -70,24 +86,145 @@ public class FirebaseUtilities implements StorageInterface {
   }
 
   /**
-   * Sets the referenced document to a singleton map from the key to the value in Firestore
+   * Adds a write to a batch setting the referenced document's field to the value in Firestore. The
+   * write happens when the batch is committed, so callers learn whether it succeeded.
    *
+   * @param batch the batch to write with
    * @param docRef the document to set
    * @param key the field name
    * @param value the value to be inserted
    */
-  private void setField(final DocumentReference docRef, final String key, final Object value) {
-    docRef.set(mapWrap(key, value), SetOptions.merge());
+  private void setField(
+      final WriteBatch batch,
+      final DocumentReference docRef,
+      final String key,
+      final Object value) {
+    batch.set(docRef, mapWrap(key, value), SetOptions.merge());
   }
 
   /**
-   * Sets the referenced document to a singleton map from the key to null in Firestore
+   * Adds a write to a batch setting the referenced document to a singleton map from the key to null
+   * in Firestore
    *
+   * @param batch the batch to write with
    * @param docRef the document to set
    * @param key the field name
    */
-  private void clearField(final DocumentReference docRef, final String key) {
-    docRef.set(mapWrap(key, null));
+  private void clearField(
+      final WriteBatch batch, final DocumentReference docRef, final String key) {
+    batch.set(docRef, mapWrap(key, null));
+  }
+
+  /**
+   * Writes commits into a branch's pushed commit log starting at the given position, one document
+   * per commit, and records the new commit count. Log documents past the new end are deleted, and
+   * the array used before the commit log existed is removed.
+   *
+   * @param writer batch or transaction to write with
+   * @param branchRef branch whose log is written
+   * @param fromSequence position of the first commit to write
+   * @param commits stored commits to write, oldest first
+   * @param oldCount number of documents currently in the log
+   */
+  private void writePushedCommits(
+      final UpdateBuilder<?> writer,
+      final BranchRef branchRef,
+      final long fromSequence,
+      final List<Map<String, Object>> commits,
+      final long oldCount) {
+    long sequence = fromSequence;
+    for (Map<String, Object> commit : commits) {
+      Map<String, Object> logged = new HashMap<>(commit);
+      logged.put(FIELD_SEQUENCE, sequence);
+      writer.set(branchRef.pushedCommit(sequence), logged);
+      sequence++;
+    }
+    // remove anything left over from a longer history
+    for (long stale = sequence; stale < oldCount; stale++) {
+      writer.delete(branchRef.pushedCommit(stale));
+    }
+    Map<String, Object> metadata = new HashMap<>();
+    metadata.put(FIELD_COMMIT_COUNT, sequence);
+    metadata.put(FIELD_COMMITS, FieldValue.delete());
+    writer.set(branchRef.pushedCommits(), metadata, SetOptions.merge());
+  }
+
+  /**
+   * Appends commits to the end of a branch's pushed commit log. A branch still storing its commits
+   * in an array has them moved into the log at the same time.
+   *
+   * @param writer batch or transaction to write with
+   * @param branchRef branch to append to
+   * @param pushedSnapshot current snapshot of the branch's pushed commits document
+   * @param commits stored commits to append, oldest first
+   */
+  private void appendPushedCommits(
+      final UpdateBuilder<?> writer,
+      final BranchRef branchRef,
+      final DocumentSnapshot pushedSnapshot,
+      final List<Map<String, Object>> commits) {
+    if (pushedSnapshot.contains(FIELD_COMMITS)) {
+      List<Map<String, Object>> allCommits = new ArrayList<>(BranchRef.commitsOf(pushedSnapshot));
+      allCommits.addAll(commits);
+      writePushedCommits(writer, branchRef, 0, allCommits, 0);
+    } else {
+      long count = BranchRef.commitCountOf(pushedSnapshot);
+      writePushedCommits(writer, branchRef, count, commits, count);
+    }
+  }
+
+  /**
+   * Reads the id of the most recent pushed commit of a branch within a transaction.
+   *
+   * @param transaction transaction to read in
+   * @param branchRef branch whose pushed commits are read
+   * @param pushedSnapshot snapshot of the branch's pushed commits document, read in the transaction
+   * @return id of the most recent pushed commit, or null if none
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  private static String pushedHeadId(
+      final Transaction transaction,
+      final BranchRef branchRef,
+      final DocumentSnapshot pushedSnapshot)
+      throws ExecutionException, InterruptedException {
+    if (pushedSnapshot.contains(FIELD_COMMITS)) {
+      return BranchSnapshot.lastCommitId(BranchRef.commitsOf(pushedSnapshot));
+    }
+    long count = BranchRef.commitCountOf(pushedSnapshot);
+    return count == 0
+        ? null
+        : transaction.get(branchRef.pushedCommit(count - 1)).get().getString(FIELD_COMMIT_ID);
+  }
+
+  /**
+   * Replaces a branch's pushed commit history. When the stored history and the replacement agree up
+   * to the shorter of the two, only the differing tail is written or deleted, so resets and
+   * fast-forwards cost as much as the commits they change rather than the whole history.
+   *
+   * @param batch batch to write with
+   * @param branchRef branch whose history is replaced
+   * @param commits stored commits making up the new history, oldest first
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  private void replacePushedCommits(
+      final WriteBatch batch, final BranchRef branchRef, final List<Map<String, Object>> commits)
+      throws ExecutionException, InterruptedException {
+    DocumentSnapshot pushedSnapshot = branchRef.pushedCommits().get().get();
+    if (pushedSnapshot.contains(FIELD_COMMITS)) {
+      writePushedCommits(batch, branchRef, 0, commits, 0);
+      return;
+    }
+    long count = BranchRef.commitCountOf(pushedSnapshot);
+    int shared = (int) Math.min(count, commits.size());
+    if (shared > 0) {
+      Object storedId = branchRef.pushedCommit(shared - 1).get().get().get(FIELD_COMMIT_ID);
+      if (!commits.get(shared - 1).get(FIELD_COMMIT_ID).equals(storedId)) {
+        shared = 0;
+      }
+    }
+    writePushedCommits(batch, branchRef, shared, commits.subList(shared, commits.size()), count);
   }
 
   // ********************************** GAME SPECIFIC METHODS ************************************
@@ -121,26 +258,29 @@ public class FirebaseUtilities implements StorageInterface {
         // generate unique commit id
         String initialCommitId = helpers.generateUniqueCommitId();
 
-        // create initial commit
+        // create initial commit, storing its files as blobs
         Map<String, Object> initialCommit =
-            helpers.createCommit(
-                file_map_json,
-                initialCommitId,
-                "game",
-                "Initial commit",
-                Collections.emptyList(),
-                "main");
+            blobs.dehydrate(
+                session_id,
+                helpers.createCommit(
+                    file_map_json,
+                    initialCommitId,
+                    "game",
+                    "Initial commit",
+                    Collections.emptyList(),
+                    "main"));
 
         // setup branch info
         final BranchRef remoteMainBranchReference = pather.getRemoteBranch(session_id, "main");
-        clearField(remoteMainBranchReference.parentBranch(), FIELD_PARENT_BRANCH_ID);
-        setField(remoteMainBranchReference.remoteFileMap(), FIELD_REMOTE_FILE_MAP, file_map_json);
-        remoteMainBranchReference.head().set(initialCommit);
+        WriteBatch batch = db.batch();
+        clearField(batch, remoteMainBranchReference.parentBranch(), FIELD_PARENT_BRANCH_ID);
+        setField(
+            batch, remoteMainBranchReference.remoteFileMap(), FIELD_REMOTE_FILE_MAP, file_map_json);
+        batch.set(remoteMainBranchReference.head(), initialCommit);
 
         // setup pushed remote commits
-        List<Map<String, Object>> remoteCommits = new ArrayList<>();
-        remoteCommits.add(initialCommit);
-        setField(remoteMainBranchReference.pushedCommits(), FIELD_COMMITS, remoteCommits);
+        replacePushedCommits(batch, remoteMainBranchReference, List.of(initialCommit));
+        batch.commit().get();
       }
       // setup user's local branch info
       final BranchRef remoteMainBranchReference = pather.getRemoteBranch(session_id, "main");
@@ -151,32 +291,35 @@ public class FirebaseUtilities implements StorageInterface {
 
       // set local file map
       final BranchRef localMainBranchReference = pather.getLocalBranch(session_id, user_id, "main");
-      setField(localMainBranchReference.localFileMap(), FIELD_LOCAL_FILE_MAP, mainFileMapJson);
+      WriteBatch batch = db.batch();
+      setField(
+          batch, localMainBranchReference.localFileMap(), FIELD_LOCAL_FILE_MAP, mainFileMapJson);
 
       // set parent branch
-      clearField(localMainBranchReference.parentBranch(), FIELD_PARENT_BRANCH_ID);
+      clearField(batch, localMainBranchReference.parentBranch(), FIELD_PARENT_BRANCH_ID);
 
       // set head
-      localMainBranchReference.head().set(mainHead);
+      batch.set(localMainBranchReference.head(), mainHead);
 
       // set pushed commits to match main
       List<Map<String, Object>> mainCommits = remoteMainBranchReference.getPushedCommitsMap();
-      setField(localMainBranchReference.pushedCommits(), FIELD_COMMITS, mainCommits);
+      replacePushedCommits(batch, localMainBranchReference, mainCommits);
 
       // set staged commits to empty list
-      localMainBranchReference
-          .stagedCommits()
-          .set(mapWrap(FIELD_COMMITS, new ArrayList<Map<String, Object>>()));
+      batch.set(
+          localMainBranchReference.stagedCommits(),
+          mapWrap(FIELD_COMMITS, new ArrayList<Map<String, Object>>()));
 
       // set changes to map file map json to null, as there are no local changes yet
       Map<String, Object> localChanges = new HashMap<>();
       localChanges.put(FIELD_FILE_MAP_JSON, null);
-      localMainBranchReference.addChanges().set(localChanges);
+      batch.set(localMainBranchReference.addChanges(), localChanges);
 
       // set stashes to empty list of maps
-      pather
-          .getStashes(session_id, user_id)
-          .set(mapWrap(FIELD_STASHES, new ArrayList<Map<String, Object>>()));
+      batch.set(
+          pather.getStashes(session_id, user_id),
+          mapWrap(FIELD_STASHES, new ArrayList<Map<String, Object>>()));
+      batch.commit().get();
     } catch (Exception e) {
       System.err.println(e.getMessage());
       throw e;
@@ -208,7 +351,8 @@ public class FirebaseUtilities implements StorageInterface {
     DocumentReference stashesRef = pather.getStashes(session_id, user_id);
     List<Map<String, Object>> stashes = pather.getStashList(session_id, user_id);
     // generate a unique message for stash
-    Map<String, Object> latestCommit = this.getLatestLocalCommit(session_id, user_id, branch_id);
+    Map<String, Object> latestCommit =
+        pather.getLocalBranch(session_id, user_id, branch_id).getHeadData();
     String stashMessage =
         "WIP on "
             + branch_id
@@ -224,7 +368,7 @@ public class FirebaseUtilities implements StorageInterface {
 
     // add stash to stash list and update local store
     stashes.add(stash);
-    stashesRef.set(mapWrap(FIELD_STASHES, stashes));
+    stashesRef.set(mapWrap(FIELD_STASHES, stashes)).get();
 
     return stashMessage;
   }
@@ -282,7 +426,7 @@ public class FirebaseUtilities implements StorageInterface {
     }
     Map<String, Object> stash = stashes.get(stash_index);
     stashes.remove(stash_index);
-    stashesRef.set(mapWrap(FIELD_STASHES, stashes));
+    stashesRef.set(mapWrap(FIELD_STASHES, stashes)).get();
     return stash;
   }
 
@@ -326,7 +470,8 @@ public class FirebaseUtilities implements StorageInterface {
     final BranchRef newRemoteBranchRef = pather.getRemoteBranch(session_id, new_branch_id);
 
     // take opportunity to update current branch's local state
-    setField(currentLocalBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, file_map_json);
+    WriteBatch batch = db.batch();
+    setField(batch, currentLocalBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, file_map_json);
 
     // check that branch_id isn't already in use
     List<String> allBranches = this.getAllRemoteBranches(session_id);
@@ -340,56 +485,59 @@ public class FirebaseUtilities implements StorageInterface {
         // create a new local branch that reflects the existing remote branch
 
         // set local branch's head
-        Map<String, Object> head = this.getLatestRemoteCommit(session_id, new_branch_id);
+        Map<String, Object> head = newRemoteBranchRef.getHeadData();
 
-        newLocalBranchRef.head().set(head);
+        batch.set(newLocalBranchRef.head(), head);
 
         // set local branch's parent branch
         String parentId =
             newRemoteBranchRef.getSnapshotFieldString(DOC_PARENT_BRANCH, FIELD_PARENT_BRANCH_ID);
-        setField(currentLocalBranchRef.parentBranch(), FIELD_PARENT_BRANCH_ID, parentId);
+        setField(batch, currentLocalBranchRef.parentBranch(), FIELD_PARENT_BRANCH_ID, parentId);
 
         // set local branch's stored local file map
         String remoteFileMapJson =
             newRemoteBranchRef.getSnapshotFieldString(DOC_PARENT_BRANCH, FIELD_REMOTE_FILE_MAP);
-        setField(currentLocalBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, remoteFileMapJson);
+        setField(
+            batch, currentLocalBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, remoteFileMapJson);
 
         // set local branch's staged commits to an empty list
-        newLocalBranchRef
-            .stagedCommits()
-            .set(mapWrap(FIELD_COMMITS, new ArrayList<Map<String, Object>>()));
+        batch.set(
+            newLocalBranchRef.stagedCommits(),
+            mapWrap(FIELD_COMMITS, new ArrayList<Map<String, Object>>()));
 
         // set local branch's pushed commits to reflect remote branch's
         List<Map<String, Object>> pushedCommits = newRemoteBranchRef.getPushedCommitsMap();
-        setField(newLocalBranchRef.pushedCommits(), FIELD_COMMITS, pushedCommits);
+        replacePushedCommits(batch, newLocalBranchRef, pushedCommits);
+        batch.commit().get();
         return;
       }
     }
     // if branch does not exist create a new one locally and remotely
 
     // set new branch's head
-    Map<String, Object> head = this.getLatestLocalCommit(session_id, user_id, current_branch_id);
-    newLocalBranchRef.head().set(head);
+    Map<String, Object> head = currentLocalBranchRef.getHeadData();
+    batch.set(newLocalBranchRef.head(), head);
 
     // set new branch's parent branch
-    setField(newLocalBranchRef.parentBranch(), FIELD_PARENT_BRANCH_ID, current_branch_id);
+    setField(batch, newLocalBranchRef.parentBranch(), FIELD_PARENT_BRANCH_ID, current_branch_id);
 
     // set new branch's stored local file map
-    setField(newLocalBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, file_map_json);
+    setField(batch, newLocalBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, file_map_json);
 
     // set new branch's staged commits to reflect current branch's
     List<Map<String, Object>> stagedCommits = currentLocalBranchRef.getStagedCommitsMap();
-    setField(newLocalBranchRef.stagedCommits(), FIELD_COMMITS, stagedCommits);
+    setField(batch, newLocalBranchRef.stagedCommits(), FIELD_COMMITS, stagedCommits);
 
     // set new branch's pushed commits to reflect current branch's
     List<Map<String, Object>> pushedCommits = currentLocalBranchRef.getPushedCommitsMap();
-    setField(newLocalBranchRef.pushedCommits(), FIELD_COMMITS, pushedCommits);
+    replacePushedCommits(batch, newLocalBranchRef, pushedCommits);
 
     // add branch to remote repository for convenience
-    setField(newRemoteBranchRef.parentBranch(), FIELD_PARENT_BRANCH_ID, current_branch_id);
-    newRemoteBranchRef.head().set(head);
-    setField(newRemoteBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, file_map_json);
-    setField(newRemoteBranchRef.pushedCommits(), FIELD_COMMITS, pushedCommits);
+    setField(batch, newRemoteBranchRef.parentBranch(), FIELD_PARENT_BRANCH_ID, current_branch_id);
+    batch.set(newRemoteBranchRef.head(), head);
+    setField(batch, newRemoteBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, file_map_json);
+    replacePushedCommits(batch, newRemoteBranchRef, pushedCommits);
+    batch.commit().get();
   }
 
   /**
@@ -412,10 +560,16 @@ public class FirebaseUtilities implements StorageInterface {
     if (!this.getAllRemoteBranches(session_id).contains(branch_id)) {
       throw new IllegalArgumentException("deleteBranch: branch_id does not exist");
     }
-    // delete local copy of branch
-    final CollectionReference localBranchRef =
-        pather.getLocalBranch(session_id, user_id, branch_id).branch();
-    helpers.deleteCollection(localBranchRef);
+    // delete local copy of branch, including its pushed commit log
+    final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
+    try {
+      helpers.deleteCollection(localBranchRef.branch());
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("deleteBranch: delete failed: " + e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("deleteBranch: interrupted while deleting", e);
+    }
   }
 
   /**
@@ -470,12 +624,23 @@ public class FirebaseUtilities implements StorageInterface {
           "addChange: session_id, user_id, branch_id, and file_map_json cannot be null");
     }
 
-    // set changes document to new version of file map
+    // set changes document to new version of file map and take opportunity to update local file
+    // map in branch info, both in a single batched write
     final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
-    Map<String, Object> changes = mapWrap(FIELD_FILE_MAP_JSON, file_map_json);
-    localBranchRef.addChanges().set(changes);
-    // take opportunity to update local file map in branch info
-    setField(localBranchRef.localFileMap(), FIELD_LOCAL_FILE_MAP, file_map_json);
+    WriteBatch batch = db.batch();
+    batch.set(localBranchRef.addChanges(), mapWrap(FIELD_FILE_MAP_JSON, file_map_json));
+    batch.set(
+        localBranchRef.localFileMap(),
+        mapWrap(FIELD_LOCAL_FILE_MAP, file_map_json),
+        SetOptions.merge());
+    try {
+      batch.commit().get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("addChange: write failed: " + e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("addChange: interrupted while writing", e);
+    }
   }
 
   /**
@@ -499,7 +664,8 @@ public class FirebaseUtilities implements StorageInterface {
           "getLatestLocalCommit: session_id, user_id, and branch_id cannot be null");
     }
     // retrieve head stored in local branch and return last added commit
-    return pather.getLocalBranch(session_id, user_id, branch_id).getHeadData();
+    return blobs.hydrate(
+        session_id, pather.getLocalBranch(session_id, user_id, branch_id).getHeadData());
   }
 
   /**
@@ -521,7 +687,8 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "getStagedCommits: session_id, user_id, and branch_id cannot be null");
     }
-    return pather.getLocalBranch(session_id, user_id, branch_id).getStagedCommitsMap();
+    return blobs.hydrateAll(
+        session_id, pather.getLocalBranch(session_id, user_id, branch_id).getStagedCommitsMap());
   }
 
   /**
@@ -543,7 +710,8 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "getLocalPushedCommits: session_id, user_id, and branch_id cannot be null");
     }
-    return pather.getLocalBranch(session_id, user_id, branch_id).getPushedCommitsMap();
+    return blobs.hydrateAll(
+        session_id, pather.getLocalBranch(session_id, user_id, branch_id).getPushedCommitsMap());
   }
 
   /**
@@ -564,7 +732,7 @@ public class FirebaseUtilities implements StorageInterface {
           "getLatestRemoteCommit: session_id and branch_id cannot be null");
     }
     // retrieve head stored in remote branch and return last added commit
-    return pather.getRemoteBranch(session_id, branch_id).getHeadData();
+    return blobs.hydrate(session_id, pather.getRemoteBranch(session_id, branch_id).getHeadData());
   }
 
   /**
@@ -584,7 +752,8 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "getRemotePushedCommits: session_id and branch_id cannot be null");
     }
-    return pather.getRemoteBranch(session_id, branch_id).getPushedCommitsMap();
+    return blobs.hydrateAll(
+        session_id, pather.getRemoteBranch(session_id, branch_id).getPushedCommitsMap());
   }
 
   /**
@@ -606,12 +775,34 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "getLatestStagedCommit: session_id, user_id, and branch_id cannot be null");
     }
-    String json =
-        pather
-            .getLocalBranch(session_id, user_id, branch_id)
-            .getSnapshotFieldString(DOC_ADD_CHANGES, FIELD_FILE_MAP_JSON);
-    System.out.println(json);
-    return json;
+    return pather
+        .getLocalBranch(session_id, user_id, branch_id)
+        .getSnapshotFieldString(DOC_ADD_CHANGES, FIELD_FILE_MAP_JSON);
+  }
+
+  /**
+   * Method that reads the state of a local branch and the remote branch it pushes to with a single
+   * batched read of all six branch documents. The local branch's most recent pushed commit is then
+   * read while both heads and the staged commits are hydrated together, so blobs they share are
+   * read once.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch id of the local and remote branch
+   * @return - snapshot of the branch's state
+   * @throws IllegalArgumentException - if any parameters are null
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  @Override
+  public BranchSnapshot getBranchSnapshot(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getBranchSnapshot: session_id, user_id, and branch_id cannot be null");
+    }
+    return AsyncStorageInterface.await(
+        asyncStorage.getBranchSnapshot(session_id, user_id, branch_id));
   }
 
   /**
@@ -639,29 +830,56 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "commitChange: session_id, user_id, branch_id, and commit_message cannot be null");
     }
-    // get last stored changes
-    String changedFileMapJson = this.getLatestLocalChanges(session_id, user_id, branch_id);
-    System.out.println("saved json: " + changedFileMapJson);
     // generate new commit id
-    String commitId = helpers.generateUniqueCommitId();
-
-    // create new commit
-    Map<String, Object> newCommit =
-        helpers.createCommit(
-            changedFileMapJson, commitId, user_id, commit_message, parent_commit_ids, branch_id);
-
-    // add new commit to local staged commits then update local store
+    final String commitId = helpers.generateUniqueCommitId();
+    final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
 
-    BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
-    // update branch's staged commits
-    List<Map<String, Object>> stagedCommits = localBranchRef.getStagedCommitsMap();
-    stagedCommits.add(newCommit);
-    setField(localBranchRef.stagedCommits(), FIELD_COMMITS, stagedCommits);
-    // update branch's head
-    localBranchRef.head().set(newCommit);
-    // clear changes since they have all been committed
-    clearField(localBranchRef.addChanges(), FIELD_FILE_MAP_JSON);
-    return newCommit;
+    // the commit's files are stored as blobs before the transaction starts, since blob writes are
+    // not part of it and would be repeated on every retry; the transaction only stores their hashes
+    for (int attempt = 0; attempt < MAX_COMMIT_ATTEMPTS; attempt++) {
+      final String changedFileMapJson =
+          localBranchRef.getSnapshotFieldString(DOC_ADD_CHANGES, FIELD_FILE_MAP_JSON);
+      final Map<String, Object> commit =
+          helpers.createCommit(
+              changedFileMapJson, commitId, user_id, commit_message, parent_commit_ids, branch_id);
+      final Map<String, Object> storedCommit = blobs.dehydrate(session_id, commit);
+
+      // read the stored changes and staged commits, then write the new staged commits, head, and
+      // cleared changes, all in one transaction
+      final boolean committed =
+          db.runTransaction(
+                  transaction -> {
+                    List<DocumentSnapshot> snapshots =
+                        transaction
+                            .getAll(localBranchRef.addChanges(), localBranchRef.stagedCommits())
+                            .get();
+                    // changes added since they were read are committed by the next attempt
+                    if (!Objects.equals(
+                        snapshots.get(0).getString(FIELD_FILE_MAP_JSON), changedFileMapJson)) {
+                      return false;
+                    }
+
+                    // add the commit to local staged commits
+                    List<Map<String, Object>> stagedCommits = BranchRef.commitsOf(snapshots.get(1));
+                    stagedCommits.add(storedCommit);
+                    transaction.set(
+                        localBranchRef.stagedCommits(),
+                        mapWrap(FIELD_COMMITS, stagedCommits),
+                        SetOptions.merge());
+                    // update branch's head
+                    transaction.set(localBranchRef.head(), storedCommit);
+                    // clear changes since they have all been committed
+                    transaction.set(
+                        localBranchRef.addChanges(), mapWrap(FIELD_FILE_MAP_JSON, null));
+                    return true;
+                  })
+              .get();
+      if (committed) {
+        return commit;
+      }
+    }
+    throw new IllegalStateException(
+        "commitChange: changes kept being added while the commit was being made");
   }
 
   /**
@@ -684,31 +902,50 @@ public class FirebaseUtilities implements StorageInterface {
           "pushCommit: session_id, user_id, branch_id cannot be null");
     }
     final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
-    // get all staged commits
-    List<Map<String, Object>> stagedCommits = localBranchRef.getStagedCommitsMap();
-    // get all local pushed commits
-    List<Map<String, Object>> localPushedCommits = localBranchRef.getPushedCommitsMap();
-    // get all remote pushed commits
     final BranchRef remoteBranchRef = pather.getRemoteBranch(session_id, branch_id);
-    List<Map<String, Object>> remotePushedCommits = remoteBranchRef.getPushedCommitsMap();
 
-    // add each staged commit to local and remote pushed commits, with the most recent commit being
-    // added last
-    for (Map<String, Object> commit : stagedCommits) {
-      localPushedCommits.add(commit);
-      remotePushedCommits.add(commit);
-    }
-
-    // update local store with new pushed commits
-    setField(localBranchRef.pushedCommits(), FIELD_COMMITS, localPushedCommits);
-    // update remote store with new pushed commits
-    setField(remoteBranchRef.pushedCommits(), FIELD_COMMITS, remotePushedCommits);
-    // update remote store head with most recent commit
-    remoteBranchRef.head().set(remotePushedCommits.get(remotePushedCommits.size() - 1));
-
-    // clear staged commits, as they have all now been pushed
-    List<Map<String, Object>> clearedCommits = new ArrayList<>();
-    setField(localBranchRef.stagedCommits(), FIELD_COMMITS, clearedCommits);
+    // read and write both the local and remote branch in one transaction, so two users pushing
+    // to the same remote branch at once are retried in turn instead of overwriting each other's
+    // commits, and the second is rejected once the first has moved the remote head
+    db.runTransaction(
+            transaction -> {
+              List<DocumentSnapshot> snapshots =
+                  transaction
+                      .getAll(
+                          localBranchRef.stagedCommits(),
+                          localBranchRef.pushedCommits(),
+                          remoteBranchRef.pushedCommits(),
+                          remoteBranchRef.head())
+                      .get();
+              // get all staged commits
+              List<Map<String, Object>> stagedCommits = BranchRef.commitsOf(snapshots.get(0));
+              if (stagedCommits.isEmpty()) {
+                return null;
+              }
+              // only fast-forward pushes are allowed: the local branch must have pulled the remote
+              // head before committing on top of it
+              String localPushedHeadId =
+                  pushedHeadId(transaction, localBranchRef, snapshots.get(1));
+              String remoteHeadId = snapshots.get(3).getString(FIELD_COMMIT_ID);
+              if (!Objects.equals(localPushedHeadId, remoteHeadId)) {
+                throw new IllegalStateException(
+                    "pushCommit: remote branch has changed since the last pull");
+              }
+
+              // append each staged commit to the local and remote pushed commit logs, with the most
+              // recent commit being added last; only the new commits are written
+              appendPushedCommits(transaction, localBranchRef, snapshots.get(1), stagedCommits);
+              appendPushedCommits(transaction, remoteBranchRef, snapshots.get(2), stagedCommits);
+              // update remote store head with most recent commit
+              transaction.set(remoteBranchRef.head(), stagedCommits.get(stagedCommits.size() - 1));
+              // clear staged commits, as they have all now been pushed
+              transaction.set(
+                  localBranchRef.stagedCommits(),
+                  mapWrap(FIELD_COMMITS, new ArrayList<Map<String, Object>>()),
+                  SetOptions.merge());
+              return null;
+            })
+        .get();
   }
 
   /**
@@ -735,8 +972,13 @@ public class FirebaseUtilities implements StorageInterface {
     List<Map<String, Object>> pushedCommits = localBranchRef.getPushedCommitsMap();
     List<Map<String, Object>> stagedCommits = localBranchRef.getStagedCommitsMap();
 
-    localCommits.put(FIELD_PUSHED_COMMITS, pushedCommits);
-    localCommits.put(FIELD_STAGED_COMMITS, stagedCommits);
+    // hydrate both lists together so blobs shared between them are read once
+    List<Map<String, Object>> allCommits = new ArrayList<>(pushedCommits);
+    allCommits.addAll(stagedCommits);
+    allCommits = blobs.hydrateAll(session_id, allCommits);
+    localCommits.put(FIELD_PUSHED_COMMITS, allCommits.subList(0, pushedCommits.size()));
+    localCommits.put(
+        FIELD_STAGED_COMMITS, allCommits.subList(pushedCommits.size(), allCommits.size()));
     return localCommits;
   }
 
@@ -757,7 +999,8 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "getAllRemoteCommits: session_id, and branch_id cannot be null");
     }
-    return pather.getRemoteBranch(session_id, branch_id).getPushedCommitsMap();
+    return blobs.hydrateAll(
+        session_id, pather.getRemoteBranch(session_id, branch_id).getPushedCommitsMap());
   }
 
   /**
@@ -789,6 +1032,127 @@ public class FirebaseUtilities implements StorageInterface {
     return allCommits;
   }
 
+  /**
+   * Method for returning one page of a branch's log: staged commits, newest first, followed by the
+   * remote branch's pushed commits, newest first. Only the commits on the page are read from the
+   * remote commit log, and only their blobs are read when files are included. Cursors are "s" and
+   * an index into the newest-first staged commits, or "r" and the sequence number the next remote
+   * commit comes before.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - id of currently checked out branch
+   * @param limit - maximum number of commits to return
+   * @param cursor - cursor returned with the previous page; null for the first page
+   * @param include_files - whether commits should include their file_map_json
+   * @return a map holding the list of commits and, if there are more, the next page's cursor
+   * @throws IllegalArgumentException - if any ids are null, limit is not positive, or the cursor is
+   *     invalid
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  @Override
+  public Map<String, Object> getCommitLog(
+      String session_id,
+      String user_id,
+      String branch_id,
+      int limit,
+      String cursor,
+      boolean include_files)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getCommitLog: session_id, user_id, and branch_id cannot be null");
+    }
+    if (limit <= 0) {
+      throw new IllegalArgumentException("getCommitLog: limit must be positive");
+    }
+    // parse cursor into the phase of the log and the position within it
+    boolean inStaged = true;
+    long position = 0;
+    if (cursor != null) {
+      try {
+        inStaged = cursor.startsWith("s");
+        if (!inStaged && !cursor.startsWith("r")) {
+          throw new NumberFormatException();
+        }
+        position = Long.parseLong(cursor.substring(1));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("getCommitLog: invalid cursor '" + cursor + "'");
+      }
+    }
+
+    final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
+    final BranchRef remoteBranchRef = pather.getRemoteBranch(session_id, branch_id);
+    List<DocumentSnapshot> snapshots =
+        db.getAll(localBranchRef.stagedCommits(), remoteBranchRef.pushedCommits()).get();
+    List<Map<String, Object>> stagedCommits = BranchRef.commitsOf(snapshots.get(0));
+    DocumentSnapshot remoteSnapshot = snapshots.get(1);
+    long remoteCount = BranchRef.commitCountOf(remoteSnapshot);
+
+    List<Map<String, Object>> commits = new ArrayList<>();
+    String nextCursor = null;
+    long remoteBefore = remoteCount;
+    if (inStaged) {
+      // staged commits are stored oldest first
+      for (long i = position; i < stagedCommits.size() && commits.size() < limit; i++) {
+        commits.add(stagedCommits.get((int) (stagedCommits.size() - 1 - i)));
+        position = i + 1;
+      }
+      if (position < stagedCommits.size()) {
+        nextCursor = "s" + position;
+      }
+    } else {
+      remoteBefore = Math.min(position, remoteCount);
+    }
+
+    if (nextCursor == null && commits.size() < limit && remoteBefore > 0) {
+      int wanted = limit - commits.size();
+      if (remoteSnapshot.contains(FIELD_COMMITS)) {
+        // stored before the commit log existed
+        List<Map<String, Object>> remoteCommits = BranchRef.commitsOf(remoteSnapshot);
+        while (wanted > 0 && remoteBefore > 0) {
+          remoteBefore--;
+          commits.add(remoteCommits.get((int) remoteBefore));
+          wanted--;
+        }
+      } else {
+        List<QueryDocumentSnapshot> remotePage =
+            remoteBranchRef.getPushedCommitsPage(wanted, remoteBefore);
+        for (QueryDocumentSnapshot document : remotePage) {
+          commits.add(BranchRef.commitOf(document));
+          remoteBefore = document.getLong(FIELD_SEQUENCE);
+        }
+        if (remotePage.size() < wanted) {
+          // reached the oldest commit
+          remoteBefore = 0;
+        }
+      }
+      if (remoteBefore > 0) {
+        nextCursor = "r" + remoteBefore;
+      }
+    } else if (nextCursor == null && remoteBefore > 0 && commits.size() == limit) {
+      nextCursor = "r" + remoteBefore;
+    }
+
+    if (include_files) {
+      commits = blobs.hydrateAll(session_id, commits);
+    } else {
+      List<Map<String, Object>> stripped = new ArrayList<>(commits.size());
+      for (Map<String, Object> commit : commits) {
+        Map<String, Object> copy = new HashMap<>(commit);
+        copy.remove(FIELD_FILE_MAP_JSON);
+        copy.remove(FIELD_FILE_HASHES);
+        stripped.add(copy);
+      }
+      commits = stripped;
+    }
+    Map<String, Object> page = new HashMap<>();
+    page.put(FIELD_COMMITS, commits);
+    page.put(FIELD_NEXT_CURSOR, nextCursor);
+    return page;
+  }
+
   /**
    * Method for returning the data for a specified commit on a user's local repository. Used for git
    * reset.
@@ -811,27 +1175,46 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "getCommit: session_id, user_id, branch_id, and commit_id cannot be null");
     }
-    // check local staged and pushed commits for desired commit
-    Map<String, List<Map<String, Object>>> allLocalCommits =
-        this.getAllLocalCommits(session_id, user_id, branch_id);
+    // check local staged and pushed commits for desired commit, only reading the blobs of the
+    // commit that is found
+    final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
     Map<String, Object> foundCommit = null;
     // check staged commits for desired commit
-    for (Map<String, Object> commit : allLocalCommits.get(FIELD_STAGED_COMMITS)) {
+    for (Map<String, Object> commit : localBranchRef.getStagedCommitsMap()) {
       if (commit.get(FIELD_COMMIT_ID).equals(commit_id)) {
         foundCommit = commit;
         break;
       }
     }
-    // if commit can't be found in staged commits, search through pushed commits
+    // if commit can't be found in staged commits, page back through pushed commits from newest
     if (foundCommit == null) {
-      for (Map<String, Object> commit : allLocalCommits.get(FIELD_PUSHED_COMMITS)) {
-        if (commit.get(FIELD_COMMIT_ID).equals(commit_id)) {
-          foundCommit = commit;
-          break;
+      DocumentSnapshot pushedSnapshot = localBranchRef.pushedCommits().get().get();
+      if (pushedSnapshot.contains(FIELD_COMMITS)) {
+        for (Map<String, Object> commit : BranchRef.commitsOf(pushedSnapshot)) {
+          if (commit.get(FIELD_COMMIT_ID).equals(commit_id)) {
+            foundCommit = commit;
+            break;
+          }
+        }
+      } else {
+        long cursor = BranchRef.commitCountOf(pushedSnapshot);
+        while (foundCommit == null && cursor > 0) {
+          List<QueryDocumentSnapshot> page =
+              localBranchRef.getPushedCommitsPage(COMMIT_PAGE_SIZE, cursor);
+          if (page.isEmpty()) {
+            break;
+          }
+          for (QueryDocumentSnapshot document : page) {
+            if (commit_id.equals(document.get(FIELD_COMMIT_ID))) {
+              foundCommit = BranchRef.commitOf(document);
+              break;
+            }
+          }
+          cursor = page.get(page.size() - 1).getLong(FIELD_SEQUENCE);
         }
       }
     }
-    return foundCommit;
+    return blobs.hydrate(session_id, foundCommit);
   }
 
   /**
@@ -852,13 +1235,41 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException(
           "pullRemoteCommits: session_id, user_id, and branch_id cannot be null");
     }
-    List<Map<String, Object>> remoteCommits = this.getAllRemoteCommits(session_id, branch_id);
+    final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
+    final BranchRef remoteBranchRef = pather.getRemoteBranch(session_id, branch_id);
+    List<DocumentSnapshot> snapshots =
+        db.getAll(localBranchRef.pushedCommits(), remoteBranchRef.pushedCommits()).get();
+    DocumentSnapshot localSnapshot = snapshots.get(0);
+    DocumentSnapshot remoteSnapshot = snapshots.get(1);
 
     // set local branch's pushed commits to match remote branch's history
-    pather
-        .getLocalBranch(session_id, user_id, branch_id)
-        .pushedCommits()
-        .set(mapWrap(FIELD_COMMITS, remoteCommits));
+    WriteBatch batch = db.batch();
+    if (localSnapshot.contains(FIELD_COMMITS) || remoteSnapshot.contains(FIELD_COMMITS)) {
+      replacePushedCommits(batch, localBranchRef, remoteBranchRef.getPushedCommitsMap());
+    } else {
+      // when the local history is the start of the remote history, only copy the newer commits
+      long localCount = BranchRef.commitCountOf(localSnapshot);
+      long remoteCount = BranchRef.commitCountOf(remoteSnapshot);
+      long shared = Math.min(localCount, remoteCount);
+      if (shared > 0) {
+        List<DocumentSnapshot> lastShared =
+            db.getAll(
+                    localBranchRef.pushedCommit(shared - 1),
+                    remoteBranchRef.pushedCommit(shared - 1))
+                .get();
+        if (!Objects.equals(
+            lastShared.get(0).get(FIELD_COMMIT_ID), lastShared.get(1).get(FIELD_COMMIT_ID))) {
+          shared = 0;
+        }
+      }
+      writePushedCommits(
+          batch,
+          localBranchRef,
+          shared,
+          remoteBranchRef.getPushedCommitsFrom(shared, remoteCount),
+          localCount);
+    }
+    batch.commit().get();
   }
 
   /**
@@ -877,14 +1288,17 @@ public class FirebaseUtilities implements StorageInterface {
       String user_id,
       String branch_id,
       Map<String, List<Map<String, Object>>> commits)
-      throws IllegalArgumentException {
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
     if (session_id == null || user_id == null || branch_id == null) {
       throw new IllegalArgumentException(
           "resetLocalCommits: session_id, user_id, branch_id, and commits cannot be null");
     }
 
-    List<Map<String, Object>> stagedCommits = commits.get("staged_commits");
-    List<Map<String, Object>> pushedCommits = commits.get("pushed_commits");
+    // store commits by blob hash, which only writes blobs for files not already stored
+    List<Map<String, Object>> stagedCommits =
+        blobs.dehydrateAll(session_id, commits.get("staged_commits"));
+    List<Map<String, Object>> pushedCommits =
+        blobs.dehydrateAll(session_id, commits.get("pushed_commits"));
 
     final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
 
@@ -894,19 +1308,17 @@ public class FirebaseUtilities implements StorageInterface {
     } else {
       head = stagedCommits.get(stagedCommits.size() - 1);
     }
-    // replace local pushed commits with reset commits list
-    setField(localBranchRef.pushedCommits(), FIELD_COMMITS, pushedCommits);
-
-    // replace local staged commits with reset commits list
-    setField(localBranchRef.stagedCommits(), FIELD_COMMITS, stagedCommits);
-
-    // set head to last commit in list (commit you reset to)
-    localBranchRef.head().set(head);
-
-    // clear any staged changes
+    // replace local pushed and staged commits with reset commits lists, set head to last commit in
+    // list (commit you reset to), and clear any staged changes, all in a single batched write
     Map<String, Object> changes = new HashMap<>();
     changes.put(FIELD_FILE_MAP_JSON, null);
-    localBranchRef.addChanges().set(changes);
+    WriteBatch batch = db.batch();
+    replacePushedCommits(batch, localBranchRef, pushedCommits);
+    batch.set(
+        localBranchRef.stagedCommits(), mapWrap(FIELD_COMMITS, stagedCommits), SetOptions.merge());
+    batch.set(localBranchRef.head(), head);
+    batch.set(localBranchRef.addChanges(), changes);
+    batch.commit().get();
   }
 
   /**
@@ -926,36 +1338,10 @@ public class FirebaseUtilities implements StorageInterface {
       throws IllegalArgumentException, ExecutionException, InterruptedException {
     if (session_id == null || user_id == null || branch_id == null) {
       throw new IllegalArgumentException(
-          "getCommit: session_id, user_id, and branch_id cannot be null");
-    }
-
-    Map<String, Object> fetchedChanges = new HashMap<>();
-    List<Map<String, Object>> newBranches = new ArrayList<>();
-    Map<String, Object> commitUpdates = new HashMap<>();
-    // check if there are new branches
-    List<String> allRemoteBranches = this.getAllRemoteBranches(session_id);
-    List<String> allLocalBranches = this.getAllLocalBranches(session_id, user_id);
-    for (String branch : allRemoteBranches) {
-      if (!allLocalBranches.contains(branch)) {
-        Map<String, Object> newBranch = new HashMap<>();
-        newBranch.put(FIELD_BRANCH_ID, branch);
-        newBranch.put(FIELD_REMOTE_BRANCH_ID, "origin/" + branch);
-        newBranches.add(newBranch);
-      }
-    }
-    fetchedChanges.put(FIELD_NEW_BRANCHES, newBranches);
-
-    // check if remote head has been updated
-    Map<String, Object> latestLocalCommit =
-        this.getLatestLocalCommit(session_id, user_id, branch_id);
-    Map<String, Object> latestRemoteCommit = this.getLatestRemoteCommit(session_id, branch_id);
-    if (!latestLocalCommit.get(FIELD_COMMIT_ID).equals(latestRemoteCommit.get(FIELD_COMMIT_ID))) {
-      commitUpdates.put(FIELD_OLD_COMMIT_ID, latestLocalCommit.get(FIELD_COMMIT_ID));
-      commitUpdates.put(FIELD_NEW_COMMIT_ID, latestRemoteCommit.get(FIELD_COMMIT_ID));
+          "fetch: session_id, user_id, and branch_id cannot be null");
     }
-    fetchedChanges.put(FIELD_COMMIT_UPDATES, commitUpdates);
-    // return changes
-    return fetchedChanges;
+    // the branch lists and both heads are independent, so they are read at once
+    return AsyncStorageInterface.await(asyncStorage.fetch(session_id, user_id, branch_id));
   }
 
   /**
@@ -990,6 +1376,25 @@ public class FirebaseUtilities implements StorageInterface {
       throw new IllegalArgumentException("deleteSession: session_id cannot be null");
     }
     DocumentReference docRef = db.collection(COLLECTION_SESSIONS).document(session_id);
-    helpers.deleteDocument(docRef);
+    try {
+      helpers.deleteDocument(docRef);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("deleteSession: delete failed: " + e.getMessage(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("deleteSession: interrupted while deleting", e);
+    } finally {
+      blobs.evictSession(session_id);
+    }
+  }
+
+  /**
+   * Returns reads that go through Firestore's own futures, so no thread waits on a document read.
+   *
+   * @return - asynchronous reads against Firestore
+   */
+  @Override
+  public AsyncStorageInterface async() {
+    return asyncStorage;
   }
 }
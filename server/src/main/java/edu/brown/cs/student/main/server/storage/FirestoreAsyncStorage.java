@@ -0,0 +1,277 @@
+package edu.brown.cs.student.main.server.storage;
+
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncStorageInterface} for {@link FirebaseUtilities}, reading documents through
+ * Firestore's own futures so no thread waits on a document read. Commits still have their file maps
+ * rebuilt from blobs on an executor, since that may need a further (usually cached) blob read.
+ * Branch listing has no non-blocking Firestore call, so it also runs on the executor.
+ */
+class FirestoreAsyncStorage implements AsyncStorageInterface {
+
+  private final Firestore db;
+  private final FirestorePather pather;
+  private final BlobStore blobs;
+  private final Executor executor;
+
+  /**
+   * @param db - Firestore client, used for batched reads
+   * @param pather - builds references to the session's documents
+   * @param blobs - rebuilds commit file maps
+   * @param executor - runs hydration and branch listing
+   */
+  FirestoreAsyncStorage(
+      final Firestore db,
+      final FirestorePather pather,
+      final BlobStore blobs,
+      final Executor executor) {
+    this.db = db;
+    this.pather = pather;
+    this.blobs = blobs;
+    this.executor = executor;
+  }
+
+  /**
+   * Adapts a Firestore future to a CompletableFuture.
+   *
+   * @param apiFuture - Firestore future
+   * @return future completed when the Firestore future is
+   */
+  static <T> CompletableFuture<T> toCompletable(final ApiFuture<T> apiFuture) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    ApiFutures.addCallback(
+        apiFuture,
+        new ApiFutureCallback<T>() {
+          @Override
+          public void onFailure(Throwable t) {
+            future.completeExceptionally(t);
+          }
+
+          @Override
+          public void onSuccess(T result) {
+            future.complete(result);
+          }
+        },
+        MoreExecutors.directExecutor());
+    return future;
+  }
+
+  /**
+   * Rebuilds the file maps of commits on the executor once they have been read.
+   *
+   * @param session_id - unique session id
+   * @param commits - future of the stored commits
+   * @return future of the hydrated commits
+   */
+  private CompletableFuture<List<Map<String, Object>>> hydrateAll(
+      final String session_id, final CompletableFuture<List<Map<String, Object>>> commits) {
+    return commits.thenApplyAsync(
+        stored -> {
+          try {
+            return blobs.hydrateAll(session_id, stored);
+          } catch (ExecutionException | InterruptedException e) {
+            throw new CompletionException(e);
+          }
+        },
+        executor);
+  }
+
+  /**
+   * Reads a branch head and rebuilds its file map.
+   *
+   * @param session_id - unique session id
+   * @param branch - branch to read the head of
+   * @return future of the hydrated head commit; null if the branch has no head
+   */
+  private CompletableFuture<Map<String, Object>> head(
+      final String session_id, final BranchRef branch) {
+    return toCompletable(branch.head().get())
+        .thenApplyAsync(
+            snapshot -> {
+              try {
+                return blobs.hydrate(session_id, snapshot.getData());
+              } catch (ExecutionException | InterruptedException e) {
+                throw new CompletionException(e);
+              }
+            },
+            executor);
+  }
+
+  private static <T> CompletableFuture<T> nullArgument(final String message) {
+    return CompletableFuture.failedFuture(new IllegalArgumentException(message));
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getLatestLocalCommit(
+      String session_id, String user_id, String branch_id) {
+    if (session_id == null || user_id == null || branch_id == null) {
+      return nullArgument(
+          "getLatestLocalCommit: session_id, user_id, and branch_id cannot be null");
+    }
+    return head(session_id, pather.getLocalBranch(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public CompletableFuture<Map<String, Object>> getLatestRemoteCommit(
+      String session_id, String branch_id) {
+    if (session_id == null || branch_id == null) {
+      return nullArgument("getLatestRemoteCommit: session_id and branch_id cannot be null");
+    }
+    return head(session_id, pather.getRemoteBranch(session_id, branch_id));
+  }
+
+  @Override
+  public CompletableFuture<List<Map<String, Object>>> getStagedCommits(
+      String session_id, String user_id, String branch_id) {
+    if (session_id == null || user_id == null || branch_id == null) {
+      return nullArgument("getStagedCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    return hydrateAll(
+        session_id,
+        toCompletable(pather.getLocalBranch(session_id, user_id, branch_id).stagedCommits().get())
+            .thenApply(BranchRef::commitsOf));
+  }
+
+  @Override
+  public CompletableFuture<String> getLatestLocalChanges(
+      String session_id, String user_id, String branch_id) {
+    if (session_id == null || user_id == null || branch_id == null) {
+      return nullArgument(
+          "getLatestLocalChanges: session_id, user_id, and branch_id cannot be null");
+    }
+    return toCompletable(pather.getLocalBranch(session_id, user_id, branch_id).addChanges().get())
+        .thenApply((DocumentSnapshot snapshot) -> snapshot.getString(FIELD_FILE_MAP_JSON));
+  }
+
+  /**
+   * Reads the id of a local branch's most recent pushed commit without waiting on the read.
+   *
+   * @param branch - local branch
+   * @param pushedCommits - snapshot of the branch's pushed commits document
+   * @return future of the id of the most recent pushed commit; null if none
+   */
+  private static CompletableFuture<String> pushedHeadId(
+      final BranchRef branch, final DocumentSnapshot pushedCommits) {
+    if (pushedCommits.contains(FIELD_COMMITS)) {
+      // stored before the commit log existed
+      return CompletableFuture.completedFuture(
+          BranchSnapshot.lastCommitId(BranchRef.commitsOf(pushedCommits)));
+    }
+    final long count = BranchRef.commitCountOf(pushedCommits);
+    if (count == 0) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return toCompletable(branch.pushedCommit(count - 1).get())
+        .thenApply(snapshot -> snapshot.getString(FIELD_COMMIT_ID));
+  }
+
+  @Override
+  public CompletableFuture<BranchSnapshot> getBranchSnapshot(
+      String session_id, String user_id, String branch_id) {
+    if (session_id == null || user_id == null || branch_id == null) {
+      return nullArgument("getBranchSnapshot: session_id, user_id, and branch_id cannot be null");
+    }
+    final BranchRef localBranchRef = pather.getLocalBranch(session_id, user_id, branch_id);
+    final BranchRef remoteBranchRef = pather.getRemoteBranch(session_id, branch_id);
+    // getAll returns snapshots in the order the documents are given
+    return toCompletable(
+            db.getAll(
+                localBranchRef.head(),
+                localBranchRef.stagedCommits(),
+                localBranchRef.pushedCommits(),
+                localBranchRef.addChanges(),
+                remoteBranchRef.head(),
+                remoteBranchRef.pushedCommits()))
+        .thenCompose(
+            snapshots -> {
+              final Map<String, Object> localHead = snapshots.get(0).getData();
+              final List<Map<String, Object>> stagedCommits = BranchRef.commitsOf(snapshots.get(1));
+              final Map<String, Object> remoteHead = snapshots.get(4).getData();
+
+              // hydrate both heads and the staged commits together, so blobs they share are read
+              // once, while the local branch's last pushed commit is read
+              final List<Map<String, Object>> commits = new ArrayList<>();
+              if (localHead != null) {
+                commits.add(localHead);
+              }
+              if (remoteHead != null) {
+                commits.add(remoteHead);
+              }
+              commits.addAll(stagedCommits);
+              return hydrateAll(session_id, CompletableFuture.completedFuture(commits))
+                  .thenCombine(
+                      pushedHeadId(localBranchRef, snapshots.get(2)),
+                      (hydrated, localPushedHeadId) -> {
+                        int next = 0;
+                        return new BranchSnapshot(
+                            localHead == null ? null : hydrated.get(next++),
+                            remoteHead == null ? null : hydrated.get(next++),
+                            hydrated.subList(next, hydrated.size()),
+                            localPushedHeadId,
+                            BranchRef.commitCountOf(snapshots.get(2)),
+                            BranchRef.commitCountOf(snapshots.get(5)),
+                            snapshots.get(3).getString(FIELD_FILE_MAP_JSON));
+                      });
+            });
+  }
+
+  @Override
+  public CompletableFuture<List<String>> getAllRemoteBranches(String session_id) {
+    if (session_id == null) {
+      return nullArgument("getAllRemoteBranches: session_id cannot be null");
+    }
+    return CompletableFuture.supplyAsync(() -> pather.getAllRemoteBranches(session_id), executor);
+  }
+
+  @Override
+  public CompletableFuture<List<String>> getAllLocalBranches(String session_id, String user_id) {
+    if (session_id == null || user_id == null) {
+      return nullArgument("getAllLocalBranches: session_id and user_id cannot be null");
+    }
+    return CompletableFuture.supplyAsync(
+        () -> pather.getAllLocalBranches(session_id, user_id), executor);
+  }
+
+  /**
+   * Finds updates stored remotely but not in the user's local repository. Both branch lists are
+   * listed while both heads are read in one batched read; heads are compared by id, so their file
+   * maps are not rebuilt.
+   */
+  @Override
+  public CompletableFuture<Map<String, Object>> fetch(
+      String session_id, String user_id, String branch_id) {
+    if (session_id == null || user_id == null || branch_id == null) {
+      return nullArgument("fetch: session_id, user_id, and branch_id cannot be null");
+    }
+    final CompletableFuture<List<String>> remoteBranches = getAllRemoteBranches(session_id);
+    final CompletableFuture<List<String>> localBranches = getAllLocalBranches(session_id, user_id);
+    final CompletableFuture<List<DocumentSnapshot>> heads =
+        toCompletable(
+            db.getAll(
+                pather.getLocalBranch(session_id, user_id, branch_id).head(),
+                pather.getRemoteBranch(session_id, branch_id).head()));
+    return CompletableFuture.allOf(remoteBranches, localBranches, heads)
+        .thenApply(
+            done ->
+                AsyncStorageInterface.fetchedChanges(
+                    remoteBranches.join(),
+                    localBranches.join(),
+                    heads.join().get(0).getString(FIELD_COMMIT_ID),
+                    heads.join().get(1).getString(FIELD_COMMIT_ID)));
+  }
+}
@@ -12,6 +12,9 @@ public final class FirestoreConstants {
   public static final String COLLECTION_SESSIONS = "sessions";
   public static final String COLLECTION_LOCAL_STORE = "local_store";
   public static final String COLLECTION_REMOTE_STORE = "remote_store";
+  public static final String COLLECTION_BLOBS = "blobs";
+  // one document per pushed commit, under a branch's pushed commits document
+  public static final String COLLECTION_COMMITS = "commits";
 
   // ===== Document Names =====
   public static final String DOC_USERS = "users";
@@ -33,6 +36,12 @@ public final class FirestoreConstants {
   public static final String FIELD_DATE_TIME = "date_time";
   public static final String FIELD_COMMIT_MESSAGE = "commit_message";
   public static final String FIELD_PARENT_COMMIT_IDS = "parent_commits";
+  // stored in place of file_map_json, filename to blob hash
+  public static final String FIELD_FILE_HASHES = "file_hashes";
+
+  // blob fields: json text of the contents, or their binary encoding in newer blobs
+  public static final String FIELD_BLOB_CONTENTS = "contents";
+  public static final String FIELD_BLOB_BINARY = "encoded";
 
   public static final String FIELD_PARENT_BRANCH_ID = "parent_branch_id";
   public static final String FIELD_REMOTE_FILE_MAP = "remote_file_map_json";
@@ -43,6 +52,13 @@ public final class FirestoreConstants {
 
   public static final String FIELD_COMMITS = "commits";
 
+  // pushed commit log fields
+  public static final String FIELD_SEQUENCE = "sequence";
+  public static final String FIELD_COMMIT_COUNT = "commit_count";
+
+  // commit log pages
+  public static final String FIELD_NEXT_CURSOR = "next_cursor";
+
   public static final String FIELD_STASHES = "stashes";
   public static final String FIELD_STASH_MESSAGE = "stash_message";
 
@@ -0,0 +1,1007 @@
+package edu.brown.cs.student.main.server.storage;
+
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A complete {@link StorageInterface} held entirely in memory, with the same behavior as {@link
+ * FirebaseUtilities}. Sessions are lost when the server stops, which suits short-lived classroom
+ * sessions, and no call waits on the network, which makes it the baseline for measuring handler
+ * overhead.
+ *
+ * <p>Sessions live in a concurrent map. Each session is guarded by one of a fixed set of locks
+ * chosen by the hash of its id, so calls on different sessions rarely contend and the number of
+ * locks does not grow with the number of sessions. Every change is described as a list of records
+ * (set a head, append pushed commits, and so on) which are then applied to the session; subclasses
+ * such as {@link LocalDiskStorage} persist those records. Returned commits are copies.
+ */
+public class InMemoryStorage implements StorageInterface {
+
+  private static final int LOCK_STRIPES = 64;
+
+  private final FirebaseUtilHelpers helpers = new FirebaseUtilHelpers();
+  private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+  private final Object[] locks = new Object[LOCK_STRIPES];
+
+  /** State of one branch, local or remote. */
+  private static final class BranchState {
+    private Map<String, Object> head;
+    private List<Map<String, Object>> staged = new ArrayList<>();
+    private final List<Map<String, Object>> pushed = new ArrayList<>();
+    private String changes;
+    private String parentBranchId;
+    private String localFileMap;
+    private String remoteFileMap;
+  }
+
+  /** State of one session; guarded by the session's lock. */
+  static class SessionState {
+    private final Map<String, BranchState> remote = new TreeMap<>();
+    private final Map<String, Map<String, BranchState>> local = new TreeMap<>();
+    private final Map<String, List<Map<String, Object>>> stashes = new HashMap<>();
+
+    SessionState() {}
+
+    /**
+     * Returns a branch, creating it if needed.
+     *
+     * @param user_id - user whose local branch it is; null for a remote branch
+     * @param branch_id - branch id
+     */
+    private BranchState branch(final String user_id, final String branch_id) {
+      Map<String, BranchState> branches =
+          user_id == null ? remote : local.computeIfAbsent(user_id, k -> new TreeMap<>());
+      return branches.computeIfAbsent(branch_id, k -> new BranchState());
+    }
+
+    /**
+     * Returns a branch, or null if it does not exist.
+     *
+     * @param user_id - user whose local branch it is; null for a remote branch
+     * @param branch_id - branch id
+     */
+    private BranchState find(final String user_id, final String branch_id) {
+      Map<String, BranchState> branches = user_id == null ? remote : local.get(user_id);
+      return branches == null ? null : branches.get(branch_id);
+    }
+  }
+
+  /** Changes a session while holding its lock. */
+  @FunctionalInterface
+  private interface SessionAction<T> {
+    /**
+     * @param session - the session's state
+     * @param records - records of the change to make, added to by the action
+     * @return the result to return to the caller
+     */
+    T apply(SessionState session, List<Map<String, Object>> records) throws ExecutionException;
+  }
+
+  /** Reads a session while holding its lock. */
+  @FunctionalInterface
+  private interface SessionReader<T> {
+    /**
+     * @param session - the session's state
+     * @return the result to return to the caller
+     */
+    T read(SessionState session);
+  }
+
+  /** Creates empty in-memory storage. */
+  public InMemoryStorage() {
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+  }
+
+  // *************************** HOOKS FOR PERSISTENT SUBCLASSES ***************************
+
+  /**
+   * Finds a session that is not in memory, such as one stored before a restart. Called with the
+   * session's lock held.
+   *
+   * @param session_id - unique session id
+   * @return the session's state, or null if it does not exist
+   * @throws IOException - if stored state cannot be read
+   */
+  SessionState restore(final String session_id) throws IOException {
+    return null;
+  }
+
+  /**
+   * Creates the state of a new session. Called with the session's lock held.
+   *
+   * @param session_id - unique session id
+   * @throws IOException - if the session cannot be created
+   */
+  SessionState create(final String session_id) throws IOException {
+    return new SessionState();
+  }
+
+  /**
+   * Persists a change before it is applied to memory. Called with the session's lock held.
+   *
+   * @param session_id - unique session id
+   * @param session - the session's state, before the change
+   * @param records - records describing the change
+   * @return a token passed to {@link #awaitPersisted} once the lock is released
+   * @throws IOException - if the change cannot be persisted; it is then not applied
+   */
+  long persist(
+      final String session_id, final SessionState session, final List<Map<String, Object>> records)
+      throws IOException {
+    return 0;
+  }
+
+  /**
+   * Waits until a persisted change is durable. Called after the session's lock is released, so
+   * waits for several changes can overlap.
+   *
+   * @param session - the session's state
+   * @param token - value returned by {@link #persist}
+   * @throws IOException - if the change cannot be made durable
+   */
+  void awaitPersisted(final SessionState session, final long token) throws IOException {}
+
+  /**
+   * Called after a session's records have been applied to memory, with its lock held.
+   *
+   * @param session - the session's state
+   * @throws IOException - if follow-up work such as compaction fails
+   */
+  void applied(final SessionState session) throws IOException {}
+
+  /**
+   * Discards a deleted session. Called with the session's lock held.
+   *
+   * @param session_id - unique session id
+   * @param session - the session's state; null if it was never loaded
+   * @throws IOException - if stored state cannot be removed
+   */
+  void discard(final String session_id, final SessionState session) throws IOException {}
+
+  // *************************** SESSION HELPERS ***************************
+
+  /**
+   * Returns the lock guarding a session.
+   *
+   * @param session_id - unique session id
+   * @return lock object for the session, shared with sessions whose ids hash alike
+   */
+  private Object lockFor(final String session_id) {
+    return locks[Math.floorMod(session_id.hashCode(), locks.length)];
+  }
+
+  /**
+   * Returns a session's state, loading it if needed. Must hold the session lock.
+   *
+   * @param session_id - unique session id
+   * @return the session's state, or null if it does not exist
+   */
+  private SessionState existing(final String session_id) throws IOException {
+    SessionState session = sessions.get(session_id);
+    if (session == null) {
+      session = restore(session_id);
+      if (session != null) {
+        sessions.put(session_id, session);
+      }
+    }
+    return session;
+  }
+
+  /**
+   * Reads a session under its lock.
+   *
+   * @param session_id - unique session id
+   * @param reader - reads the session
+   * @param missing - result if the session does not exist
+   * @return the reader's result
+   */
+  private <T> T read(final String session_id, final SessionReader<T> reader, final T missing) {
+    synchronized (lockFor(session_id)) {
+      try {
+        SessionState session = existing(session_id);
+        return session == null ? missing : reader.read(session);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Changes a session, creating it if it does not exist: under the session's lock the action
+   * decides which records to write, and they are persisted and applied to memory. Waiting for them
+   * to be durable happens after the lock is released.
+   *
+   * @param session_id - unique session id
+   * @param action - describes the change by adding records
+   * @return the action's result
+   * @throws ExecutionException - if the change cannot be persisted
+   */
+  private <T> T mutate(final String session_id, final SessionAction<T> action)
+      throws ExecutionException {
+    SessionState session;
+    T result;
+    long token;
+    try {
+      synchronized (lockFor(session_id)) {
+        session = existing(session_id);
+        if (session == null) {
+          session = create(session_id);
+          sessions.put(session_id, session);
+        }
+        List<Map<String, Object>> records = new ArrayList<>();
+        result = action.apply(session, records);
+        if (records.isEmpty()) {
+          return result;
+        }
+        token = persist(session_id, session, records);
+        for (Map<String, Object> record : records) {
+          apply(session, record);
+        }
+        applied(session);
+      }
+      awaitPersisted(session, token);
+    } catch (IOException e) {
+      throw new ExecutionException(e);
+    }
+    return result;
+  }
+
+  /**
+   * Changes a session from a method that does not declare checked exceptions.
+   *
+   * @param session_id - unique session id
+   * @param action - describes the change by adding records
+   */
+  private void mutateUnchecked(final String session_id, final SessionAction<Void> action) {
+    try {
+      mutate(session_id, action);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw new UncheckedIOException(ioException);
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Describes a session's whole state as records that recreate it when applied to an empty session.
+   * Must hold the session lock.
+   *
+   * @param session - the session to describe
+   * @return records recreating the session
+   */
+  static List<Map<String, Object>> snapshot(final SessionState session) {
+    List<Map<String, Object>> records = new ArrayList<>();
+    snapshotBranches(records, null, session.remote);
+    for (Map.Entry<String, Map<String, BranchState>> user : session.local.entrySet()) {
+      snapshotBranches(records, user.getKey(), user.getValue());
+    }
+    for (Map.Entry<String, List<Map<String, Object>>> stash : session.stashes.entrySet()) {
+      records.add(record("stashes", stash.getKey(), null, stash.getValue()));
+    }
+    return records;
+  }
+
+  private static void snapshotBranches(
+      final List<Map<String, Object>> records,
+      final String user_id,
+      final Map<String, BranchState> branches) {
+    for (Map.Entry<String, BranchState> entry : branches.entrySet()) {
+      String branch_id = entry.getKey();
+      BranchState branch = entry.getValue();
+      records.add(record("staged", user_id, branch_id, branch.staged));
+      records.add(record("pushed_append", user_id, branch_id, branch.pushed));
+      records.add(record("head", user_id, branch_id, branch.head));
+      records.add(record("changes", user_id, branch_id, branch.changes));
+      records.add(record("parent", user_id, branch_id, branch.parentBranchId));
+      records.add(record("local_file_map", user_id, branch_id, branch.localFileMap));
+      records.add(record("remote_file_map", user_id, branch_id, branch.remoteFileMap));
+    }
+  }
+
+  /**
+   * Builds a log record.
+   *
+   * @param op - what the record changes
+   * @param user_id - user whose local branch or stashes it changes; null for a remote branch
+   * @param branch_id - branch it changes; null for stashes
+   * @param value - the new value
+   */
+  private static Map<String, Object> record(
+      final String op, final String user_id, final String branch_id, final Object value) {
+    Map<String, Object> record = new HashMap<>();
+    record.put("op", op);
+    record.put("user", user_id);
+    record.put("branch", branch_id);
+    record.put("value", value);
+    return record;
+  }
+
+  /**
+   * Applies a log record to a session's state.
+   *
+   * @param session - session to change
+   * @param record - record to apply
+   */
+  static void apply(final SessionState session, final Map<String, Object> record) {
+    String op = (String) record.get("op");
+    String user_id = (String) record.get("user");
+    String branch_id = (String) record.get("branch");
+    Object value = record.get("value");
+    switch (op) {
+      case "stashes" -> session.stashes.put(user_id, copyCommits(value));
+      case "delete_branch" -> {
+        Map<String, BranchState> branches = session.local.get(user_id);
+        if (branches != null) {
+          branches.remove(branch_id);
+        }
+      }
+      default -> {
+        BranchState branch = session.branch(user_id, branch_id);
+        switch (op) {
+          case "head" -> branch.head = copyCommit(value);
+          case "staged" -> branch.staged = copyCommits(value);
+          case "pushed_append" -> branch.pushed.addAll(copyCommits(value));
+          case "pushed_truncate" -> {
+            int length = ((Number) value).intValue();
+            branch.pushed.subList(length, branch.pushed.size()).clear();
+          }
+          case "changes" -> branch.changes = (String) value;
+          case "parent" -> branch.parentBranchId = (String) value;
+          case "local_file_map" -> branch.localFileMap = (String) value;
+          case "remote_file_map" -> branch.remoteFileMap = (String) value;
+          default -> throw new IllegalStateException("LocalDiskStorage: unknown record " + op);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds the records replacing a branch's pushed history. Only the part after the longest common
+   * start of the old and new histories is written.
+   *
+   * @param records - records to add to
+   * @param user_id - user whose local branch it is; null for a remote branch
+   * @param branch_id - branch id
+   * @param current - the branch's pushed history now
+   * @param commits - its new pushed history
+   */
+  private static void replacePushed(
+      final List<Map<String, Object>> records,
+      final String user_id,
+      final String branch_id,
+      final List<Map<String, Object>> current,
+      final List<Map<String, Object>> commits) {
+    int shared = 0;
+    int limit = Math.min(current.size(), commits.size());
+    while (shared < limit
+        && Objects.equals(
+            current.get(shared).get(FIELD_COMMIT_ID), commits.get(shared).get(FIELD_COMMIT_ID))) {
+      shared++;
+    }
+    if (shared < current.size()) {
+      records.add(record("pushed_truncate", user_id, branch_id, shared));
+    }
+    if (shared < commits.size()) {
+      records.add(
+          record(
+              "pushed_append",
+              user_id,
+              branch_id,
+              new ArrayList<>(commits.subList(shared, commits.size()))));
+    }
+  }
+
+  /** Returns a commit id not used before; ids are shared by every session. */
+  private String newCommitId() {
+    return helpers.generateUniqueCommitId();
+  }
+
+  private static Map<String, Object> copyCommit(final Object commit) {
+    return CommitMaps.commitOf(commit);
+  }
+
+  private static List<Map<String, Object>> copyCommits(final Object commits) {
+    return CommitMaps.commitsOf(commits);
+  }
+
+  private static List<Map<String, Object>> pushedOf(final BranchState branch) {
+    return branch == null ? new ArrayList<>() : copyCommits(branch.pushed);
+  }
+
+  private static List<Map<String, Object>> stagedOf(final BranchState branch) {
+    return branch == null ? new ArrayList<>() : copyCommits(branch.staged);
+  }
+
+  private static Map<String, Object> headOf(final BranchState branch) {
+    return branch == null ? null : copyCommit(branch.head);
+  }
+
+  // ********************************** GAME SPECIFIC METHODS ************************************
+
+  @Override
+  public void addSession(String session_id, String user_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || file_map_json == null) {
+      throw new IllegalArgumentException("addSession: session_id and file_map_json cannot be null");
+    }
+    mutate(
+        session_id,
+        (session, records) -> {
+          Map<String, Object> mainHead;
+          List<Map<String, Object>> mainCommits;
+          String mainFileMapJson;
+          BranchState remoteMain = session.find(null, "main");
+          // create remote repository if this is the first user to log into the session
+          if (session.remote.isEmpty() || remoteMain == null) {
+            Map<String, Object> initialCommit =
+                helpers.createCommit(
+                    file_map_json,
+                    newCommitId(),
+                    "game",
+                    "Initial commit",
+                    Collections.emptyList(),
+                    "main");
+            records.add(record("parent", null, "main", null));
+            records.add(record("remote_file_map", null, "main", file_map_json));
+            records.add(record("head", null, "main", initialCommit));
+            records.add(record("pushed_append", null, "main", List.of(initialCommit)));
+            mainHead = initialCommit;
+            mainCommits = List.of(initialCommit);
+            mainFileMapJson = file_map_json;
+          } else {
+            mainHead = remoteMain.head;
+            mainCommits = remoteMain.pushed;
+            mainFileMapJson = remoteMain.remoteFileMap;
+          }
+          // set up user's local main branch to match remote main
+          records.add(record("local_file_map", user_id, "main", mainFileMapJson));
+          records.add(record("parent", user_id, "main", null));
+          records.add(record("head", user_id, "main", mainHead));
+          replacePushed(
+              records, user_id, "main", pushedOf(session.find(user_id, "main")), mainCommits);
+          records.add(record("staged", user_id, "main", List.of()));
+          records.add(record("changes", user_id, "main", null));
+          records.add(record("stashes", user_id, null, List.of()));
+          return null;
+        });
+  }
+
+  @Override
+  public String addStash(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || file_map_json == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "addStash: session_id, user_id, branch_id, and file_map_json cannot be null");
+    }
+    return mutate(
+        session_id,
+        (session, records) -> {
+          Map<String, Object> latestCommit = headOf(session.find(user_id, branch_id));
+          if (latestCommit == null) {
+            latestCommit = Map.of();
+          }
+          String stashMessage =
+              "WIP on "
+                  + branch_id
+                  + ": "
+                  + latestCommit.get(FIELD_COMMIT_ID)
+                  + " "
+                  + latestCommit.get(FIELD_COMMIT_MESSAGE);
+          Map<String, Object> stash = new HashMap<>();
+          stash.put(FIELD_FILE_MAP_JSON, file_map_json);
+          stash.put(FIELD_STASH_MESSAGE, stashMessage);
+          List<Map<String, Object>> stashes =
+              copyCommits(session.stashes.getOrDefault(user_id, List.of()));
+          stashes.add(stash);
+          records.add(record("stashes", user_id, null, stashes));
+          return stashMessage;
+        });
+  }
+
+  @Override
+  public List<Map<String, Object>> getStashes(String session_id, String user_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null) {
+      throw new IllegalArgumentException("getStashes: session_id and user_id cannot be null");
+    }
+    return read(
+        session_id, session -> copyCommits(session.stashes.get(user_id)), new ArrayList<>());
+  }
+
+  @Override
+  public Map<String, Object> popStash(String session_id, String user_id, int stash_index)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null) {
+      throw new IllegalArgumentException("popStash: session_id and user_id cannot be null");
+    }
+    if (stash_index < 0) {
+      throw new IllegalArgumentException("popStash: stash_index cannot be negative");
+    }
+    return mutate(
+        session_id,
+        (session, records) -> {
+          List<Map<String, Object>> stashes =
+              copyCommits(session.stashes.getOrDefault(user_id, List.of()));
+          if (stash_index >= stashes.size()) {
+            return null;
+          }
+          Map<String, Object> stash = stashes.remove(stash_index);
+          records.add(record("stashes", user_id, null, stashes));
+          return stash;
+        });
+  }
+
+  @Override
+  public void addBranch(
+      String session_id,
+      String user_id,
+      String current_branch_id,
+      String new_branch_id,
+      String file_map_json)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null
+        || user_id == null
+        || current_branch_id == null
+        || new_branch_id == null
+        || file_map_json == null) {
+      throw new IllegalArgumentException(
+          "addBranch: session_id, user_id, current_branch_id, new_branch_id, "
+              + "and file_map_json cannot be null");
+    }
+    mutate(
+        session_id,
+        (session, records) -> {
+          // take opportunity to update current branch's local state
+          records.add(record("local_file_map", user_id, current_branch_id, file_map_json));
+
+          BranchState remoteBranch = session.find(null, new_branch_id);
+          if (remoteBranch != null) {
+            if (session.find(user_id, new_branch_id) != null) {
+              throw new IllegalArgumentException(
+                  "addBranch: branch '" + new_branch_id + "' already exists");
+            }
+            // create a new local branch that reflects the existing remote branch
+            records.add(record("head", user_id, new_branch_id, remoteBranch.head));
+            records.add(record("parent", user_id, new_branch_id, remoteBranch.parentBranchId));
+            records.add(
+                record("local_file_map", user_id, new_branch_id, remoteBranch.localFileMap));
+            records.add(record("staged", user_id, new_branch_id, List.of()));
+            records.add(record("pushed_append", user_id, new_branch_id, remoteBranch.pushed));
+            return null;
+          }
+          // if branch does not exist create a new one locally and remotely, from the current branch
+          BranchState current = session.find(user_id, current_branch_id);
+          Map<String, Object> head = headOf(current);
+          List<Map<String, Object>> pushedCommits = pushedOf(current);
+          records.add(record("head", user_id, new_branch_id, head));
+          records.add(record("parent", user_id, new_branch_id, current_branch_id));
+          records.add(record("local_file_map", user_id, new_branch_id, file_map_json));
+          records.add(record("staged", user_id, new_branch_id, stagedOf(current)));
+          records.add(record("pushed_append", user_id, new_branch_id, pushedCommits));
+
+          // add branch to remote repository for convenience
+          records.add(record("parent", null, new_branch_id, current_branch_id));
+          records.add(record("head", null, new_branch_id, head));
+          records.add(record("local_file_map", null, new_branch_id, file_map_json));
+          records.add(record("pushed_append", null, new_branch_id, pushedCommits));
+          return null;
+        });
+  }
+
+  @Override
+  public void deleteBranch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "deleteBranch: session_id, user_id, and branch_id cannot be null");
+    }
+    mutateUnchecked(
+        session_id,
+        (session, records) -> {
+          // check that branch exists
+          if (session.find(null, branch_id) == null) {
+            throw new IllegalArgumentException("deleteBranch: branch_id does not exist");
+          }
+          records.add(record("delete_branch", user_id, branch_id, null));
+          return null;
+        });
+  }
+
+  @Override
+  public List<String> getAllRemoteBranches(String session_id) throws IllegalArgumentException {
+    if (session_id == null) {
+      throw new IllegalArgumentException("getAllBranches: session_id cannot be null");
+    }
+    return read(session_id, session -> new ArrayList<>(session.remote.keySet()), new ArrayList<>());
+  }
+
+  @Override
+  public List<String> getAllLocalBranches(String session_id, String user_id)
+      throws IllegalArgumentException {
+    if (session_id == null || user_id == null) {
+      throw new IllegalArgumentException(
+          "getAllLocalBranches: session_id and user_id cannot be null");
+    }
+    return read(
+        session_id,
+        session -> new ArrayList<>(session.local.getOrDefault(user_id, Map.of()).keySet()),
+        new ArrayList<>());
+  }
+
+  @Override
+  public void addChange(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException {
+    if (session_id == null || user_id == null || branch_id == null || file_map_json == null) {
+      throw new IllegalArgumentException(
+          "addChange: session_id, user_id, branch_id, and file_map_json cannot be null");
+    }
+    mutateUnchecked(
+        session_id,
+        (session, records) -> {
+          records.add(record("changes", user_id, branch_id, file_map_json));
+          records.add(record("local_file_map", user_id, branch_id, file_map_json));
+          return null;
+        });
+  }
+
+  @Override
+  public Map<String, Object> getLatestLocalCommit(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLatestLocalCommit: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(session_id, session -> headOf(session.find(user_id, branch_id)), null);
+  }
+
+  @Override
+  public List<Map<String, Object>> getStagedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getStagedCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(
+        session_id, session -> stagedOf(session.find(user_id, branch_id)), new ArrayList<>());
+  }
+
+  @Override
+  public List<Map<String, Object>> getLocalPushedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLocalPushedCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(
+        session_id, session -> pushedOf(session.find(user_id, branch_id)), new ArrayList<>());
+  }
+
+  @Override
+  public Map<String, Object> getLatestRemoteCommit(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLatestRemoteCommit: session_id and branch_id cannot be null");
+    }
+    return read(session_id, session -> headOf(session.find(null, branch_id)), null);
+  }
+
+  @Override
+  public List<Map<String, Object>> getRemotePushedCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getRemotePushedCommits: session_id and branch_id cannot be null");
+    }
+    return read(session_id, session -> pushedOf(session.find(null, branch_id)), new ArrayList<>());
+  }
+
+  @Override
+  public String getLatestLocalChanges(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getLatestLocalChanges: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(
+        session_id,
+        session -> {
+          BranchState branch = session.find(user_id, branch_id);
+          return branch == null ? null : branch.changes;
+        },
+        null);
+  }
+
+  @Override
+  public BranchSnapshot getBranchSnapshot(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getBranchSnapshot: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(
+        session_id,
+        session -> {
+          BranchState local = session.find(user_id, branch_id);
+          BranchState remote = session.find(null, branch_id);
+          return new BranchSnapshot(
+              local == null ? null : local.head,
+              remote == null ? null : remote.head,
+              local == null ? null : local.staged,
+              local == null ? null : BranchSnapshot.lastCommitId(local.pushed),
+              local == null ? 0 : local.pushed.size(),
+              remote == null ? 0 : remote.pushed.size(),
+              local == null ? null : local.changes);
+        },
+        new BranchSnapshot(null, null, null, null, 0, 0, null));
+  }
+
+  @Override
+  public Map<String, Object> commitChange(
+      String session_id,
+      String user_id,
+      String branch_id,
+      String commit_message,
+      List<String> parent_commit_ids)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "commitChange: session_id, user_id, branch_id, and commit_message cannot be null");
+    }
+    return mutate(
+        session_id,
+        (session, records) -> {
+          BranchState branch = session.find(user_id, branch_id);
+          Map<String, Object> commit =
+              helpers.createCommit(
+                  branch == null ? null : branch.changes,
+                  newCommitId(),
+                  user_id,
+                  commit_message,
+                  parent_commit_ids,
+                  branch_id);
+          // add commit to staged commits, move the head to it and clear the committed changes
+          List<Map<String, Object>> stagedCommits = stagedOf(branch);
+          stagedCommits.add(commit);
+          records.add(record("staged", user_id, branch_id, stagedCommits));
+          records.add(record("head", user_id, branch_id, commit));
+          records.add(record("changes", user_id, branch_id, null));
+          return copyCommit(commit);
+        });
+  }
+
+  @Override
+  public void pushCommit(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "pushCommit: session_id, user_id, branch_id cannot be null");
+    }
+    mutate(
+        session_id,
+        (session, records) -> {
+          List<Map<String, Object>> stagedCommits = stagedOf(session.find(user_id, branch_id));
+          if (stagedCommits.isEmpty()) {
+            return null;
+          }
+          // append staged commits to the local and remote pushed commits, most recent last
+          records.add(record("pushed_append", user_id, branch_id, stagedCommits));
+          records.add(record("pushed_append", null, branch_id, stagedCommits));
+          records.add(record("head", null, branch_id, stagedCommits.get(stagedCommits.size() - 1)));
+          records.add(record("staged", user_id, branch_id, List.of()));
+          return null;
+        });
+  }
+
+  @Override
+  public Map<String, List<Map<String, Object>>> getAllLocalCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getAllLocalCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(
+        session_id,
+        session -> {
+          BranchState branch = session.find(user_id, branch_id);
+          Map<String, List<Map<String, Object>>> localCommits = new HashMap<>();
+          localCommits.put(FIELD_PUSHED_COMMITS, pushedOf(branch));
+          localCommits.put(FIELD_STAGED_COMMITS, stagedOf(branch));
+          return localCommits;
+        },
+        new HashMap<>(
+            Map.of(
+                FIELD_PUSHED_COMMITS, new ArrayList<>(), FIELD_STAGED_COMMITS, new ArrayList<>())));
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllRemoteCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getAllRemoteCommits: session_id, and branch_id cannot be null");
+    }
+    return getRemotePushedCommits(session_id, branch_id);
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllCommits(
+      String session_id, String user_id, String branch_id) throws ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getAllCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(
+        session_id,
+        session -> {
+          List<Map<String, Object>> allCommits = stagedOf(session.find(user_id, branch_id));
+          allCommits.addAll(pushedOf(session.find(null, branch_id)));
+          return allCommits;
+        },
+        new ArrayList<>());
+  }
+
+  @Override
+  public void pullRemoteCommits(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "pullRemoteCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    mutate(
+        session_id,
+        (session, records) -> {
+          // set local branch's pushed commits to match remote branch's history
+          replacePushed(
+              records,
+              user_id,
+              branch_id,
+              pushedOf(session.find(user_id, branch_id)),
+              pushedOf(session.find(null, branch_id)));
+          return null;
+        });
+  }
+
+  @Override
+  public void resetLocalCommits(
+      String session_id,
+      String user_id,
+      String branch_id,
+      Map<String, List<Map<String, Object>>> commits)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "resetLocalCommits: session_id, user_id, branch_id, and commits cannot be null");
+    }
+    List<Map<String, Object>> stagedCommits = copyCommits(commits.get(FIELD_STAGED_COMMITS));
+    List<Map<String, Object>> pushedCommits = copyCommits(commits.get(FIELD_PUSHED_COMMITS));
+    Map<String, Object> head =
+        stagedCommits.isEmpty()
+            ? pushedCommits.get(pushedCommits.size() - 1)
+            : stagedCommits.get(stagedCommits.size() - 1);
+    mutate(
+        session_id,
+        (session, records) -> {
+          // replace local pushed and staged commits, set head to the commit reset to, and clear
+          // any staged changes
+          replacePushed(
+              records,
+              user_id,
+              branch_id,
+              pushedOf(session.find(user_id, branch_id)),
+              pushedCommits);
+          records.add(record("staged", user_id, branch_id, stagedCommits));
+          records.add(record("head", user_id, branch_id, head));
+          records.add(record("changes", user_id, branch_id, null));
+          return null;
+        });
+  }
+
+  @Override
+  public Map<String, Object> getCommit(
+      String session_id, String user_id, String branch_id, String commit_id)
+      throws ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null || commit_id == null) {
+      throw new IllegalArgumentException(
+          "getCommit: session_id, user_id, branch_id, and commit_id cannot be null");
+    }
+    return read(
+        session_id,
+        session -> {
+          BranchState branch = session.find(user_id, branch_id);
+          if (branch == null) {
+            return null;
+          }
+          for (Map<String, Object> commit : branch.staged) {
+            if (commit_id.equals(commit.get(FIELD_COMMIT_ID))) {
+              return copyCommit(commit);
+            }
+          }
+          for (int i = branch.pushed.size() - 1; i >= 0; i--) {
+            if (commit_id.equals(branch.pushed.get(i).get(FIELD_COMMIT_ID))) {
+              return copyCommit(branch.pushed.get(i));
+            }
+          }
+          return null;
+        },
+        null);
+  }
+
+  @Override
+  public Map<String, Object> fetch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "fetch: session_id, user_id, and branch_id cannot be null");
+    }
+    return read(
+        session_id,
+        session -> {
+          Map<String, Object> fetchedChanges = new HashMap<>();
+          // check if there are new branches
+          List<Map<String, Object>> newBranches = new ArrayList<>();
+          Map<String, BranchState> localBranches = session.local.getOrDefault(user_id, Map.of());
+          for (String branch : session.remote.keySet()) {
+            if (!localBranches.containsKey(branch)) {
+              Map<String, Object> newBranch = new HashMap<>();
+              newBranch.put(FIELD_BRANCH_ID, branch);
+              newBranch.put(FIELD_REMOTE_BRANCH_ID, "origin/" + branch);
+              newBranches.add(newBranch);
+            }
+          }
+          fetchedChanges.put(FIELD_NEW_BRANCHES, newBranches);
+
+          // check if remote head has been updated
+          Map<String, Object> commitUpdates = new HashMap<>();
+          Map<String, Object> localHead = headOf(session.find(user_id, branch_id));
+          Map<String, Object> remoteHead = headOf(session.find(null, branch_id));
+          Object localCommitId = localHead == null ? null : localHead.get(FIELD_COMMIT_ID);
+          Object remoteCommitId = remoteHead == null ? null : remoteHead.get(FIELD_COMMIT_ID);
+          if (!Objects.equals(localCommitId, remoteCommitId)) {
+            commitUpdates.put(FIELD_OLD_COMMIT_ID, localCommitId);
+            commitUpdates.put(FIELD_NEW_COMMIT_ID, remoteCommitId);
+          }
+          fetchedChanges.put(FIELD_COMMIT_UPDATES, commitUpdates);
+          return fetchedChanges;
+        },
+        null);
+  }
+
+  @Override
+  public List<String> getAllSessions() throws ExecutionException {
+    return new ArrayList<>(new TreeSet<>(sessions.keySet()));
+  }
+
+  @Override
+  public void deleteSession(String session_id) throws IllegalArgumentException {
+    if (session_id == null) {
+      throw new IllegalArgumentException("deleteSession: session_id cannot be null");
+    }
+    synchronized (lockFor(session_id)) {
+      try {
+        discard(session_id, sessions.remove(session_id));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
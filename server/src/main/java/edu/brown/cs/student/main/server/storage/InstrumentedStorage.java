@@ -0,0 +1,486 @@
+package edu.brown.cs.student.main.server.storage;
+
+import edu.brown.cs.student.main.server.metrics.ServerMetrics;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * A {@link StorageInterface} that passes every call through to another storage and records it in a
+ * {@link ServerMetrics}: its method, how long it took, whether it threw, and the approximate size
+ * of the data sent and returned. Sizes are counted in characters of the strings involved, mostly
+ * file map json, so they track bytes on the wire closely without serializing anything.
+ *
+ * <p>A server may wrap more than one layer of its storage, each under its own layer name. Wrapping
+ * {@link FirebaseUtilities} beneath a {@link CachingStorage} counts only the calls that reach
+ * Firestore, and wrapping the storage handlers use counts every call, cache hits included. Reads
+ * made through {@link #async()} are recorded under the same method names once they complete.
+ */
+public class InstrumentedStorage implements StorageInterface {
+
+  private final StorageInterface delegate;
+  private final ServerMetrics metrics;
+  private final String layer;
+  private final AsyncStorageInterface asyncReads = new RecordedReads();
+
+  /** A storage call. */
+  @FunctionalInterface
+  private interface Call<T> {
+    T run() throws ExecutionException, InterruptedException;
+  }
+
+  /**
+   * Wraps storage so its calls are recorded.
+   *
+   * @param delegate - storage every call goes to
+   * @param metrics - metrics calls are recorded in
+   * @param layer - name calls are recorded under, e.g. {@code firestore}
+   */
+  public InstrumentedStorage(
+      final StorageInterface delegate, final ServerMetrics metrics, final String layer) {
+    if (delegate == null || metrics == null || layer == null) {
+      throw new IllegalArgumentException("InstrumentedStorage: arguments cannot be null");
+    }
+    this.delegate = delegate;
+    this.metrics = metrics;
+    this.layer = layer;
+  }
+
+  /**
+   * Makes a call to the delegate and records it.
+   *
+   * @param method - name of the method called
+   * @param written - approximate size of the data passed to the call
+   * @param call - the call
+   * @return what the call returned
+   */
+  private <T> T record(final String method, final long written, final Call<T> call)
+      throws ExecutionException, InterruptedException {
+    long start = System.nanoTime();
+    boolean failed = true;
+    T result = null;
+    try {
+      result = call.run();
+      failed = false;
+      return result;
+    } finally {
+      metrics.recordStorageCall(
+          layer, method, System.nanoTime() - start, written, sizeOf(result), failed);
+    }
+  }
+
+  /** Makes a call that throws no checked exceptions to the delegate and records it. */
+  private <T> T recordUnchecked(final String method, final long written, final Supplier<T> call) {
+    try {
+      return record(method, written, call::get);
+    } catch (ExecutionException | InterruptedException e) {
+      // the supplier cannot throw either
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Starts an asynchronous call to the delegate and records it once it completes.
+   *
+   * @param method - name of the method called
+   * @param call - starts the call
+   * @return future of what the call returns
+   */
+  private <T> CompletableFuture<T> recordAsync(
+      final String method, final Supplier<CompletableFuture<T>> call) {
+    final long start = System.nanoTime();
+    final CompletableFuture<T> future;
+    try {
+      future = call.get();
+    } catch (RuntimeException e) {
+      metrics.recordStorageCall(layer, method, System.nanoTime() - start, 0, 0, true);
+      throw e;
+    }
+    return future.whenComplete(
+        (result, failure) ->
+            metrics.recordStorageCall(
+                layer, method, System.nanoTime() - start, 0, sizeOf(result), failure != null));
+  }
+
+  /**
+   * Estimates the size of stored data: the characters of its strings, and eight for any other
+   * value.
+   *
+   * @param value - a string, number, list, map, or snapshot as storage returns them
+   */
+  private static long sizeOf(final Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof String string) {
+      return string.length();
+    } else if (value instanceof Map<?, ?> map) {
+      long size = 0;
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        size += sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+      }
+      return size;
+    } else if (value instanceof Collection<?> collection) {
+      long size = 0;
+      for (Object element : collection) {
+        size += sizeOf(element);
+      }
+      return size;
+    } else if (value instanceof BranchSnapshot snapshot) {
+      return sizeOf(snapshot.localHead())
+          + sizeOf(snapshot.remoteHead())
+          + sizeOf(snapshot.stagedCommits())
+          + sizeOf(snapshot.changes())
+          + 16;
+    }
+    return 8;
+  }
+
+  @Override
+  public void addSession(String session_id, String user_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    record(
+        "addSession",
+        sizeOf(file_map_json),
+        () -> {
+          delegate.addSession(session_id, user_id, file_map_json);
+          return null;
+        });
+  }
+
+  @Override
+  public String addStash(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "addStash",
+        sizeOf(file_map_json),
+        () -> delegate.addStash(session_id, user_id, branch_id, file_map_json));
+  }
+
+  @Override
+  public List<Map<String, Object>> getStashes(String session_id, String user_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record("getStashes", 0, () -> delegate.getStashes(session_id, user_id));
+  }
+
+  @Override
+  public Map<String, Object> popStash(String session_id, String user_id, int stash_index)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record("popStash", 0, () -> delegate.popStash(session_id, user_id, stash_index));
+  }
+
+  @Override
+  public void addBranch(
+      String session_id,
+      String user_id,
+      String current_branch_id,
+      String new_branch_id,
+      String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    record(
+        "addBranch",
+        sizeOf(file_map_json),
+        () -> {
+          delegate.addBranch(session_id, user_id, current_branch_id, new_branch_id, file_map_json);
+          return null;
+        });
+  }
+
+  @Override
+  public void deleteBranch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException {
+    recordUnchecked(
+        "deleteBranch",
+        0,
+        () -> {
+          delegate.deleteBranch(session_id, user_id, branch_id);
+          return null;
+        });
+  }
+
+  @Override
+  public List<String> getAllRemoteBranches(String session_id) throws IllegalArgumentException {
+    return recordUnchecked(
+        "getAllRemoteBranches", 0, () -> delegate.getAllRemoteBranches(session_id));
+  }
+
+  @Override
+  public List<String> getAllLocalBranches(String session_id, String user_id)
+      throws IllegalArgumentException {
+    return recordUnchecked(
+        "getAllLocalBranches", 0, () -> delegate.getAllLocalBranches(session_id, user_id));
+  }
+
+  @Override
+  public void addChange(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException {
+    recordUnchecked(
+        "addChange",
+        sizeOf(file_map_json),
+        () -> {
+          delegate.addChange(session_id, user_id, branch_id, file_map_json);
+          return null;
+        });
+  }
+
+  @Override
+  public Map<String, Object> getLatestLocalCommit(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getLatestLocalCommit",
+        0,
+        () -> delegate.getLatestLocalCommit(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public List<Map<String, Object>> getStagedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getStagedCommits", 0, () -> delegate.getStagedCommits(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public List<Map<String, Object>> getLocalPushedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getLocalPushedCommits",
+        0,
+        () -> delegate.getLocalPushedCommits(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public Map<String, Object> getLatestRemoteCommit(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getLatestRemoteCommit", 0, () -> delegate.getLatestRemoteCommit(session_id, branch_id));
+  }
+
+  @Override
+  public List<Map<String, Object>> getRemotePushedCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getRemotePushedCommits", 0, () -> delegate.getRemotePushedCommits(session_id, branch_id));
+  }
+
+  @Override
+  public String getLatestLocalChanges(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getLatestLocalChanges",
+        0,
+        () -> delegate.getLatestLocalChanges(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public BranchSnapshot getBranchSnapshot(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getBranchSnapshot", 0, () -> delegate.getBranchSnapshot(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public Map<String, Object> commitChange(
+      String session_id,
+      String user_id,
+      String branch_id,
+      String commit_message,
+      List<String> parent_commit_ids)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "commitChange",
+        sizeOf(commit_message) + sizeOf(parent_commit_ids),
+        () ->
+            delegate.commitChange(
+                session_id, user_id, branch_id, commit_message, parent_commit_ids));
+  }
+
+  @Override
+  public void pushCommit(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    record(
+        "pushCommit",
+        0,
+        () -> {
+          delegate.pushCommit(session_id, user_id, branch_id);
+          return null;
+        });
+  }
+
+  @Override
+  public Map<String, List<Map<String, Object>>> getAllLocalCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getAllLocalCommits", 0, () -> delegate.getAllLocalCommits(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllRemoteCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getAllRemoteCommits", 0, () -> delegate.getAllRemoteCommits(session_id, branch_id));
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllCommits(
+      String session_id, String user_id, String branch_id)
+      throws ExecutionException, InterruptedException {
+    return record("getAllCommits", 0, () -> delegate.getAllCommits(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public Map<String, Object> getCommitLog(
+      String session_id,
+      String user_id,
+      String branch_id,
+      int limit,
+      String cursor,
+      boolean include_files)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record(
+        "getCommitLog",
+        0,
+        () -> delegate.getCommitLog(session_id, user_id, branch_id, limit, cursor, include_files));
+  }
+
+  @Override
+  public void pullRemoteCommits(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    record(
+        "pullRemoteCommits",
+        0,
+        () -> {
+          delegate.pullRemoteCommits(session_id, user_id, branch_id);
+          return null;
+        });
+  }
+
+  @Override
+  public void resetLocalCommits(
+      String session_id,
+      String user_id,
+      String branch_id,
+      Map<String, List<Map<String, Object>>> commits)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    record(
+        "resetLocalCommits",
+        sizeOf(commits),
+        () -> {
+          delegate.resetLocalCommits(session_id, user_id, branch_id, commits);
+          return null;
+        });
+  }
+
+  @Override
+  public Map<String, Object> getCommit(
+      String session_id, String user_id, String branch_id, String commit_id)
+      throws ExecutionException, InterruptedException {
+    return record(
+        "getCommit", 0, () -> delegate.getCommit(session_id, user_id, branch_id, commit_id));
+  }
+
+  @Override
+  public Map<String, Object> fetch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    return record("fetch", 0, () -> delegate.fetch(session_id, user_id, branch_id));
+  }
+
+  @Override
+  public List<String> getAllSessions() throws ExecutionException, InterruptedException {
+    return record("getAllSessions", 0, delegate::getAllSessions);
+  }
+
+  @Override
+  public void deleteSession(String session_id) throws IllegalArgumentException {
+    recordUnchecked(
+        "deleteSession",
+        0,
+        () -> {
+          delegate.deleteSession(session_id);
+          return null;
+        });
+  }
+
+  @Override
+  public void flush() throws ExecutionException, InterruptedException {
+    record(
+        "flush",
+        0,
+        () -> {
+          delegate.flush();
+          return null;
+        });
+  }
+
+  @Override
+  public AsyncStorageInterface async() {
+    return asyncReads;
+  }
+
+  /** Asynchronous reads of the delegate, each recorded once it completes. */
+  private final class RecordedReads implements AsyncStorageInterface {
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLatestLocalCommit(
+        String session_id, String user_id, String branch_id) {
+      return recordAsync(
+          "getLatestLocalCommit",
+          () -> delegate.async().getLatestLocalCommit(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLatestRemoteCommit(
+        String session_id, String branch_id) {
+      return recordAsync(
+          "getLatestRemoteCommit",
+          () -> delegate.async().getLatestRemoteCommit(session_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getStagedCommits(
+        String session_id, String user_id, String branch_id) {
+      return recordAsync(
+          "getStagedCommits",
+          () -> delegate.async().getStagedCommits(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<String> getLatestLocalChanges(
+        String session_id, String user_id, String branch_id) {
+      return recordAsync(
+          "getLatestLocalChanges",
+          () -> delegate.async().getLatestLocalChanges(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<BranchSnapshot> getBranchSnapshot(
+        String session_id, String user_id, String branch_id) {
+      return recordAsync(
+          "getBranchSnapshot",
+          () -> delegate.async().getBranchSnapshot(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllRemoteBranches(String session_id) {
+      return recordAsync(
+          "getAllRemoteBranches", () -> delegate.async().getAllRemoteBranches(session_id));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllLocalBranches(String session_id, String user_id) {
+      return recordAsync(
+          "getAllLocalBranches", () -> delegate.async().getAllLocalBranches(session_id, user_id));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> fetch(
+        String session_id, String user_id, String branch_id) {
+      return recordAsync("fetch", () -> delegate.async().fetch(session_id, user_id, branch_id));
+    }
+  }
+}
@@ -0,0 +1,898 @@
+package edu.brown.cs.student.main.server.storage;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * A write-ahead journal in front of another {@link StorageInterface} (normally Firestore behind a
+ * {@link CachingStorage}). Writes that return no data (add, push, pull, and reset) are appended to
+ * a local {@link AppendOnlyLog} and acknowledged once the journal has been synced, without waiting
+ * on the underlying storage; syncs are shared between concurrent writers (group commit). A
+ * background thread replays journaled writes to the underlying storage in order, in batches, and
+ * then journals how far it has got. After a crash, writes that were acknowledged but not yet
+ * replayed are replayed when the journal is next opened.
+ *
+ * <p>Every other call first waits until the session's journaled writes have been replayed, so
+ * callers always read their own writes, and writes that return data (such as commit, which
+ * generates a commit id) are applied to the underlying storage directly. A batch counts as replayed
+ * once the underlying storage's {@link StorageInterface#flush()} succeeds; until then it is retried
+ * with backoff, and calls waiting on it fail once they have waited too long. Writes the underlying
+ * storage rejects as invalid are dropped, logged, and reported by the session's next call. Reads
+ * made through {@link #async()} start at once when the session has nothing left to replay, and
+ * otherwise once its writes have been replayed, without holding up the caller.
+ */
+public class JournaledStorage implements StorageInterface, Closeable {
+
+  // most journaled writes replayed before progress is journaled
+  private static final int MAX_BATCH = 256;
+  // the journal is emptied once everything is replayed and it has grown this large
+  private static final long COMPACT_BYTES = 4 << 20;
+  private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+  /** Default number of milliseconds a call waits for earlier writes to be replayed. */
+  public static final long DEFAULT_REPLAY_WAIT_MILLIS = 10_000;
+
+  private static final String OP_ADD_CHANGE = "add_change";
+  private static final String OP_PUSH = "push";
+  private static final String OP_PULL = "pull";
+  private static final String OP_RESET = "reset";
+  // progress marker: every write up to its sequence number has been replayed
+  private static final String OP_REPLAYED = "replayed";
+
+  private static final JsonAdapter<Map<String, Object>> entryAdapter =
+      new Moshi.Builder()
+          .build()
+          .adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  private final StorageInterface delegate;
+  private final AppendOnlyLog journal;
+  private final Thread replayer;
+  private final long replayWaitMillis;
+  private final AsyncStorageInterface asyncReads = new ReplayedReads();
+
+  // guarded by this
+  private final Deque<Map<String, Object>> pending = new ArrayDeque<>();
+  private final Map<String, Long> lastSequences = new HashMap<>();
+  // why the underlying storage rejected a session's write, until the session's next call
+  private final Map<String, String> droppedWrites = new HashMap<>();
+  private long lastSequence;
+  private long replayedThrough;
+  private volatile boolean closed;
+
+  /**
+   * Opens a journal in front of the given storage, replaying any writes left from before a crash.
+   *
+   * @param delegate - storage that journaled writes are replayed to and other calls go to
+   * @param journalFile - file holding the journal
+   * @throws IOException - if the journal cannot be opened or read
+   */
+  public JournaledStorage(final StorageInterface delegate, final Path journalFile)
+      throws IOException {
+    this(delegate, journalFile, true);
+  }
+
+  /**
+   * Opens a journal in front of the given storage, replaying any writes left from before a crash.
+   *
+   * @param delegate - storage that journaled writes are replayed to and other calls go to
+   * @param journalFile - file holding the journal
+   * @param fsync - whether writes are forced to disk before they are acknowledged
+   * @throws IOException - if the journal cannot be opened or read
+   */
+  public JournaledStorage(
+      final StorageInterface delegate, final Path journalFile, final boolean fsync)
+      throws IOException {
+    this(delegate, journalFile, fsync, DEFAULT_REPLAY_WAIT_MILLIS);
+  }
+
+  /**
+   * Opens a journal in front of the given storage, replaying any writes left from before a crash.
+   *
+   * @param delegate - storage that journaled writes are replayed to and other calls go to
+   * @param journalFile - file holding the journal
+   * @param fsync - whether writes are forced to disk before they are acknowledged
+   * @param replayWaitMillis - how long a call waits for earlier writes to be replayed before
+   *     failing
+   * @throws IOException - if the journal cannot be opened or read
+   */
+  public JournaledStorage(
+      final StorageInterface delegate,
+      final Path journalFile,
+      final boolean fsync,
+      final long replayWaitMillis)
+      throws IOException {
+    if (delegate == null || journalFile == null) {
+      throw new IllegalArgumentException("JournaledStorage: delegate and journal cannot be null");
+    }
+    if (replayWaitMillis <= 0) {
+      throw new IllegalArgumentException("JournaledStorage: replayWaitMillis must be positive");
+    }
+    this.delegate = delegate;
+    this.replayWaitMillis = replayWaitMillis;
+    this.journal = new AppendOnlyLog(journalFile, fsync);
+
+    // find the writes that were journaled but not replayed before the journal was last closed
+    List<Map<String, Object>> entries = new ArrayList<>();
+    for (byte[] bytes : journal.readAll()) {
+      Map<String, Object> entry = entryAdapter.fromJson(new String(bytes, StandardCharsets.UTF_8));
+      long sequence = sequenceOf(entry);
+      lastSequence = Math.max(lastSequence, sequence);
+      if (OP_REPLAYED.equals(entry.get("op"))) {
+        replayedThrough = Math.max(replayedThrough, sequence);
+      } else {
+        entries.add(entry);
+      }
+    }
+    for (Map<String, Object> entry : entries) {
+      if (sequenceOf(entry) > replayedThrough) {
+        pending.addLast(entry);
+        lastSequences.put((String) entry.get("session"), sequenceOf(entry));
+      }
+    }
+
+    replayer = new Thread(this::replay, "journal-replay");
+    replayer.setDaemon(true);
+    replayer.start();
+  }
+
+  private static long sequenceOf(final Map<String, Object> entry) {
+    return ((Number) entry.get("seq")).longValue();
+  }
+
+  private static byte[] bytesOf(final Map<String, Object> entry) {
+    return entryAdapter.toJson(entry).getBytes(StandardCharsets.UTF_8);
+  }
+
+  // *************************** JOURNAL HELPERS ***************************
+
+  /**
+   * Builds a journal entry for a write to a branch.
+   *
+   * @param op - the write
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch written to
+   */
+  private static Map<String, Object> entry(
+      final String op, final String session_id, final String user_id, final String branch_id) {
+    Map<String, Object> entry = new HashMap<>();
+    entry.put("op", op);
+    entry.put("session", session_id);
+    entry.put("user", user_id);
+    entry.put("branch", branch_id);
+    return entry;
+  }
+
+  /**
+   * Journals a write and waits until the journal is synced. The write reaches the underlying
+   * storage later, on the replay thread.
+   *
+   * @param entry - the write to journal
+   * @throws ExecutionException - if the journal cannot be written
+   */
+  private void journal(final Map<String, Object> entry) throws ExecutionException {
+    long position;
+    try {
+      synchronized (this) {
+        if (closed) {
+          throw new IllegalStateException("JournaledStorage: journal is closed");
+        }
+        entry.put("seq", ++lastSequence);
+        position = journal.append(bytesOf(entry));
+        pending.addLast(entry);
+        lastSequences.put((String) entry.get("session"), lastSequence);
+        notifyAll();
+      }
+      journal.sync(position);
+    } catch (IOException e) {
+      throw new ExecutionException(e);
+    }
+  }
+
+  /** Journals a write from a method that does not declare checked exceptions. */
+  private void journalUnchecked(final Map<String, Object> entry) {
+    try {
+      journal(entry);
+    } catch (ExecutionException e) {
+      throw new UncheckedIOException((IOException) e.getCause());
+    }
+  }
+
+  /**
+   * Waits until every journaled write of a session has been replayed to the underlying storage,
+   * then reports a write of the session that the underlying storage rejected, once.
+   *
+   * @param session_id - unique session id
+   * @throws IllegalStateException - if the wait times out, or a write of the session was rejected
+   */
+  private synchronized void awaitReplayed(final String session_id) {
+    Long last = lastSequences.get(session_id);
+    if (last != null) {
+      awaitReplayedThrough(last);
+    }
+    String dropped = droppedWrites.remove(session_id);
+    if (dropped != null) {
+      throw new IllegalStateException(
+          "JournaledStorage: an earlier write was rejected: " + dropped);
+    }
+  }
+
+  /**
+   * Checks whether every journaled write of a session has been replayed, and if so reports a write
+   * of the session that the underlying storage rejected, once.
+   *
+   * @param session_id - unique session id
+   * @return whether the session has no writes left to replay
+   * @throws IllegalStateException - if a write of the session was rejected
+   */
+  private synchronized boolean isReplayed(final String session_id) {
+    Long last = lastSequences.get(session_id);
+    if (last != null && last > replayedThrough) {
+      return false;
+    }
+    // nothing to wait for, so this only reports a rejected write
+    awaitReplayed(session_id);
+    return true;
+  }
+
+  /**
+   * Starts an asynchronous read once the session's journaled writes have been replayed, waiting for
+   * them on a read thread rather than the caller's if there are any.
+   *
+   * @param session_id - unique session id; reads with a null id start at once and fail there
+   * @param read - starts the read on the underlying storage
+   * @return future of the read's result
+   */
+  private <T> CompletableFuture<T> afterReplayed(
+      final String session_id, final Supplier<CompletableFuture<T>> read) {
+    if (session_id == null) {
+      return read.get();
+    }
+    try {
+      if (isReplayed(session_id)) {
+        return read.get();
+      }
+    } catch (IllegalStateException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return CompletableFuture.runAsync(
+            () -> awaitReplayed(session_id), AsyncStorageAdapter.sharedExecutor())
+        .thenCompose(replayed -> read.get());
+  }
+
+  /**
+   * Waits until every journaled write up to a sequence number has been replayed.
+   *
+   * @param sequence - last write to wait for
+   * @throws IllegalStateException - if the writes are not replayed within the replay wait
+   */
+  private synchronized void awaitReplayedThrough(final long sequence) {
+    long deadline = System.currentTimeMillis() + replayWaitMillis;
+    while (replayedThrough < sequence) {
+      if (closed && !replayer.isAlive()) {
+        throw new IllegalStateException("JournaledStorage: closed before writes were replayed");
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new IllegalStateException(
+            "JournaledStorage: timed out waiting for earlier writes to reach storage");
+      }
+      try {
+        wait(Math.min(remaining, 1_000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("JournaledStorage: interrupted waiting for replay", e);
+      }
+    }
+  }
+
+  /** Replays journaled writes in batches until the journal is closed. */
+  private void replay() {
+    try {
+      while (true) {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        synchronized (this) {
+          while (pending.isEmpty() && !closed) {
+            wait();
+          }
+          if (pending.isEmpty()) {
+            return;
+          }
+          for (Map<String, Object> entry : pending) {
+            batch.add(entry);
+            if (batch.size() == MAX_BATCH) {
+              break;
+            }
+          }
+        }
+        if (!replayWithRetry(coalesce(batch))) {
+          // closed while the underlying storage is failing; the batch replays on next open
+          return;
+        }
+        markReplayed(batch);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      System.err.println("JournaledStorage: replay stopped: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Drops adds that a later add to the same branch in the batch overwrites, unless another write to
+   * the session comes between them.
+   *
+   * @param batch - journaled writes, oldest first
+   * @return the writes to replay, oldest first
+   */
+  private static List<Map<String, Object>> coalesce(final List<Map<String, Object>> batch) {
+    List<Map<String, Object>> kept = new ArrayList<>();
+    Set<List<Object>> overwritten = new HashSet<>();
+    for (int i = batch.size() - 1; i >= 0; i--) {
+      Map<String, Object> entry = batch.get(i);
+      Object session_id = entry.get("session");
+      if (OP_ADD_CHANGE.equals(entry.get("op"))) {
+        if (!overwritten.add(List.of(session_id, entry.get("user"), entry.get("branch")))) {
+          continue;
+        }
+      } else {
+        overwritten.removeIf(key -> key.get(0).equals(session_id));
+      }
+      kept.add(entry);
+    }
+    Collections.reverse(kept);
+    return kept;
+  }
+
+  /**
+   * Applies a batch of journaled writes to the underlying storage and flushes it, retrying the
+   * whole batch with backoff until the flush succeeds. Every journaled write can be applied again
+   * safely: adds and resets overwrite, a pull copies the remote again, and a repeated push finds
+   * nothing left staged.
+   *
+   * @param writes - the writes, oldest first
+   * @return false if the journal was closed before the batch could be stored
+   */
+  private boolean replayWithRetry(final List<Map<String, Object>> writes)
+      throws InterruptedException {
+    long backoff = 100;
+    while (true) {
+      try {
+        for (Map<String, Object> entry : writes) {
+          applyOrDrop(entry);
+        }
+        delegate.flush();
+        return true;
+      } catch (InterruptedException e) {
+        throw e;
+      } catch (Exception e) {
+        System.err.println("JournaledStorage: replay failed: " + e);
+        if (closed) {
+          return false;
+        }
+        Thread.sleep(backoff);
+        backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * Applies a journaled write to the underlying storage. A write the storage rejects as invalid is
+   * dropped and kept to be reported by the session's next call.
+   *
+   * @param entry - the write
+   */
+  private void applyOrDrop(final Map<String, Object> entry)
+      throws ExecutionException, InterruptedException {
+    try {
+      apply(entry);
+    } catch (IllegalArgumentException e) {
+      System.err.println("JournaledStorage: dropped invalid " + entry.get("op") + ": " + e);
+      synchronized (this) {
+        droppedWrites.put((String) entry.get("session"), entry.get("op") + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Applies a journaled write to the underlying storage.
+   *
+   * @param entry - the write
+   */
+  private void apply(final Map<String, Object> entry)
+      throws ExecutionException, InterruptedException {
+    String session_id = (String) entry.get("session");
+    String user_id = (String) entry.get("user");
+    String branch_id = (String) entry.get("branch");
+    switch ((String) entry.get("op")) {
+      case OP_ADD_CHANGE -> delegate.addChange(
+          session_id, user_id, branch_id, (String) entry.get("file_map_json"));
+      case OP_PUSH -> delegate.pushCommit(session_id, user_id, branch_id);
+      case OP_PULL -> delegate.pullRemoteCommits(session_id, user_id, branch_id);
+      case OP_RESET -> delegate.resetLocalCommits(
+          session_id, user_id, branch_id, resetCommitsOf(entry.get("commits")));
+      default -> throw new IllegalArgumentException("unknown journal entry " + entry.get("op"));
+    }
+  }
+
+  /**
+   * Reads the commits of a reset entry. Entries read back from the journal after a restart come
+   * from JSON, where every number is a double, so whole numbers are turned back into longs.
+   *
+   * @param value - the entry's commits, by list name
+   * @return the commits, by list name
+   * @throws IllegalArgumentException - if value is not a map of commit lists
+   */
+  private static Map<String, List<Map<String, Object>>> resetCommitsOf(final Object value) {
+    if (!(value instanceof Map<?, ?> lists)) {
+      throw new IllegalArgumentException("JournaledStorage: reset commits are not a map");
+    }
+    Map<String, List<Map<String, Object>>> commits = new HashMap<>();
+    for (Map.Entry<?, ?> list : lists.entrySet()) {
+      List<Map<String, Object>> commitList = CommitMaps.commitsOf(list.getValue());
+      for (Map<String, Object> commit : commitList) {
+        commit.replaceAll((field, fieldValue) -> wholeNumbersOf(fieldValue));
+      }
+      commits.put(String.valueOf(list.getKey()), commitList);
+    }
+    return commits;
+  }
+
+  /**
+   * Turns doubles holding whole numbers back into longs, inside lists and maps too.
+   *
+   * @param value - value read from JSON
+   * @return the value with whole numbers as longs
+   */
+  private static Object wholeNumbersOf(final Object value) {
+    if (value instanceof Double number && number == Math.rint(number) && !number.isInfinite()) {
+      return number.longValue();
+    }
+    if (value instanceof List<?> list) {
+      List<Object> converted = new ArrayList<>(list.size());
+      for (Object element : list) {
+        converted.add(wholeNumbersOf(element));
+      }
+      return converted;
+    }
+    if (value instanceof Map<?, ?> map) {
+      Map<Object, Object> converted = new HashMap<>();
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        converted.put(entry.getKey(), wholeNumbersOf(entry.getValue()));
+      }
+      return converted;
+    }
+    return value;
+  }
+
+  /**
+   * Journals that a batch has been replayed, then releases callers waiting on it. Once nothing is
+   * left to replay, a large journal is emptied.
+   *
+   * @param batch - writes that were replayed, oldest first
+   */
+  private void markReplayed(final List<Map<String, Object>> batch) throws IOException {
+    long through = sequenceOf(batch.get(batch.size() - 1));
+    Map<String, Object> marker = new HashMap<>();
+    marker.put("op", OP_REPLAYED);
+    marker.put("seq", through);
+    long position;
+    synchronized (this) {
+      for (int i = 0; i < batch.size(); i++) {
+        pending.removeFirst();
+      }
+      position = journal.append(bytesOf(marker));
+    }
+    journal.sync(position);
+    synchronized (this) {
+      replayedThrough = through;
+      lastSequences.values().removeIf(sequence -> sequence <= through);
+      if (pending.isEmpty() && journal.size() > COMPACT_BYTES) {
+        marker.put("seq", lastSequence);
+        journal.rewrite(List.of(bytesOf(marker)));
+      }
+      notifyAll();
+    }
+  }
+
+  /**
+   * Waits until every journaled write has been replayed and the underlying storage has stored it.
+   *
+   * @throws ExecutionException - if the underlying storage fails
+   * @throws InterruptedException - if interrupted while waiting
+   */
+  @Override
+  public void flush() throws ExecutionException, InterruptedException {
+    synchronized (this) {
+      awaitReplayedThrough(lastSequence);
+    }
+    delegate.flush();
+  }
+
+  /**
+   * Stops replaying and closes the journal. Writes not yet replayed are replayed when the journal
+   * is next opened.
+   *
+   * @throws IOException - if the journal cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      replayer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    journal.close();
+  }
+
+  // ********************************** JOURNALED WRITES ************************************
+
+  @Override
+  public void addChange(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException {
+    if (session_id == null || user_id == null || branch_id == null || file_map_json == null) {
+      throw new IllegalArgumentException(
+          "addChange: session_id, user_id, branch_id, and file_map_json cannot be null");
+    }
+    Map<String, Object> entry = entry(OP_ADD_CHANGE, session_id, user_id, branch_id);
+    entry.put("file_map_json", file_map_json);
+    journalUnchecked(entry);
+  }
+
+  @Override
+  public void pushCommit(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "pushCommit: session_id, user_id, branch_id cannot be null");
+    }
+    journal(entry(OP_PUSH, session_id, user_id, branch_id));
+  }
+
+  @Override
+  public void pullRemoteCommits(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "pullRemoteCommits: session_id, user_id, and branch_id cannot be null");
+    }
+    journal(entry(OP_PULL, session_id, user_id, branch_id));
+  }
+
+  @Override
+  public void resetLocalCommits(
+      String session_id,
+      String user_id,
+      String branch_id,
+      Map<String, List<Map<String, Object>>> commits)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null || commits == null) {
+      throw new IllegalArgumentException(
+          "resetLocalCommits: session_id, user_id, branch_id, and commits cannot be null");
+    }
+    Map<String, Object> entry = entry(OP_RESET, session_id, user_id, branch_id);
+    entry.put("commits", commits);
+    journal(entry);
+  }
+
+  // ********************************** OTHER METHODS ************************************
+
+  @Override
+  public void addSession(String session_id, String user_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    delegate.addSession(session_id, user_id, file_map_json);
+  }
+
+  @Override
+  public String addStash(String session_id, String user_id, String branch_id, String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.addStash(session_id, user_id, branch_id, file_map_json);
+  }
+
+  @Override
+  public List<Map<String, Object>> getStashes(String session_id, String user_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getStashes(session_id, user_id);
+  }
+
+  @Override
+  public Map<String, Object> popStash(String session_id, String user_id, int stash_index)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.popStash(session_id, user_id, stash_index);
+  }
+
+  @Override
+  public void addBranch(
+      String session_id,
+      String user_id,
+      String current_branch_id,
+      String new_branch_id,
+      String file_map_json)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    delegate.addBranch(session_id, user_id, current_branch_id, new_branch_id, file_map_json);
+  }
+
+  @Override
+  public void deleteBranch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    delegate.deleteBranch(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public List<String> getAllRemoteBranches(String session_id) throws IllegalArgumentException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getAllRemoteBranches(session_id);
+  }
+
+  @Override
+  public List<String> getAllLocalBranches(String session_id, String user_id)
+      throws IllegalArgumentException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getAllLocalBranches(session_id, user_id);
+  }
+
+  @Override
+  public Map<String, Object> getLatestLocalCommit(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getLatestLocalCommit(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public List<Map<String, Object>> getStagedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getStagedCommits(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public List<Map<String, Object>> getLocalPushedCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getLocalPushedCommits(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public Map<String, Object> getLatestRemoteCommit(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getLatestRemoteCommit(session_id, branch_id);
+  }
+
+  @Override
+  public List<Map<String, Object>> getRemotePushedCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getRemotePushedCommits(session_id, branch_id);
+  }
+
+  @Override
+  public String getLatestLocalChanges(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getLatestLocalChanges(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public BranchSnapshot getBranchSnapshot(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getBranchSnapshot(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public Map<String, Object> commitChange(
+      String session_id,
+      String user_id,
+      String branch_id,
+      String commit_message,
+      List<String> parent_commit_ids)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.commitChange(session_id, user_id, branch_id, commit_message, parent_commit_ids);
+  }
+
+  @Override
+  public Map<String, List<Map<String, Object>>> getAllLocalCommits(
+      String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getAllLocalCommits(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllRemoteCommits(String session_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getAllRemoteCommits(session_id, branch_id);
+  }
+
+  @Override
+  public List<Map<String, Object>> getAllCommits(
+      String session_id, String user_id, String branch_id)
+      throws ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getAllCommits(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public Map<String, Object> getCommitLog(
+      String session_id,
+      String user_id,
+      String branch_id,
+      int limit,
+      String cursor,
+      boolean include_files)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getCommitLog(session_id, user_id, branch_id, limit, cursor, include_files);
+  }
+
+  @Override
+  public Map<String, Object> getCommit(
+      String session_id, String user_id, String branch_id, String commit_id)
+      throws ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.getCommit(session_id, user_id, branch_id, commit_id);
+  }
+
+  @Override
+  public Map<String, Object> fetch(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    return delegate.fetch(session_id, user_id, branch_id);
+  }
+
+  @Override
+  public List<String> getAllSessions() throws ExecutionException, InterruptedException {
+    synchronized (this) {
+      awaitReplayedThrough(lastSequence);
+    }
+    return delegate.getAllSessions();
+  }
+
+  @Override
+  public void deleteSession(String session_id) throws IllegalArgumentException {
+    if (session_id != null) {
+      awaitReplayed(session_id);
+    }
+    delegate.deleteSession(session_id);
+  }
+
+  @Override
+  public AsyncStorageInterface async() {
+    return asyncReads;
+  }
+
+  /** Asynchronous reads of the underlying storage, each started once the session is replayed. */
+  private final class ReplayedReads implements AsyncStorageInterface {
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLatestLocalCommit(
+        String session_id, String user_id, String branch_id) {
+      return afterReplayed(
+          session_id, () -> delegate.async().getLatestLocalCommit(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLatestRemoteCommit(
+        String session_id, String branch_id) {
+      return afterReplayed(
+          session_id, () -> delegate.async().getLatestRemoteCommit(session_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<List<Map<String, Object>>> getStagedCommits(
+        String session_id, String user_id, String branch_id) {
+      return afterReplayed(
+          session_id, () -> delegate.async().getStagedCommits(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<String> getLatestLocalChanges(
+        String session_id, String user_id, String branch_id) {
+      return afterReplayed(
+          session_id, () -> delegate.async().getLatestLocalChanges(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<BranchSnapshot> getBranchSnapshot(
+        String session_id, String user_id, String branch_id) {
+      return afterReplayed(
+          session_id, () -> delegate.async().getBranchSnapshot(session_id, user_id, branch_id));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllRemoteBranches(String session_id) {
+      return afterReplayed(session_id, () -> delegate.async().getAllRemoteBranches(session_id));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getAllLocalBranches(String session_id, String user_id) {
+      return afterReplayed(
+          session_id, () -> delegate.async().getAllLocalBranches(session_id, user_id));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> fetch(
+        String session_id, String user_id, String branch_id) {
+      return afterReplayed(
+          session_id, () -> delegate.async().fetch(session_id, user_id, branch_id));
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package edu.brown.cs.student.main.server.storage;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link StorageInterface} that keeps everything on local disk, for running the server on one
+ * machine without Firestore. Each session's state is held in memory as in {@link InMemoryStorage},
+ * and every change to it is recorded in the session's own {@link AppendOnlyLog}, which is replayed
+ * the first time the session is used after a restart. Reads never touch the disk.
+ *
+ * <p>The records describing a change are written as one log entry, so a crash keeps all of a change
+ * or none of it. A change is acknowledged only once its entry has been synced; syncs are shared
+ * between concurrent writers (see {@link AppendOnlyLog}). Reads may see a change a moment before it
+ * is synced. When a log grows well past the size of the state it describes, it is rewritten as a
+ * single entry recreating the current state.
+ *
+ * <p>Commits are stored whole, with their file map json; there is no blob store.
+ */
+public class LocalDiskStorage extends InMemoryStorage implements Closeable {
+
+  // a log is compacted once it is this large and four times its size after the last compaction
+  private static final long COMPACT_MIN_BYTES = 1 << 20;
+  private static final String LOG_SUFFIX = ".log";
+
+  private static final JsonAdapter<List<Map<String, Object>>> entryAdapter =
+      new Moshi.Builder()
+          .build()
+          .adapter(
+              Types.newParameterizedType(
+                  List.class, Types.newParameterizedType(Map.class, String.class, Object.class)));
+
+  private final Path directory;
+  private final boolean fsync;
+  // sessions whose logs are open, so they can be closed
+  private final Map<String, DiskSession> open = new ConcurrentHashMap<>();
+
+  /** State of one session and the log recording it. */
+  private static final class DiskSession extends SessionState {
+    private final AppendOnlyLog log;
+    private long compactedSize;
+
+    private DiskSession(final AppendOnlyLog log) {
+      this.log = log;
+    }
+  }
+
+  /**
+   * Opens storage in the given directory, creating it if needed. Sessions are loaded lazily.
+   *
+   * @param directory - directory holding one log file per session
+   * @throws IOException - if the directory cannot be created
+   */
+  public LocalDiskStorage(final Path directory) throws IOException {
+    this(directory, true);
+  }
+
+  /**
+   * Opens storage in the given directory, creating it if needed.
+   *
+   * @param directory - directory holding one log file per session
+   * @param fsync - whether changes are forced to disk before they are acknowledged
+   * @throws IOException - if the directory cannot be created
+   */
+  public LocalDiskStorage(final Path directory, final boolean fsync) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("LocalDiskStorage: directory cannot be null");
+    }
+    this.directory = Files.createDirectories(directory);
+    this.fsync = fsync;
+  }
+
+  /**
+   * Returns the log file of a session. Session ids are encoded so any id makes a safe file name.
+   *
+   * @param session_id - unique session id
+   */
+  private Path logFile(final String session_id) {
+    return directory.resolve(
+        Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(session_id.getBytes(StandardCharsets.UTF_8))
+            + LOG_SUFFIX);
+  }
+
+  /**
+   * Opens a session's log and replays it into memory.
+   *
+   * @param session_id - unique session id
+   * @return the session's state
+   */
+  private DiskSession load(final String session_id) throws IOException {
+    DiskSession session = new DiskSession(new AppendOnlyLog(logFile(session_id), fsync));
+    for (byte[] entry : session.log.readAll()) {
+      for (Map<String, Object> record :
+          entryAdapter.fromJson(new String(entry, StandardCharsets.UTF_8))) {
+        apply(session, record);
+      }
+    }
+    session.compactedSize = session.log.size();
+    open.put(session_id, session);
+    return session;
+  }
+
+  @Override
+  SessionState restore(final String session_id) throws IOException {
+    return Files.exists(logFile(session_id)) ? load(session_id) : null;
+  }
+
+  @Override
+  SessionState create(final String session_id) throws IOException {
+    return load(session_id);
+  }
+
+  @Override
+  long persist(
+      final String session_id, final SessionState session, final List<Map<String, Object>> records)
+      throws IOException {
+    return ((DiskSession) session)
+        .log.append(entryAdapter.toJson(records).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  void awaitPersisted(final SessionState session, final long token) throws IOException {
+    ((DiskSession) session).log.sync(token);
+  }
+
+  /**
+   * Rewrites a session's log as one entry recreating its current state, once the log has grown well
+   * past that.
+   *
+   * @param session - session whose log may be compacted
+   */
+  @Override
+  void applied(final SessionState session) throws IOException {
+    DiskSession disk = (DiskSession) session;
+    long size = disk.log.size();
+    if (size < COMPACT_MIN_BYTES || size < 4 * disk.compactedSize) {
+      return;
+    }
+    disk.log.rewrite(
+        List.of(entryAdapter.toJson(snapshot(session)).getBytes(StandardCharsets.UTF_8)));
+    disk.compactedSize = disk.log.size();
+  }
+
+  @Override
+  void discard(final String session_id, final SessionState session) throws IOException {
+    open.remove(session_id);
+    if (session != null) {
+      ((DiskSession) session).log.delete();
+    } else {
+      Files.deleteIfExists(logFile(session_id));
+    }
+  }
+
+  /**
+   * Closes every open session log. Changes already acknowledged are on disk.
+   *
+   * @throws IOException - if a log cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    for (DiskSession session : open.values()) {
+      session.log.close();
+    }
+  }
+
+  @Override
+  public List<String> getAllSessions() throws ExecutionException {
+    TreeSet<String> sessionIds = new TreeSet<>(super.getAllSessions());
+    try (DirectoryStream<Path> logs = Files.newDirectoryStream(directory, "*" + LOG_SUFFIX)) {
+      for (Path log : logs) {
+        String name = log.getFileName().toString();
+        sessionIds.add(
+            new String(
+                Base64.getUrlDecoder()
+                    .decode(name.substring(0, name.length() - LOG_SUFFIX.length())),
+                StandardCharsets.UTF_8));
+      }
+    } catch (IOException e) {
+      throw new ExecutionException(e);
+    }
+    return new ArrayList<>(sessionIds);
+  }
+}
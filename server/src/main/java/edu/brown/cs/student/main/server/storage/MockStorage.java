@@ -15,12 +15,18 @@ public class MockStorage implements StorageInterface {
       new HashMap<>();
   private final Map<String, Map<String, List<Map<String, Object>>>> stashes = new HashMap<>();
 
+  // commits never change, so callers may cache them by id; ids are never reused, even across
+  // sessions created again with the same id
+  private static String newCommitId() {
+    return UUID.randomUUID().toString().substring(0, 12);
+  }
+
   @Override
   public void addSession(String sessionId, String userId, String fileMapJson) {
     sessions.computeIfAbsent(sessionId, k -> new HashSet<>()).add(userId);
 
     Map<String, Object> initialCommit =
-        Map.of("commit_id", "initial", "file_map_json", fileMapJson);
+        Map.of("commit_id", newCommitId(), "file_map_json", fileMapJson);
 
     // Remote
     remoteCommits
@@ -86,9 +92,7 @@ public class MockStorage implements StorageInterface {
       String sessionId, String userId, String branchId, String message, List<String> parents) {
     // just pass staged to staging area for simplicity
     Map<String, Object> staged = new HashMap<String, Object>();
-    String commitId = String.valueOf(stagedCommits.get(sessionId).get(userId).get(branchId).size());
-
-    staged.put("commit_id", commitId);
+    staged.put("commit_id", newCommitId());
     staged.put("message", message);
     staged.put("file_map_json", "{}");
     stagedCommits.get(sessionId).get(userId).get(branchId).add(staged);
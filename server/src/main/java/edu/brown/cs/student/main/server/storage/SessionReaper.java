@@ -0,0 +1,187 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Deletes sessions nobody has used for a while, so abandoned games do not accumulate in storage.
+ * Handlers report each request's session through {@link #touch}; a session with no requests for the
+ * time to live is deleted from storage and then dropped from every in-process cache.
+ *
+ * <p>Sessions found in storage that have not been touched since the server started, such as those
+ * left by an earlier run, are timed from when the reaper first sees them. Each sweep deletes at
+ * most a fixed number of sessions, oldest first, and sweeps run on a fixed schedule, so a backlog
+ * of abandoned sessions is worked through at a bounded rate instead of all at once.
+ */
+public class SessionReaper implements Closeable {
+
+  private final StorageInterface storage;
+  private final long ttlMillis;
+  private final int maxDeletesPerSweep;
+  private final LongSupplier clock;
+  private final List<Consumer<String>> evictors;
+  // last request time of each known session, in clock millis
+  private final Map<String, Long> lastActive = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "session-reaper");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /**
+   * Creates a reaper timed by the system clock.
+   *
+   * @param storage - storage sessions are listed from and deleted in
+   * @param ttl - how long a session may go unused before it is deleted
+   * @param ttlUnit - unit of ttl
+   * @param maxDeletesPerSweep - most sessions deleted by one sweep
+   * @param evictors - each drops a deleted session from one in-process cache
+   */
+  public SessionReaper(
+      final StorageInterface storage,
+      final long ttl,
+      final TimeUnit ttlUnit,
+      final int maxDeletesPerSweep,
+      final List<Consumer<String>> evictors) {
+    this(storage, ttl, ttlUnit, maxDeletesPerSweep, evictors, System::currentTimeMillis);
+  }
+
+  /**
+   * Creates a reaper.
+   *
+   * @param storage - storage sessions are listed from and deleted in
+   * @param ttl - how long a session may go unused before it is deleted
+   * @param ttlUnit - unit of ttl
+   * @param maxDeletesPerSweep - most sessions deleted by one sweep
+   * @param evictors - each drops a deleted session from one in-process cache
+   * @param clock - current time in milliseconds
+   */
+  public SessionReaper(
+      final StorageInterface storage,
+      final long ttl,
+      final TimeUnit ttlUnit,
+      final int maxDeletesPerSweep,
+      final List<Consumer<String>> evictors,
+      final LongSupplier clock) {
+    if (storage == null || ttlUnit == null || evictors == null || clock == null) {
+      throw new IllegalArgumentException("SessionReaper: arguments cannot be null");
+    }
+    if (ttl <= 0 || maxDeletesPerSweep <= 0) {
+      throw new IllegalArgumentException(
+          "SessionReaper: ttl and deletes per sweep must be positive");
+    }
+    this.storage = storage;
+    this.ttlMillis = ttlUnit.toMillis(ttl);
+    this.maxDeletesPerSweep = maxDeletesPerSweep;
+    this.evictors = List.copyOf(evictors);
+    this.clock = clock;
+  }
+
+  /**
+   * Records that a session was just used.
+   *
+   * @param session_id - unique session id
+   */
+  public void touch(final String session_id) {
+    if (session_id != null) {
+      lastActive.put(session_id, clock.getAsLong());
+    }
+  }
+
+  /**
+   * Sweeps on a fixed schedule until closed.
+   *
+   * @param interval - time between sweeps
+   * @param unit - unit of interval
+   */
+  public void start(final long interval, final TimeUnit unit) {
+    scheduler.scheduleWithFixedDelay(
+        () -> {
+          try {
+            int deleted = sweep();
+            if (deleted > 0) {
+              System.out.println("SessionReaper: deleted " + deleted + " idle sessions");
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (Exception e) {
+            // keep the schedule running; the next sweep tries again
+            System.err.println("SessionReaper: sweep failed: " + e.getMessage());
+          }
+        },
+        interval,
+        interval,
+        unit);
+  }
+
+  /**
+   * Deletes up to the per-sweep limit of sessions that have been idle for the time to live, oldest
+   * first.
+   *
+   * @return number of sessions deleted
+   * @throws ExecutionException - if sessions cannot be listed
+   * @throws InterruptedException - if interrupted while listing sessions
+   */
+  public int sweep() throws ExecutionException, InterruptedException {
+    long now = clock.getAsLong();
+    Set<String> stored = new HashSet<>(storage.getAllSessions());
+    // forget sessions deleted some other way, and start timing sessions not seen before
+    lastActive.keySet().retainAll(stored);
+    for (String session_id : stored) {
+      lastActive.putIfAbsent(session_id, now);
+    }
+
+    List<Map.Entry<String, Long>> idle = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : lastActive.entrySet()) {
+      if (now - entry.getValue() >= ttlMillis) {
+        idle.add(Map.entry(entry.getKey(), entry.getValue()));
+      }
+    }
+    idle.sort(Map.Entry.<String, Long>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+
+    int deleted = 0;
+    for (Map.Entry<String, Long> entry : idle) {
+      if (deleted == maxDeletesPerSweep) {
+        break;
+      }
+      String session_id = entry.getKey();
+      // earlier deletes may have taken a while; skip a session used since the sweep started
+      Long active = lastActive.get(session_id);
+      if (active == null || clock.getAsLong() - active < ttlMillis) {
+        continue;
+      }
+      try {
+        storage.deleteSession(session_id);
+      } catch (RuntimeException e) {
+        System.err.println("SessionReaper: could not delete " + session_id + ": " + e.getMessage());
+        continue;
+      }
+      lastActive.remove(session_id, active);
+      for (Consumer<String> evictor : evictors) {
+        evictor.accept(session_id);
+      }
+      deleted++;
+    }
+    return deleted;
+  }
+
+  /** Stops sweeping. A sweep in progress finishes. */
+  @Override
+  public void close() {
+    scheduler.shutdown();
+  }
+}
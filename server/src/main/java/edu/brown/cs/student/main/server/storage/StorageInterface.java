@@ -1,5 +1,9 @@
 package edu.brown.cs.student.main.server.storage;
 
+import static edu.brown.cs.student.main.server.storage.FirestoreConstants.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -214,6 +218,38 @@ public interface StorageInterface {
   String getLatestLocalChanges(String session_id, String user_id, String branch_id)
       throws IllegalArgumentException, ExecutionException, InterruptedException;
 
+  /**
+   * Method that reads the state of a local branch and the remote branch it pushes to together: both
+   * heads, the staged commits, how many commits each side has pushed, and any added changes. This
+   * default makes one read per document; storage that can read several documents at once should
+   * override it.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - branch id of the local and remote branch
+   * @return - snapshot of the branch's state
+   * @throws IllegalArgumentException - if any parameters are null
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  default BranchSnapshot getBranchSnapshot(String session_id, String user_id, String branch_id)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getBranchSnapshot: session_id, user_id, and branch_id cannot be null");
+    }
+    List<Map<String, Object>> localPushedCommits =
+        getLocalPushedCommits(session_id, user_id, branch_id);
+    return new BranchSnapshot(
+        getLatestLocalCommit(session_id, user_id, branch_id),
+        getLatestRemoteCommit(session_id, branch_id),
+        getStagedCommits(session_id, user_id, branch_id),
+        BranchSnapshot.lastCommitId(localPushedCommits),
+        localPushedCommits.size(),
+        getRemotePushedCommits(session_id, branch_id).size(),
+        getLatestLocalChanges(session_id, user_id, branch_id));
+  }
+
   /**
    * Method for commiting most recent changes. Moves changed filemap to the local staged-commits
    * list and clears the changes document.
@@ -293,6 +329,77 @@ public interface StorageInterface {
   List<Map<String, Object>> getAllCommits(String session_id, String user_id, String branch_id)
       throws ExecutionException, InterruptedException;
 
+  /**
+   * Method for returning one page of a branch's log: staged commits, newest first, followed by the
+   * remote branch's pushed commits, newest first. Pass the returned cursor back in to read the next
+   * page. This default reads the whole history and slices it; storage that can read history in
+   * order should override it.
+   *
+   * @param session_id - unique session id
+   * @param user_id - unique user id
+   * @param branch_id - id of currently checked out branch
+   * @param limit - maximum number of commits to return
+   * @param cursor - cursor returned with the previous page; null for the first page
+   * @param include_files - whether commits should include their file_map_json
+   * @return a map holding the list of commits and, if there are more, the next page's cursor
+   * @throws IllegalArgumentException - if any ids are null, limit is not positive, or the cursor is
+   *     invalid
+   * @throws ExecutionException - for firebase methods
+   * @throws InterruptedException - for firebase methods
+   */
+  default Map<String, Object> getCommitLog(
+      String session_id,
+      String user_id,
+      String branch_id,
+      int limit,
+      String cursor,
+      boolean include_files)
+      throws IllegalArgumentException, ExecutionException, InterruptedException {
+    if (session_id == null || user_id == null || branch_id == null) {
+      throw new IllegalArgumentException(
+          "getCommitLog: session_id, user_id, and branch_id cannot be null");
+    }
+    if (limit <= 0) {
+      throw new IllegalArgumentException("getCommitLog: limit must be positive");
+    }
+    int start = 0;
+    if (cursor != null) {
+      try {
+        start = Integer.parseInt(cursor);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("getCommitLog: invalid cursor '" + cursor + "'");
+      }
+      if (start < 0) {
+        throw new IllegalArgumentException("getCommitLog: invalid cursor '" + cursor + "'");
+      }
+    }
+
+    // build the whole log, newest first
+    List<Map<String, Object>> staged = getStagedCommits(session_id, user_id, branch_id);
+    List<Map<String, Object>> remote = getRemotePushedCommits(session_id, branch_id);
+    List<Map<String, Object>> log = new ArrayList<>(staged.size() + remote.size());
+    for (int i = staged.size() - 1; i >= 0; i--) {
+      log.add(staged.get(i));
+    }
+    for (int i = remote.size() - 1; i >= 0; i--) {
+      log.add(remote.get(i));
+    }
+
+    int end = Math.min(log.size(), start + limit);
+    List<Map<String, Object>> commits = new ArrayList<>();
+    for (int i = start; i < end; i++) {
+      Map<String, Object> commit = new HashMap<>(log.get(i));
+      if (!include_files) {
+        commit.remove(FIELD_FILE_MAP_JSON);
+      }
+      commits.add(commit);
+    }
+    Map<String, Object> page = new HashMap<>();
+    page.put(FIELD_COMMITS, commits);
+    page.put(FIELD_NEXT_CURSOR, end < log.size() ? String.valueOf(end) : null);
+    return page;
+  }
+
   /**
    * Method that pulls full list of pushed commits from the remote branch and adds them to the local
    * commit history. Now, the local pushed commits reflect the remote pushed commits
@@ -376,4 +483,25 @@ public interface StorageInterface {
    * @throws IllegalArgumentException - if session_id is null
    */
   void deleteSession(String session_id) throws IllegalArgumentException;
+
+  /**
+   * Blocks until every write accepted so far has reached durable storage. Storage that acknowledges
+   * writes before storing them, such as a write-behind cache, overrides this; storage that stores
+   * each write before returning has nothing to wait for.
+   *
+   * @throws ExecutionException - if a pending write fails
+   * @throws InterruptedException - if interrupted while waiting
+   */
+  default void flush() throws ExecutionException, InterruptedException {}
+
+  /**
+   * Returns a non-blocking view of this storage's reads, so independent reads can be issued at
+   * once. This default runs each blocking read on a shared thread pool; storage with a non-blocking
+   * client, and decorators that change how reads are served, should override it.
+   *
+   * @return - asynchronous reads against this storage
+   */
+  default AsyncStorageInterface async() {
+    return new AsyncStorageAdapter(this);
+  }
 }
@@ -0,0 +1,158 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.metrics.ServerMetrics;
+import edu.brown.cs.student.main.server.storage.AsyncStorageInterface;
+import edu.brown.cs.student.main.server.storage.BranchSnapshot;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.InstrumentedStorage;
+import edu.brown.cs.student.main.server.storage.JournaledStorage;
+import edu.brown.cs.student.main.server.storage.MockStorage;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AsyncStorageTest {
+
+  private final String sessionId = "async-test";
+  private final String userId = "user1";
+  private final String branchId = "main";
+
+  @TempDir Path directory;
+
+  private MockStorage storage;
+
+  @BeforeEach
+  public void setup() {
+    storage = new MockStorage();
+    storage.addSession(sessionId, userId, "{}");
+  }
+
+  @Test
+  public void testIndependentReadsRunAtOnce() throws Exception {
+    // each head read waits until the other has started, so reading them in turn would time out
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    MockStorage blocking =
+        new MockStorage() {
+          @Override
+          public Map<String, Object> getLatestLocalCommit(
+              String sessionId, String userId, String branchId) {
+            return awaitOther(super.getLatestLocalCommit(sessionId, userId, branchId));
+          }
+
+          @Override
+          public Map<String, Object> getLatestRemoteCommit(String sessionId, String branchId) {
+            return awaitOther(super.getLatestRemoteCommit(sessionId, branchId));
+          }
+
+          private Map<String, Object> awaitOther(Map<String, Object> result) {
+            bothStarted.countDown();
+            try {
+              if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("reads ran one after the other");
+              }
+            } catch (InterruptedException e) {
+              throw new IllegalStateException(e);
+            }
+            return result;
+          }
+        };
+    blocking.addSession(sessionId, userId, "{}");
+
+    AsyncStorageInterface async = blocking.async();
+    CompletableFuture<Map<String, Object>> localHead =
+        async.getLatestLocalCommit(sessionId, userId, branchId);
+    CompletableFuture<Map<String, Object>> remoteHead =
+        async.getLatestRemoteCommit(sessionId, branchId);
+
+    assertEquals(
+        AsyncStorageInterface.await(localHead).get("commit_id"),
+        AsyncStorageInterface.await(remoteHead).get("commit_id"));
+  }
+
+  @Test
+  public void testFetchFindsNewBranches() throws Exception {
+    storage.addBranch(sessionId, userId, branchId, "feature", "{}");
+    storage.deleteBranch(sessionId, userId, "feature");
+
+    Map<String, Object> fetched =
+        AsyncStorageInterface.await(storage.async().fetch(sessionId, userId, branchId));
+
+    List<Map<String, Object>> newBranches = (List<Map<String, Object>>) fetched.get("new_branches");
+    assertEquals(1, newBranches.size());
+    assertEquals("feature", newBranches.get(0).get("branch_id"));
+    assertEquals("origin/feature", newBranches.get(0).get("remote_branch_id"));
+    assertTrue(((Map<String, Object>) fetched.get("commit_updates")).isEmpty());
+  }
+
+  @Test
+  public void testAwaitRethrowsArgumentErrors() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AsyncStorageInterface.await(storage.async().fetch(null, userId, branchId)));
+  }
+
+  @Test
+  public void testJournaledReadsWaitForReplayWithoutBlocking() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    InMemoryStorage delegate =
+        new InMemoryStorage() {
+          @Override
+          public void addChange(
+              String session_id, String user_id, String branch_id, String file_map_json) {
+            try {
+              // hold up the replay until the read has been started
+              release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              throw new IllegalStateException(e);
+            }
+            super.addChange(session_id, user_id, branch_id, file_map_json);
+          }
+        };
+    delegate.addSession(sessionId, userId, "{}");
+    try (JournaledStorage journaled =
+        new JournaledStorage(delegate, directory.resolve("journal"), false)) {
+      journaled.addChange(sessionId, userId, branchId, "{\"a\":1}");
+
+      // the read is started straight away, but only reaches storage once the add is replayed
+      CompletableFuture<BranchSnapshot> snapshot =
+          journaled.async().getBranchSnapshot(sessionId, userId, branchId);
+      assertFalse(snapshot.isDone());
+      release.countDown();
+
+      assertEquals("{\"a\":1}", AsyncStorageInterface.await(snapshot).changes());
+    }
+  }
+
+  @Test
+  public void testInstrumentedAsyncReadsAreRecorded() throws Exception {
+    ServerMetrics metrics = new ServerMetrics();
+    InstrumentedStorage instrumented = new InstrumentedStorage(storage, metrics, "test");
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+
+    assertEquals(
+        "{\"a\":1}",
+        AsyncStorageInterface.await(
+            instrumented.async().getLatestLocalChanges(sessionId, userId, branchId)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AsyncStorageInterface.await(instrumented.async().fetch(sessionId, null, branchId)));
+
+    String scrape = metrics.scrape();
+    assertTrue(
+        scrape.contains(
+            "git_happens_storage_read_bytes_total{layer=\"test\",method=\"getLatestLocalChanges\"} 7"),
+        scrape);
+    assertTrue(
+        scrape.contains(
+            "git_happens_storage_call_failures_total{layer=\"test\",method=\"fetch\"} 1"),
+        scrape);
+  }
+}
@@ -0,0 +1,47 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.BlobStore;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class BlobStoreTest {
+
+  private final String fileMapJson =
+      "{\"file1\":[{\"imgStr\":\"red\",\"imgName\":\"a\"}],"
+          + "\"file2\":[{\"imgStr\":\"blue\",\"imgName\":\"b\"},"
+          + "{\"imgStr\":\"green\",\"imgName\":\"c\"}],\"file3\":[]}";
+
+  @Test
+  public void testSplitKeepsEachFilesRawJson() {
+    Map<String, String> files = BlobStore.splitFileMap(fileMapJson);
+
+    assertEquals(3, files.size());
+    assertEquals("[{\"imgStr\":\"red\",\"imgName\":\"a\"}]", files.get("file1"));
+    assertEquals("[]", files.get("file3"));
+  }
+
+  @Test
+  public void testJoinRoundTrips() {
+    assertEquals(fileMapJson, BlobStore.joinFileMap(BlobStore.splitFileMap(fileMapJson)));
+  }
+
+  @Test
+  public void testEqualContentsShareAHash() {
+    String otherMapJson =
+        "{\"file1\":[{\"imgStr\":\"yellow\",\"imgName\":\"a\"}],"
+            + "\"file2\":[{\"imgStr\":\"blue\",\"imgName\":\"b\"},"
+            + "{\"imgStr\":\"green\",\"imgName\":\"c\"}]}";
+    Map<String, String> files = BlobStore.splitFileMap(fileMapJson);
+    Map<String, String> otherFiles = BlobStore.splitFileMap(otherMapJson);
+
+    assertEquals(BlobStore.hash(files.get("file2")), BlobStore.hash(otherFiles.get("file2")));
+    assertNotEquals(BlobStore.hash(files.get("file1")), BlobStore.hash(otherFiles.get("file1")));
+  }
+
+  @Test
+  public void testSplitRejectsNonObject() {
+    assertThrows(IllegalArgumentException.class, () -> BlobStore.splitFileMap("[1, 2]"));
+  }
+}
@@ -0,0 +1,261 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.AsyncStorageInterface;
+import edu.brown.cs.student.main.server.storage.BranchSnapshot;
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.main.server.storage.MockStorage;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CachingStorageTest {
+
+  private final String sessionId = "cache-test";
+  private final String userId = "user1";
+  private final String branchId = "main";
+
+  // number of calls that reached the underlying storage, by method name
+  private Map<String, AtomicInteger> delegateCalls;
+  private MockStorage storage;
+  private CachingStorage cache;
+
+  /**
+   * Wraps storage in a proxy that counts how many times each method is called.
+   *
+   * @param storage - storage to wrap
+   * @return counting storage
+   */
+  private StorageInterface counting(StorageInterface storage) {
+    return (StorageInterface)
+        Proxy.newProxyInstance(
+            StorageInterface.class.getClassLoader(),
+            new Class<?>[] {StorageInterface.class},
+            (proxy, method, args) -> {
+              delegateCalls
+                  .computeIfAbsent(method.getName(), k -> new AtomicInteger())
+                  .incrementAndGet();
+              try {
+                return method.invoke(storage, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+  }
+
+  private int calls(String method) {
+    AtomicInteger count = delegateCalls.get(method);
+    return count == null ? 0 : count.get();
+  }
+
+  @BeforeEach
+  public void setup() throws Exception {
+    delegateCalls = new ConcurrentHashMap<>();
+    storage = new MockStorage();
+    cache = new CachingStorage(counting(storage));
+    cache.addSession(sessionId, userId, "{}");
+  }
+
+  @Test
+  public void testRepeatedReadsServedFromCache() throws Exception {
+    Map<String, Object> first = cache.getLatestLocalCommit(sessionId, userId, branchId);
+    Map<String, Object> second = cache.getLatestLocalCommit(sessionId, userId, branchId);
+    cache.getLatestRemoteCommit(sessionId, branchId);
+    cache.getLatestRemoteCommit(sessionId, branchId);
+
+    assertEquals(first, second);
+    assertEquals(1, calls("getLatestLocalCommit"));
+    assertEquals(1, calls("getLatestRemoteCommit"));
+  }
+
+  @Test
+  public void testReturnedCommitsAreCopies() throws Exception {
+    Map<String, Object> head = cache.getLatestLocalCommit(sessionId, userId, branchId);
+    head.remove("file_map_json");
+
+    assertTrue(
+        cache.getLatestLocalCommit(sessionId, userId, branchId).containsKey("file_map_json"));
+  }
+
+  @Test
+  public void testAddChangeIsReadBackAndWrittenBehind() throws Exception {
+    cache.addChange(sessionId, userId, branchId, "{\"v\":1}");
+    cache.addChange(sessionId, userId, branchId, "{\"v\":2}");
+
+    // the latest change is served from memory
+    assertEquals("{\"v\":2}", cache.getLatestLocalChanges(sessionId, userId, branchId));
+    assertEquals(0, calls("getLatestLocalChanges"));
+
+    // once flushed, the underlying storage holds the latest change
+    cache.flush();
+    assertTrue(calls("addChange") >= 1);
+    assertEquals("{\"v\":2}", storage.getLatestLocalChanges(sessionId, userId, branchId));
+  }
+
+  @Test
+  public void testBranchSnapshotReadsCachedState() throws Exception {
+    cache.addChange(sessionId, userId, branchId, "{\"v\":1}");
+    cache.getLatestLocalCommit(sessionId, userId, branchId);
+
+    BranchSnapshot snapshot = cache.getBranchSnapshot(sessionId, userId, branchId);
+    cache.getBranchSnapshot(sessionId, userId, branchId);
+
+    String initialId =
+        (String) storage.getLatestLocalCommit(sessionId, userId, branchId).get("commit_id");
+    assertEquals(initialId, snapshot.localHeadId());
+    assertEquals(initialId, snapshot.remoteHeadId());
+    assertEquals(snapshot.localPushedCount(), snapshot.remotePushedCount());
+    assertEquals(snapshot.remoteHeadId(), snapshot.localPushedHeadId());
+    assertEquals("{\"v\":1}", snapshot.changes());
+    // each branch document was read from the underlying storage at most once
+    assertEquals(1, calls("getLatestLocalCommit"));
+    assertEquals(1, calls("getLatestRemoteCommit"));
+    assertEquals(0, calls("getLatestLocalChanges"));
+    assertThrows(UnsupportedOperationException.class, () -> snapshot.localHead().clear());
+  }
+
+  @Test
+  public void testAsyncSnapshotIsCachedOnceRead() throws Exception {
+    BranchSnapshot first =
+        AsyncStorageInterface.await(cache.async().getBranchSnapshot(sessionId, userId, branchId));
+    BranchSnapshot second =
+        AsyncStorageInterface.await(cache.async().getBranchSnapshot(sessionId, userId, branchId));
+
+    assertEquals(storage.getBranchSnapshot(sessionId, userId, branchId), first);
+    assertEquals(first, second);
+    // only the first read reached the underlying storage's asynchronous reads
+    assertEquals(1, calls("async"));
+    assertEquals(
+        first.localHead(),
+        AsyncStorageInterface.await(
+            cache.async().getLatestLocalCommit(sessionId, userId, branchId)));
+    assertEquals(1, calls("async"));
+  }
+
+  @Test
+  public void testAsyncReadSeesQueuedAdd() throws Exception {
+    cache.getLatestLocalChanges(sessionId, userId, branchId);
+    cache.addChange(sessionId, userId, branchId, "{\"v\":1}");
+
+    assertEquals(
+        "{\"v\":1}",
+        AsyncStorageInterface.await(
+            cache.async().getLatestLocalChanges(sessionId, userId, branchId)));
+    assertEquals(0, calls("async"));
+
+    // once evicted, the read waits for the queued add before reading the underlying storage
+    cache.evictSession(sessionId);
+    assertEquals(
+        "{\"v\":1}",
+        AsyncStorageInterface.await(
+            cache.async().getLatestLocalChanges(sessionId, userId, branchId)));
+    assertEquals(1, calls("async"));
+  }
+
+  @Test
+  public void testEvictSessionReloadsFromStorage() throws Exception {
+    cache.getLatestLocalCommit(sessionId, userId, branchId);
+    cache.evictSession(sessionId);
+    cache.getLatestLocalCommit(sessionId, userId, branchId);
+
+    assertEquals(2, calls("getLatestLocalCommit"));
+  }
+
+  @Test
+  public void testFailedPushIsReportedAndEvictsSession() throws Exception {
+    StorageInterface failing =
+        (StorageInterface)
+            Proxy.newProxyInstance(
+                StorageInterface.class.getClassLoader(),
+                new Class<?>[] {StorageInterface.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("pushCommit")) {
+                    throw new ExecutionException(new IllegalStateException("remote head moved"));
+                  }
+                  try {
+                    return method.invoke(storage, args);
+                  } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                  }
+                });
+    CachingStorage failingCache = new CachingStorage(counting(failing));
+    failingCache.getLatestRemoteCommit(sessionId, branchId);
+
+    // the caller sees the failure instead of a push that was only applied to the cache
+    assertThrows(
+        ExecutionException.class, () -> failingCache.pushCommit(sessionId, userId, branchId));
+    failingCache.getLatestRemoteCommit(sessionId, branchId);
+    assertEquals(2, calls("getLatestRemoteCommit"));
+  }
+
+  @Test
+  public void testCommitLogIsReadFromStoragePageByPage() throws Exception {
+    Map<String, Object> page = cache.getCommitLog(sessionId, userId, branchId, 1, null, false);
+
+    // the page comes from the underlying storage's own paged read, not a slice of cached history
+    assertEquals(storage.getCommitLog(sessionId, userId, branchId, 1, null, false), page);
+    assertEquals(1, calls("getCommitLog"));
+    assertEquals(0, calls("getStagedCommits"));
+    assertEquals(0, calls("getRemotePushedCommits"));
+    assertEquals(1, ((List<?>) page.get("commits")).size());
+  }
+
+  @Test
+  public void testEmptyResetIsRejectedBeforeStorageIsChanged() {
+    Map<String, List<Map<String, Object>>> commits =
+        Map.of("staged_commits", List.of(), "pushed_commits", List.of());
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> cache.resetLocalCommits(sessionId, userId, branchId, commits));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> cache.resetLocalCommits(sessionId, userId, branchId, null));
+    assertEquals(0, calls("resetLocalCommits"));
+  }
+
+  @Test
+  public void testSlowWriteOnlyHoldsUpItsOwnSession() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    StorageInterface slow =
+        (StorageInterface)
+            Proxy.newProxyInstance(
+                StorageInterface.class.getClassLoader(),
+                new Class<?>[] {StorageInterface.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("addChange") && sessionId.equals(args[0])) {
+                    release.await();
+                  }
+                  try {
+                    return method.invoke(storage, args);
+                  } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                  }
+                });
+    CachingStorage slowCache = new CachingStorage(slow);
+    slowCache.addSession("other-session", userId, "{}");
+    slowCache.addChange(sessionId, userId, branchId, "{\"v\":1}");
+
+    try {
+      // another session's cache miss waits only for that session's queued writes
+      assertTimeoutPreemptively(
+          Duration.ofSeconds(5),
+          () -> slowCache.getLatestLocalCommit("other-session", userId, branchId));
+    } finally {
+      release.countDown();
+    }
+    slowCache.flush();
+    assertEquals("{\"v\":1}", storage.getLatestLocalChanges(sessionId, userId, branchId));
+    slowCache.close();
+  }
+}
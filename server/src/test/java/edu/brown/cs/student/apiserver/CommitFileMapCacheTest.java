@@ -0,0 +1,142 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.handlers.AbstractEndpointHandler;
+import edu.brown.cs.student.main.server.handlers.ResponseContext;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import spark.Request;
+import spark.Response;
+
+public class CommitFileMapCacheTest {
+
+  /** Handler that only exposes the file map helpers. */
+  private static class FileMapHandler extends AbstractEndpointHandler {
+    @Override
+    protected Object handle(Request request, Response response, ResponseContext context) {
+      return null;
+    }
+
+    Map<String, List<MockFileObject>> fileMapOf(String sessionId, Map<String, Object> commit) {
+      return commitFileMap(sessionId, commit);
+    }
+
+    Map<String, List<MockFileObject>> mergeBaseOf(
+        InMemoryStorage storage,
+        String sessionId,
+        String branchId,
+        String incomingBranchId,
+        String localCommitId,
+        String incomingCommitId)
+        throws Exception {
+      return findMergeBaseFileMap(
+          storage,
+          new CommitGraphIndex(),
+          sessionId,
+          "user1",
+          branchId,
+          incomingBranchId,
+          localCommitId,
+          incomingCommitId);
+    }
+  }
+
+  private Map<String, Object> commit(String commitId, String fileMapJson) {
+    Map<String, Object> commit = new HashMap<>();
+    commit.put("commit_id", commitId);
+    commit.put("file_map_json", fileMapJson);
+    return commit;
+  }
+
+  @Test
+  public void testCommitIsParsedOnceAndShared() {
+    FileMapHandler handler = new FileMapHandler();
+    Map<String, Object> commit =
+        commit("cache-c1", "{\"file1\":[{\"imgStr\":\"a\",\"imgName\":\"a\"}]}");
+
+    Map<String, List<MockFileObject>> first = handler.fileMapOf("cache-s1", commit);
+
+    assertEquals(List.of(new MockFileObject("a", "a")), first.get("file1"));
+    // another handler reading the same commit gets the same parsed map
+    assertSame(first, new FileMapHandler().fileMapOf("cache-s1", commit));
+    assertThrows(UnsupportedOperationException.class, () -> first.put("file2", List.of()));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> first.get("file1").add(new MockFileObject("b", "b")));
+  }
+
+  @Test
+  public void testEvictSessionDropsItsCommits() {
+    FileMapHandler handler = new FileMapHandler();
+    Map<String, Object> commit = commit("cache-c2", "{\"file1\":[]}");
+    Map<String, List<MockFileObject>> first = handler.fileMapOf("cache-s2", commit);
+    Map<String, List<MockFileObject>> other = handler.fileMapOf("cache-s3", commit);
+
+    AbstractEndpointHandler.evictSession("cache-s2");
+
+    assertNotSame(first, handler.fileMapOf("cache-s2", commit));
+    assertSame(other, handler.fileMapOf("cache-s3", commit));
+  }
+
+  @Test
+  public void testCachedCommitIsFoundByIdAlone() {
+    FileMapHandler handler = new FileMapHandler();
+    Map<String, List<MockFileObject>> first =
+        handler.fileMapOf("cache-s5", commit("cache-c5", "{\"file1\":[]}"));
+
+    // commits never change, so the same id is served from the cache without reading its json
+    assertSame(
+        first, handler.fileMapOf("cache-s5", commit("cache-c5", new String("{\"file1\":[]}"))));
+  }
+
+  @Test
+  public void testCommitWithoutIdIsNotCached() {
+    FileMapHandler handler = new FileMapHandler();
+    Map<String, Object> commit = commit(null, "{\"file1\":[]}");
+
+    assertNotSame(handler.fileMapOf("cache-s4", commit), handler.fileMapOf("cache-s4", commit));
+  }
+
+  @Test
+  public void testMergeBaseOnlyOnIncomingBranchIsFound() throws Exception {
+    InMemoryStorage storage = new InMemoryStorage();
+    storage.addSession("cache-s6", "user1", "{\"file1\":[]}");
+    String initialId =
+        (String) storage.getLatestLocalCommit("cache-s6", "user1", "main").get("commit_id");
+    storage.addBranch("cache-s6", "user1", "main", "feature", "{\"file1\":[]}");
+    storage.addChange(
+        "cache-s6", "user1", "feature", "{\"file1\":[{\"imgStr\":\"a\",\"imgName\":\"a\"}]}");
+    String featureId =
+        (String)
+            storage
+                .commitChange("cache-s6", "user1", "feature", "f1", List.of(initialId))
+                .get("commit_id");
+    // merging feature into main does not copy its commit into main's history
+    storage.addChange(
+        "cache-s6", "user1", "main", "{\"file1\":[{\"imgStr\":\"a\",\"imgName\":\"a\"}]}");
+    String mergeId =
+        (String)
+            storage
+                .commitChange("cache-s6", "user1", "main", "merge", List.of(initialId, featureId))
+                .get("commit_id");
+    storage.addChange("cache-s6", "user1", "feature", "{\"file1\":[]}");
+    String nextFeatureId =
+        (String)
+            storage
+                .commitChange("cache-s6", "user1", "feature", "f2", List.of(featureId))
+                .get("commit_id");
+
+    // merging again, the merge base is the feature commit, which main does not have
+    assertNull(storage.getCommit("cache-s6", "user1", "main", featureId));
+    assertEquals(
+        Map.of("file1", List.of(new MockFileObject("a", "a"))),
+        new FileMapHandler()
+            .mergeBaseOf(storage, "cache-s6", "main", "feature", mergeId, nextFeatureId));
+  }
+}
@@ -0,0 +1,111 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.CommitGraphIndex;
+import edu.brown.cs.student.main.server.storage.MockStorage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CommitGraphIndexTest {
+
+  private final String sessionId = "index-test";
+  private CommitGraphIndex index;
+
+  private Map<String, Object> commit(String commitId, String... parents) {
+    return Map.of("commit_id", commitId, "parent_commits", List.of(parents));
+  }
+
+  @BeforeEach
+  public void setup() {
+    index = new CommitGraphIndex();
+    //   1 - 2 - 3 ----- 5
+    //        \        /
+    //         4 ----- 6 - 7
+    // given newest first, as they come from the commit log
+    index.addCommits(
+        sessionId,
+        List.of(
+            commit("7", "6"),
+            commit("6", "4"),
+            commit("5", "3", "4"),
+            commit("4", "2"),
+            commit("3", "2"),
+            commit("2", "1"),
+            commit("1")));
+  }
+
+  @Test
+  public void testAncestry() {
+    assertTrue(index.isAncestor(sessionId, "1", "7"));
+    assertTrue(index.isAncestor(sessionId, "4", "5"));
+    assertTrue(index.isAncestor(sessionId, "5", "5"));
+    assertFalse(index.isAncestor(sessionId, "3", "7"));
+    assertFalse(index.isAncestor(sessionId, "7", "1"));
+  }
+
+  @Test
+  public void testAheadBehind() {
+    // 5 has 3 and 5, 7 has 6 and 7
+    assertEquals(new CommitGraphIndex.AheadBehind(2, 2), index.aheadBehind(sessionId, "5", "7"));
+    assertEquals(new CommitGraphIndex.AheadBehind(0, 3), index.aheadBehind(sessionId, "2", "7"));
+    assertEquals(new CommitGraphIndex.AheadBehind(0, 0), index.aheadBehind(sessionId, "3", "3"));
+  }
+
+  @Test
+  public void testMergeBase() {
+    assertEquals("4", index.findMergeBase(sessionId, "5", "7"));
+    assertEquals("2", index.findMergeBase(sessionId, "3", "6"));
+    assertEquals("3", index.findMergeBase(sessionId, "5", "3"));
+  }
+
+  @Test
+  public void testCommitsWithUnknownParentsAreNotIndexed() {
+    index.addCommits(sessionId, List.of(commit("9", "8"), commit("10", "9")));
+
+    assertFalse(index.contains(sessionId, "9"));
+    assertFalse(index.contains(sessionId, "10"));
+    assertThrows(IllegalArgumentException.class, () -> index.aheadBehind(sessionId, "10", "7"));
+
+    // a new commit on an indexed head is indexed right away
+    index.addCommits(sessionId, List.of(commit("11", "7")));
+    assertEquals(new CommitGraphIndex.AheadBehind(1, 0), index.aheadBehind(sessionId, "11", "7"));
+  }
+
+  @Test
+  public void testEnsureIndexedLoadsFromStorage() throws Exception {
+    MockStorage storage = new MockStorage();
+    storage.addSession("load-test", "user1", "{}");
+    storage.addChange("load-test", "user1", "main", "{\"file1\":[]}");
+    String head =
+        storage.getLatestLocalCommit("load-test", "user1", "main").get("commit_id").toString();
+    Map<String, Object> newCommit =
+        storage.commitChange("load-test", "user1", "main", "message", List.of(head));
+    String newHead = newCommit.get("commit_id").toString();
+
+    CommitGraphIndex storageIndex = new CommitGraphIndex();
+    assertFalse(storageIndex.contains("load-test", newHead));
+    assertTrue(storageIndex.ensureIndexed(storage, "load-test", "user1", "main", newHead, head));
+    assertTrue(storageIndex.contains("load-test", newHead));
+    assertTrue(storageIndex.contains("load-test", head));
+  }
+
+  @Test
+  public void testGraphsAreBoundedWithoutDeletingSessions() throws Exception {
+    CommitGraphIndex bounded = new CommitGraphIndex(1, 1, TimeUnit.HOURS);
+    bounded.addCommits("first", List.of(commit("1")));
+    bounded.addCommits("second", List.of(commit("1")));
+
+    // only the most recently used session's graph is kept
+    assertFalse(bounded.contains("first", "1"));
+    assertTrue(bounded.contains("second", "1"));
+
+    CommitGraphIndex expiring = new CommitGraphIndex(10, 1, TimeUnit.MILLISECONDS);
+    expiring.addCommits("first", List.of(commit("1")));
+    Thread.sleep(20);
+    assertFalse(expiring.contains("first", "1"));
+  }
+}
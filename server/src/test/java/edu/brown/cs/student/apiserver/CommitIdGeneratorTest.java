@@ -0,0 +1,82 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.CommitIdGenerator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class CommitIdGeneratorTest {
+
+  @Test
+  public void testIdsAreShortAndAlphanumeric() {
+    String id = new CommitIdGenerator().next();
+
+    assertEquals(12, id.length());
+    assertTrue(id.matches("[0-9A-Z]+"), id);
+  }
+
+  @Test
+  public void testIdsIncreaseWhenClockStallsOrGoesBack() {
+    AtomicLong now = new AtomicLong(System.currentTimeMillis());
+    CommitIdGenerator generator = new CommitIdGenerator(1, now::get);
+
+    String previous = generator.next();
+    // more ids than fit in one millisecond, then a clock that moves backwards
+    for (int i = 0; i < 5000; i++) {
+      if (i == 4000) {
+        now.addAndGet(-60_000);
+      }
+      String id = generator.next();
+      assertTrue(id.compareTo(previous) > 0, id + " after " + previous);
+      previous = id;
+    }
+  }
+
+  @Test
+  public void testNodesNeverCollide() {
+    CommitIdGenerator first = new CommitIdGenerator(1, () -> 1_800_000_000_000L);
+    CommitIdGenerator second = new CommitIdGenerator(2, () -> 1_800_000_000_000L);
+
+    Set<String> ids = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(ids.add(first.next()));
+      assertTrue(ids.add(second.next()));
+    }
+    assertThrows(IllegalArgumentException.class, () -> new CommitIdGenerator(256));
+  }
+
+  @Test
+  public void testConcurrentIdsAreUnique() throws Exception {
+    CommitIdGenerator generator = new CommitIdGenerator();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<String>>> batches = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        batches.add(
+            executor.submit(
+                () -> {
+                  List<String> ids = new ArrayList<>();
+                  for (int j = 0; j < 10_000; j++) {
+                    ids.add(generator.next());
+                  }
+                  return ids;
+                }));
+      }
+      Set<String> ids = new HashSet<>();
+      for (Future<List<String>> batch : batches) {
+        ids.addAll(batch.get());
+      }
+      assertEquals(80_000, ids.size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
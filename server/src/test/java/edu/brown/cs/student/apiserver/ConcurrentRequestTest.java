@@ -0,0 +1,41 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrentRequestTest extends BaseEndpointTest {
+
+  @Test
+  public void testConcurrentResponsesDoNotMix() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Map<String, Object>>> responses = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        String sessionId = "concurrent-" + i;
+        // invalid verbose fails validation, so only the response building is exercised
+        responses.add(
+            executor.submit(
+                () ->
+                    deserializeResponse(
+                        tryRequest(
+                            "gitlog?session_id="
+                                + sessionId
+                                + "&user_id=user&branch_id=main&verbose=maybe"))));
+      }
+      for (int i = 0; i < responses.size(); i++) {
+        Map<String, Object> response = responses.get(i).get();
+        assertEquals("concurrent-" + i, response.get("session_id"));
+        assertEquals("parameter_not_bool", response.get("error_cause"));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.mergeHelpers.FileMapCodec;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class FileMapCodecTest {
+
+  @Test
+  public void testFileMapRoundTrips() {
+    Map<String, List<MockFileObject>> fileMap = new LinkedHashMap<>();
+    fileMap.put(
+        "file1",
+        List.of(new MockFileObject("ingredient1", "ingredient1"), new MockFileObject("é✓", null)));
+    fileMap.put("file2", List.of());
+    fileMap.put("file3", List.of(new MockFileObject("ingredient1", "ingredient1")));
+
+    Map<String, List<MockFileObject>> decoded = FileMapCodec.decode(FileMapCodec.encode(fileMap));
+
+    assertEquals(fileMap, decoded);
+    assertEquals(List.of("file1", "file2", "file3"), new ArrayList<>(decoded.keySet()));
+    // repeated objects decode to one instance
+    assertSame(decoded.get("file1").get(0), decoded.get("file3").get(0));
+  }
+
+  @Test
+  public void testFileRoundTripsAndRepeatsAreStoredOnce() {
+    String image = "data:image/png;base64," + "A".repeat(1000);
+    List<MockFileObject> file = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      file.add(new MockFileObject(image, "image"));
+    }
+
+    byte[] encoded = FileMapCodec.encodeFile(file);
+
+    assertEquals(file, FileMapCodec.decodeFile(encoded));
+    // the image is stored once, not fifty times as in json
+    assertTrue(encoded.length < 1200, "encoded length " + encoded.length);
+  }
+
+  @Test
+  public void testRejectsMalformedEncodings() {
+    byte[] encoded = FileMapCodec.encode(Map.of("file1", List.of(new MockFileObject("a", "b"))));
+
+    // wrong kind, truncated, and trailing bytes
+    assertThrows(IllegalArgumentException.class, () -> FileMapCodec.decodeFile(encoded));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> FileMapCodec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> FileMapCodec.decode(Arrays.copyOf(encoded, encoded.length + 1)));
+    assertThrows(IllegalArgumentException.class, () -> FileMapCodec.decode(new byte[] {9, 0}));
+  }
+}
@@ -0,0 +1,96 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.mergeHelpers.FileObjectInterner;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class FileObjectInternerTest {
+
+  @Test
+  public void testEqualsAndHashCodeAgree() {
+    MockFileObject object = new MockFileObject("img", "name");
+    MockFileObject same = new MockFileObject("img", "name");
+    MockFileObject renamed = new MockFileObject("img", "other");
+
+    assertEquals(object, same);
+    assertEquals(object.hashCode(), same.hashCode());
+    assertEquals(object.hash(), same.hash());
+    assertNotEquals(object, renamed);
+    // the separator keeps the field boundary in the hash
+    assertNotEquals(new MockFileObject("ab", "c").hash(), new MockFileObject("a", "bc").hash());
+  }
+
+  @Test
+  public void testJsonIsUnchangedAndHashOfReadObjectsMatches() throws Exception {
+    JsonAdapter<List<MockFileObject>> adapter =
+        new Moshi.Builder()
+            .build()
+            .adapter(Types.newParameterizedType(List.class, MockFileObject.class));
+    MockFileObject object = new MockFileObject("img", "name");
+
+    String json = adapter.toJson(List.of(object));
+    // only the two fields are written, not the cached hash
+    assertTrue(json.contains("\"imgStr\":\"img\""), json);
+    assertTrue(json.contains("\"imgName\":\"name\""), json);
+    assertFalse(json.contains("hash"), json);
+    MockFileObject read = adapter.fromJson(json).get(0);
+    assertEquals(object, read);
+    assertEquals(object.hash(), read.hash());
+  }
+
+  @Test
+  public void testInternsPerSession() {
+    FileObjectInterner interner = new FileObjectInterner(10);
+    MockFileObject first = new MockFileObject("img", "name");
+    Map<String, List<MockFileObject>> fileMap = new HashMap<>();
+    fileMap.put("file", new ArrayList<>(List.of(new MockFileObject("img", "name"))));
+
+    assertSame(first, interner.intern("session", first));
+    interner.internAll("session", fileMap);
+    assertSame(first, fileMap.get("file").get(0));
+    // other sessions keep their own instances
+    assertNotSame(first, interner.intern("other", new MockFileObject("img", "name")));
+
+    interner.evictSession("session");
+    assertEquals(0, interner.size("session"));
+    assertEquals(1, interner.size("other"));
+  }
+
+  @Test
+  public void testStopsInterningPastLimit() {
+    FileObjectInterner interner = new FileObjectInterner(2);
+    interner.intern("session", new MockFileObject("a", "a"));
+    interner.intern("session", new MockFileObject("b", "b"));
+    MockFileObject third = new MockFileObject("c", "c");
+
+    assertSame(third, interner.intern("session", third));
+    assertNotSame(third, interner.intern("session", new MockFileObject("c", "c")));
+    assertEquals(2, interner.size("session"));
+  }
+
+  @Test
+  public void testSessionsAreBoundedWithoutDeletingThem() throws Exception {
+    FileObjectInterner bounded = new FileObjectInterner(10, 1, 1, TimeUnit.HOURS);
+    bounded.intern("first", new MockFileObject("a", "a"));
+    bounded.intern("second", new MockFileObject("a", "a"));
+
+    // only the most recently used session's objects are kept
+    assertEquals(0, bounded.size("first"));
+    assertEquals(1, bounded.size("second"));
+
+    FileObjectInterner expiring = new FileObjectInterner(10, 10, 1, TimeUnit.MILLISECONDS);
+    expiring.intern("first", new MockFileObject("a", "a"));
+    Thread.sleep(20);
+    assertEquals(0, expiring.size("first"));
+  }
+}
@@ -2,6 +2,7 @@ package edu.brown.cs.student.apiserver;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import edu.brown.cs.student.main.server.mergeHelpers.DiffOperation;
 import edu.brown.cs.student.main.server.mergeHelpers.GitDiffHelper;
 import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
 import java.util.*;
@@ -91,4 +92,225 @@ public class GitDiffHelperTest {
     assertTrue(diffHelper.getNewLocalFiles().isEmpty());
     assertTrue(diffHelper.getNewIncomingFiles().isEmpty());
   }
+
+  @Test
+  public void testAutoMergeSubsequenceNotPrefix() {
+    List<MockFileObject> local = List.of(fileObj("a"), fileObj("c"));
+    List<MockFileObject> incoming = List.of(fileObj("a"), fileObj("b"), fileObj("c"));
+
+    List<MockFileObject> result = diffHelper.autoMergeIfPossible("file1", local, incoming);
+    assertEquals(incoming, result);
+    assertTrue(diffHelper.getFileConflicts().isEmpty());
+  }
+
+  /** Applies an edit script to the old file and checks it yields the new file. */
+  private List<MockFileObject> applyScript(List<DiffOperation> script) {
+    List<MockFileObject> result = new ArrayList<>();
+    for (DiffOperation operation : script) {
+      if (operation.type() != DiffOperation.Type.DELETE) {
+        result.add(operation.object());
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testDiffFileShortestScript() {
+    List<MockFileObject> oldFile = List.of(fileObj("a"), fileObj("b"), fileObj("c"), fileObj("d"));
+    List<MockFileObject> newFile =
+        List.of(fileObj("a"), fileObj("x"), fileObj("c"), fileObj("d"), fileObj("e"));
+
+    List<DiffOperation> script = GitDiffHelper.diffFile(oldFile, newFile);
+
+    assertEquals(newFile, applyScript(script));
+    // delete b, insert x, insert e
+    assertEquals(3, script.stream().filter(op -> op.type() != DiffOperation.Type.KEEP).count());
+    for (DiffOperation operation : script) {
+      if (operation.type() == DiffOperation.Type.DELETE) {
+        assertEquals(fileObj("b"), operation.object());
+        assertEquals(1, operation.oldIndex());
+      }
+    }
+  }
+
+  @Test
+  public void testDiffFileEmptyAndReordered() {
+    assertTrue(GitDiffHelper.diffFile(List.of(), List.of()).isEmpty());
+
+    List<MockFileObject> oldFile = List.of(fileObj("a"), fileObj("b"), fileObj("c"));
+    List<MockFileObject> newFile = List.of(fileObj("c"), fileObj("b"), fileObj("a"));
+    List<DiffOperation> script = GitDiffHelper.diffFile(oldFile, newFile);
+    assertEquals(newFile, applyScript(script));
+    // only one object can be kept when the order is reversed
+    assertEquals(1, script.stream().filter(op -> op.type() == DiffOperation.Type.KEEP).count());
+  }
+
+  /** Length of a longest common subsequence, by dynamic programming. */
+  private int commonLength(List<MockFileObject> oldFile, List<MockFileObject> newFile) {
+    int[][] lengths = new int[oldFile.size() + 1][newFile.size() + 1];
+    for (int i = 1; i <= oldFile.size(); i++) {
+      for (int j = 1; j <= newFile.size(); j++) {
+        lengths[i][j] =
+            oldFile.get(i - 1).equals(newFile.get(j - 1))
+                ? lengths[i - 1][j - 1] + 1
+                : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+      }
+    }
+    return lengths[oldFile.size()][newFile.size()];
+  }
+
+  @Test
+  public void testDiffFileIsShortestOnRandomFiles() {
+    Random random = new Random(42);
+    for (int trial = 0; trial < 500; trial++) {
+      List<MockFileObject> oldFile = new ArrayList<>();
+      List<MockFileObject> newFile = new ArrayList<>();
+      for (int i = random.nextInt(30); i > 0; i--) {
+        oldFile.add(fileObj(String.valueOf((char) ('a' + random.nextInt(4)))));
+      }
+      for (int i = random.nextInt(30); i > 0; i--) {
+        newFile.add(fileObj(String.valueOf((char) ('a' + random.nextInt(4)))));
+      }
+
+      List<DiffOperation> script = GitDiffHelper.diffFile(oldFile, newFile);
+
+      assertEquals(newFile, applyScript(script));
+      // every old object is kept or deleted once, in order
+      assertEquals(
+          oldFile.size(),
+          script.stream().filter(op -> op.type() != DiffOperation.Type.INSERT).count());
+      int nextOld = 0;
+      for (DiffOperation operation : script) {
+        if (operation.type() != DiffOperation.Type.INSERT) {
+          assertEquals(nextOld++, operation.oldIndex());
+        }
+      }
+      assertEquals(
+          commonLength(oldFile, newFile),
+          script.stream().filter(op -> op.type() == DiffOperation.Type.KEEP).count());
+    }
+  }
+
+  @Test
+  public void testDiffFileWithNothingInCommon() {
+    List<MockFileObject> oldFile = new ArrayList<>();
+    List<MockFileObject> newFile = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      oldFile.add(fileObj("old" + i));
+      newFile.add(fileObj("new" + i));
+    }
+
+    List<DiffOperation> script = GitDiffHelper.diffFile(oldFile, newFile);
+
+    assertEquals(newFile, applyScript(script));
+    assertEquals(2000, script.size());
+    assertTrue(script.stream().noneMatch(op -> op.type() == DiffOperation.Type.KEEP));
+  }
+
+  @Test
+  public void testDiffFileMaps() {
+    Map<String, List<MockFileObject>> stored =
+        Map.of("file1", List.of(fileObj("a")), "file2", List.of(fileObj("b")));
+    Map<String, List<MockFileObject>> current =
+        Map.of("file1", List.of(fileObj("a")), "file3", List.of(fileObj("c")));
+
+    Map<String, List<DiffOperation>> diffs = diffHelper.diffFileMaps(stored, current);
+
+    assertEquals(Set.of("file2", "file3"), diffs.keySet());
+    assertEquals(DiffOperation.Type.DELETE, diffs.get("file2").get(0).type());
+    assertEquals(DiffOperation.Type.INSERT, diffs.get("file3").get(0).type());
+  }
+
+  private List<MockFileObject> file(String... names) {
+    List<MockFileObject> file = new ArrayList<>();
+    for (String name : names) {
+      file.add(fileObj(name));
+    }
+    return file;
+  }
+
+  @Test
+  public void testThreeWayMergeTakesChangesFromBothSides() {
+    List<MockFileObject> base = file("a", "b", "c", "d", "e");
+    // local changes the start, incoming changes the end
+    List<MockFileObject> local = file("x", "b", "c", "d", "e");
+    List<MockFileObject> incoming = file("a", "b", "c", "d", "y", "z");
+
+    List<MockFileObject> merged = diffHelper.threeWayMerge("file1", base, local, incoming);
+
+    assertEquals(file("x", "b", "c", "d", "y", "z"), merged);
+    assertTrue(diffHelper.getFileConflicts().isEmpty());
+  }
+
+  @Test
+  public void testThreeWayMergeKeepsDeletions() {
+    List<MockFileObject> base = file("a", "b", "c");
+    List<MockFileObject> local = file("a", "c");
+    List<MockFileObject> incoming = file("a", "b", "c", "d");
+
+    // a two-way merge would bring back b, since it only appears in incoming
+    assertEquals(file("a", "c", "d"), diffHelper.threeWayMerge("file1", base, local, incoming));
+  }
+
+  @Test
+  public void testThreeWayMergeConflictHunks() {
+    List<MockFileObject> base = file("a", "b", "c", "d");
+    List<MockFileObject> local = file("a", "x", "c", "d");
+    List<MockFileObject> incoming = file("a", "y", "c", "d", "e");
+
+    assertNull(diffHelper.threeWayMerge("file1", base, local, incoming));
+
+    // whole files are still reported for the default conflict style
+    assertEquals(local, diffHelper.getFileConflicts().get("file1").get("local"));
+    assertEquals(incoming, diffHelper.getFileConflicts().get("file1").get("incoming"));
+
+    // only the changed section conflicts
+    List<Map<String, Object>> hunks = diffHelper.getFileConflictHunks().get("file1");
+    assertEquals(1, hunks.size());
+    assertEquals(1, hunks.get(0).get("start"));
+    assertEquals(file("b"), hunks.get(0).get("base"));
+    assertEquals(file("x"), hunks.get(0).get("local"));
+    assertEquals(file("y"), hunks.get(0).get("incoming"));
+  }
+
+  @Test
+  public void testMergeFileWithoutBaseFallsBackToTwoWay() {
+    List<MockFileObject> local = file("a", "b");
+    List<MockFileObject> incoming = file("a", "b", "c");
+
+    assertEquals(incoming, diffHelper.mergeFile("file1", null, local, incoming));
+    assertEquals(
+        file("b", "c"),
+        diffHelper.mergeFile("file1", Map.of("file1", file("a", "b")), file("b"), incoming));
+  }
+
+  @Test
+  public void testMergeFileMapsPropagatesIncomingDeletion() {
+    Map<String, List<MockFileObject>> base = Map.of("file1", file("a"), "file2", file("b"));
+    Map<String, List<MockFileObject>> local = Map.of("file1", file("a"), "file2", file("b"));
+    // incoming deleted file2 and added file3
+    Map<String, List<MockFileObject>> incoming = Map.of("file1", file("a"), "file3", file("c"));
+
+    Map<String, List<MockFileObject>> merged = diffHelper.mergeFileMaps(local, incoming, base);
+
+    assertEquals(Map.of("file1", file("a"), "file3", file("c")), merged);
+    assertTrue(diffHelper.getFileConflicts().isEmpty());
+  }
+
+  @Test
+  public void testMergeFileMapsConflictsWhenDeletedFileWasChanged() {
+    Map<String, List<MockFileObject>> base = Map.of("file1", file("a"));
+    Map<String, List<MockFileObject>> local = Map.of();
+    Map<String, List<MockFileObject>> incoming = Map.of("file1", file("a", "b"));
+
+    Map<String, List<MockFileObject>> merged = diffHelper.mergeFileMaps(local, incoming, base);
+
+    assertTrue(merged.isEmpty());
+    assertEquals(
+        Map.of("local", List.of(), "incoming", file("a", "b")),
+        diffHelper.getFileConflicts().get("file1"));
+    // without a merge base, a file only one side has is kept
+    assertEquals(
+        Map.of("file1", file("a", "b")), new GitDiffHelper().mergeFileMaps(local, incoming, null));
+  }
 }
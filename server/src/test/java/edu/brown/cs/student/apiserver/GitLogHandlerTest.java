@@ -0,0 +1,92 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class GitLogHandlerTest extends BaseEndpointTest {
+
+  private final String sessionId = "log-test";
+  private final String userId = "test-user";
+  private final String branchId = "main";
+
+  private String logRequest(String extraParams) {
+    return "gitlog?session_id="
+        + sessionId
+        + "&user_id="
+        + userId
+        + "&branch_id="
+        + branchId
+        + "&verbose=false"
+        + extraParams;
+  }
+
+  @Test
+  public void testInvalidLimit() {
+    try {
+      Map<String, Object> response = deserializeResponse(tryRequest(logRequest("&limit=zero")));
+      assertEquals("error_bad_request", response.get("response"));
+      assertEquals("parameter_not_int", response.get("error_cause"));
+
+      response = deserializeResponse(tryRequest(logRequest("&limit=0")));
+      assertEquals("error_bad_request", response.get("response"));
+      assertEquals("parameter_not_positive", response.get("error_cause"));
+    } catch (Exception e) {
+      fail(e);
+    }
+  }
+
+  @Test
+  public void testPagesThroughLog() {
+    try {
+      String base = serializeFileMap(Map.of("file1", List.of(new MockFileObject("base", "base"))));
+      HttpURLConnection conn =
+          tryRequest(
+              "createsession?session_id="
+                  + sessionId
+                  + "&user_id="
+                  + userId
+                  + "&file_map_json="
+                  + base);
+      assertEquals("success", deserializeResponse(conn).get("response"));
+      for (String version : List.of("v1", "v2", "v3")) {
+        String changed =
+            serializeFileMap(Map.of("file1", List.of(new MockFileObject(version, version))));
+        conn =
+            tryRequest(
+                "gitadd?session_id="
+                    + sessionId
+                    + "&user_id="
+                    + userId
+                    + "&branch_id="
+                    + branchId
+                    + "&file_map_json="
+                    + changed);
+        assertEquals("success", deserializeResponse(conn).get("response"));
+      }
+
+      // first page holds the two newest commits and a cursor for the rest
+      Map<String, Object> response = deserializeResponse(tryRequest(logRequest("&limit=2")));
+      assertEquals("success", response.get("response"));
+      List<Map<String, Object>> commits = (List<Map<String, Object>>) response.get("commits");
+      assertEquals(2, commits.size());
+      assertFalse(commits.get(0).containsKey("file_map_json"));
+      String cursor = (String) response.get("next_cursor");
+      assertNotNull(cursor);
+
+      // following the cursor continues from the oldest commit on the first page
+      String lastOnFirstPage = (String) commits.get(1).get("commit_id");
+      response = deserializeResponse(tryRequest(logRequest("&limit=2&cursor=" + cursor)));
+      assertEquals("success", response.get("response"));
+      commits = (List<Map<String, Object>>) response.get("commits");
+      assertFalse(commits.isEmpty());
+      assertNotEquals(lastOnFirstPage, commits.get(0).get("commit_id"));
+    } catch (Exception e) {
+      fail(e);
+    }
+  }
+}
@@ -102,6 +102,8 @@ public class GitMergeHandlerTest extends BaseEndpointTest {
       Map<String, Object> response = deserializeResponse(connection);
       assertEquals("error_database", response.get("response"));
       assertEquals("Merge: ghost - not something we can merge.", response.get("error_cause"));
+      // ghost is not on the remote either, so there is nothing to check out
+      assertNull(response.get("instructions"));
     } catch (Exception e) {
       fail(e);
     }
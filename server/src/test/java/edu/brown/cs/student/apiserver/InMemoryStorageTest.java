@@ -0,0 +1,162 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryStorageTest {
+
+  private final String sessionId = "memory-test";
+  private final String userId = "user1";
+  private final String otherUserId = "user2";
+  private final String branchId = "main";
+
+  private InMemoryStorage storage;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    storage = new InMemoryStorage();
+    storage.addSession(sessionId, userId, "{\"a\":0}");
+  }
+
+  @Test
+  public void testAddSessionCopiesRemoteMain() throws Exception {
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+    storage.commitChange(sessionId, userId, branchId, "first", List.of());
+    storage.pushCommit(sessionId, userId, branchId);
+
+    storage.addSession(sessionId, otherUserId, "{}");
+
+    assertEquals(
+        storage.getLatestRemoteCommit(sessionId, branchId).get("commit_id"),
+        storage.getLatestLocalCommit(sessionId, otherUserId, branchId).get("commit_id"));
+    assertEquals(2, storage.getLocalPushedCommits(sessionId, otherUserId, branchId).size());
+    assertEquals(
+        "{\"a\":1}",
+        storage.getLatestLocalCommit(sessionId, otherUserId, branchId).get("file_map_json"));
+  }
+
+  @Test
+  public void testCommitPushAndPull() throws Exception {
+    storage.addSession(sessionId, otherUserId, "{}");
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+    Map<String, Object> commit =
+        storage.commitChange(sessionId, userId, branchId, "first", List.of());
+
+    assertNull(storage.getLatestLocalChanges(sessionId, userId, branchId));
+    assertEquals(1, storage.getStagedCommits(sessionId, userId, branchId).size());
+    assertEquals(
+        commit, storage.getCommit(sessionId, userId, branchId, (String) commit.get("commit_id")));
+
+    storage.pushCommit(sessionId, userId, branchId);
+    assertTrue(storage.getStagedCommits(sessionId, userId, branchId).isEmpty());
+    assertEquals(
+        commit.get("commit_id"),
+        storage.getLatestRemoteCommit(sessionId, branchId).get("commit_id"));
+
+    Map<String, Object> updates =
+        (Map<String, Object>) storage.fetch(sessionId, otherUserId, branchId).get("commit_updates");
+    assertEquals(commit.get("commit_id"), updates.get("new_commit_id"));
+
+    storage.pullRemoteCommits(sessionId, otherUserId, branchId);
+    assertEquals(2, storage.getLocalPushedCommits(sessionId, otherUserId, branchId).size());
+  }
+
+  @Test
+  public void testResetMovesHead() throws Exception {
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+    storage.commitChange(sessionId, userId, branchId, "first", List.of());
+    storage.addChange(sessionId, userId, branchId, "{\"a\":2}");
+
+    Map<String, List<Map<String, Object>>> commits = new HashMap<>();
+    commits.put("pushed_commits", storage.getLocalPushedCommits(sessionId, userId, branchId));
+    commits.put("staged_commits", new ArrayList<>());
+    storage.resetLocalCommits(sessionId, userId, branchId, commits);
+
+    assertTrue(storage.getStagedCommits(sessionId, userId, branchId).isEmpty());
+    assertNull(storage.getLatestLocalChanges(sessionId, userId, branchId));
+    assertEquals(
+        storage.getLatestRemoteCommit(sessionId, branchId).get("commit_id"),
+        storage.getLatestLocalCommit(sessionId, userId, branchId).get("commit_id"));
+  }
+
+  @Test
+  public void testBranchesAndStashes() throws Exception {
+    storage.addBranch(sessionId, userId, branchId, "feature", "{\"a\":0}");
+    assertEquals(List.of("feature", "main"), storage.getAllRemoteBranches(sessionId));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> storage.addBranch(sessionId, userId, branchId, "feature", "{}"));
+
+    storage.deleteBranch(sessionId, userId, "feature");
+    assertEquals(List.of("main"), storage.getAllLocalBranches(sessionId, userId));
+    assertThrows(
+        IllegalArgumentException.class, () -> storage.deleteBranch(sessionId, userId, "missing"));
+
+    String message = storage.addStash(sessionId, userId, branchId, "{\"b\":1}");
+    assertTrue(message.startsWith("WIP on main: "));
+    assertEquals("{\"b\":1}", storage.popStash(sessionId, userId, 0).get("file_map_json"));
+    assertNull(storage.popStash(sessionId, userId, 0));
+  }
+
+  @Test
+  public void testReturnedCommitsAreCopies() throws Exception {
+    storage.getLatestLocalCommit(sessionId, userId, branchId).remove("file_map_json");
+    storage.getLocalPushedCommits(sessionId, userId, branchId).clear();
+
+    assertEquals(
+        "{\"a\":0}",
+        storage.getLatestLocalCommit(sessionId, userId, branchId).get("file_map_json"));
+    assertEquals(1, storage.getLocalPushedCommits(sessionId, userId, branchId).size());
+  }
+
+  @Test
+  public void testConcurrentSessions() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> sessions = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        String session = "session" + i;
+        sessions.add(
+            executor.submit(
+                () -> {
+                  storage.addSession(session, userId, "{}");
+                  for (int j = 0; j < 20; j++) {
+                    storage.addChange(session, userId, branchId, "{\"n\":" + j + "}");
+                    storage.commitChange(session, userId, branchId, "commit " + j, List.of());
+                    storage.pushCommit(session, userId, branchId);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> session : sessions) {
+        session.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(33, storage.getAllSessions().size());
+    for (int i = 0; i < 32; i++) {
+      assertEquals(21, storage.getRemotePushedCommits("session" + i, branchId).size());
+    }
+  }
+
+  @Test
+  public void testDeleteSession() throws Exception {
+    storage.deleteSession(sessionId);
+
+    assertTrue(storage.getAllSessions().isEmpty());
+    assertNull(storage.getLatestLocalCommit(sessionId, userId, branchId));
+    assertTrue(storage.getAllLocalBranches(sessionId, userId).isEmpty());
+  }
+}
@@ -0,0 +1,212 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.CachingStorage;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.JournaledStorage;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JournaledStorageTest {
+
+  private final String sessionId = "journal-test";
+  private final String userId = "user1";
+  private final String branchId = "main";
+
+  @TempDir Path directory;
+
+  @Test
+  public void testReadsSeeJournaledWrites() throws Exception {
+    InMemoryStorage delegate = new InMemoryStorage();
+    try (JournaledStorage storage =
+        new JournaledStorage(delegate, directory.resolve("journal"), false)) {
+      storage.addSession(sessionId, userId, "{}");
+      storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+      storage.commitChange(sessionId, userId, branchId, "first", List.of());
+      storage.pushCommit(sessionId, userId, branchId);
+
+      assertEquals(2, storage.getRemotePushedCommits(sessionId, branchId).size());
+      assertTrue(storage.getStagedCommits(sessionId, userId, branchId).isEmpty());
+      storage.flush();
+      assertEquals(2, delegate.getRemotePushedCommits(sessionId, branchId).size());
+    }
+  }
+
+  @Test
+  public void testUnreplayedWritesReplayOnReopen() throws Exception {
+    Path journal = directory.resolve("journal");
+    // storage that is unavailable, so acknowledged writes stay in the journal
+    InMemoryStorage unavailable =
+        new InMemoryStorage() {
+          @Override
+          public void addChange(
+              String session_id, String user_id, String branch_id, String file_map_json) {
+            throw new IllegalStateException("unavailable");
+          }
+        };
+    JournaledStorage storage = new JournaledStorage(unavailable, journal, false);
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+    storage.close();
+
+    InMemoryStorage delegate = new InMemoryStorage();
+    delegate.addSession(sessionId, userId, "{}");
+    try (JournaledStorage reopened = new JournaledStorage(delegate, journal, false)) {
+      assertEquals("{\"a\":1}", reopened.getLatestLocalChanges(sessionId, userId, branchId));
+    }
+    // the replay was journaled, so it is not repeated
+    delegate.addChange(sessionId, userId, branchId, "{\"a\":2}");
+    try (JournaledStorage reopened = new JournaledStorage(delegate, journal, false)) {
+      assertEquals("{\"a\":2}", reopened.getLatestLocalChanges(sessionId, userId, branchId));
+    }
+  }
+
+  @Test
+  public void testOverwrittenAddsAreCoalesced() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger adds = new AtomicInteger();
+    InMemoryStorage delegate =
+        new InMemoryStorage() {
+          @Override
+          public void addChange(
+              String session_id, String user_id, String branch_id, String file_map_json) {
+            adds.incrementAndGet();
+            try {
+              // hold up the first replay so the following adds are replayed as one batch
+              release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              throw new IllegalStateException(e);
+            }
+            super.addChange(session_id, user_id, branch_id, file_map_json);
+          }
+        };
+    delegate.addSession(sessionId, userId, "{}");
+    try (JournaledStorage storage =
+        new JournaledStorage(delegate, directory.resolve("journal"), false)) {
+      for (int i = 0; i < 20; i++) {
+        storage.addChange(sessionId, userId, branchId, "{\"n\":" + i + "}");
+      }
+      release.countDown();
+
+      assertEquals("{\"n\":19}", storage.getLatestLocalChanges(sessionId, userId, branchId));
+      assertTrue(adds.get() < 20, "every add was replayed: " + adds.get());
+    }
+  }
+
+  @Test
+  public void testFailedQueuedWriteIsReplayedAgain() throws Exception {
+    AtomicInteger failuresLeft = new AtomicInteger(1);
+    InMemoryStorage delegate =
+        new InMemoryStorage() {
+          @Override
+          public void addChange(
+              String session_id, String user_id, String branch_id, String file_map_json) {
+            if (failuresLeft.getAndDecrement() > 0) {
+              throw new IllegalStateException("unavailable");
+            }
+            super.addChange(session_id, user_id, branch_id, file_map_json);
+          }
+        };
+    delegate.addSession(sessionId, userId, "{}");
+    // the cache writes adds behind, so only its flush can report that one failed
+    CachingStorage cache = new CachingStorage(delegate);
+    try (JournaledStorage storage =
+        new JournaledStorage(cache, directory.resolve("journal"), false)) {
+      storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+      storage.flush();
+
+      assertEquals("{\"a\":1}", delegate.getLatestLocalChanges(sessionId, userId, branchId));
+    }
+    cache.close();
+  }
+
+  @Test
+  public void testWaitForReplayIsBounded() throws Exception {
+    InMemoryStorage unavailable =
+        new InMemoryStorage() {
+          @Override
+          public void addChange(
+              String session_id, String user_id, String branch_id, String file_map_json) {
+            throw new IllegalStateException("unavailable");
+          }
+        };
+    try (JournaledStorage storage =
+        new JournaledStorage(unavailable, directory.resolve("journal"), false, 200)) {
+      storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+
+      IllegalStateException e =
+          assertThrows(
+              IllegalStateException.class,
+              () -> storage.getLatestLocalChanges(sessionId, userId, branchId));
+      assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRejectedWriteIsReportedOnNextCall() throws Exception {
+    InMemoryStorage delegate =
+        new InMemoryStorage() {
+          @Override
+          public void addChange(
+              String session_id, String user_id, String branch_id, String file_map_json) {
+            throw new IllegalArgumentException("invalid file map");
+          }
+        };
+    delegate.addSession(sessionId, userId, "{}");
+    try (JournaledStorage storage =
+        new JournaledStorage(delegate, directory.resolve("journal"), false)) {
+      storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+
+      IllegalStateException e =
+          assertThrows(
+              IllegalStateException.class,
+              () -> storage.getLatestLocalChanges(sessionId, userId, branchId));
+      assertTrue(e.getMessage().contains("invalid file map"), e.getMessage());
+      // reported once
+      assertNull(storage.getLatestLocalChanges(sessionId, userId, branchId));
+    }
+  }
+
+  @Test
+  public void testResetReplaysAfterRestartWithTypedCommits() throws Exception {
+    Path journal = directory.resolve("journal");
+    InMemoryStorage unavailable =
+        new InMemoryStorage() {
+          @Override
+          public void resetLocalCommits(
+              String session_id,
+              String user_id,
+              String branch_id,
+              Map<String, List<Map<String, Object>>> commits) {
+            throw new IllegalStateException("unavailable");
+          }
+        };
+    Map<String, Object> commit = new HashMap<>();
+    commit.put("commit_id", "c1");
+    commit.put("parent_commit_ids", List.of());
+    commit.put("size", 3L);
+    JournaledStorage storage = new JournaledStorage(unavailable, journal, false);
+    storage.resetLocalCommits(
+        sessionId,
+        userId,
+        branchId,
+        Map.of("staged_commits", List.of(), "pushed_commits", List.of(commit)));
+    storage.close();
+
+    InMemoryStorage delegate = new InMemoryStorage();
+    delegate.addSession(sessionId, userId, "{}");
+    try (JournaledStorage reopened = new JournaledStorage(delegate, journal, false)) {
+      Map<String, Object> head = reopened.getLatestLocalCommit(sessionId, userId, branchId);
+      assertEquals("c1", head.get("commit_id"));
+      // read back from the journal's json, the number is a long again
+      assertEquals(3L, head.get("size"));
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.handlers.JsonBodyFilter;
+import edu.brown.cs.student.main.server.mergeHelpers.FileMapCodec;
+import edu.brown.cs.student.main.server.mergeHelpers.MockFileObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class JsonBodyFilterTest {
+
+  private InputStream body(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReadsScalarsAndKeepsRawJson() throws IOException {
+    Map<String, String> params =
+        JsonBodyFilter.readParams(
+            body(
+                "{\"session_id\":\"s1\",\"limit\":5,\"verbose\":true,\"cursor\":null,"
+                    + "\"file_map_json\":{\"file1\":[{\"imgStr\":\"a\",\"imgName\":\"b\"}]},"
+                    + "\"files\":[\"file1\"]}"));
+
+    assertEquals("s1", params.get("session_id"));
+    assertEquals("5", params.get("limit"));
+    assertEquals("true", params.get("verbose"));
+    assertFalse(params.containsKey("cursor"));
+    assertEquals("{\"file1\":[{\"imgStr\":\"a\",\"imgName\":\"b\"}]}", params.get("file_map_json"));
+    assertEquals("[\"file1\"]", params.get("files"));
+  }
+
+  @Test
+  public void testFileMapMayBeSentAsString() throws IOException {
+    Map<String, String> params =
+        JsonBodyFilter.readParams(body("{\"file_map_json\":\"{\\\"file1\\\":[]}\"}"));
+
+    assertEquals("{\"file1\":[]}", params.get("file_map_json"));
+  }
+
+  @Test
+  public void testDecodesBinaryFileMap() throws IOException {
+    String encoded =
+        Base64.getEncoder()
+            .encodeToString(
+                FileMapCodec.encode(Map.of("file1", List.of(new MockFileObject("a", "b")))));
+
+    Map<String, String> params =
+        JsonBodyFilter.readParams(body("{\"file_map_bin\":\"" + encoded + "\"}"));
+
+    assertEquals("{\"file1\":[{\"imgName\":\"b\",\"imgStr\":\"a\"}]}", params.get("file_map_json"));
+    assertThrows(
+        IOException.class, () -> JsonBodyFilter.readParams(body("{\"file_map_bin\":\"AQA=\"}")));
+  }
+
+  @Test
+  public void testRejectsNonObjectBody() {
+    assertThrows(Exception.class, () -> JsonBodyFilter.readParams(body("[1, 2]")));
+    assertThrows(IOException.class, () -> JsonBodyFilter.readParams(body("")));
+  }
+}
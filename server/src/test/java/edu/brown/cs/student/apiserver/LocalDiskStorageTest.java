@@ -0,0 +1,153 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.BranchSnapshot;
+import edu.brown.cs.student.main.server.storage.LocalDiskStorage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LocalDiskStorageTest {
+
+  private final String sessionId = "disk-test";
+  private final String userId = "user1";
+  private final String branchId = "main";
+
+  @TempDir Path directory;
+
+  private LocalDiskStorage storage;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    storage = new LocalDiskStorage(directory, false);
+    storage.addSession(sessionId, userId, "{}");
+  }
+
+  @AfterEach
+  public void teardown() throws Exception {
+    storage.close();
+  }
+
+  /** Closes the storage and opens a new one over the same directory, as after a restart. */
+  private void reopen() throws Exception {
+    storage.close();
+    storage = new LocalDiskStorage(directory, false);
+  }
+
+  @Test
+  public void testStateSurvivesRestart() throws Exception {
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+    Map<String, Object> commit =
+        storage.commitChange(sessionId, userId, branchId, "first", List.of("initial"));
+    storage.pushCommit(sessionId, userId, branchId);
+    storage.addBranch(sessionId, userId, branchId, "feature", "{\"a\":1}");
+    storage.addStash(sessionId, userId, branchId, "{\"b\":2}");
+
+    reopen();
+
+    assertEquals(List.of(sessionId), storage.getAllSessions());
+    assertEquals(
+        commit.get("commit_id"),
+        storage.getLatestRemoteCommit(sessionId, branchId).get("commit_id"));
+    assertEquals(2, storage.getRemotePushedCommits(sessionId, branchId).size());
+    assertEquals(2, storage.getLocalPushedCommits(sessionId, userId, branchId).size());
+    assertTrue(storage.getStagedCommits(sessionId, userId, branchId).isEmpty());
+    assertEquals(List.of("feature", "main"), storage.getAllLocalBranches(sessionId, userId));
+    assertEquals(1, storage.getStashes(sessionId, userId).size());
+
+    BranchSnapshot snapshot = storage.getBranchSnapshot(sessionId, userId, branchId);
+    assertEquals(snapshot.localHeadId(), snapshot.remoteHeadId());
+    assertEquals(snapshot.localPushedCount(), snapshot.remotePushedCount());
+    assertEquals(snapshot.remoteHeadId(), snapshot.localPushedHeadId());
+  }
+
+  @Test
+  public void testTornRecordIsDiscarded() throws Exception {
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+    storage.close();
+    // a record whose header promises more bytes than were written, as if the process died mid-write
+    Path log;
+    try (var files = Files.list(directory)) {
+      log = files.filter(file -> file.toString().endsWith(".log")).findFirst().orElseThrow();
+    }
+    Files.write(log, new byte[] {0, 0, 1, 0, 7, 7, 7, 7, '{'}, StandardOpenOption.APPEND);
+
+    storage = new LocalDiskStorage(directory, false);
+    assertEquals("{\"a\":1}", storage.getLatestLocalChanges(sessionId, userId, branchId));
+
+    storage.addChange(sessionId, userId, branchId, "{\"a\":2}");
+    reopen();
+    assertEquals("{\"a\":2}", storage.getLatestLocalChanges(sessionId, userId, branchId));
+  }
+
+  @Test
+  public void testLargeLogIsCompacted() throws Exception {
+    String fileMap = "{\"a\":\"" + "x".repeat(64 * 1024) + "\"}";
+    for (int i = 0; i < 64; i++) {
+      storage.addChange(sessionId, userId, branchId, fileMap + i);
+    }
+    long written = 64L * fileMap.length();
+
+    long logSize;
+    try (var files = Files.list(directory)) {
+      logSize = files.mapToLong(file -> file.toFile().length()).sum();
+    }
+    assertTrue(logSize < written / 2, "log was not compacted: " + logSize + " bytes");
+
+    reopen();
+    assertEquals(fileMap + 63, storage.getLatestLocalChanges(sessionId, userId, branchId));
+    assertEquals(1, storage.getLocalPushedCommits(sessionId, userId, branchId).size());
+  }
+
+  @Test
+  public void testConcurrentCommitsAreAllKept() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> commits = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        String user = "user" + i;
+        commits.add(
+            executor.submit(
+                () -> {
+                  storage.addSession(sessionId, user, "{}");
+                  for (int j = 0; j < 10; j++) {
+                    storage.addChange(sessionId, user, branchId, "{\"n\":" + j + "}");
+                    storage.commitChange(sessionId, user, branchId, "commit " + j, List.of());
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> commit : commits) {
+        commit.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    reopen();
+    for (int i = 0; i < 8; i++) {
+      assertEquals(10, storage.getStagedCommits(sessionId, "user" + i, branchId).size());
+    }
+  }
+
+  @Test
+  public void testDeleteSessionRemovesLog() throws Exception {
+    storage.deleteSession(sessionId);
+
+    assertTrue(storage.getAllSessions().isEmpty());
+    assertNull(storage.getLatestLocalCommit(sessionId, userId, branchId));
+    reopen();
+    assertTrue(storage.getAllSessions().isEmpty());
+  }
+}
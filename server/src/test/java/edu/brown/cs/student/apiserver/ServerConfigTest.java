@@ -0,0 +1,97 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.ServerConfig;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.junit.jupiter.api.Test;
+
+public class ServerConfigTest {
+
+  @Test
+  public void testDefaults() {
+    ServerConfig config = ServerConfig.from(name -> null);
+
+    assertEquals(3232, config.port());
+    assertEquals(ServerConfig.ThreadMode.PLATFORM, config.threadMode());
+    assertEquals(200, config.maxThreads());
+    assertEquals(0, config.queueCapacity());
+    assertEquals(ServerConfig.StorageMode.FIREBASE, config.storageMode());
+    assertEquals("data", config.storageDirectory());
+    assertNull(config.journalFile());
+    assertEquals(0, config.sessionTtlMinutes());
+    assertEquals(10, config.reapIntervalMinutes());
+    assertEquals(50, config.reapBatch());
+  }
+
+  @Test
+  public void testReadsSettings() {
+    Map<String, String> settings =
+        Map.of(
+            "server.threads", "Virtual",
+            "server.max.threads", "50",
+            "server.min.threads", "4",
+            "server.queue.capacity", "100",
+            "server.storage", "local",
+            "server.storage.dir", "/var/lib/git-happens");
+    ServerConfig config = ServerConfig.from(settings::get);
+
+    assertEquals(ServerConfig.ThreadMode.VIRTUAL, config.threadMode());
+    assertEquals(50, config.maxThreads());
+    assertEquals(4, config.minThreads());
+    assertEquals(100, config.queueCapacity());
+    assertEquals(ServerConfig.StorageMode.LOCAL, config.storageMode());
+    assertEquals("/var/lib/git-happens", config.storageDirectory());
+  }
+
+  @Test
+  public void testRejectsInvalidSettings() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ServerConfig.from(Map.of("server.threads", "green")::get));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ServerConfig.from(Map.of("server.max.threads", "many")::get));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ServerConfig.from(Map.of("server.min.threads", "500")::get));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ServerConfig.from(Map.of("server.storage", "s3")::get));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> ServerConfig.from(Map.of("server.session.reap.batch", "0")::get));
+  }
+
+  @Test
+  public void testPlatformThreadPoolIsSized() {
+    ThreadPool pool =
+        ServerConfig.from(Map.of("server.max.threads", "16", "server.min.threads", "2")::get)
+            .createThreadPool();
+
+    assertTrue(pool instanceof QueuedThreadPool);
+    assertEquals(16, ((QueuedThreadPool) pool).getMaxThreads());
+    assertEquals(2, ((QueuedThreadPool) pool).getMinThreads());
+  }
+
+  @Test
+  public void testVirtualThreadPoolRunsTasks() throws Exception {
+    ThreadPool pool =
+        ServerConfig.from(Map.of("server.threads", "virtual")::get).createThreadPool();
+    CountDownLatch ran = new CountDownLatch(1);
+    if (pool instanceof LifeCycle lifeCycle) {
+      lifeCycle.start();
+    }
+    pool.execute(ran::countDown);
+
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+    if (pool instanceof LifeCycle lifeCycle) {
+      lifeCycle.stop();
+    }
+  }
+}
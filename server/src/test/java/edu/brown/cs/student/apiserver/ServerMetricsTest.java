@@ -0,0 +1,103 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.metrics.ServerMetrics;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.InstrumentedStorage;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import spark.Response;
+import spark.Route;
+
+public class ServerMetricsTest {
+
+  private final String sessionId = "metrics-test";
+  private final String userId = "user1";
+  private final String branchId = "main";
+
+  @Test
+  public void testStorageCallsAreRecorded() throws Exception {
+    ServerMetrics metrics = new ServerMetrics();
+    StorageInterface storage = new InstrumentedStorage(new InMemoryStorage(), metrics, "test");
+
+    storage.addSession(sessionId, userId, "{}");
+    storage.addChange(sessionId, userId, branchId, "{\"a\":1}");
+    assertEquals("{\"a\":1}", storage.getLatestLocalChanges(sessionId, userId, branchId));
+    assertThrows(
+        IllegalArgumentException.class, () -> storage.deleteBranch(sessionId, userId, "missing"));
+
+    String scrape = metrics.scrape();
+    assertTrue(
+        scrape.contains(
+            "git_happens_storage_call_duration_seconds_count{layer=\"test\",method=\"addChange\"} 1"),
+        scrape);
+    assertTrue(
+        scrape.contains(
+            "git_happens_storage_written_bytes_total{layer=\"test\",method=\"addChange\"} 7"),
+        scrape);
+    assertTrue(
+        scrape.contains(
+            "git_happens_storage_read_bytes_total{layer=\"test\",method=\"getLatestLocalChanges\"} 7"),
+        scrape);
+    assertTrue(
+        scrape.contains(
+            "git_happens_storage_call_failures_total{layer=\"test\",method=\"deleteBranch\"} 1"),
+        scrape);
+  }
+
+  @Test
+  public void testHistogramBucketsAreCumulative() {
+    ServerMetrics metrics = new ServerMetrics();
+    metrics.recordStorageCall("test", "fetch", TimeUnit.MILLISECONDS.toNanos(2), 0, 0, false);
+    metrics.recordStorageCall("test", "fetch", TimeUnit.SECONDS.toNanos(20), 0, 0, false);
+
+    String scrape = metrics.scrape();
+    String bucket =
+        "git_happens_storage_call_duration_seconds_bucket{layer=\"test\",method=\"fetch\",";
+    assertTrue(scrape.contains(bucket + "le=\"0.001\"} 0"), scrape);
+    assertTrue(scrape.contains(bucket + "le=\"0.0025\"} 1"), scrape);
+    assertTrue(scrape.contains(bucket + "le=\"10.0\"} 1"), scrape);
+    assertTrue(scrape.contains(bucket + "le=\"+Inf\"} 2"), scrape);
+    assertTrue(
+        scrape.contains(
+            "git_happens_storage_call_duration_seconds_sum{layer=\"test\",method=\"fetch\"} 20.002"),
+        scrape);
+  }
+
+  @Test
+  public void testRequestsAreRecordedByStatus() throws Exception {
+    ServerMetrics metrics = new ServerMetrics();
+    Response response =
+        new Response() {
+          @Override
+          public int status() {
+            return 200;
+          }
+        };
+    Route ok = metrics.instrument("gitstatus", (request, r) -> "ok");
+    Route failing =
+        metrics.instrument(
+            "gitpush",
+            (request, r) -> {
+              throw new IllegalStateException("down");
+            });
+
+    assertEquals("ok", ok.handle(null, response));
+    assertEquals("ok", ok.handle(null, response));
+    assertThrows(IllegalStateException.class, () -> failing.handle(null, response));
+
+    String scrape = metrics.scrape();
+    assertTrue(
+        scrape.contains("git_happens_requests_total{endpoint=\"gitstatus\",status=\"200\"} 2"),
+        scrape);
+    assertTrue(
+        scrape.contains("git_happens_requests_total{endpoint=\"gitpush\",status=\"500\"} 1"),
+        scrape);
+    assertTrue(scrape.contains("git_happens_requests_in_flight{endpoint=\"gitpush\"} 0"), scrape);
+    assertTrue(
+        scrape.contains("git_happens_request_duration_seconds_count{endpoint=\"gitstatus\"} 2"),
+        scrape);
+  }
+}
@@ -0,0 +1,119 @@
+package edu.brown.cs.student.apiserver;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.SessionReaper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SessionReaperTest {
+
+  private final String userId = "user1";
+
+  private InMemoryStorage storage;
+  private AtomicLong now;
+  private List<String> evicted;
+  private SessionReaper reaper;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    storage = new InMemoryStorage();
+    now = new AtomicLong();
+    evicted = new ArrayList<>();
+    reaper = new SessionReaper(storage, 10, TimeUnit.MINUTES, 2, List.of(evicted::add), now::get);
+    for (int i = 0; i < 3; i++) {
+      storage.addSession("session" + i, userId, "{}");
+    }
+  }
+
+  /**
+   * Moves the clock forward.
+   *
+   * @param minutes - minutes to advance by
+   */
+  private void advance(long minutes) {
+    now.addAndGet(TimeUnit.MINUTES.toMillis(minutes));
+  }
+
+  @Test
+  public void testActiveSessionsAreKept() throws Exception {
+    assertEquals(0, reaper.sweep());
+    reaper.touch("session0");
+    advance(9);
+    assertEquals(0, reaper.sweep());
+
+    reaper.touch("session0");
+    advance(5);
+    // session1 and session2 were first seen by the first sweep, 14 minutes ago
+    assertEquals(2, reaper.sweep());
+    assertEquals(List.of("session0"), storage.getAllSessions());
+    assertEquals(List.of("session1", "session2"), evicted);
+  }
+
+  @Test
+  public void testDeletesAreBatched() throws Exception {
+    storage.addSession("session3", userId, "{}");
+    reaper.sweep();
+    advance(10);
+
+    assertEquals(2, reaper.sweep());
+    assertEquals(2, storage.getAllSessions().size());
+    assertEquals(2, reaper.sweep());
+    assertTrue(storage.getAllSessions().isEmpty());
+    assertEquals(0, reaper.sweep());
+  }
+
+  @Test
+  public void testOldestSessionsGoFirst() throws Exception {
+    reaper.touch("session2");
+    advance(1);
+    reaper.touch("session0");
+    advance(1);
+    reaper.touch("session1");
+    advance(20);
+
+    assertEquals(2, reaper.sweep());
+    assertEquals(List.of("session2", "session0"), evicted);
+    assertEquals(List.of("session1"), storage.getAllSessions());
+  }
+
+  @Test
+  public void testSessionsDeletedElsewhereAreForgotten() throws Exception {
+    reaper.sweep();
+    reaper.touch("session0");
+    storage.deleteSession("session0");
+    advance(10);
+
+    assertEquals(2, reaper.sweep());
+    assertFalse(evicted.contains("session0"));
+  }
+
+  @Test
+  public void testSessionUsedDuringSweepIsKept() throws Exception {
+    List<SessionReaper> reapers = new ArrayList<>();
+    // session1 gets a request while session0 is being deleted
+    reapers.add(
+        new SessionReaper(
+            storage,
+            10,
+            TimeUnit.MINUTES,
+            2,
+            List.of(
+                session_id -> {
+                  if (session_id.equals("session0")) {
+                    reapers.get(0).touch("session1");
+                  }
+                }),
+            now::get));
+    reapers.get(0).sweep();
+    advance(10);
+
+    assertEquals(2, reapers.get(0).sweep());
+    assertEquals(List.of("session1"), storage.getAllSessions());
+  }
+}